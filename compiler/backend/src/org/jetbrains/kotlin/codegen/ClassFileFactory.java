@@ -41,6 +41,11 @@ public class ClassFileFactory implements OutputFileCollection {
     private final Map<FqName, PackageCodegen> package2codegen = new HashMap<FqName, PackageCodegen>();
     private final Map<String, ClassBuilderAndSourceFileList> generators = new LinkedHashMap<String, ClassBuilderAndSourceFileList>();
 
+    // Set by parallel codegen for the duration of a package generation task, see enterOutputGroup()
+    private final ThreadLocal<OutputGroup> currentOutputGroup = new ThreadLocal<OutputGroup>();
+    private boolean hasGroupedOutputs = false;
+    private int ungroupedOutputCount = 0;
+
     private boolean isDone = false;
 
     public ClassFileFactory(@NotNull GenerationState state, @NotNull ClassBuilderFactory builderFactory) {
@@ -63,13 +68,55 @@ public class ClassFileFactory implements OutputFileCollection {
             @NotNull Collection<? extends PsiFile> sourceFiles) {
         String outputFilePath = asmType.getInternalName() + ".class";
         List<File> ioSourceFiles = toIoFilesIgnoringNonPhysical(sourceFiles);
-        state.getProgress().reportOutput(ioSourceFiles, new File(outputFilePath));
         ClassBuilder answer = builderFactory.newClassBuilder(origin);
-        generators.put(outputFilePath, new ClassBuilderAndSourceFileList(answer, ioSourceFiles));
+
+        OutputGroup group = currentOutputGroup.get();
+        synchronized (this) {
+            // Progress implementations are not expected to be thread-safe
+            state.getProgress().reportOutput(ioSourceFiles, new File(outputFilePath));
+            int groupIndex = group != null ? group.index : Integer.MAX_VALUE;
+            int indexInGroup = group != null ? group.outputCount++ : ungroupedOutputCount++;
+            ClassBuilderAndSourceFileList output = new ClassBuilderAndSourceFileList(answer, ioSourceFiles, groupIndex, indexInGroup);
+            ClassBuilderAndSourceFileList previous = generators.get(outputFilePath);
+            generators.put(outputFilePath, previous != null ? merge(previous, output) : output);
+        }
         return answer;
     }
 
-    void done() {
+    /**
+     * Several classes may be generated for the same path. As with sequential generation, where the later class replaces
+     * the earlier one but the map keeps the first position, the file keeps the position of the class which comes first
+     * in the order of groups and the contents of the one which comes last, regardless of the order in which threads get here
+     */
+    @NotNull
+    private static ClassBuilderAndSourceFileList merge(@NotNull ClassBuilderAndSourceFileList o1, @NotNull ClassBuilderAndSourceFileList o2) {
+        ClassBuilderAndSourceFileList first = compareOrder(o1, o2) <= 0 ? o1 : o2;
+        ClassBuilderAndSourceFileList last = first == o1 ? o2 : o1;
+        return new ClassBuilderAndSourceFileList(last.classBuilder, last.sourceFiles, first.groupIndex, first.indexInGroup);
+    }
+
+    private static int compareOrder(@NotNull ClassBuilderAndSourceFileList o1, @NotNull ClassBuilderAndSourceFileList o2) {
+        if (o1.groupIndex != o2.groupIndex) return o1.groupIndex < o2.groupIndex ? -1 : 1;
+        return o1.indexInGroup < o2.indexInGroup ? -1 : (o1.indexInGroup == o2.indexInGroup ? 0 : 1);
+    }
+
+    /**
+     * Assigns class files subsequently created on the current thread to the group with the given index.
+     * Output files are listed in the order of their groups, so that parallel code generation yields the same output as the sequential one
+     */
+    void enterOutputGroup(int index) {
+        assert currentOutputGroup.get() == null : "Output group is already set for the current thread";
+        currentOutputGroup.set(new OutputGroup(index));
+        synchronized (this) {
+            hasGroupedOutputs = true;
+        }
+    }
+
+    void exitOutputGroup() {
+        currentOutputGroup.remove();
+    }
+
+    synchronized void done() {
         if (!isDone) {
             isDone = true;
             for (PackageCodegen codegen : package2codegen.values()) {
@@ -80,9 +127,9 @@ public class ClassFileFactory implements OutputFileCollection {
 
     @NotNull
     @Override
-    public List<OutputFile> asList() {
+    public synchronized List<OutputFile> asList() {
         done();
-        return ContainerUtil.map(generators.keySet(), new Function<String, OutputFile>() {
+        return ContainerUtil.map(getOrderedOutputPaths(), new Function<String, OutputFile>() {
             @Override
             public OutputFile fun(String relativeClassFilePath) {
                 return new OutputClassFile(relativeClassFilePath);
@@ -90,9 +137,29 @@ public class ClassFileFactory implements OutputFileCollection {
         });
     }
 
+    @NotNull
+    private Collection<String> getOrderedOutputPaths() {
+        if (!hasGroupedOutputs) return generators.keySet();
+
+        List<Map.Entry<String, ClassBuilderAndSourceFileList>> entries =
+                new ArrayList<Map.Entry<String, ClassBuilderAndSourceFileList>>(generators.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, ClassBuilderAndSourceFileList>>() {
+            @Override
+            public int compare(Map.Entry<String, ClassBuilderAndSourceFileList> e1, Map.Entry<String, ClassBuilderAndSourceFileList> e2) {
+                return compareOrder(e1.getValue(), e2.getValue());
+            }
+        });
+
+        List<String> result = new ArrayList<String>(entries.size());
+        for (Map.Entry<String, ClassBuilderAndSourceFileList> entry : entries) {
+            result.add(entry.getKey());
+        }
+        return result;
+    }
+
     @Override
     @Nullable
-    public OutputFile get(@NotNull String relativePath) {
+    public synchronized OutputFile get(@NotNull String relativePath) {
         return generators.containsKey(relativePath) ? new OutputClassFile(relativePath) : null;
     }
 
@@ -110,7 +177,7 @@ public class ClassFileFactory implements OutputFileCollection {
     }
 
     @NotNull
-    public PackageCodegen forPackage(@NotNull FqName fqName, @NotNull Collection<JetFile> files) {
+    public synchronized PackageCodegen forPackage(@NotNull FqName fqName, @NotNull Collection<JetFile> files) {
         assert !isDone : "Already done!";
         PackageCodegen codegen = package2codegen.get(fqName);
         if (codegen == null) {
@@ -151,24 +218,32 @@ public class ClassFileFactory implements OutputFileCollection {
         @NotNull
         @Override
         public List<File> getSourceFiles() {
-            ClassBuilderAndSourceFileList pair = generators.get(relativeClassFilePath);
-            if (pair == null) {
-                throw new IllegalStateException("No record for binary file " + relativeClassFilePath);
-            }
-
-            return pair.sourceFiles;
+            return getRecord().sourceFiles;
         }
 
         @NotNull
         @Override
         public byte[] asByteArray() {
-            return builderFactory.asBytes(generators.get(relativeClassFilePath).classBuilder);
+            return builderFactory.asBytes(getRecord().classBuilder);
         }
 
         @NotNull
         @Override
         public String asText() {
-            return builderFactory.asText(generators.get(relativeClassFilePath).classBuilder);
+            return builderFactory.asText(getRecord().classBuilder);
+        }
+
+        @NotNull
+        private ClassBuilderAndSourceFileList getRecord() {
+            ClassBuilderAndSourceFileList pair;
+            synchronized (ClassFileFactory.this) {
+                pair = generators.get(relativeClassFilePath);
+            }
+            if (pair == null) {
+                throw new IllegalStateException("No record for binary file " + relativeClassFilePath);
+            }
+
+            return pair;
         }
 
         @NotNull
@@ -181,14 +256,27 @@ public class ClassFileFactory implements OutputFileCollection {
     private static final class ClassBuilderAndSourceFileList {
         private final ClassBuilder classBuilder;
         private final List<File> sourceFiles;
+        private final int groupIndex;
+        private final int indexInGroup;
 
-        private ClassBuilderAndSourceFileList(ClassBuilder classBuilder, List<File> sourceFiles) {
+        private ClassBuilderAndSourceFileList(ClassBuilder classBuilder, List<File> sourceFiles, int groupIndex, int indexInGroup) {
             this.classBuilder = classBuilder;
             this.sourceFiles = sourceFiles;
+            this.groupIndex = groupIndex;
+            this.indexInGroup = indexInGroup;
+        }
+    }
+
+    private static final class OutputGroup {
+        private final int index;
+        private int outputCount = 0;
+
+        private OutputGroup(int index) {
+            this.index = index;
         }
     }
 
-    public void removeInlinedClasses(Set<String> classNamesToRemove) {
+    public synchronized void removeInlinedClasses(Set<String> classNamesToRemove) {
         for (String classInternalName : classNamesToRemove) {
             generators.remove(classInternalName + ".class");
         }
@@ -536,6 +536,16 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> implem
             return StackValue.none();
         }
 
+        // Is it "a downTo b", "c.indices.reversed()", "(a..b) step 2" or so
+        if (RangeCodegenUtil.isIntegralRangeOrProgression(loopRangeType)) {
+            //noinspection ConstantConditions
+            RangeCodegenUtil.IntrinsicProgression progression = RangeCodegenUtil.getIntrinsicProgression(loopRange, bindingContext);
+            if (progression != null) {
+                generateForLoop(new ForInIntrinsicProgressionLoopGenerator(forExpression, progression));
+                return StackValue.none();
+            }
+        }
+
         if (RangeCodegenUtil.isRange(loopRangeType)) {
             generateForLoop(new ForInRangeInstanceLoopGenerator(forExpression));
             return StackValue.none();
@@ -1188,6 +1198,195 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> implem
     }
 
 
+    private class ForInIntrinsicProgressionLoopGenerator extends AbstractForInProgressionOrRangeLoopGenerator {
+        private final RangeCodegenUtil.IntrinsicProgression progression;
+        private final Type incrementType;
+        private int incrementVar = -1;
+
+        private int finalVar;
+
+        private ForInIntrinsicProgressionLoopGenerator(
+                @NotNull JetForExpression forExpression,
+                @NotNull RangeCodegenUtil.IntrinsicProgression progression
+        ) {
+            super(forExpression);
+            this.progression = progression;
+            this.incrementType = asmElementType.getSort() == Type.LONG ? Type.LONG_TYPE : Type.INT_TYPE;
+        }
+
+        @Override
+        protected int getFinalVar() {
+            return finalVar;
+        }
+
+        @Override
+        public void beforeLoop() {
+            super.beforeLoop();
+
+            // Bounds are evaluated in the order they are written, and swapped by reversed()
+            if (progression.reversed) {
+                storeBounds(endVar, loopParameterVar);
+            }
+            else {
+                storeBounds(loopParameterVar, endVar);
+            }
+
+            if (progression.step == null) {
+                // The increment is 1 or -1, so the end is the last element of any non-empty progression
+                finalVar = endVar;
+                return;
+            }
+
+            incrementVar = createLoopTempVariable(incrementType);
+            gen(progression.step, incrementType);
+            v.store(incrementVar, incrementType);
+            checkStepIsPositive();
+
+            if (progression.getIncrementSign() < 0) {
+                v.load(incrementVar, incrementType);
+                v.neg(incrementType);
+                v.store(incrementVar, incrementType);
+            }
+
+            v.load(loopParameterVar, asmElementType);
+            v.load(endVar, asmElementType);
+            v.load(incrementVar, incrementType);
+            v.invokestatic("kotlin/internal/InternalPackage", "getProgressionFinalElement",
+                           Type.getMethodDescriptor(incrementType, incrementType, incrementType, incrementType), false);
+
+            finalVar = createLoopTempVariable(asmElementType);
+            v.store(finalVar, asmElementType);
+        }
+
+        private void storeBounds(int leftVar, int rightVar) {
+            switch (progression.kind) {
+                case RANGE_TO:
+                case DOWN_TO:
+                    gen(progression.left, asmElementType);
+                    v.store(leftVar, asmElementType);
+                    //noinspection ConstantConditions
+                    gen(progression.right, asmElementType);
+                    v.store(rightVar, asmElementType);
+                    break;
+
+                default:
+                    // 0..size - 1
+                    v.iconst(0);
+                    v.store(leftVar, Type.INT_TYPE);
+                    genSize();
+                    v.iconst(1);
+                    v.sub(Type.INT_TYPE);
+                    v.store(rightVar, Type.INT_TYPE);
+            }
+        }
+
+        private void genSize() {
+            switch (progression.kind) {
+                case ARRAY_INDICES:
+                    gen(progression.left, expressionType(progression.left));
+                    v.arraylength();
+                    break;
+
+                case COLLECTION_INDICES:
+                    gen(progression.left, expressionType(progression.left));
+                    v.invokeinterface("java/util/Collection", "size", "()I");
+                    break;
+
+                case INT_INDICES:
+                    gen(progression.left, Type.INT_TYPE);
+                    break;
+
+                default:
+                    throw new IllegalStateException("Not an indices progression: " + progression.kind);
+            }
+        }
+
+        // Same as checkStepIsPositive() of the standard library
+        private void checkStepIsPositive() {
+            Label positive = new Label();
+            v.load(incrementVar, incrementType);
+            if (incrementType.getSort() == Type.LONG) {
+                v.lconst(0L);
+                v.lcmp();
+            }
+            v.ifgt(positive);
+
+            v.anew(Type.getObjectType("java/lang/IllegalArgumentException"));
+            v.dup();
+            genStringBuilderConstructor(v);
+            v.aconst("Step must be positive, was: ");
+            genInvokeAppendMethod(v, JAVA_STRING_TYPE);
+            v.load(incrementVar, incrementType);
+            genInvokeAppendMethod(v, incrementType);
+            v.invokevirtual("java/lang/StringBuilder", "toString", "()Ljava/lang/String;", false);
+            v.invokespecial("java/lang/IllegalArgumentException", "<init>", "(Ljava/lang/String;)V", false);
+            v.athrow();
+
+            v.mark(positive);
+        }
+
+        @Override
+        public void checkEmptyLoop(@NotNull Label loopExit) {
+            v.load(loopParameterVar, asmElementType);
+            v.load(endVar, asmElementType);
+
+            boolean increasing = progression.getIncrementSign() > 0;
+            if (asmElementType.getSort() == Type.LONG) {
+                v.lcmp();
+                if (increasing) {
+                    v.ifgt(loopExit);
+                }
+                else {
+                    v.iflt(loopExit);
+                }
+            }
+            else {
+                if (increasing) {
+                    v.ificmpgt(loopExit);
+                }
+                else {
+                    v.ificmplt(loopExit);
+                }
+            }
+        }
+
+        @Override
+        public void checkPreCondition(@NotNull Label loopExit) {
+        }
+
+        @Override
+        protected void assignToLoopParameter() {
+        }
+
+        @Override
+        protected void increment(@NotNull Label loopExit) {
+            checkPostCondition(loopExit);
+
+            if (incrementVar == -1) {
+                int delta = progression.getIncrementSign();
+                if (asmElementType == Type.INT_TYPE) {
+                    v.iinc(loopParameterVar, delta);
+                }
+                else {
+                    v.load(loopParameterVar, asmElementType);
+                    genIncrement(asmElementType, delta, v);
+                    v.store(loopParameterVar, asmElementType);
+                }
+                return;
+            }
+
+            v.load(loopParameterVar, asmElementType);
+            v.load(incrementVar, incrementType);
+            v.add(incrementType);
+
+            if (asmElementType == Type.BYTE_TYPE || asmElementType == Type.SHORT_TYPE || asmElementType == Type.CHAR_TYPE) {
+                StackValue.coerce(Type.INT_TYPE, asmElementType, v);
+            }
+
+            v.store(loopParameterVar, asmElementType);
+        }
+    }
+
     @Override
     public StackValue visitBreakExpression(@NotNull JetBreakExpression expression, StackValue receiver) {
         return generateBreakOrContinueExpression(expression, true);
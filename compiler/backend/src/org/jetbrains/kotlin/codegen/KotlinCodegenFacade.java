@@ -20,15 +20,19 @@ import com.google.common.collect.Sets;
 import com.intellij.util.containers.MultiMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.kotlin.codegen.state.GenerationState;
+import org.jetbrains.kotlin.codegen.state.GroupedDiagnosticSink;
+import org.jetbrains.kotlin.diagnostics.Diagnostic;
 import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.psi.JetFile;
 import org.jetbrains.kotlin.psi.JetScript;
 import org.jetbrains.kotlin.resolve.ScriptNameUtil;
 import org.jetbrains.org.objectweb.asm.Type;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.jetbrains.kotlin.codegen.binding.CodegenBinding.registerClassNameForScript;
 
@@ -63,13 +67,84 @@ public class KotlinCodegenFacade {
         }
 
         Set<FqName> removedPackageFiles = new HashSet<FqName>(state.getPackagesWithRemovedFiles());
-        for (FqName fqName : Sets.union(removedPackageFiles, packageFqNameToFiles.keySet())) {
-            generatePackage(state, fqName, packageFqNameToFiles.get(fqName), errorHandler);
+        Set<FqName> packagesToGenerate = Sets.union(removedPackageFiles, packageFqNameToFiles.keySet());
+        if (state.isParallelCodegenEnabled() && packagesToGenerate.size() > 1) {
+            generatePackagesInParallel(state, new ArrayList<FqName>(packagesToGenerate), packageFqNameToFiles, errorHandler);
+        }
+        else {
+            for (FqName fqName : packagesToGenerate) {
+                generatePackage(state, fqName, packageFqNameToFiles.get(fqName), errorHandler);
+            }
         }
 
         state.getFactory().done();
     }
 
+    private static void generatePackagesInParallel(
+            @NotNull final GenerationState state,
+            @NotNull List<FqName> packageFqNames,
+            @NotNull final MultiMap<FqName, JetFile> packageFqNameToFiles,
+            @NotNull final CompilationErrorHandler errorHandler
+    ) {
+        final ClassFileFactory factory = state.getFactory();
+        final GroupedDiagnosticSink diagnostics = state.getDiagnostics();
+
+        // Package codegens are created upfront on this thread to keep their order in the factory deterministic
+        List<PackageCodegen> codegens = new ArrayList<PackageCodegen>(packageFqNames.size());
+        List<List<Diagnostic>> diagnosticGroups = new ArrayList<List<Diagnostic>>(packageFqNames.size());
+        for (FqName fqName : packageFqNames) {
+            codegens.add(factory.forPackage(fqName, packageFqNameToFiles.get(fqName)));
+            diagnosticGroups.add(new ArrayList<Diagnostic>());
+        }
+
+        int threadCount = Math.min(packageFqNames.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(codegens.size());
+            for (int i = 0; i < codegens.size(); i++) {
+                final int index = i;
+                final PackageCodegen codegen = codegens.get(i);
+                final List<Diagnostic> diagnosticGroup = diagnosticGroups.get(i);
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Class files and diagnostics are grouped by package so that they don't depend on the order in which tasks finish
+                        factory.enterOutputGroup(index);
+                        diagnostics.enterGroup(diagnosticGroup);
+                        try {
+                            codegen.generate(errorHandler);
+                        }
+                        finally {
+                            diagnostics.exitGroup();
+                            factory.exitOutputGroup();
+                        }
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            for (List<Diagnostic> diagnosticGroup : diagnosticGroups) {
+                diagnostics.reportGroup(diagnosticGroup);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating packages", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
     public static void generatePackage(
             @NotNull GenerationState state,
             @NotNull FqName fqName,
@@ -21,18 +21,23 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.builtins.KotlinBuiltIns;
 import org.jetbrains.kotlin.builtins.PrimitiveType;
-import org.jetbrains.kotlin.descriptors.CallableDescriptor;
-import org.jetbrains.kotlin.descriptors.ClassifierDescriptor;
+import org.jetbrains.kotlin.descriptors.*;
 import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.name.Name;
 import org.jetbrains.kotlin.psi.*;
+import org.jetbrains.kotlin.resolve.BindingContext;
 import org.jetbrains.kotlin.resolve.DescriptorUtils;
+import org.jetbrains.kotlin.resolve.calls.model.ResolvedCall;
+import org.jetbrains.kotlin.resolve.calls.model.ResolvedValueArgument;
+import org.jetbrains.kotlin.resolve.scopes.receivers.ExpressionReceiver;
+import org.jetbrains.kotlin.resolve.scopes.receivers.ReceiverValue;
 import org.jetbrains.kotlin.types.JetType;
 
 import java.util.List;
 
 import static org.jetbrains.kotlin.builtins.KotlinBuiltIns.BUILT_INS_PACKAGE_FQ_NAME;
 import static org.jetbrains.kotlin.codegen.AsmUtil.isPrimitiveNumberClassDescriptor;
+import static org.jetbrains.kotlin.resolve.calls.callUtil.CallUtilPackage.getResolvedCall;
 
 public class RangeCodegenUtil {
     private static final ImmutableMap<FqName, PrimitiveType> RANGE_TO_ELEMENT_TYPE;
@@ -61,6 +66,17 @@ public class RangeCodegenUtil {
         return !rangeType.isMarkedNullable() && getPrimitiveProgressionElementType(rangeType) != null;
     }
 
+    public static boolean isIntegralRangeOrProgression(@NotNull JetType rangeType) {
+        if (rangeType.isMarkedNullable()) return false;
+
+        PrimitiveType elementType = getPrimitiveRangeElementType(rangeType);
+        if (elementType == null) {
+            elementType = getPrimitiveProgressionElementType(rangeType);
+        }
+        return elementType == PrimitiveType.INT || elementType == PrimitiveType.LONG || elementType == PrimitiveType.CHAR ||
+               elementType == PrimitiveType.BYTE || elementType == PrimitiveType.SHORT;
+    }
+
     @Nullable
     public static BinaryCall getRangeAsBinaryCall(@NotNull JetForExpression forExpression) {
         // We are looking for rangeTo() calls
@@ -134,6 +150,146 @@ public class RangeCodegenUtil {
         return false;
     }
 
+    /**
+     * Recognizes loop ranges which are built only by calls of the standard library, e.g. {@code (a downTo b step 2)} or
+     * {@code array.indices.reversed()}, so that a loop over them doesn't need to create the range.
+     */
+    @Nullable
+    public static IntrinsicProgression getIntrinsicProgression(@NotNull JetExpression expression, @NotNull BindingContext bindingContext) {
+        ResolvedCall<?> resolvedCall = getResolvedCall(JetPsiUtil.deparenthesize(expression), bindingContext);
+        if (resolvedCall == null || resolvedCall.isSafeCall()) return null;
+
+        JetExpression receiver = getReceiverExpression(resolvedCall);
+        if (receiver == null) return null;
+
+        CallableDescriptor descriptor = resolvedCall.getResultingDescriptor();
+        if (isOptimizableRangeTo(descriptor)) {
+            JetExpression argument = getSingleArgument(resolvedCall);
+            return argument != null ? new IntrinsicProgression(IntrinsicProgression.Kind.RANGE_TO, receiver, argument, false, null) : null;
+        }
+
+        JetType returnType = descriptor.getReturnType();
+        if (returnType == null || !isTopLevelInBuiltInsPackage(descriptor)) return null;
+
+        String name = descriptor.getName().asString();
+        if ("downTo".equals(name) && isProgression(returnType)) {
+            JetExpression argument = getSingleArgument(resolvedCall);
+            return argument != null ? new IntrinsicProgression(IntrinsicProgression.Kind.DOWN_TO, receiver, argument, false, null) : null;
+        }
+
+        if ("indices".equals(name) && isRange(returnType)) {
+            IntrinsicProgression.Kind kind = getIndicesKind(descriptor.getExtensionReceiverParameter());
+            return kind != null ? new IntrinsicProgression(kind, receiver, null, false, null) : null;
+        }
+
+        if (("reversed".equals(name) || "step".equals(name)) && isProgression(returnType)) {
+            IntrinsicProgression progression = getIntrinsicProgression(receiver, bindingContext);
+            if (progression == null) return null;
+
+            if ("reversed".equals(name)) {
+                return progression.reverse();
+            }
+
+            JetExpression step = getSingleArgument(resolvedCall);
+            return step != null && progression.step == null ? progression.withStep(step) : null;
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private static JetExpression getReceiverExpression(@NotNull ResolvedCall<?> resolvedCall) {
+        ReceiverValue receiver = resolvedCall.getExtensionReceiver().exists()
+                                 ? resolvedCall.getExtensionReceiver()
+                                 : resolvedCall.getDispatchReceiver();
+        return receiver instanceof ExpressionReceiver ? ((ExpressionReceiver) receiver).getExpression() : null;
+    }
+
+    @Nullable
+    private static JetExpression getSingleArgument(@NotNull ResolvedCall<?> resolvedCall) {
+        List<ResolvedValueArgument> arguments = resolvedCall.getValueArgumentsByIndex();
+        if (arguments == null || arguments.size() != 1 || arguments.get(0).getArguments().size() != 1) return null;
+        return arguments.get(0).getArguments().get(0).getArgumentExpression();
+    }
+
+    private static boolean isTopLevelInBuiltInsPackage(@NotNull CallableDescriptor descriptor) {
+        DeclarationDescriptor container = descriptor.getContainingDeclaration();
+        return container instanceof PackageFragmentDescriptor &&
+               ((PackageFragmentDescriptor) container).getFqName().equals(BUILT_INS_PACKAGE_FQ_NAME);
+    }
+
+    @Nullable
+    private static IntrinsicProgression.Kind getIndicesKind(@Nullable ReceiverParameterDescriptor receiverParameter) {
+        if (receiverParameter == null) return null;
+
+        JetType receiverType = receiverParameter.getType();
+        if (KotlinBuiltIns.isArray(receiverType) || KotlinBuiltIns.isPrimitiveArray(receiverType)) {
+            return IntrinsicProgression.Kind.ARRAY_INDICES;
+        }
+
+        ClassifierDescriptor classifier = receiverType.getConstructor().getDeclarationDescriptor();
+        KotlinBuiltIns builtIns = KotlinBuiltIns.getInstance();
+        if (classifier == builtIns.getCollection()) {
+            return IntrinsicProgression.Kind.COLLECTION_INDICES;
+        }
+        if (classifier == builtIns.getInt()) {
+            return IntrinsicProgression.Kind.INT_INDICES;
+        }
+        return null;
+    }
+
+    public static class IntrinsicProgression {
+        public enum Kind {
+            // left..right
+            RANGE_TO,
+            // left downTo right
+            DOWN_TO,
+            // left.indices
+            ARRAY_INDICES,
+            COLLECTION_INDICES,
+            INT_INDICES
+        }
+
+        public final Kind kind;
+        public final JetExpression left;
+        @Nullable
+        public final JetExpression right;
+        // start and end are swapped, and the increment is negated
+        public final boolean reversed;
+        @Nullable
+        public final JetExpression step;
+
+        private IntrinsicProgression(
+                @NotNull Kind kind,
+                @NotNull JetExpression left,
+                @Nullable JetExpression right,
+                boolean reversed,
+                @Nullable JetExpression step
+        ) {
+            this.kind = kind;
+            this.left = left;
+            this.right = right;
+            this.reversed = reversed;
+            this.step = step;
+        }
+
+        // Sign of the increment, whose absolute value is either 1 or step
+        public int getIncrementSign() {
+            int sign = kind == Kind.DOWN_TO ? -1 : 1;
+            return reversed ? -sign : sign;
+        }
+
+        @NotNull
+        private IntrinsicProgression reverse() {
+            return new IntrinsicProgression(kind, left, right, !reversed, step);
+        }
+
+        @NotNull
+        private IntrinsicProgression withStep(@NotNull JetExpression step) {
+            return new IntrinsicProgression(kind, left, right, reversed, step);
+        }
+    }
+
     public static class BinaryCall {
         public final JetExpression left;
         public final JetExpression op;
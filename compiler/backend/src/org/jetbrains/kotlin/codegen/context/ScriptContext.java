@@ -57,7 +57,7 @@ public class ScriptContext extends FieldOwnerContext<ClassDescriptor> {
     public String getScriptFieldName(@NotNull ScriptDescriptor scriptDescriptor) {
         int index = earlierScripts.indexOf(scriptDescriptor);
         if (index < 0) {
-            throw new IllegalStateException("Unregistered script: " + scriptDescriptor);
+            throw new UnregisteredScriptException(scriptDescriptor);
         }
         return "script$" + (index + 1);
     }
@@ -66,4 +66,10 @@ public class ScriptContext extends FieldOwnerContext<ClassDescriptor> {
     public boolean isStatic() {
         return true;
     }
+
+    public static class UnregisteredScriptException extends IllegalStateException {
+        public UnregisteredScriptException(@NotNull ScriptDescriptor scriptDescriptor) {
+            super("Unregistered script: " + scriptDescriptor);
+        }
+    }
 }
@@ -164,10 +164,16 @@ public class InlineCodegen extends CallGenerator {
         MethodNode node;
         if (functionDescriptor instanceof DeserializedSimpleFunctionDescriptor) {
             VirtualFile file = InlineCodegenUtil.getVirtualFileForCallable((DeserializedSimpleFunctionDescriptor) functionDescriptor, state);
-            node = InlineCodegenUtil.getMethodNode(file.contentsToByteArray(), asmMethod.getName(), asmMethod.getDescriptor());
-
+            InlineMethodNodeCache cache = state.getInlineMethodNodeCache();
+            node = cache.get(file.getPath(), asmMethod.getName(), asmMethod.getDescriptor());
             if (node == null) {
-                throw new RuntimeException("Couldn't obtain compiled function body for " + descriptorName(functionDescriptor));
+                MethodNode template = InlineCodegenUtil.getMethodNode(file.contentsToByteArray(), asmMethod.getName(), asmMethod.getDescriptor());
+
+                if (template == null) {
+                    throw new RuntimeException("Couldn't obtain compiled function body for " + descriptorName(functionDescriptor));
+                }
+
+                node = cache.put(file.getPath(), asmMethod.getName(), asmMethod.getDescriptor(), template);
             }
         }
         else {
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.codegen.inline;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.org.objectweb.asm.tree.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bodies of compiled inline functions read from class files, shared by all call sites in one {@link org.jetbrains.kotlin.codegen.state.GenerationState}.
+ *
+ * Cached nodes are templates which are never modified: each call site gets its own copy, since inlining transforms the node in place.
+ * Bodies of inline functions declared in sources are not cached, because generating them registers closures and accessors
+ * in the codegen of the call site.
+ */
+public class InlineMethodNodeCache {
+    private final ConcurrentMap<String, MethodNode> templates = new ConcurrentHashMap<String, MethodNode>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * @param owner identifies the class file, e.g. its path
+     * @return a copy of the cached node, or null if it's not cached yet
+     */
+    @Nullable
+    public MethodNode get(@NotNull String owner, @NotNull String name, @NotNull String descriptor) {
+        MethodNode template = templates.get(key(owner, name, descriptor));
+        if (template == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return copy(template);
+    }
+
+    /**
+     * @param template a node which is not referenced by the caller after this call
+     * @return a copy of the cached node
+     */
+    @NotNull
+    public MethodNode put(@NotNull String owner, @NotNull String name, @NotNull String descriptor, @NotNull MethodNode template) {
+        MethodNode previous = templates.putIfAbsent(key(owner, name, descriptor), template);
+        return copy(previous != null ? previous : template);
+    }
+
+    @NotNull
+    public String getStatistics() {
+        return "Inline function cache: " + hits.get() + " hits, " + misses.get() + " misses, " + templates.size() + " functions";
+    }
+
+    @NotNull
+    private static String key(@NotNull String owner, @NotNull String name, @NotNull String descriptor) {
+        return owner + "." + name + descriptor;
+    }
+
+    // Copies through MethodNode.accept() would share label nodes with the template, and InsnList.get() isn't safe for concurrent use
+    @NotNull
+    static MethodNode copy(@NotNull MethodNode node) {
+        String[] exceptions = node.exceptions.toArray(new String[node.exceptions.size()]);
+        MethodNode copy = new MethodNode(InlineCodegenUtil.API, node.access, node.name, node.desc, node.signature, exceptions);
+
+        Map<LabelNode, LabelNode> labels = new HashMap<LabelNode, LabelNode>();
+        for (AbstractInsnNode insn = node.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn instanceof LabelNode) {
+                labels.put((LabelNode) insn, new LabelNode());
+            }
+        }
+        for (AbstractInsnNode insn = node.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            copy.instructions.add(insn.clone(labels));
+        }
+
+        for (TryCatchBlockNode block : node.tryCatchBlocks) {
+            copy.tryCatchBlocks.add(new TryCatchBlockNode(
+                    labels.get(block.start), labels.get(block.end), labels.get(block.handler), block.type
+            ));
+        }
+        if (node.localVariables != null) {
+            copy.localVariables = new ArrayList<LocalVariableNode>(node.localVariables.size());
+            for (LocalVariableNode variable : node.localVariables) {
+                copy.localVariables.add(new LocalVariableNode(
+                        variable.name, variable.desc, variable.signature, labels.get(variable.start), labels.get(variable.end), variable.index
+                ));
+            }
+        }
+
+        copy.visibleAnnotations = copyList(node.visibleAnnotations);
+        copy.invisibleAnnotations = copyList(node.invisibleAnnotations);
+        copy.annotationDefault = node.annotationDefault;
+        copy.visibleParameterAnnotations = node.visibleParameterAnnotations == null ? null : node.visibleParameterAnnotations.clone();
+        copy.invisibleParameterAnnotations = node.invisibleParameterAnnotations == null ? null : node.invisibleParameterAnnotations.clone();
+        copy.maxLocals = node.maxLocals;
+        copy.maxStack = node.maxStack;
+        return copy;
+    }
+
+    @Nullable
+    private static <T> List<T> copyList(@Nullable List<T> list) {
+        return list == null ? null : new ArrayList<T>(list);
+    }
+}
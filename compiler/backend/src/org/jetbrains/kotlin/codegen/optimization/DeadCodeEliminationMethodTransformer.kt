@@ -17,21 +17,55 @@
 package org.jetbrains.kotlin.codegen.optimization
 
 import org.jetbrains.org.objectweb.asm.tree.MethodNode
+import org.jetbrains.org.objectweb.asm.Opcodes
 import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer
-import org.jetbrains.kotlin.codegen.optimization.common.OptimizationBasicInterpreter
+import org.jetbrains.kotlin.codegen.optimization.transformer.MethodAnalysisCache
 import org.jetbrains.kotlin.codegen.optimization.common.isMeaningful
 
 public class DeadCodeEliminationMethodTransformer : MethodTransformer() {
     override fun transform(internalClassName: String, methodNode: MethodNode) {
-        val frames = MethodTransformer.analyze(internalClassName, methodNode, OptimizationBasicInterpreter())
+        transform(internalClassName, methodNode, MethodAnalysisCache(internalClassName, methodNode))
+    }
+
+    override fun transform(internalClassName: String, methodNode: MethodNode, analyses: MethodAnalysisCache): Boolean {
+        // Each instruction is reachable from the previous one unless there's a jump, return or throw before the end
+        if (!hasUnconditionalTransferBeforeEnd(methodNode)) return false
+
+        val frames = analyses.getBasicFrames()
         val insnList = methodNode.instructions
         val insnsArray = insnList.toArray()
 
         // Do not remove not meaningful nodes (labels/linenumbers) because they can be referred
         // by try/catch blocks or local variables table
         // We remove unneeded ones further after all optimizations by calling CommonPackage.prepareForEmitting(methodNode)
-        insnsArray.zip(frames).filter {
+        val deadInsns = insnsArray.zip(frames).filter {
             it.second == null && it.first.isMeaningful
-        }.forEach { insnList.remove(it.first) }
+        }
+        deadInsns.forEach { insnList.remove(it.first) }
+
+        return !deadInsns.isEmpty()
+    }
+}
+
+private fun hasUnconditionalTransferBeforeEnd(methodNode: MethodNode): Boolean {
+    val insns = methodNode.instructions.toArray()
+
+    var lastMeaningfulIndex = -1
+    for (i in insns.indices) {
+        if (insns[i].isMeaningful) {
+            lastMeaningfulIndex = i
+        }
+    }
+
+    for (i in 0..lastMeaningfulIndex - 1) {
+        if (isUnconditionalTransfer(insns[i].getOpcode())) return true
+    }
+    return false
+}
+
+private fun isUnconditionalTransfer(opcode: Int): Boolean {
+    return when (opcode) {
+        Opcodes.GOTO, Opcodes.JSR, Opcodes.RET, Opcodes.TABLESWITCH, Opcodes.LOOKUPSWITCH, Opcodes.ATHROW -> true
+        else -> opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN
     }
 }
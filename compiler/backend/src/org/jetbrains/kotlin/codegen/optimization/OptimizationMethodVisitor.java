@@ -22,6 +22,8 @@ import org.jetbrains.kotlin.codegen.inline.InlineCodegenUtil;
 import org.jetbrains.kotlin.codegen.optimization.boxing.RedundantBoxingMethodTransformer;
 import org.jetbrains.kotlin.codegen.optimization.boxing.RedundantNullCheckMethodTransformer;
 import org.jetbrains.kotlin.codegen.optimization.common.CommonPackage;
+import org.jetbrains.kotlin.codegen.optimization.refs.RedundantRefMethodTransformer;
+import org.jetbrains.kotlin.codegen.optimization.transformer.MethodAnalysisCache;
 import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer;
 import org.jetbrains.org.objectweb.asm.MethodVisitor;
 import org.jetbrains.org.objectweb.asm.Opcodes;
@@ -39,6 +41,7 @@ public class OptimizationMethodVisitor extends MethodVisitor {
             new RedundantNullCheckMethodTransformer(),
             new RedundantBoxingMethodTransformer(),
             new DeadCodeEliminationMethodTransformer(),
+            new RedundantRefMethodTransformer(),
             new RedundantGotoMethodTransformer(),
             new StoreStackBeforeInlineMethodTransformer()
     };
@@ -71,8 +74,11 @@ public class OptimizationMethodVisitor extends MethodVisitor {
         super.visitEnd();
 
         if (canBeAnalyzed(methodNode)) {
+            MethodAnalysisCache analyses = new MethodAnalysisCache("fake", methodNode);
             for (MethodTransformer transformer : TRANSFORMERS) {
-                transformer.transform("fake", methodNode);
+                if (transformer.transform("fake", methodNode, analyses)) {
+                    analyses.invalidate();
+                }
             }
             CommonPackage.prepareForEmitting(methodNode);
         }
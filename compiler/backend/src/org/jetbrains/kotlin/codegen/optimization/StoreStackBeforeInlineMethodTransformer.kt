@@ -17,7 +17,7 @@
 package org.jetbrains.kotlin.codegen.optimization
 
 import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer
-import org.jetbrains.kotlin.codegen.optimization.common.OptimizationBasicInterpreter
+import org.jetbrains.kotlin.codegen.optimization.transformer.MethodAnalysisCache
 import org.jetbrains.kotlin.codegen.inline.InlineCodegenUtil
 import org.jetbrains.org.objectweb.asm.tree.MethodNode
 import org.jetbrains.org.objectweb.asm.tree.AbstractInsnNode
@@ -31,13 +31,21 @@ import com.intellij.util.containers.Stack
 
 class StoreStackBeforeInlineMethodTransformer : MethodTransformer() {
     override fun transform(internalClassName: String, methodNode: MethodNode) {
-        val frames = MethodTransformer.analyze(internalClassName, methodNode, OptimizationBasicInterpreter())
+        transform(internalClassName, methodNode, MethodAnalysisCache(internalClassName, methodNode))
+    }
+
+    override fun transform(internalClassName: String, methodNode: MethodNode, analyses: MethodAnalysisCache): Boolean {
+        // Markers are only generated for inlined calls, so most methods have none and need no analysis
+        if (!methodNode.instructions.toArray().any { isInlineMarker(it) }) return false
+
+        val frames = analyses.getBasicFrames()
         if (needToProcess(methodNode, frames)) {
             process(methodNode, frames)
         }
         else {
             removeInlineMarkers(methodNode)
         }
+        return true
     }
 }
 
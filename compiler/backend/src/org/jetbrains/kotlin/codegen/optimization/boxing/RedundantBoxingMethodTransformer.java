@@ -20,6 +20,7 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import com.intellij.openapi.util.Pair;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.codegen.optimization.transformer.MethodAnalysisCache;
 import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer;
 import org.jetbrains.org.objectweb.asm.Opcodes;
 import org.jetbrains.org.objectweb.asm.Type;
@@ -34,6 +35,13 @@ public class RedundantBoxingMethodTransformer extends MethodTransformer {
 
     @Override
     public void transform(@NotNull String internalClassName, @NotNull MethodNode node) {
+        transform(internalClassName, node, new MethodAnalysisCache(internalClassName, node));
+    }
+
+    @Override
+    public boolean transform(@NotNull String internalClassName, @NotNull MethodNode node, @NotNull MethodAnalysisCache analyses) {
+        if (!hasBoxingCandidates(node)) return false;
+
         RedundantBoxingInterpreter interpreter = new RedundantBoxingInterpreter(node.instructions);
         Frame<BasicValue>[] frames = analyze(
                 internalClassName, node, interpreter
@@ -51,7 +59,23 @@ public class RedundantBoxingMethodTransformer extends MethodTransformer {
             applyVariablesRemapping(node, buildVariablesRemapping(valuesToOptimize, node));
 
             adaptInstructionsForBoxedValues(node, valuesToOptimize);
+            return true;
+        }
+        return false;
+    }
+
+    // Boxed values are only created by valueOf() calls and by iterators of progressions, see BoxingInterpreter
+    private static boolean hasBoxingCandidates(@NotNull MethodNode node) {
+        for (AbstractInsnNode insn = node.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (!(insn instanceof MethodInsnNode)) continue;
+
+            String name = ((MethodInsnNode) insn).name;
+            if ((insn.getOpcode() == Opcodes.INVOKESTATIC && "valueOf".equals(name)) ||
+                (insn.getOpcode() == Opcodes.INVOKEINTERFACE && "iterator".equals(name))) {
+                return true;
+            }
         }
+        return false;
     }
 
     private static void interpretPopInstructionsForBoxedValues(
@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.codegen.optimization.boxing;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.codegen.optimization.transformer.MethodAnalysisCache;
 import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer;
 import org.jetbrains.org.objectweb.asm.Opcodes;
 import org.jetbrains.org.objectweb.asm.tree.*;
@@ -30,9 +31,25 @@ public class RedundantNullCheckMethodTransformer extends MethodTransformer {
 
     @Override
     public void transform(@NotNull String internalClassName, @NotNull MethodNode methodNode) {
+        transform(internalClassName, methodNode, new MethodAnalysisCache(internalClassName, methodNode));
+    }
+
+    @Override
+    public boolean transform(@NotNull String internalClassName, @NotNull MethodNode methodNode, @NotNull MethodAnalysisCache analyses) {
+        if (!hasNullChecks(methodNode)) return false;
+
+        boolean changed = false;
         while (removeRedundantNullCheckPass(internalClassName, methodNode)) {
-            //do nothing
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static boolean hasNullChecks(@NotNull MethodNode methodNode) {
+        for (AbstractInsnNode insn = methodNode.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn.getOpcode() == Opcodes.IFNULL || insn.getOpcode() == Opcodes.IFNONNULL) return true;
         }
+        return false;
     }
 
     private static boolean removeRedundantNullCheckPass(@NotNull String internalClassName, @NotNull MethodNode methodNode) {
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.codegen.optimization.refs;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.codegen.StackValue;
+import org.jetbrains.kotlin.codegen.optimization.transformer.MethodAnalysisCache;
+import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer;
+import org.jetbrains.org.objectweb.asm.Opcodes;
+import org.jetbrains.org.objectweb.asm.Type;
+import org.jetbrains.org.objectweb.asm.tree.*;
+import org.jetbrains.org.objectweb.asm.tree.analysis.BasicValue;
+import org.jetbrains.org.objectweb.asm.tree.analysis.Frame;
+
+import java.util.*;
+
+import static org.jetbrains.kotlin.resolve.jvm.AsmTypes.OBJECT_TYPE;
+import static org.jetbrains.kotlin.resolve.jvm.AsmTypes.REF_TYPE_PREFIX;
+
+/**
+ * Replaces kotlin.jvm.internal.Ref instances which never leave the method (e.g. for variables captured by inlined lambdas)
+ * with local variables holding their elements.
+ *
+ * A Ref instance is replaced if it's only loaded, stored, duplicated and popped, and its element field is read and written.
+ * It must not be merged with another value at a point where it's used, and its previous instance must be dead
+ * when it's allocated again in a loop.
+ */
+public class RedundantRefMethodTransformer extends MethodTransformer {
+    private static final Map<String, Type> ELEMENT_TYPES = new HashMap<String, Type>();
+
+    static {
+        Type[] types = new Type[] {
+                Type.BOOLEAN_TYPE, Type.CHAR_TYPE, Type.BYTE_TYPE, Type.SHORT_TYPE, Type.INT_TYPE,
+                Type.FLOAT_TYPE, Type.LONG_TYPE, Type.DOUBLE_TYPE, OBJECT_TYPE
+        };
+        for (Type type : types) {
+            ELEMENT_TYPES.put(StackValue.sharedTypeForType(type).getInternalName(), StackValue.refType(type));
+        }
+    }
+
+    @Nullable
+    public static Type getElementType(@NotNull String refInternalName) {
+        return ELEMENT_TYPES.get(refInternalName);
+    }
+
+    @Override
+    public void transform(@NotNull String internalClassName, @NotNull MethodNode methodNode) {
+        transform(internalClassName, methodNode, new MethodAnalysisCache(internalClassName, methodNode));
+    }
+
+    @Override
+    public boolean transform(@NotNull String internalClassName, @NotNull MethodNode methodNode, @NotNull MethodAnalysisCache analyses) {
+        if (!hasRefAllocations(methodNode)) return false;
+
+        RefInterpreter interpreter = new RefInterpreter();
+        Frame<BasicValue>[] frames = analyze(internalClassName, methodNode, interpreter);
+
+        checkLoadsStoresAndStackManipulations(methodNode, frames, interpreter);
+
+        boolean hasRefsToRemove = false;
+        for (RefCandidateValue ref : interpreter.getCandidates()) {
+            if (!ref.isSafeToRemove()) continue;
+
+            ref.setElementIndex(methodNode.maxLocals);
+            methodNode.maxLocals += ref.getElementType().getSize();
+            hasRefsToRemove = true;
+        }
+        if (!hasRefsToRemove) return false;
+
+        // Both use frames of the original instructions
+        adaptLocalVariableTable(methodNode, frames);
+        rewriteInstructions(methodNode, frames, interpreter);
+        return true;
+    }
+
+    private static boolean hasRefAllocations(@NotNull MethodNode methodNode) {
+        for (AbstractInsnNode insn = methodNode.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn.getOpcode() == Opcodes.NEW && ((TypeInsnNode) insn).desc.startsWith(REF_TYPE_PREFIX)) return true;
+        }
+        return false;
+    }
+
+    private static void checkLoadsStoresAndStackManipulations(
+            @NotNull MethodNode methodNode,
+            @NotNull Frame<BasicValue>[] frames,
+            @NotNull RefInterpreter interpreter
+    ) {
+        InsnList insnList = methodNode.instructions;
+        for (int i = 0; i < insnList.size(); i++) {
+            Frame<BasicValue> frame = frames[i];
+            if (frame == null) continue;
+
+            AbstractInsnNode insn = insnList.get(i);
+            switch (insn.getOpcode()) {
+                case Opcodes.NEW:
+                    RefCandidateValue ref = interpreter.getCandidate(insn);
+                    if (ref != null && isInFrame(frame, ref)) {
+                        // The instance from the previous iteration of a loop may still be used
+                        ref.markEscaped();
+                    }
+                    break;
+                case Opcodes.ALOAD:
+                    markEscapedIfMerged(frame.getLocal(((VarInsnNode) insn).var));
+                    break;
+                case Opcodes.ASTORE:
+                case Opcodes.POP:
+                case Opcodes.DUP:
+                    markEscapedIfMerged(top(frame, 0));
+                    break;
+                case Opcodes.DUP_X1:
+                    RefInterpreter.markEscaped(top(frame, 0));
+                    markEscapedIfMerged(top(frame, 1));
+                    break;
+                case Opcodes.DUP2_X1:
+                    if (top(frame, 0).getSize() == 2) {
+                        markEscapedIfMerged(top(frame, 1));
+                    }
+                    else {
+                        markEscapedOnTop(frame, 3);
+                    }
+                    break;
+                case Opcodes.POP2:
+                case Opcodes.DUP2:
+                case Opcodes.DUP_X2:
+                case Opcodes.DUP2_X2:
+                case Opcodes.SWAP:
+                    markEscapedOnTop(frame, 4);
+                    break;
+            }
+        }
+    }
+
+    private static void adaptLocalVariableTable(@NotNull MethodNode methodNode, @NotNull Frame<BasicValue>[] frames) {
+        InsnList insnList = methodNode.instructions;
+        for (Iterator<LocalVariableNode> iterator = methodNode.localVariables.iterator(); iterator.hasNext(); ) {
+            LocalVariableNode localVariable = iterator.next();
+            Type type = Type.getType(localVariable.desc);
+            if (type.getSort() != Type.OBJECT || getElementType(type.getInternalName()) == null) continue;
+
+            BasicValue value = null;
+            int end = insnList.indexOf(localVariable.end);
+            for (int i = insnList.indexOf(localVariable.start); i < end; i++) {
+                Frame<BasicValue> frame = frames[i];
+                if (frame != null && localVariable.index < frame.getLocals()) {
+                    value = frame.getLocal(localVariable.index);
+                    break;
+                }
+            }
+
+            if (value instanceof RefCandidateValue && ((RefCandidateValue) value).isSafeToRemove()) {
+                RefCandidateValue ref = (RefCandidateValue) value;
+                localVariable.index = ref.getElementIndex();
+                localVariable.desc = ref.getElementType().getDescriptor();
+            }
+            else if (hasRefsToRemove(value)) {
+                // The variable may refer to a removed instance, which is no longer stored anywhere
+                iterator.remove();
+            }
+        }
+    }
+
+    private static void rewriteInstructions(
+            @NotNull MethodNode methodNode,
+            @NotNull Frame<BasicValue>[] frames,
+            @NotNull RefInterpreter interpreter
+    ) {
+        InsnList insnList = methodNode.instructions;
+        Map<AbstractInsnNode, InsnList> replacements = new LinkedHashMap<AbstractInsnNode, InsnList>();
+
+        for (int i = 0; i < insnList.size(); i++) {
+            Frame<BasicValue> frame = frames[i];
+            if (frame == null) continue;
+
+            AbstractInsnNode insn = insnList.get(i);
+            InsnList replacement = new InsnList();
+            RefCandidateValue ref;
+            switch (insn.getOpcode()) {
+                case Opcodes.NEW:
+                    ref = interpreter.getCandidate(insn);
+                    break;
+                case Opcodes.ALOAD:
+                    ref = toRemove(frame.getLocal(((VarInsnNode) insn).var));
+                    break;
+                case Opcodes.ASTORE:
+                case Opcodes.POP:
+                case Opcodes.DUP:
+                    ref = toRemove(top(frame, 0));
+                    break;
+                case Opcodes.DUP_X1:
+                    ref = toRemove(top(frame, 1));
+                    replacement.add(new InsnNode(Opcodes.DUP));
+                    break;
+                case Opcodes.DUP2_X1:
+                    ref = top(frame, 0).getSize() == 2 ? toRemove(top(frame, 1)) : null;
+                    replacement.add(new InsnNode(Opcodes.DUP2));
+                    break;
+                case Opcodes.INVOKESPECIAL:
+                    ref = toRemove(top(frame, 0));
+                    if (ref != null) {
+                        replacement.add(new InsnNode(getDefaultValueOpcode(ref.getElementType())));
+                        replacement.add(new VarInsnNode(ref.getElementType().getOpcode(Opcodes.ISTORE), ref.getElementIndex()));
+                    }
+                    break;
+                case Opcodes.GETFIELD:
+                    ref = toRemove(top(frame, 0));
+                    if (ref != null) {
+                        replacement.add(new VarInsnNode(ref.getElementType().getOpcode(Opcodes.ILOAD), ref.getElementIndex()));
+                    }
+                    break;
+                case Opcodes.PUTFIELD:
+                    ref = toRemove(top(frame, 1));
+                    if (ref != null) {
+                        replacement.add(new VarInsnNode(ref.getElementType().getOpcode(Opcodes.ISTORE), ref.getElementIndex()));
+                    }
+                    break;
+                default:
+                    ref = null;
+            }
+
+            if (ref != null && ref.isSafeToRemove()) {
+                replacements.put(insn, replacement);
+            }
+        }
+
+        for (Map.Entry<AbstractInsnNode, InsnList> entry : replacements.entrySet()) {
+            insnList.insertBefore(entry.getKey(), entry.getValue());
+            insnList.remove(entry.getKey());
+        }
+    }
+
+    @Nullable
+    private static RefCandidateValue toRemove(@Nullable BasicValue value) {
+        return value instanceof RefCandidateValue && ((RefCandidateValue) value).isSafeToRemove() ? (RefCandidateValue) value : null;
+    }
+
+    private static boolean hasRefsToRemove(@Nullable BasicValue value) {
+        for (RefCandidateValue ref : RefInterpreter.getRefs(value)) {
+            if (ref.isSafeToRemove()) return true;
+        }
+        return false;
+    }
+
+    @NotNull
+    private static BasicValue top(@NotNull Frame<BasicValue> frame, int depth) {
+        return frame.getStack(frame.getStackSize() - 1 - depth);
+    }
+
+    private static boolean isInFrame(@NotNull Frame<BasicValue> frame, @NotNull RefCandidateValue ref) {
+        for (int i = 0; i < frame.getLocals(); i++) {
+            if (RefInterpreter.getRefs(frame.getLocal(i)).contains(ref)) return true;
+        }
+        for (int i = 0; i < frame.getStackSize(); i++) {
+            if (RefInterpreter.getRefs(frame.getStack(i)).contains(ref)) return true;
+        }
+        return false;
+    }
+
+    private static void markEscapedIfMerged(@NotNull BasicValue value) {
+        if (!(value instanceof RefCandidateValue)) {
+            RefInterpreter.markEscaped(value);
+        }
+    }
+
+    private static void markEscapedOnTop(@NotNull Frame<BasicValue> frame, int count) {
+        for (int i = 0; i < Math.min(count, frame.getStackSize()); i++) {
+            RefInterpreter.markEscaped(top(frame, i));
+        }
+    }
+
+    private static int getDefaultValueOpcode(@NotNull Type type) {
+        switch (type.getSort()) {
+            case Type.LONG:
+                return Opcodes.LCONST_0;
+            case Type.FLOAT:
+                return Opcodes.FCONST_0;
+            case Type.DOUBLE:
+                return Opcodes.DCONST_0;
+            case Type.OBJECT:
+            case Type.ARRAY:
+                return Opcodes.ACONST_NULL;
+            default:
+                return Opcodes.ICONST_0;
+        }
+    }
+}
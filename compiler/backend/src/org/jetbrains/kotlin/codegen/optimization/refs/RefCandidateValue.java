@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.codegen.optimization.refs;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.org.objectweb.asm.Type;
+import org.jetbrains.org.objectweb.asm.tree.AbstractInsnNode;
+import org.jetbrains.org.objectweb.asm.tree.analysis.BasicValue;
+
+/**
+ * A kotlin.jvm.internal.Ref instance allocated by a particular NEW instruction of the method.
+ */
+public class RefCandidateValue extends BasicValue {
+    private final AbstractInsnNode newInsn;
+    private final Type elementType;
+    private boolean initialized = false;
+    private boolean escaped = false;
+    private int elementIndex = -1;
+
+    public RefCandidateValue(@NotNull Type refType, @NotNull Type elementType, @NotNull AbstractInsnNode newInsn) {
+        super(refType);
+        this.elementType = elementType;
+        this.newInsn = newInsn;
+    }
+
+    @NotNull
+    public AbstractInsnNode getNewInsn() {
+        return newInsn;
+    }
+
+    @NotNull
+    public Type getElementType() {
+        return elementType;
+    }
+
+    public void markInitialized() {
+        initialized = true;
+    }
+
+    public void markEscaped() {
+        escaped = true;
+    }
+
+    public boolean isSafeToRemove() {
+        return initialized && !escaped;
+    }
+
+    /**
+     * @return index of the local variable which replaces the element field, -1 if it's not assigned yet
+     */
+    public int getElementIndex() {
+        return elementIndex;
+    }
+
+    public void setElementIndex(int elementIndex) {
+        this.elementIndex = elementIndex;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.codegen.optimization.refs;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.codegen.optimization.common.OptimizationBasicInterpreter;
+import org.jetbrains.org.objectweb.asm.Opcodes;
+import org.jetbrains.org.objectweb.asm.Type;
+import org.jetbrains.org.objectweb.asm.tree.AbstractInsnNode;
+import org.jetbrains.org.objectweb.asm.tree.FieldInsnNode;
+import org.jetbrains.org.objectweb.asm.tree.MethodInsnNode;
+import org.jetbrains.org.objectweb.asm.tree.TypeInsnNode;
+import org.jetbrains.org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.jetbrains.org.objectweb.asm.tree.analysis.BasicValue;
+
+import java.util.*;
+
+import static org.jetbrains.kotlin.resolve.jvm.AsmTypes.OBJECT_TYPE;
+
+/**
+ * Tracks Ref instances allocated in the method and marks the ones which are used in any way
+ * except reading and writing their element field.
+ *
+ * Loads, stores and stack manipulations don't reach the interpreter with all of their operands,
+ * so they are checked by {@link RedundantRefMethodTransformer}.
+ */
+class RefInterpreter extends OptimizationBasicInterpreter {
+    private final Map<AbstractInsnNode, RefCandidateValue> candidates = new LinkedHashMap<AbstractInsnNode, RefCandidateValue>();
+
+    @NotNull
+    public Collection<RefCandidateValue> getCandidates() {
+        return candidates.values();
+    }
+
+    @Nullable
+    public RefCandidateValue getCandidate(@NotNull AbstractInsnNode newInsn) {
+        return candidates.get(newInsn);
+    }
+
+    @Override
+    public BasicValue newOperation(@NotNull AbstractInsnNode insn) throws AnalyzerException {
+        if (insn.getOpcode() == Opcodes.NEW) {
+            String refClass = ((TypeInsnNode) insn).desc;
+            Type elementType = RedundantRefMethodTransformer.getElementType(refClass);
+            if (elementType != null) {
+                RefCandidateValue value = candidates.get(insn);
+                if (value == null) {
+                    value = new RefCandidateValue(Type.getObjectType(refClass), elementType, insn);
+                    candidates.put(insn, value);
+                }
+                return value;
+            }
+        }
+
+        return super.newOperation(insn);
+    }
+
+    @Override
+    public BasicValue unaryOperation(@NotNull AbstractInsnNode insn, @NotNull BasicValue value) throws AnalyzerException {
+        if (!(insn.getOpcode() == Opcodes.GETFIELD && isElementAccess(insn, value))) {
+            markEscaped(value);
+        }
+        return super.unaryOperation(insn, value);
+    }
+
+    @Override
+    public BasicValue binaryOperation(
+            @NotNull AbstractInsnNode insn,
+            @NotNull BasicValue value1,
+            @NotNull BasicValue value2
+    ) throws AnalyzerException {
+        if (!(insn.getOpcode() == Opcodes.PUTFIELD && isElementAccess(insn, value1))) {
+            markEscaped(value1);
+        }
+        markEscaped(value2);
+        return super.binaryOperation(insn, value1, value2);
+    }
+
+    @Override
+    public BasicValue ternaryOperation(
+            @NotNull AbstractInsnNode insn,
+            @NotNull BasicValue value1,
+            @NotNull BasicValue value2,
+            @NotNull BasicValue value3
+    ) throws AnalyzerException {
+        markEscaped(value1);
+        markEscaped(value2);
+        markEscaped(value3);
+        return super.ternaryOperation(insn, value1, value2, value3);
+    }
+
+    @Override
+    public BasicValue naryOperation(
+            @NotNull AbstractInsnNode insn,
+            @NotNull List<? extends BasicValue> values
+    ) throws AnalyzerException {
+        if (isConstructorCall(insn, values)) {
+            ((RefCandidateValue) values.get(0)).markInitialized();
+        }
+        else {
+            for (BasicValue value : values) {
+                markEscaped(value);
+            }
+        }
+        return super.naryOperation(insn, values);
+    }
+
+    @Override
+    public void returnOperation(
+            @NotNull AbstractInsnNode insn,
+            @NotNull BasicValue value,
+            @NotNull BasicValue expected
+    ) throws AnalyzerException {
+        markEscaped(value);
+        super.returnOperation(insn, value, expected);
+    }
+
+    @NotNull
+    @Override
+    public BasicValue merge(@NotNull BasicValue v, @NotNull BasicValue w) {
+        if (v == w) return v;
+
+        if (isRefValue(v) || isRefValue(w)) {
+            Set<RefCandidateValue> refs = new HashSet<RefCandidateValue>(getRefs(v));
+            refs.addAll(getRefs(w));
+            if (v instanceof MergedRefsValue && ((MergedRefsValue) v).refs.equals(refs)) return v;
+            return new MergedRefsValue(refs);
+        }
+
+        return super.merge(v, w);
+    }
+
+    private static boolean isRefValue(@Nullable BasicValue value) {
+        return value instanceof RefCandidateValue || value instanceof MergedRefsValue;
+    }
+
+    public static void markEscaped(@Nullable BasicValue value) {
+        for (RefCandidateValue ref : getRefs(value)) {
+            ref.markEscaped();
+        }
+    }
+
+    /**
+     * @return Ref instances the value may be, depending on the path to the instruction
+     */
+    @NotNull
+    public static Collection<RefCandidateValue> getRefs(@Nullable BasicValue value) {
+        if (value instanceof RefCandidateValue) return Collections.singleton((RefCandidateValue) value);
+        if (value instanceof MergedRefsValue) return ((MergedRefsValue) value).refs;
+        return Collections.emptySet();
+    }
+
+    private static boolean isElementAccess(@NotNull AbstractInsnNode insn, @NotNull BasicValue receiver) {
+        FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+        return receiver instanceof RefCandidateValue &&
+               fieldInsn.owner.equals(receiver.getType().getInternalName()) &&
+               fieldInsn.name.equals("element");
+    }
+
+    private static boolean isConstructorCall(@NotNull AbstractInsnNode insn, @NotNull List<? extends BasicValue> values) {
+        if (insn.getOpcode() != Opcodes.INVOKESPECIAL || values.size() != 1) return false;
+
+        MethodInsnNode methodInsn = (MethodInsnNode) insn;
+        BasicValue receiver = values.get(0);
+        return receiver instanceof RefCandidateValue &&
+               methodInsn.owner.equals(receiver.getType().getInternalName()) &&
+               methodInsn.name.equals("<init>") &&
+               methodInsn.desc.equals("()V");
+    }
+
+    /**
+     * A value which is one of several Ref instances, or some other value, depending on the path to an instruction.
+     * Ref instances which are ever used through such value are not removed.
+     */
+    private static class MergedRefsValue extends BasicValue {
+        private final Set<RefCandidateValue> refs;
+
+        public MergedRefsValue(@NotNull Set<RefCandidateValue> refs) {
+            super(OBJECT_TYPE);
+            this.refs = refs;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof MergedRefsValue && refs.equals(((MergedRefsValue) o).refs);
+        }
+
+        @Override
+        public int hashCode() {
+            return refs.hashCode();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.codegen.optimization.transformer;
+
+import kotlin.jvm.KotlinSignature;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.codegen.optimization.common.OptimizationBasicInterpreter;
+import org.jetbrains.org.objectweb.asm.tree.MethodNode;
+import org.jetbrains.org.objectweb.asm.tree.analysis.BasicValue;
+import org.jetbrains.org.objectweb.asm.tree.analysis.Frame;
+
+/**
+ * Results of analyses of a method which are shared by the transformers run on it.
+ *
+ * Only analyses with stateless interpreters can be shared: transformers with their own interpreters (e.g. for boxing) still run them.
+ * Results are valid until a transformer reports that it has changed the method.
+ */
+public class MethodAnalysisCache {
+    private final String internalClassName;
+    private final MethodNode node;
+
+    private Frame<BasicValue>[] basicFrames;
+
+    public MethodAnalysisCache(@NotNull String internalClassName, @NotNull MethodNode node) {
+        this.internalClassName = internalClassName;
+        this.node = node;
+    }
+
+    /**
+     * @return frames computed with {@link OptimizationBasicInterpreter}, null for unreachable instructions
+     */
+    @KotlinSignature("fun getBasicFrames(): Array<Frame<BasicValue>?>")
+    @NotNull
+    public Frame<BasicValue>[] getBasicFrames() {
+        if (basicFrames == null) {
+            basicFrames = MethodTransformer.analyze(internalClassName, node, new OptimizationBasicInterpreter());
+        }
+        return basicFrames;
+    }
+
+    public void invalidate() {
+        basicFrames = null;
+    }
+}
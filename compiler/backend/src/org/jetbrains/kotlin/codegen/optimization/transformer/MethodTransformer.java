@@ -49,4 +49,14 @@ public abstract class MethodTransformer {
     }
 
     abstract public void transform(@NotNull String internalClassName, @NotNull MethodNode methodNode);
+
+    /**
+     * Same as {@link #transform(String, MethodNode)}, but may use and keep analyses shared with the other transformers of the method.
+     *
+     * @return false if the method wasn't changed, so the shared analyses are still valid
+     */
+    public boolean transform(@NotNull String internalClassName, @NotNull MethodNode methodNode, @NotNull MethodAnalysisCache analyses) {
+        transform(internalClassName, methodNode);
+        return true;
+    }
 }
@@ -21,6 +21,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.codegen.*;
 import org.jetbrains.kotlin.codegen.binding.CodegenBinding;
+import org.jetbrains.kotlin.codegen.inline.InlineMethodNodeCache;
 import org.jetbrains.kotlin.codegen.intrinsics.IntrinsicMethods;
 import org.jetbrains.kotlin.codegen.optimization.OptimizationClassBuilderFactory;
 import org.jetbrains.kotlin.codegen.when.MappingsClassesForWhenByEnum;
@@ -34,6 +35,7 @@ import org.jetbrains.kotlin.psi.JetScript;
 import org.jetbrains.kotlin.resolve.BindingContext;
 import org.jetbrains.kotlin.resolve.BindingTrace;
 import org.jetbrains.kotlin.resolve.DelegatingBindingTrace;
+import org.jetbrains.kotlin.resolve.SynchronizedDelegatingBindingTrace;
 import org.jetbrains.kotlin.types.reflect.ReflectionTypes;
 
 import java.io.File;
@@ -88,6 +90,9 @@ public class GenerationState {
     @NotNull
     private final MappingsClassesForWhenByEnum mappingsClassesForWhenByEnum = new MappingsClassesForWhenByEnum(this);
 
+    @NotNull
+    private final InlineMethodNodeCache inlineMethodNodeCache = new InlineMethodNodeCache();
+
     @NotNull
     private final BindingTrace bindingTrace;
 
@@ -102,6 +107,11 @@ public class GenerationState {
 
     private final boolean disableInline;
 
+    private final boolean parallelCodegen;
+
+    @NotNull
+    private final GroupedDiagnosticSink diagnostics;
+
     @Nullable
     private List<ScriptDescriptor> earlierScriptsForReplInterpreter;
 
@@ -127,7 +137,7 @@ public class GenerationState {
             @NotNull List<JetFile> files
     ) {
         this(project, builderFactory, Progress.DEAF, module, bindingContext, files, true, true, GenerateClassFilter.GENERATE_ALL,
-             false, false, null, null, DiagnosticSink.DO_NOTHING, null);
+             false, false, false, null, null, DiagnosticSink.DO_NOTHING, null);
     }
 
     public GenerationState(
@@ -142,6 +152,7 @@ public class GenerationState {
             GenerateClassFilter generateClassFilter,
             boolean disableInline,
             boolean disableOptimization,
+            boolean parallelCodegen,
             @Nullable Collection<FqName> packagesWithRemovedFiles,
             @Nullable String moduleId,
             @NotNull DiagnosticSink diagnostics,
@@ -155,8 +166,11 @@ public class GenerationState {
         this.packagesWithRemovedFiles = packagesWithRemovedFiles == null ? Collections.<FqName>emptySet() : packagesWithRemovedFiles;
         this.classBuilderMode = builderFactory.getClassBuilderMode();
         this.disableInline = disableInline;
+        this.parallelCodegen = parallelCodegen;
 
-        this.bindingTrace = new DelegatingBindingTrace(bindingContext, "trace in GenerationState");
+        this.bindingTrace = parallelCodegen
+                            ? new SynchronizedDelegatingBindingTrace(bindingContext, "trace in GenerationState")
+                            : new DelegatingBindingTrace(bindingContext, "trace in GenerationState");
         this.bindingContext = bindingTrace.getBindingContext();
 
         this.outDirectory = outDirectory;
@@ -168,8 +182,9 @@ public class GenerationState {
             builderFactory = new OptimizationClassBuilderFactory(builderFactory);
         }
 
+        this.diagnostics = new GroupedDiagnosticSink(diagnostics);
         this.classFileFactory = new ClassFileFactory(this, new BuilderFactoryForDuplicateSignatureDiagnostics(
-                builderFactory, this.bindingContext, diagnostics));
+                builderFactory, this.bindingContext, this.diagnostics));
 
         this.disableCallAssertions = disableCallAssertions;
         this.disableParamAssertions = disableParamAssertions;
@@ -234,6 +249,11 @@ public class GenerationState {
         return mappingsClassesForWhenByEnum;
     }
 
+    @NotNull
+    public InlineMethodNodeCache getInlineMethodNodeCache() {
+        return inlineMethodNodeCache;
+    }
+
     public boolean isCallAssertionsEnabled() {
         return !disableCallAssertions;
     }
@@ -256,6 +276,15 @@ public class GenerationState {
         return !disableInline;
     }
 
+    @NotNull
+    public GroupedDiagnosticSink getDiagnostics() {
+        return diagnostics;
+    }
+
+    public boolean isParallelCodegenEnabled() {
+        return parallelCodegen;
+    }
+
     public void beforeCompile() {
         markUsed();
 
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.state;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.diagnostics.Diagnostic;
+import org.jetbrains.kotlin.diagnostics.DiagnosticSink;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Backend diagnostics, reported to the delegate sink unless a group is set for the current thread.
+ * Parallel codegen sets a separate group for each package task and reports the groups in package order once all tasks are finished,
+ * so that the delegate is never called concurrently and diagnostics don't depend on the order in which tasks run
+ */
+public class GroupedDiagnosticSink implements DiagnosticSink {
+    private final DiagnosticSink delegate;
+    private final ThreadLocal<List<Diagnostic>> currentGroup = new ThreadLocal<List<Diagnostic>>();
+
+    public GroupedDiagnosticSink(@NotNull DiagnosticSink delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void report(@NotNull Diagnostic diagnostic) {
+        List<Diagnostic> group = currentGroup.get();
+        if (group != null) {
+            group.add(diagnostic);
+        }
+        else {
+            delegate.report(diagnostic);
+        }
+    }
+
+    public void enterGroup(@NotNull List<Diagnostic> group) {
+        assert currentGroup.get() == null : "Diagnostic group is already set for the current thread";
+        currentGroup.set(group);
+    }
+
+    public void exitGroup() {
+        currentGroup.remove();
+    }
+
+    public void reportGroup(@NotNull Collection<Diagnostic> group) {
+        for (Diagnostic diagnostic : group) {
+            delegate.report(diagnostic);
+        }
+    }
+}
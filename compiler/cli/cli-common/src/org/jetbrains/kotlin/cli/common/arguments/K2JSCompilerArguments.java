@@ -55,6 +55,16 @@ public class K2JSCompilerArguments extends CommonCompilerArguments {
     @ValueDescription("<path>")
     public String outputPostfix;
 
+    @Argument(value = "Xbuild-info-dir", description = "Directory where inputs of the last compilation are kept to skip compiling the module again if none of them has changed")
+    @ValueDescription("<path>")
+    public String buildInfoDir;
+
+    @Argument(value = "Xstreaming-output", description = "Write generated JavaScript and source map to files while they are generated")
+    public boolean streamingOutput;
+
+    @Argument(value = "Xtree-shaking", description = "Put the runtime and libraries into the output file and remove declarations unreachable from main (requires -main " + CALL + ")")
+    public boolean treeShaking;
+
     @Override
     @NotNull
     public String executableScriptFileName() {
@@ -66,6 +66,19 @@ public class K2JVMCompilerArguments extends CommonCompilerArguments {
     @Argument(value = "Xno-optimize", description = "Disable optimizations")
     public boolean noOptimize;
 
+    @Argument(value = "Xparallel-codegen", description = "Generate bytecode for different packages in parallel")
+    public boolean parallelCodegen;
+
+    @Argument(value = "Xparallel-parsing", description = "Parse source files in parallel")
+    public boolean parallelParsing;
+
+    @Argument(value = "Xindex-cache", description = "Directory where class path indices and class headers of jars are kept between compilations")
+    @ValueDescription("<path>")
+    public String indexCache;
+
+    @Argument(value = "Xdaemon", description = "Compile in a background compiler process which is kept alive between invocations")
+    public boolean daemon;
+
     @Override
     @NotNull
     public String executableScriptFileName() {
@@ -104,7 +104,7 @@ public abstract class CLICompiler<A extends CommonCompilerArguments> {
     protected abstract A createArguments();
 
     @NotNull
-    private ExitCode exec(
+    public ExitCode exec(
             @NotNull PrintStream errStream,
             @NotNull Services services,
             @NotNull MessageRenderer messageRenderer,
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.js;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Remembers the inputs and the outputs of the last successful compilation of a JS module, so that compiling it again
+ * with the same inputs can be skipped.
+ *
+ * The inputs are the options affecting the output and the contents of source files and libraries.
+ * The outputs are recorded with their lengths and content digests, so that changed or deleted output files are generated again.
+ * Timestamps are not used: an edit within their granularity would go unnoticed.
+ * There's one file per output file in the build info directory.
+ * This is an up-to-date check for the whole module: if any input has changed, the module is compiled from scratch.
+ */
+public class JsBuildInfo {
+    private static final int MAGIC = 0x4b4a5342;
+    private static final int VERSION = 2;
+
+    private final File file;
+    private final String inputsDigest;
+
+    private JsBuildInfo(@NotNull File file, @NotNull String inputsDigest) {
+        this.file = file;
+        this.inputsDigest = inputsDigest;
+    }
+
+    @NotNull
+    public static JsBuildInfo create(
+            @NotNull File buildInfoDirectory,
+            @NotNull File outputFile,
+            @NotNull List<String> options,
+            @NotNull List<File> inputFiles,
+            @NotNull List<File> libraries
+    ) throws IOException {
+        String path = outputFile.getAbsolutePath();
+        File file = new File(buildInfoDirectory, outputFile.getName() + "-" + Integer.toHexString(path.hashCode()) + ".buildinfo");
+        return new JsBuildInfo(file, computeDigest(options, inputFiles, libraries));
+    }
+
+    /**
+     * @return output files of the last compilation if its inputs were the same and the outputs were not changed since, null otherwise
+     */
+    @Nullable
+    public List<File> getUpToDateOutputs() {
+        Map<String, OutputState> outputs = loadOutputs();
+        if (outputs == null || outputs.isEmpty()) return null;
+
+        try {
+            List<File> result = new ArrayList<File>(outputs.size());
+            for (Map.Entry<String, OutputState> entry : outputs.entrySet()) {
+                File output = new File(entry.getKey());
+                OutputState state = entry.getValue();
+                if (!output.isFile() || output.length() != state.length || !state.digest.equals(computeFileDigest(output))) {
+                    return null;
+                }
+                result.add(output);
+            }
+            return result;
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    public void save(@NotNull Collection<File> outputFiles) {
+        // Several compilations may save the same file at once, the last rename wins
+        File tmpFile = new File(file.getPath() + "." + System.nanoTime() + ".tmp");
+        try {
+            FileUtil.createParentDirs(tmpFile);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeUTF(inputsDigest);
+                output.writeInt(outputFiles.size());
+                for (File outputFile : outputFiles) {
+                    output.writeUTF(outputFile.getAbsolutePath());
+                    output.writeLong(outputFile.length());
+                    output.writeUTF(computeFileDigest(outputFile));
+                }
+            }
+            finally {
+                output.close();
+            }
+            FileUtil.rename(tmpFile, file);
+        }
+        catch (IOException e) {
+            // The module will be compiled again next time
+            FileUtil.delete(tmpFile);
+        }
+    }
+
+    @Nullable
+    private Map<String, OutputState> loadOutputs() {
+        if (!file.isFile()) return null;
+
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) return null;
+                if (!inputsDigest.equals(input.readUTF())) return null;
+
+                Map<String, OutputState> outputs = new LinkedHashMap<String, OutputState>();
+                int count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    String path = input.readUTF();
+                    long length = input.readLong();
+                    outputs.put(path, new OutputState(length, input.readUTF()));
+                }
+                return outputs;
+            }
+            finally {
+                input.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    @NotNull
+    private static String computeDigest(
+            @NotNull List<String> options,
+            @NotNull List<File> inputFiles,
+            @NotNull List<File> libraries
+    ) throws IOException {
+        MessageDigest digest = createDigest();
+        DigestingOutputStream output = new DigestingOutputStream(digest);
+        DataOutputStream data = new DataOutputStream(output);
+
+        data.writeInt(options.size());
+        for (String option : options) {
+            data.writeUTF(option);
+        }
+
+        data.writeInt(inputFiles.size());
+        for (File inputFile : inputFiles) {
+            data.writeUTF(inputFile.getAbsolutePath());
+            byte[] bytes = FileUtil.loadFileBytes(inputFile);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+
+        data.writeInt(libraries.size());
+        for (File library : libraries) {
+            writeLibrary(data, library);
+        }
+
+        data.flush();
+        return toHexString(digest.digest());
+    }
+
+    private static void writeLibrary(@NotNull DataOutputStream data, @NotNull File library) throws IOException {
+        data.writeUTF(library.getAbsolutePath());
+        if (library.isDirectory()) {
+            File[] children = library.listFiles();
+            if (children == null) children = new File[0];
+            // listFiles() order is not specified
+            Arrays.sort(children);
+            data.writeInt(children.length);
+            for (File child : children) {
+                writeLibrary(data, child);
+            }
+        }
+        else {
+            data.writeInt(-1);
+            data.writeLong(library.length());
+            copyContents(library, data);
+        }
+    }
+
+    @NotNull
+    private static String computeFileDigest(@NotNull File file) throws IOException {
+        MessageDigest digest = createDigest();
+        copyContents(file, new DigestingOutputStream(digest));
+        return toHexString(digest.digest());
+    }
+
+    private static void copyContents(@NotNull File file, @NotNull OutputStream output) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            FileUtil.copy(input, output);
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    @NotNull
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NotNull
+    private static String toHexString(@NotNull byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static class OutputState {
+        final long length;
+        final String digest;
+
+        OutputState(long length, @NotNull String digest) {
+            this.length = length;
+            this.digest = digest;
+        }
+    }
+
+    private static class DigestingOutputStream extends OutputStream {
+        private final MessageDigest digest;
+
+        DigestingOutputStream(@NotNull MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public void write(int b) {
+            digest.update((byte) b);
+        }
+
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) {
+            digest.update(b, off, len);
+        }
+    }
+}
@@ -21,6 +21,7 @@ import com.google.common.base.Predicates;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import com.intellij.util.Consumer;
@@ -33,16 +34,19 @@ import kotlin.Unit;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.analyzer.AnalysisResult;
+import org.jetbrains.kotlin.backend.common.output.OutputFile;
 import org.jetbrains.kotlin.backend.common.output.OutputFileCollection;
 import org.jetbrains.kotlin.cli.common.CLICompiler;
 import org.jetbrains.kotlin.cli.common.CLIConfigurationKeys;
 import org.jetbrains.kotlin.cli.common.ExitCode;
+import org.jetbrains.kotlin.cli.common.KotlinVersion;
 import org.jetbrains.kotlin.cli.common.arguments.K2JSCompilerArguments;
 import org.jetbrains.kotlin.cli.common.arguments.K2JsArgumentConstants;
 import org.jetbrains.kotlin.cli.common.messages.AnalyzerWithCompilerReport;
 import org.jetbrains.kotlin.cli.common.messages.CompilerMessageLocation;
 import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity;
 import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
+import org.jetbrains.kotlin.cli.common.messages.OutputMessageUtil;
 import org.jetbrains.kotlin.cli.common.output.outputUtils.OutputUtilsPackage;
 import org.jetbrains.kotlin.cli.jvm.compiler.CompileEnvironmentUtil;
 import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles;
@@ -57,15 +61,21 @@ import org.jetbrains.kotlin.js.facade.MainCallParameters;
 import org.jetbrains.kotlin.js.facade.Status;
 import org.jetbrains.kotlin.psi.JetFile;
 import org.jetbrains.kotlin.resolve.diagnostics.Diagnostics;
+import org.jetbrains.kotlin.utils.LibraryUtils;
 import org.jetbrains.kotlin.utils.PathUtil;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.jetbrains.kotlin.cli.common.ExitCode.COMPILATION_ERROR;
 import static org.jetbrains.kotlin.cli.common.ExitCode.OK;
 import static org.jetbrains.kotlin.cli.common.messages.CompilerMessageLocation.NO_LOCATION;
+import static org.jetbrains.kotlin.js.facade.K2JSTranslator.translateBundleToFiles;
 import static org.jetbrains.kotlin.js.facade.K2JSTranslator.translateWithMainCallParameters;
+import static org.jetbrains.kotlin.js.facade.K2JSTranslator.translateWithMainCallParametersToFiles;
 
 public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
 
@@ -114,6 +124,17 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
 
         File outputFile = new File(arguments.outputFile);
 
+        JsBuildInfo buildInfo = null;
+        if (arguments.buildInfoDir != null) {
+            buildInfo = createBuildInfo(arguments, sourcesFiles, outputFile);
+            List<File> upToDateOutputs = buildInfo != null ? buildInfo.getUpToDateOutputs() : null;
+            if (upToDateOutputs != null) {
+                messageCollector.report(CompilerMessageSeverity.LOGGING, "Output is up-to-date, skipping compilation", NO_LOCATION);
+                reportOutputs(messageCollector, sourcesFiles, upToDateOutputs);
+                return OK;
+            }
+        }
+
         Config config = getConfig(arguments, project);
         if (config.checkLibFilesAndReportErrors(new Function1<String, Unit>() {
             @Override
@@ -152,6 +173,52 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
         }
 
         MainCallParameters mainCallParameters = createMainCallParameters(arguments.main);
+        if (arguments.treeShaking && !mainCallParameters.shouldBeGenerated()) {
+            messageCollector.report(CompilerMessageSeverity.ERROR, "-Xtree-shaking can only be used with -main " + K2JsArgumentConstants.CALL,
+                                    CompilerMessageLocation.NO_LOCATION);
+            return ExitCode.COMPILATION_ERROR;
+        }
+
+        // The bundle is always written while it is generated, since it's as large as all the libraries
+        if (arguments.streamingOutput || arguments.treeShaking) {
+            if (outputFile.isDirectory()) {
+                reportOutputIsDirectory(messageCollector, outputFile);
+                return ExitCode.COMPILATION_ERROR;
+            }
+
+            Status<List<File>> status;
+            try {
+                if (arguments.treeShaking) {
+                    List<String> libraries = new ArrayList<String>();
+                    for (String libraryFile : getLibraryFiles(arguments)) {
+                        // Module name markers of LibrarySourcesConfig are not files
+                        if (!libraryFile.startsWith("@")) {
+                            libraries.add(libraryFile);
+                        }
+                    }
+                    Map<String, String> librariesJsCode = LibraryUtils.loadJsFilesFromLibraries(libraries);
+                    status = translateBundleToFiles(mainCallParameters, sourcesFiles, outputFile, outputPrefixFile, outputPostfixFile,
+                                                    config, librariesJsCode);
+                }
+                else {
+                    status = translateWithMainCallParametersToFiles(mainCallParameters, sourcesFiles, outputFile, outputPrefixFile,
+                                                                    outputPostfixFile, config);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+
+            AnalyzerWithCompilerReport.reportDiagnostics(config.getTrace().getBindingContext().getDiagnostics(), messageCollector);
+
+            if (status.isFail()) return ExitCode.COMPILATION_ERROR;
+
+            reportOutputs(messageCollector, sourcesFiles, status.getResult());
+            if (buildInfo != null) {
+                buildInfo.save(status.getResult());
+            }
+            return OK;
+        }
+
         Status<OutputFileCollection> status;
 
         try {
@@ -169,9 +236,7 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
 
         OutputFileCollection outputFiles = status.getResult();
         if (outputFile.isDirectory()) {
-            messageCollector.report(CompilerMessageSeverity.ERROR,
-                                    "Cannot open output file '" + outputFile.getPath() + "': is a directory",
-                                    CompilerMessageLocation.NO_LOCATION);
+            reportOutputIsDirectory(messageCollector, outputFile);
             return ExitCode.COMPILATION_ERROR;
         }
 
@@ -181,9 +246,83 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
         }
         OutputUtilsPackage.writeAll(outputFiles, outputDir, messageCollector);
 
+        if (buildInfo != null) {
+            List<File> writtenFiles = new ArrayList<File>();
+            for (OutputFile file : outputFiles.asList()) {
+                writtenFiles.add(new File(outputDir, file.getRelativePath()));
+            }
+            buildInfo.save(writtenFiles);
+        }
+
         return OK;
     }
 
+    @Nullable
+    private static JsBuildInfo createBuildInfo(
+            @NotNull K2JSCompilerArguments arguments,
+            @NotNull List<JetFile> sourceFiles,
+            @NotNull File outputFile
+    ) {
+        List<String> options = new ArrayList<String>();
+        options.add(KotlinVersion.VERSION);
+        options.add("main=" + arguments.main);
+        options.add("target=" + arguments.target);
+        options.add("sourceMap=" + arguments.sourceMap);
+        options.add("noInline=" + arguments.noInline);
+        options.add("outputPrefix=" + arguments.outputPrefix);
+        options.add("outputPostfix=" + arguments.outputPostfix);
+        options.add("treeShaking=" + arguments.treeShaking);
+
+        List<File> inputFiles = new ArrayList<File>();
+        for (JetFile file : sourceFiles) {
+            VirtualFile virtualFile = file.getVirtualFile();
+            // Sources which are not files on disk can't be tracked
+            if (virtualFile == null) return null;
+            inputFiles.add(VfsUtilCore.virtualToIoFile(virtualFile));
+        }
+        if (arguments.outputPrefix != null) {
+            inputFiles.add(new File(arguments.outputPrefix));
+        }
+        if (arguments.outputPostfix != null) {
+            inputFiles.add(new File(arguments.outputPostfix));
+        }
+
+        List<File> libraries = new ArrayList<File>();
+        for (String libraryFile : getLibraryFiles(arguments)) {
+            libraries.add(new File(libraryFile));
+        }
+
+        try {
+            return JsBuildInfo.create(new File(arguments.buildInfoDir), outputFile, options, inputFiles, libraries);
+        }
+        catch (IOException e) {
+            // E.g. a prefix file doesn't exist, which is reported later
+            return null;
+        }
+    }
+
+    private static void reportOutputIsDirectory(@NotNull MessageCollector messageCollector, @NotNull File outputFile) {
+        messageCollector.report(CompilerMessageSeverity.ERROR,
+                                "Cannot open output file '" + outputFile.getPath() + "': is a directory",
+                                CompilerMessageLocation.NO_LOCATION);
+    }
+
+    private static void reportOutputs(
+            @NotNull MessageCollector messageCollector,
+            @NotNull List<JetFile> sourceFiles,
+            @NotNull List<File> outputs
+    ) {
+        List<File> sources = new ArrayList<File>(sourceFiles.size());
+        for (JetFile file : sourceFiles) {
+            VirtualFile virtualFile = file.getVirtualFile();
+            sources.add(virtualFile != null ? VfsUtilCore.virtualToIoFile(virtualFile) : new File(file.getName()));
+        }
+
+        for (File output : outputs) {
+            messageCollector.report(CompilerMessageSeverity.OUTPUT, OutputMessageUtil.formatOutputMessage(sources, output), NO_LOCATION);
+        }
+    }
+
     private static void reportCompiledSourcesList(@NotNull MessageCollector messageCollector, @NotNull List<JetFile> sourceFiles) {
         Iterable<String> fileNames = ContainerUtil.map(sourceFiles, new Function<JetFile, String>() {
             @Override
@@ -221,6 +360,11 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
         String moduleId = FileUtil.getNameWithoutExtension(new File(arguments.outputFile));
         boolean inlineEnabled = !arguments.noInline;
 
+        return new LibrarySourcesConfig(project, moduleId, getLibraryFiles(arguments), ecmaVersion, arguments.sourceMap, inlineEnabled);
+    }
+
+    @NotNull
+    private static List<String> getLibraryFiles(@NotNull K2JSCompilerArguments arguments) {
         List<String> libraryFiles = new SmartList<String>();
         if (!arguments.noStdlib) {
             libraryFiles.add(0, PathUtil.getKotlinPathsForCompiler().getJsStdLibJarPath().getAbsolutePath());
@@ -229,8 +373,7 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
         if (arguments.libraryFiles != null) {
             ContainerUtil.addAllNotNull(libraryFiles, arguments.libraryFiles);
         }
-
-        return new LibrarySourcesConfig(project, moduleId, libraryFiles, ecmaVersion, arguments.sourceMap, inlineEnabled);
+        return libraryFiles;
     }
 
     public static MainCallParameters createMainCallParameters(String main) {
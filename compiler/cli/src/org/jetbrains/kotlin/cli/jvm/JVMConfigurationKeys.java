@@ -40,6 +40,13 @@ public class JVMConfigurationKeys {
             CompilerConfigurationKey.create("disable inline");
     public static final CompilerConfigurationKey<Boolean> DISABLE_OPTIMIZATION =
             CompilerConfigurationKey.create("disable optimization");
+    public static final CompilerConfigurationKey<Boolean> PARALLEL_CODEGEN =
+            CompilerConfigurationKey.create("generate packages in parallel");
+    public static final CompilerConfigurationKey<Boolean> PARALLEL_PARSING =
+            CompilerConfigurationKey.create("parse source files in parallel");
+
+    public static final CompilerConfigurationKey<File> CLASSPATH_CACHE_DIRECTORY =
+            CompilerConfigurationKey.create("classpath cache directory");
 
     public static final CompilerConfigurationKey<IncrementalCacheProvider> INCREMENTAL_CACHE_PROVIDER =
             CompilerConfigurationKey.create("incremental cache provider");
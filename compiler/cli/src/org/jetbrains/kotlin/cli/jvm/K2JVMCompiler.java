@@ -27,6 +27,7 @@ import org.jetbrains.kotlin.cli.common.arguments.K2JVMCompilerArguments;
 import org.jetbrains.kotlin.cli.common.messages.*;
 import org.jetbrains.kotlin.cli.common.modules.ModuleScriptData;
 import org.jetbrains.kotlin.cli.jvm.compiler.*;
+import org.jetbrains.kotlin.cli.jvm.daemon.CompileDaemonClient;
 import org.jetbrains.kotlin.cli.jvm.repl.ReplFromTerminal;
 import org.jetbrains.kotlin.codegen.CompilationException;
 import org.jetbrains.kotlin.config.CommonConfigurationKeys;
@@ -49,6 +50,15 @@ import static org.jetbrains.kotlin.cli.common.ExitCode.*;
 public class K2JVMCompiler extends CLICompiler<K2JVMCompilerArguments> {
 
     public static void main(String... args) {
+        if (CompileDaemonClient.isDaemonRequested(args)) {
+            ExitCode exitCode = CompileDaemonClient.compile(args, System.err);
+            if (exitCode != null) {
+                if (exitCode != OK) {
+                    System.exit(exitCode.getCode());
+                }
+                return;
+            }
+        }
         doMain(new K2JVMCompiler(), args);
     }
 
@@ -172,6 +182,11 @@ public class K2JVMCompiler extends CLICompiler<K2JVMCompilerArguments> {
         configuration.put(JVMConfigurationKeys.DISABLE_PARAM_ASSERTIONS, arguments.noParamAssertions);
         configuration.put(JVMConfigurationKeys.DISABLE_INLINE, arguments.noInline);
         configuration.put(JVMConfigurationKeys.DISABLE_OPTIMIZATION, arguments.noOptimize);
+        configuration.put(JVMConfigurationKeys.PARALLEL_CODEGEN, arguments.parallelCodegen);
+        configuration.put(JVMConfigurationKeys.PARALLEL_PARSING, arguments.parallelParsing);
+        if (arguments.indexCache != null) {
+            configuration.put(JVMConfigurationKeys.CLASSPATH_CACHE_DIRECTORY, new File(arguments.indexCache));
+        }
     }
 
     /**
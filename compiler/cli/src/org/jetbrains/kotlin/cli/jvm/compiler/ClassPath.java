@@ -18,7 +18,9 @@ package org.jetbrains.kotlin.cli.jvm.compiler;
 
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -28,13 +30,35 @@ public final class ClassPath implements Iterable<VirtualFile> {
     @NotNull
     private final List<VirtualFile> roots = new ArrayList<VirtualFile>();
 
+    @NotNull
+    private final List<File> ioRoots = new ArrayList<File>();
+
+    @Nullable
+    private ClassPathIndex index = null;
+
     @NotNull
     @Override
     public Iterator<VirtualFile> iterator() {
         return roots.iterator();
     }
 
-    public void add(@NotNull VirtualFile root) {
+    public void add(@NotNull VirtualFile root, @NotNull File ioRoot) {
+        assert index == null : "Class path is already indexed: " + ioRoot;
         roots.add(root);
+        ioRoots.add(ioRoot);
+    }
+
+    @NotNull
+    public VirtualFile getRoot(int index) {
+        return roots.get(index);
+    }
+
+    public void buildIndex(@NotNull File cacheDirectory) {
+        index = ClassPathIndex.build(ioRoots, cacheDirectory);
+    }
+
+    @Nullable
+    public ClassPathIndex getIndex() {
+        return index;
     }
 }
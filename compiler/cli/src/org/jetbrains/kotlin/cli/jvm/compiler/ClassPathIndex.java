@@ -0,0 +1,184 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.compiler;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Knows which class path roots contain a given directory or class file, so that lookups don't probe every root.
+ *
+ * Roots are identified by their index in the class path. Contents of jars are read from their central directory
+ * or, if a cache directory is given, from {@link ClassPathIndexStorage} which is keyed by the jar's size and timestamp.
+ * Contents of directory roots are never cached since they are usually outputs of the build being run.
+ */
+public class ClassPathIndex {
+    private static final int[] NO_ROOTS = new int[0];
+
+    private final Map<String, int[]> directories = new HashMap<String, int[]>();
+    private final Map<String, int[]> classFiles = new HashMap<String, int[]>();
+
+    private ClassPathIndex() {
+    }
+
+    @NotNull
+    public static ClassPathIndex build(@NotNull List<File> roots, @Nullable File cacheDirectory) {
+        ClassPathIndexStorage storage = cacheDirectory != null ? new ClassPathIndexStorage(cacheDirectory) : null;
+
+        ClassPathIndex index = new ClassPathIndex();
+        for (int i = 0; i < roots.size(); i++) {
+            File root = roots.get(i);
+            RootContents contents = root.isFile() ? readJar(root, storage) : readDirectory(root);
+            for (String directory : contents.directories) {
+                add(index.directories, directory, i);
+            }
+            for (String classFile : contents.classFiles) {
+                add(index.classFiles, classFile, i);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param relativePath path of a directory relative to a root, without leading and trailing slashes; "" for the root itself
+     * @return sorted indices of the roots containing the directory
+     */
+    @NotNull
+    public int[] getRootsWithDirectory(@NotNull String relativePath) {
+        int[] result = directories.get(relativePath);
+        return result != null ? result : NO_ROOTS;
+    }
+
+    /**
+     * @param relativePath path of a class file relative to a root, e.g. "java/util/Map$Entry.class"
+     * @return sorted indices of the roots containing the class file
+     */
+    @NotNull
+    public int[] getRootsWithClassFile(@NotNull String relativePath) {
+        int[] result = classFiles.get(relativePath);
+        return result != null ? result : NO_ROOTS;
+    }
+
+    public boolean hasDirectory(int root, @NotNull String relativePath) {
+        return Arrays.binarySearch(getRootsWithDirectory(relativePath), root) >= 0;
+    }
+
+    // Roots are added in increasing order, so the arrays stay sorted
+    private static void add(@NotNull Map<String, int[]> map, @NotNull String path, int root) {
+        int[] roots = map.get(path);
+        if (roots == null) {
+            map.put(path, new int[] {root});
+        }
+        else if (roots[roots.length - 1] != root) {
+            int[] newRoots = Arrays.copyOf(roots, roots.length + 1);
+            newRoots[roots.length] = root;
+            map.put(path, newRoots);
+        }
+    }
+
+    @NotNull
+    private static RootContents readJar(@NotNull File jar, @Nullable ClassPathIndexStorage storage) {
+        if (storage != null) {
+            RootContents cached = storage.load(jar);
+            if (cached != null) return cached;
+        }
+
+        RootContents contents = new RootContents();
+        try {
+            ZipFile zipFile = new ZipFile(jar);
+            try {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    if (entry.isDirectory()) {
+                        contents.addDirectory(name.substring(0, name.length() - 1));
+                    }
+                    else {
+                        contents.addFile(name);
+                    }
+                }
+            }
+            finally {
+                zipFile.close();
+            }
+        }
+        catch (IOException e) {
+            // Such roots are skipped by JarFileSystem as well
+            return new RootContents();
+        }
+
+        if (storage != null) {
+            storage.save(jar, contents);
+        }
+        return contents;
+    }
+
+    @NotNull
+    private static RootContents readDirectory(@NotNull File root) {
+        RootContents contents = new RootContents();
+        readDirectory(root, "", contents);
+        return contents;
+    }
+
+    private static void readDirectory(@NotNull File directory, @NotNull String relativePath, @NotNull RootContents contents) {
+        contents.addDirectory(relativePath);
+        File[] children = directory.listFiles();
+        if (children == null) return;
+
+        for (File child : children) {
+            String childPath = relativePath.isEmpty() ? child.getName() : relativePath + "/" + child.getName();
+            if (child.isDirectory()) {
+                readDirectory(child, childPath, contents);
+            }
+            else {
+                contents.addFile(childPath);
+            }
+        }
+    }
+
+    static class RootContents {
+        // Every parent directory of every entry is present here, same as in JarFileSystem which doesn't require directory entries
+        final Set<String> directories = new LinkedHashSet<String>();
+        final List<String> classFiles = new ArrayList<String>();
+
+        RootContents() {
+            directories.add("");
+        }
+
+        void addFile(@NotNull String path) {
+            int slash = path.lastIndexOf('/');
+            addDirectory(slash < 0 ? "" : path.substring(0, slash));
+            if (path.endsWith(".class")) {
+                classFiles.add(path);
+            }
+        }
+
+        void addDirectory(@NotNull String path) {
+            while (directories.add(path)) {
+                int slash = path.lastIndexOf('/');
+                path = slash < 0 ? "" : path.substring(0, slash);
+            }
+        }
+    }
+}
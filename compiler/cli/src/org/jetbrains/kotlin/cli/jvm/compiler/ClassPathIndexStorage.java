@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.compiler;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+
+/**
+ * Persists the contents of class path jars between compilations, one file per jar.
+ *
+ * A file is: magic, version, jar path, jar length, jar timestamp, directories, class files.
+ * It is only used if the jar's path, length and timestamp match, and is read through a memory-mapped buffer.
+ * Any problem with a file is treated as a cache miss.
+ */
+class ClassPathIndexStorage {
+    private static final int MAGIC = 0x4b435049;
+    private static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+
+    ClassPathIndexStorage(@NotNull File directory) {
+        this.directory = directory;
+    }
+
+    @Nullable
+    ClassPathIndex.RootContents load(@NotNull File jar) {
+        File file = getIndexFile(jar);
+        if (!file.isFile()) return null;
+
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = randomAccessFile.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+                if (!jar.getAbsolutePath().equals(readString(buffer))) return null;
+                if (buffer.getLong() != jar.length() || buffer.getLong() != jar.lastModified()) return null;
+
+                ClassPathIndex.RootContents contents = new ClassPathIndex.RootContents();
+                int directoryCount = buffer.getInt();
+                for (int i = 0; i < directoryCount; i++) {
+                    contents.directories.add(readString(buffer));
+                }
+                int classFileCount = buffer.getInt();
+                for (int i = 0; i < classFileCount; i++) {
+                    contents.classFiles.add(readString(buffer));
+                }
+                return contents;
+            }
+            finally {
+                randomAccessFile.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+        catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    void save(@NotNull File jar, @NotNull ClassPathIndex.RootContents contents) {
+        File file = getIndexFile(jar);
+        // Several compilations may save the same jar at once, the last rename wins
+        File tmpFile = new File(file.getPath() + "." + System.nanoTime() + ".tmp");
+        try {
+            FileUtil.createParentDirs(tmpFile);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                writeString(output, jar.getAbsolutePath());
+                output.writeLong(jar.length());
+                output.writeLong(jar.lastModified());
+                writeStrings(output, contents.directories);
+                writeStrings(output, contents.classFiles);
+            }
+            finally {
+                output.close();
+            }
+            FileUtil.rename(tmpFile, file);
+        }
+        catch (IOException e) {
+            // The index will be rebuilt next time
+            FileUtil.delete(tmpFile);
+        }
+    }
+
+    @NotNull
+    private File getIndexFile(@NotNull File jar) {
+        String path = jar.getAbsolutePath();
+        return new File(directory, FileUtil.getNameWithoutExtension(jar) + "-" + Integer.toHexString(path.hashCode()) + ".idx");
+    }
+
+    private static void writeStrings(@NotNull DataOutputStream output, @NotNull Collection<String> strings) throws IOException {
+        output.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(output, string);
+        }
+    }
+
+    private static void writeString(@NotNull DataOutputStream output, @NotNull String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    @NotNull
+    private static String readString(@NotNull MappedByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new IOException("Corrupted index: string of length " + length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -23,6 +23,11 @@ import org.jetbrains.kotlin.load.kotlin.KotlinBinaryClassCache;
 import org.jetbrains.kotlin.load.kotlin.VirtualFileFinder;
 import org.jetbrains.kotlin.load.kotlin.VirtualFileKotlinClassFinder;
 import org.jetbrains.kotlin.name.FqName;
+import org.jetbrains.kotlin.name.Name;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class CliVirtualFileFinder extends VirtualFileKotlinClassFinder implements VirtualFileFinder {
 
@@ -36,6 +41,17 @@ public class CliVirtualFileFinder extends VirtualFileKotlinClassFinder implement
     @Nullable
     @Override
     public VirtualFile findVirtualFileWithHeader(@NotNull FqName className) {
+        ClassPathIndex index = classPath.getIndex();
+        if (index != null) {
+            for (Map.Entry<Integer, String> entry : findCandidatesInIndex(index, className).entrySet()) {
+                VirtualFile fileInRoot = findValidFile(classPath.getRoot(entry.getKey()), entry.getValue());
+                if (fileInRoot != null && KotlinBinaryClassCache.getKotlinBinaryClass(fileInRoot) != null) {
+                    return fileInRoot;
+                }
+            }
+            return null;
+        }
+
         for (VirtualFile root : classPath) {
             VirtualFile fileInRoot = findFileInRoot(className.asString(), root, '.');
             //NOTE: currently we use VirtualFileFinder to find Kotlin binaries only
@@ -48,6 +64,18 @@ public class CliVirtualFileFinder extends VirtualFileKotlinClassFinder implement
 
     @Override
     public VirtualFile findVirtualFile(@NotNull String internalName) {
+        ClassPathIndex index = classPath.getIndex();
+        if (index != null) {
+            String relativePath = internalName + ".class";
+            for (int root : index.getRootsWithClassFile(relativePath)) {
+                VirtualFile fileInRoot = findValidFile(classPath.getRoot(root), relativePath);
+                if (fileInRoot != null) {
+                    return fileInRoot;
+                }
+            }
+            return null;
+        }
+
         for (VirtualFile root : classPath) {
             VirtualFile fileInRoot = findFileInRoot(internalName, root, '/');
             if (fileInRoot != null) {
@@ -57,6 +85,48 @@ public class CliVirtualFileFinder extends VirtualFileKotlinClassFinder implement
         return null;
     }
 
+    /**
+     * Emulates {@link #findFileInRoot} for all roots at once: in each root, the package part of the name is the longest prefix
+     * which exists as a directory, and the rest is joined with '$'.
+     *
+     * @return relative paths of the class files to look at, by root index in class path order
+     */
+    @NotNull
+    private static Map<Integer, String> findCandidatesInIndex(@NotNull ClassPathIndex index, @NotNull FqName className) {
+        List<Name> segments = className.pathSegments();
+        Map<Integer, String> result = new TreeMap<Integer, String>();
+
+        StringBuilder directory = new StringBuilder();
+        for (int k = 0; k < segments.size(); k++) {
+            StringBuilder relativePath = new StringBuilder(directory);
+            if (k > 0) relativePath.append('/');
+            for (int i = k; i < segments.size(); i++) {
+                if (i > k) relativePath.append('$');
+                relativePath.append(segments.get(i).asString());
+            }
+            relativePath.append(".class");
+
+            if (k > 0) directory.append('/');
+            directory.append(segments.get(k).asString());
+            boolean isLast = k == segments.size() - 1;
+
+            for (int root : index.getRootsWithClassFile(relativePath.toString())) {
+                // If the next directory exists, the search in this root goes deeper
+                if (isLast || !index.hasDirectory(root, directory.toString())) {
+                    result.put(root, relativePath.toString());
+                }
+            }
+        }
+
+        return result;
+    }
+
+    @Nullable
+    private static VirtualFile findValidFile(@NotNull VirtualFile root, @NotNull String relativePath) {
+        VirtualFile vFile = root.findFileByRelativePath(relativePath);
+        return vFile != null && vFile.isValid() ? vFile : null;
+    }
+
     //NOTE: copied with some changes from CoreJavaFileManager
     @Nullable
     private static VirtualFile findFileInRoot(@NotNull String qName, @NotNull VirtualFile root, char separator) {
@@ -270,14 +270,46 @@ public class CompileEnvironmentUtil {
 
     @NotNull
     public static List<JetFile> getJetFiles(
-            @NotNull final Project project,
+            @NotNull Project project,
+            @NotNull List<String> sourceRoots,
+            @NotNull Function1<String, Unit> reportError
+    ) {
+        PsiManager psiManager = PsiManager.getInstance(project);
+        List<JetFile> result = Lists.newArrayList();
+        for (VirtualFile virtualFile : getSourceVirtualFiles(sourceRoots, reportError)) {
+            PsiFile psiFile = psiManager.findFile(virtualFile);
+            if (psiFile instanceof JetFile) {
+                result.add((JetFile) psiFile);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #getJetFiles(Project, List, Function1)}, but the files are parsed eagerly on {@code threadCount} threads
+     * and the time spent on each file is reported to {@code messageCollector}
+     */
+    @NotNull
+    public static List<JetFile> getJetFilesInParallel(
+            @NotNull Project project,
+            @NotNull List<String> sourceRoots,
+            @NotNull Function1<String, Unit> reportError,
+            int threadCount,
+            @NotNull MessageCollector messageCollector
+    ) {
+        List<VirtualFile> virtualFiles = getSourceVirtualFiles(sourceRoots, reportError);
+        return new ParallelSourceParser(project, threadCount, messageCollector).parse(virtualFiles);
+    }
+
+    @NotNull
+    private static List<VirtualFile> getSourceVirtualFiles(
             @NotNull List<String> sourceRoots,
             @NotNull Function1<String, Unit> reportError
     ) {
         final VirtualFileSystem localFileSystem = VirtualFileManager.getInstance().getFileSystem(StandardFileSystems.FILE_PROTOCOL);
 
         final Set<VirtualFile> processedFiles = Sets.newHashSet();
-        final List<JetFile> result = Lists.newArrayList();
+        final List<VirtualFile> result = Lists.newArrayList();
 
         for (String sourceRootPath : sourceRoots) {
             if (sourceRootPath == null) {
@@ -301,10 +333,7 @@ public class CompileEnvironmentUtil {
                         VirtualFile virtualFile = localFileSystem.findFileByPath(file.getAbsolutePath());
                         if (virtualFile != null && !processedFiles.contains(virtualFile)) {
                             processedFiles.add(virtualFile);
-                            PsiFile psiFile = PsiManager.getInstance(project).findFile(virtualFile);
-                            if (psiFile instanceof JetFile) {
-                                result.add((JetFile) psiFile);
-                            }
+                            result.add(virtualFile);
                         }
                     }
                     return Unit.INSTANCE$;
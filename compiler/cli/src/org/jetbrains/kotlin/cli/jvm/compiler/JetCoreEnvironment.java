@@ -64,9 +64,12 @@ import org.jetbrains.kotlin.utils.PathUtil;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity.ERROR;
+import static org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity.LOGGING;
 import static org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity.WARNING;
 
 @SuppressWarnings("AssignmentToStaticFieldFromInstanceMethod")
@@ -75,6 +78,9 @@ public class JetCoreEnvironment {
     private static final Object APPLICATION_LOCK = new Object();
     private static JavaCoreApplicationEnvironment ourApplicationEnvironment;
     private static int ourProjectCount = 0;
+    private static int ourRetainCount = 0;
+    // Length and timestamp of every jar opened by the shared application environment, keyed by the absolute path
+    private static final Map<String, String> ourOpenedJarStamps = new HashMap<String, String>();
 
     @NotNull
     public static JetCoreEnvironment createForProduction(
@@ -88,7 +94,7 @@ public class JetCoreEnvironment {
             @Override
             public void dispose() {
                 synchronized (APPLICATION_LOCK) {
-                    if (--ourProjectCount <= 0) {
+                    if (--ourProjectCount <= 0 && ourRetainCount == 0) {
                         disposeApplicationEnvironment();
                     }
                 }
@@ -117,7 +123,12 @@ public class JetCoreEnvironment {
     @NotNull
     private static JavaCoreApplicationEnvironment getOrCreateApplicationEnvironmentForProduction(@NotNull List<String> configFilePaths) {
         synchronized (APPLICATION_LOCK) {
-            if (ourApplicationEnvironment != null) return ourApplicationEnvironment;
+            if (ourApplicationEnvironment != null) {
+                if (ourProjectCount > 0 || !isAnyOpenedJarChanged()) return ourApplicationEnvironment;
+
+                // The environment retained after earlier compilations caches the contents of a jar which has been rebuilt since then
+                disposeApplicationEnvironment();
+            }
 
             Disposable parentDisposable = Disposer.newDisposable();
             ourApplicationEnvironment = createApplicationEnvironment(parentDisposable, configFilePaths);
@@ -127,6 +138,7 @@ public class JetCoreEnvironment {
                 public void dispose() {
                     synchronized (APPLICATION_LOCK) {
                         ourApplicationEnvironment = null;
+                        ourOpenedJarStamps.clear();
                     }
                 }
             });
@@ -134,6 +146,49 @@ public class JetCoreEnvironment {
         }
     }
 
+    /**
+     * Keeps the shared application environment (file types, parser definitions, opened jars, binary class cache)
+     * alive after the last project is disposed, until the given disposable is disposed.
+     * Used by the compile daemon to reuse the environment between compilations.
+     * If a jar opened by the retained environment is changed on disk, the next project gets a fresh environment
+     */
+    public static void retainApplicationEnvironment(@NotNull Disposable parentDisposable) {
+        synchronized (APPLICATION_LOCK) {
+            ourRetainCount++;
+        }
+        Disposer.register(parentDisposable, new Disposable() {
+            @Override
+            public void dispose() {
+                synchronized (APPLICATION_LOCK) {
+                    if (--ourRetainCount == 0 && ourProjectCount <= 0) {
+                        disposeApplicationEnvironment();
+                    }
+                }
+            }
+        });
+    }
+
+    private static boolean isAnyOpenedJarChanged() {
+        for (Map.Entry<String, String> entry : ourOpenedJarStamps.entrySet()) {
+            if (!getJarStamp(new File(entry.getKey())).equals(entry.getValue())) return true;
+        }
+        return false;
+    }
+
+    private void recordOpenedJar(@NotNull File jar) {
+        synchronized (APPLICATION_LOCK) {
+            // Environments created for tests are not shared
+            if (getMyApplicationEnvironment() != ourApplicationEnvironment) return;
+            File file = jar.getAbsoluteFile();
+            ourOpenedJarStamps.put(file.getPath(), getJarStamp(file));
+        }
+    }
+
+    @NotNull
+    private static String getJarStamp(@NotNull File jar) {
+        return jar.length() + ":" + jar.lastModified();
+    }
+
     public static void disposeApplicationEnvironment() {
         synchronized (APPLICATION_LOCK) {
             if (ourApplicationEnvironment == null) return;
@@ -223,19 +278,43 @@ public class JetCoreEnvironment {
         for (File path : configuration.getList(JVMConfigurationKeys.CLASSPATH_KEY)) {
             addToClasspath(path);
         }
+        File cacheDirectory = configuration.get(JVMConfigurationKeys.CLASSPATH_CACHE_DIRECTORY);
+        // Without a cache the index would read every jar and directory root once more in addition to the VFS
+        if (cacheDirectory != null) {
+            classPath.buildIndex(cacheDirectory);
+        }
+
+        final KotlinBinaryClassCache binaryClassCache = KotlinBinaryClassCache.getInstance();
+        binaryClassCache.setDiskCacheDirectory(cacheDirectory);
+        Disposer.register(parentDisposable, new Disposable() {
+            @Override
+            public void dispose() {
+                binaryClassCache.saveDiskCache();
+                MessageCollector messageCollector = JetCoreEnvironment.this.configuration.get(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY);
+                if (messageCollector != null) {
+                    messageCollector.report(LOGGING, binaryClassCache.getStatistics(), CompilerMessageLocation.NO_LOCATION);
+                }
+            }
+        });
         for (File path : configuration.getList(JVMConfigurationKeys.ANNOTATIONS_PATH_KEY)) {
             addExternalAnnotationsRoot(path);
         }
-        sourceFiles.addAll(
-                CompileEnvironmentUtil
-                        .getJetFiles(getProject(), configuration.getList(CommonConfigurationKeys.SOURCE_ROOTS_KEY),
-                                     new Function1<String, Unit>() {
-                                         @Override
-                                         public Unit invoke(String s) {
-                                             report(ERROR, s);
-                                             return Unit.INSTANCE$;
-                                         }
-                                     }));
+        List<String> sourceRoots = configuration.getList(CommonConfigurationKeys.SOURCE_ROOTS_KEY);
+        Function1<String, Unit> reportError = new Function1<String, Unit>() {
+            @Override
+            public Unit invoke(String s) {
+                report(ERROR, s);
+                return Unit.INSTANCE$;
+            }
+        };
+        if (Boolean.TRUE.equals(configuration.get(JVMConfigurationKeys.PARALLEL_PARSING))) {
+            MessageCollector messageCollector = configuration.get(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, MessageCollector.NONE);
+            sourceFiles.addAll(CompileEnvironmentUtil.getJetFilesInParallel(
+                    getProject(), sourceRoots, reportError, Runtime.getRuntime().availableProcessors(), messageCollector));
+        }
+        else {
+            sourceFiles.addAll(CompileEnvironmentUtil.getJetFiles(getProject(), sourceRoots, reportError));
+        }
         JetScriptDefinitionProvider.getInstance(project).addScriptDefinitions(
                 configuration.getList(CommonConfigurationKeys.SCRIPT_DEFINITIONS_KEY));
 
@@ -287,18 +366,22 @@ public class JetCoreEnvironment {
             report(WARNING, "Annotations path entry points to a non-existent location: " + path);
             return;
         }
+        if (path.isFile()) {
+            recordOpenedJar(path);
+        }
         annotationsManager.addExternalAnnotationsRoot(PathUtil.jarFileOrDirectoryToVirtualFile(path));
     }
 
     private void addToClasspath(File path) {
         if (path.isFile()) {
+            recordOpenedJar(path);
             VirtualFile jarFile = getMyApplicationEnvironment().getJarFileSystem().findFileByPath(path + "!/");
             if (jarFile == null) {
                 report(WARNING, "Classpath entry points to a file that is not a JAR archive: " + path);
                 return;
             }
             projectEnvironment.addJarToClassPath(path);
-            classPath.add(jarFile);
+            classPath.add(jarFile, path);
         }
         else {
             VirtualFile root = getMyApplicationEnvironment().getLocalFileSystem().findFileByPath(path.getAbsolutePath());
@@ -307,7 +390,7 @@ public class JetCoreEnvironment {
                 return;
             }
             projectEnvironment.addSourcesToClasspath(root);
-            classPath.add(root);
+            classPath.add(root, path);
         }
     }
 
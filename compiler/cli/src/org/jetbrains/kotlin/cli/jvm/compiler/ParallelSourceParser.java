@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.compiler;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.impl.source.tree.TreeUtil;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageLocation;
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity;
+import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
+import org.jetbrains.kotlin.psi.JetFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Builds PSI for source files on a pool of worker threads.
+ *
+ * Each file is loaded and its whole tree (including lazily parseable elements such as KDoc) is built under a read action,
+ * so that the analysis which follows doesn't parse anything on the main thread.
+ * The order of the resulting files is the same as the order of the given virtual files.
+ */
+public class ParallelSourceParser {
+    private final Project project;
+    private final int threadCount;
+    private final MessageCollector messageCollector;
+
+    public ParallelSourceParser(@NotNull Project project, int threadCount, @NotNull MessageCollector messageCollector) {
+        this.project = project;
+        this.threadCount = threadCount;
+        this.messageCollector = messageCollector;
+    }
+
+    @NotNull
+    public List<JetFile> parse(@NotNull List<VirtualFile> files) {
+        if (threadCount <= 1 || files.size() <= 1) {
+            List<JetFile> result = new ArrayList<JetFile>(files.size());
+            for (VirtualFile file : files) {
+                ContainerUtil.addIfNotNull(result, parseFile(file));
+            }
+            return result;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, files.size()));
+        try {
+            List<Future<JetFile>> futures = new ArrayList<Future<JetFile>>(files.size());
+            for (final VirtualFile file : files) {
+                futures.add(executor.submit(new Callable<JetFile>() {
+                    @Override
+                    public JetFile call() {
+                        return parseFile(file);
+                    }
+                }));
+            }
+
+            List<JetFile> result = new ArrayList<JetFile>(files.size());
+            for (Future<JetFile> future : futures) {
+                ContainerUtil.addIfNotNull(result, getResult(future));
+            }
+            return result;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Nullable
+    private JetFile parseFile(@NotNull final VirtualFile file) {
+        long start = System.nanoTime();
+        JetFile jetFile = ApplicationManager.getApplication().runReadAction(new Computable<JetFile>() {
+            @Override
+            public JetFile compute() {
+                PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+                if (!(psiFile instanceof JetFile)) return null;
+
+                TreeUtil.ensureParsed(psiFile.getNode());
+                return (JetFile) psiFile;
+            }
+        });
+
+        if (jetFile != null) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            // Message collectors are not required to be thread-safe
+            synchronized (messageCollector) {
+                messageCollector.report(CompilerMessageSeverity.LOGGING,
+                                        "Parsed " + file.getPath() + " in " + millis + " ms [" + Thread.currentThread().getName() + "]",
+                                        CompilerMessageLocation.NO_LOCATION);
+            }
+        }
+
+        return jetFile;
+    }
+
+    @Nullable
+    private static JetFile getResult(@NotNull Future<JetFile> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing source files", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.daemon;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.util.Disposer;
+import kotlin.io.IoPackage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.cli.common.ExitCode;
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageLocation;
+import org.jetbrains.kotlin.cli.common.messages.MessageRenderer;
+import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler;
+import org.jetbrains.kotlin.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.kotlin.config.Services;
+import org.jetbrains.kotlin.utils.PathUtil;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.FileLock;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * A long-lived compiler process serving compilation requests of {@link CompileDaemonClient}.
+ *
+ * Between requests the daemon keeps the JIT-compiled compiler code, the IntelliJ core application environment
+ * (with the jar file system caches of the class path roots and the binary class cache) and the built-ins module.
+ * The retained environment is released when the heap usage after a compilation exceeds
+ * {@link #MAX_HEAP_USAGE_PROPERTY} percent of the maximum heap, and the daemon exits after
+ * {@link #IDLE_TIMEOUT_PROPERTY} seconds without requests.
+ *
+ * Requests are processed one at a time. While a compilation is in progress, the daemon sends heartbeats to its client,
+ * so that the client can tell a long compilation from a hung daemon.
+ */
+public class CompileDaemon {
+    public static final String IDLE_TIMEOUT_PROPERTY = "kotlin.daemon.idle.timeout";
+    public static final String MAX_HEAP_USAGE_PROPERTY = "kotlin.daemon.max.heap.usage";
+
+    private static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 2 * 60 * 60;
+    private static final int DEFAULT_MAX_HEAP_USAGE_PERCENT = 75;
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        File runFile = CompileDaemonProtocol.getRunFile(PathUtil.getPathUtilJar());
+        //noinspection ResultOfMethodCallIgnored
+        runFile.getParentFile().mkdirs();
+
+        RandomAccessFile lockFile = new RandomAccessFile(CompileDaemonProtocol.getLockFile(runFile), "rw");
+        try {
+            FileLock lock = lockFile.getChannel().tryLock();
+            if (lock == null) {
+                // Another daemon for the same compiler is already running
+                return;
+            }
+
+            new CompileDaemon(runFile, Integer.getInteger(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT_SECONDS),
+                              Integer.getInteger(MAX_HEAP_USAGE_PROPERTY, DEFAULT_MAX_HEAP_USAGE_PERCENT)).run();
+        }
+        finally {
+            lockFile.close();
+        }
+    }
+
+    private final File runFile;
+    private final int idleTimeoutSeconds;
+    private final int maxHeapUsagePercent;
+
+    @Nullable
+    private Disposable environmentRetention = null;
+
+    CompileDaemon(@NotNull File runFile, int idleTimeoutSeconds, int maxHeapUsagePercent) {
+        this.runFile = runFile;
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+        this.maxHeapUsagePercent = maxHeapUsagePercent;
+    }
+
+    void run() throws IOException {
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName(null));
+        Timer heartbeatTimer = new Timer("Compile daemon heartbeat", true);
+        try {
+            serverSocket.setSoTimeout(idleTimeoutSeconds * 1000);
+
+            long token = new SecureRandom().nextLong();
+            CompileDaemonProtocol.Address address = new CompileDaemonProtocol.Address(serverSocket.getLocalPort(), token);
+            CompileDaemonProtocol.writeAddress(runFile, address);
+
+            while (true) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                }
+                catch (SocketTimeoutException e) {
+                    return;
+                }
+
+                try {
+                    serve(socket, token, heartbeatTimer);
+                }
+                catch (IOException e) {
+                    // The client has gone away, nothing to report to
+                }
+                finally {
+                    socket.close();
+                }
+
+                if (!releaseMemoryIfNeeded()) {
+                    return;
+                }
+
+                // A client which has timed out waiting in the queue deletes the run file, but the daemon is still usable
+                if (!runFile.isFile()) {
+                    CompileDaemonProtocol.writeAddress(runFile, address);
+                }
+            }
+        }
+        finally {
+            heartbeatTimer.cancel();
+            //noinspection ResultOfMethodCallIgnored
+            runFile.delete();
+            releaseEnvironment();
+            serverSocket.close();
+        }
+    }
+
+    private void serve(@NotNull Socket socket, long token, @NotNull Timer heartbeatTimer) throws IOException {
+        socket.setSoTimeout(CompileDaemonProtocol.READ_TIMEOUT_MILLIS);
+        DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        if (input.readLong() != token) return;
+
+        File workingDirectory = new File(CompileDaemonProtocol.readString(input));
+        int argumentCount = input.readInt();
+        List<String> arguments = new ArrayList<String>(argumentCount);
+        for (int i = 0; i < argumentCount; i++) {
+            String argument = CompileDaemonProtocol.readString(input);
+            if (!CompileDaemonProtocol.DAEMON_OPTION.equals(argument)) {
+                arguments.add(argument);
+            }
+        }
+
+        DataOutputStream result = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        Heartbeat heartbeat = new Heartbeat(result);
+        heartbeatTimer.schedule(heartbeat, CompileDaemonProtocol.HEARTBEAT_INTERVAL_MILLIS, CompileDaemonProtocol.HEARTBEAT_INTERVAL_MILLIS);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream errStream = new PrintStream(output, true, "UTF-8");
+        ExitCode exitCode;
+        try {
+            exitCode = compile(arguments, workingDirectory, errStream);
+            errStream.flush();
+        }
+        finally {
+            heartbeat.stop();
+        }
+
+        result.writeByte(CompileDaemonProtocol.RESULT);
+        CompileDaemonProtocol.writeBytes(result, output.toByteArray());
+        result.writeInt(exitCode.getCode());
+        result.flush();
+    }
+
+    @NotNull
+    private ExitCode compile(@NotNull List<String> arguments, @NotNull File workingDirectory, @NotNull PrintStream errStream) {
+        if (environmentRetention == null) {
+            environmentRetention = Disposer.newDisposable();
+            JetCoreEnvironment.retainApplicationEnvironment(environmentRetention);
+        }
+
+        try {
+            return new K2JVMCompiler().exec(errStream, Services.EMPTY, new RelativePathsRenderer(workingDirectory),
+                                            arguments.toArray(new String[arguments.size()]));
+        }
+        catch (Throwable e) {
+            e.printStackTrace(errStream);
+            return ExitCode.INTERNAL_ERROR;
+        }
+    }
+
+    /**
+     * @return false if the daemon should shut down because not enough memory is available even without the retained environment
+     */
+    private boolean releaseMemoryIfNeeded() {
+        if (!isHeapUsageExceeded()) return true;
+
+        releaseEnvironment();
+        return !isHeapUsageExceeded();
+    }
+
+    private boolean isHeapUsageExceeded() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        if (used * 100 <= runtime.maxMemory() * maxHeapUsagePercent) return false;
+
+        System.gc();
+        used = runtime.totalMemory() - runtime.freeMemory();
+        return used * 100 > runtime.maxMemory() * maxHeapUsagePercent;
+    }
+
+    private void releaseEnvironment() {
+        if (environmentRetention != null) {
+            Disposer.dispose(environmentRetention);
+            environmentRetention = null;
+        }
+    }
+
+    private static class Heartbeat extends TimerTask {
+        private final DataOutputStream output;
+        private boolean stopped = false;
+
+        public Heartbeat(@NotNull DataOutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void run() {
+            synchronized (output) {
+                if (stopped) return;
+                try {
+                    output.writeByte(CompileDaemonProtocol.HEARTBEAT);
+                    output.flush();
+                }
+                catch (IOException e) {
+                    // The client has gone away, the result won't be delivered either
+                    cancel();
+                }
+            }
+        }
+
+        // After this method returns, no more heartbeats are written and the output may be used for the result
+        public void stop() {
+            synchronized (output) {
+                stopped = true;
+                cancel();
+            }
+        }
+    }
+
+    private static class RelativePathsRenderer extends MessageRenderer.PlainText {
+        private final File workingDirectory;
+
+        public RelativePathsRenderer(@NotNull File workingDirectory) {
+            this.workingDirectory = workingDirectory;
+        }
+
+        @Nullable
+        @Override
+        protected String getPath(@NotNull CompilerMessageLocation location) {
+            String path = location.getPath();
+            return path == null ? null : IoPackage.relativePath(workingDirectory, new File(path));
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.daemon;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.cli.common.ExitCode;
+import org.jetbrains.kotlin.utils.KotlinPaths;
+import org.jetbrains.kotlin.utils.PathUtil;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.*;
+
+/**
+ * Delegates compilation to a {@link CompileDaemon}, starting one in background if none is running.
+ *
+ * If the daemon can't be used for any reason, {@link #compile} returns null and the caller is supposed to compile in-process.
+ */
+public class CompileDaemonClient {
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private static final Set<String> PATH_OPTIONS = new HashSet<String>(Arrays.asList("-d", "-module", "-kotlin-home", "-Xindex-cache"));
+    private static final Set<String> PATH_LIST_OPTIONS = new HashSet<String>(Arrays.asList("-classpath", "-cp", "-annotations"));
+
+    private CompileDaemonClient() {
+    }
+
+    public static boolean isDaemonRequested(@NotNull String[] args) {
+        return Arrays.asList(args).contains(CompileDaemonProtocol.DAEMON_OPTION);
+    }
+
+    /**
+     * @return the exit code of the compilation performed by the daemon, or null if the daemon was not available
+     */
+    @Nullable
+    public static ExitCode compile(@NotNull String[] args, @NotNull PrintStream errStream) {
+        if (!canBeCompiledByDaemon(args)) return null;
+
+        File compilerJar = PathUtil.getPathUtilJar();
+        if (!compilerJar.isFile()) return null;
+
+        File runFile = CompileDaemonProtocol.getRunFile(compilerJar);
+        CompileDaemonProtocol.Address address = CompileDaemonProtocol.readAddress(runFile);
+        if (address == null) {
+            startDaemon(compilerJar);
+            return null;
+        }
+
+        try {
+            return compile(address, makePathsAbsolute(args), errStream);
+        }
+        catch (IOException e) {
+            // The daemon has died without cleaning up or hung, a new one will be started next time.
+            // If the daemon has only been busy with other requests for too long, it writes the run file again
+            //noinspection ResultOfMethodCallIgnored
+            runFile.delete();
+            return null;
+        }
+    }
+
+    // REPL and scripts interact with the console, and the help is cheap anyway
+    private static boolean canBeCompiledByDaemon(@NotNull String[] args) {
+        boolean hasSources = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-script") || arg.equals("-help") || arg.equals("-h") || arg.equals("-X")) return false;
+            if (arg.equals("-module")) hasSources = true;
+            if (PATH_OPTIONS.contains(arg) || PATH_LIST_OPTIONS.contains(arg)) {
+                i++;
+            }
+            else if (!arg.startsWith("-")) {
+                hasSources = true;
+            }
+        }
+        return hasSources;
+    }
+
+    @NotNull
+    static ExitCode compile(
+            @NotNull CompileDaemonProtocol.Address address,
+            @NotNull List<String> args,
+            @NotNull PrintStream errStream
+    ) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getByName(null), address.port), CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(CompileDaemonProtocol.READ_TIMEOUT_MILLIS);
+
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            request.writeLong(address.token);
+            CompileDaemonProtocol.writeString(request, new File(".").getAbsoluteFile().getParent());
+            request.writeInt(args.size());
+            for (String arg : args) {
+                CompileDaemonProtocol.writeString(request, arg);
+            }
+            request.flush();
+
+            DataInputStream response = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            byte frame;
+            while ((frame = response.readByte()) == CompileDaemonProtocol.HEARTBEAT) {
+                // The compilation is still in progress
+            }
+            if (frame != CompileDaemonProtocol.RESULT) throw new IOException("Unexpected response frame: " + frame);
+
+            byte[] output = CompileDaemonProtocol.readBytes(response);
+            int code = response.readInt();
+
+            errStream.print(new String(output, "UTF-8"));
+            errStream.flush();
+
+            for (ExitCode exitCode : ExitCode.values()) {
+                if (exitCode.getCode() == code) return exitCode;
+            }
+            return ExitCode.INTERNAL_ERROR;
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    // The daemon has a different working directory, so all paths are passed to it in the absolute form
+    @NotNull
+    private static List<String> makePathsAbsolute(@NotNull String[] args) {
+        List<String> result = new ArrayList<String>(args.length);
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            result.add(arg);
+            if (i + 1 < args.length && PATH_OPTIONS.contains(arg)) {
+                result.add(absolutePath(args[++i]));
+            }
+            else if (i + 1 < args.length && PATH_LIST_OPTIONS.contains(arg)) {
+                List<String> paths = new ArrayList<String>();
+                for (String path : Splitter.on(File.pathSeparatorChar).split(args[++i])) {
+                    paths.add(absolutePath(path));
+                }
+                result.add(Joiner.on(File.pathSeparatorChar).join(paths));
+            }
+            else if (!arg.startsWith("-")) {
+                result.set(result.size() - 1, absolutePath(arg));
+            }
+        }
+        return result;
+    }
+
+    @NotNull
+    private static String absolutePath(@NotNull String path) {
+        return new File(path).getAbsolutePath();
+    }
+
+    private static void startDaemon(@NotNull File compilerJar) {
+        KotlinPaths paths = PathUtil.getKotlinPathsForCompiler();
+        File preloaderJar = new File(paths.getLibPath(), "kotlin-preloader.jar");
+        if (!preloaderJar.isFile()) return;
+
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        long maxHeapMegabytes = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+
+        ProcessBuilder builder = new ProcessBuilder(
+                java, "-Xmx" + maxHeapMegabytes + "m", "-Djava.awt.headless=true",
+                "-cp", preloaderJar.getPath(), "org.jetbrains.kotlin.preloading.Preloader",
+                compilerJar.getPath(), CompileDaemon.class.getName(), "4096", "notime"
+        );
+        builder.redirectErrorStream(true);
+        try {
+            Process process = builder.start();
+            // The daemon outlives this process and doesn't write anything, so its streams are not needed
+            process.getOutputStream().close();
+            process.getInputStream().close();
+        }
+        catch (IOException e) {
+            // The compilation is performed in-process anyway
+        }
+    }
+}
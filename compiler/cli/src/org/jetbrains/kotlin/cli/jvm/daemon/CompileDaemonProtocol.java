@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.daemon;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.Charset;
+
+/**
+ * Wire format shared by {@link CompileDaemon} and {@link CompileDaemonClient}.
+ *
+ * The daemon listens on a loopback port and publishes the port and a random token in a run file.
+ * A request is: token, client working directory, argument count, arguments.
+ * A response is a sequence of {@link #HEARTBEAT} frames sent every {@link #HEARTBEAT_INTERVAL_MILLIS} while the compilation
+ * is in progress, followed by a {@link #RESULT} frame: compiler output (as rendered for the client's working directory), exit code.
+ * Both sides give up on a connection which has been silent for {@link #READ_TIMEOUT_MILLIS}.
+ * Strings are written as UTF-8 bytes prefixed with their length, since class paths may exceed the limit of writeUTF
+ */
+final class CompileDaemonProtocol {
+    public static final String DAEMON_OPTION = "-Xdaemon";
+
+    public static final byte HEARTBEAT = 0;
+    public static final byte RESULT = 1;
+
+    public static final int HEARTBEAT_INTERVAL_MILLIS = 10 * 1000;
+    public static final int READ_TIMEOUT_MILLIS = 6 * HEARTBEAT_INTERVAL_MILLIS;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private CompileDaemonProtocol() {
+    }
+
+    public static class Address {
+        public final int port;
+        public final long token;
+
+        public Address(int port, long token) {
+            this.port = port;
+            this.token = token;
+        }
+    }
+
+    /**
+     * Daemons are keyed by the compiler jar and its timestamp, so that a daemon never serves requests for another compiler version
+     */
+    @NotNull
+    public static File getRunFile(@NotNull File compilerJar) {
+        String key = compilerJar.getAbsolutePath() + ":" + compilerJar.lastModified();
+        File directory = new File(System.getProperty("user.home"), ".kotlin/daemon");
+        return new File(directory, "compiler-" + Integer.toHexString(key.hashCode()) + ".run");
+    }
+
+    @NotNull
+    public static File getLockFile(@NotNull File runFile) {
+        return new File(runFile.getParentFile(), FileUtil.getNameWithoutExtension(runFile) + ".lock");
+    }
+
+    public static void writeAddress(@NotNull File runFile, @NotNull Address address) throws IOException {
+        File tmpFile = new File(runFile.getPath() + ".tmp");
+        FileUtil.writeToFile(tmpFile, address.port + " " + address.token);
+        // Only the current user may connect to the daemon
+        //noinspection ResultOfMethodCallIgnored
+        tmpFile.setReadable(false, false);
+        //noinspection ResultOfMethodCallIgnored
+        tmpFile.setReadable(true, true);
+        FileUtil.rename(tmpFile, runFile);
+    }
+
+    @Nullable
+    public static Address readAddress(@NotNull File runFile) {
+        if (!runFile.isFile()) return null;
+        try {
+            String[] parts = FileUtil.loadFile(runFile).trim().split(" ");
+            if (parts.length != 2) return null;
+            return new Address(Integer.parseInt(parts[0]), Long.parseLong(parts[1]));
+        }
+        catch (IOException e) {
+            return null;
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static void writeString(@NotNull DataOutputStream output, @NotNull String string) throws IOException {
+        writeBytes(output, string.getBytes(UTF_8));
+    }
+
+    @NotNull
+    public static String readString(@NotNull DataInputStream input) throws IOException {
+        return new String(readBytes(input), UTF_8);
+    }
+
+    public static void writeBytes(@NotNull DataOutputStream output, @NotNull byte[] bytes) throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    @NotNull
+    public static byte[] readBytes(@NotNull DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) throw new IOException("Negative length: " + length);
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+}
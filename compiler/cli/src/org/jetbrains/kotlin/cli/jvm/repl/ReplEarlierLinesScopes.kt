@@ -0,0 +1,182 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.repl
+
+import org.jetbrains.kotlin.descriptors.ClassifierDescriptor
+import org.jetbrains.kotlin.descriptors.DeclarationDescriptor
+import org.jetbrains.kotlin.descriptors.FunctionDescriptor
+import org.jetbrains.kotlin.descriptors.PackageViewDescriptor
+import org.jetbrains.kotlin.descriptors.ScriptDescriptor
+import org.jetbrains.kotlin.descriptors.VariableDescriptor
+import org.jetbrains.kotlin.name.Name
+import org.jetbrains.kotlin.psi.JetNamedFunction
+import org.jetbrains.kotlin.psi.JetPsiUtil
+import org.jetbrains.kotlin.psi.JetScript
+import org.jetbrains.kotlin.resolve.scopes.DescriptorKindFilter
+import org.jetbrains.kotlin.resolve.scopes.JetScope
+import org.jetbrains.kotlin.resolve.scopes.JetScopeImpl
+import org.jetbrains.kotlin.utils.Printer
+import java.util.ArrayList
+import java.util.HashMap
+import java.util.LinkedHashSet
+
+/**
+ * Declarations and imports of all REPL lines, indexed by name.
+ *
+ * Each line used to see the scope of the previous line, which saw the line before it, and so on, so that name lookups
+ * and the implicit receivers of a line grew with the session. [getScopeForNextLine] is a flat view of the lines analyzed so far,
+ * later lines first. Receivers of earlier scripts are not exposed: members of an earlier line are called on the receiver
+ * of their own script, and the receiver of the line being analyzed is enough to make them applicable.
+ */
+class ReplEarlierLinesScopes {
+    private val scripts = ArrayList<ScriptDescriptor>()
+    private val variables = HashMap<Name, MutableList<LineEntry<VariableDescriptor>>>()
+    private val properties = HashMap<Name, MutableList<LineEntry<VariableDescriptor>>>()
+    private val functions = HashMap<Name, MutableList<LineEntry<FunctionDescriptor>>>()
+    private val classifiers = HashMap<Name, MutableList<LineEntry<ClassifierDescriptor>>>()
+    private val importScopes = ArrayList<LineEntry<JetScope>>()
+
+    fun isEmpty() = scripts.isEmpty()
+
+    /**
+     * @param lineScope scope of the script's body, its own declarations are added
+     * @param lineImportScopes scopes of the line's import directives
+     */
+    fun addLine(script: ScriptDescriptor, jetScript: JetScript, lineScope: JetScope, lineImportScopes: List<JetScope>) {
+        val line = scripts.size()
+        scripts.add(script)
+
+        val names = LinkedHashSet<Name>()
+        lineScope.getOwnDeclaredDescriptors().mapTo(names) { it.getName() }
+        jetScript.getDeclarations().filterIsInstance<JetNamedFunction>().mapTo(names) { JetPsiUtil.safeName(it.getName()) }
+
+        for (name in names) {
+            val variable = lineScope.getLocalVariable(name)
+            if (variable != null && variable.getContainingDeclaration() == script) {
+                variables.add(name, LineEntry(line, variable))
+            }
+            val classifier = lineScope.getClassifier(name)
+            if (classifier != null && classifier.getContainingDeclaration() == script) {
+                classifiers.add(name, LineEntry(line, classifier))
+            }
+            for (property in lineScope.getProperties(name)) {
+                if (property.getContainingDeclaration() == script) properties.add(name, LineEntry(line, property))
+            }
+            for (function in lineScope.getFunctions(name)) {
+                if (function.getContainingDeclaration() == script) functions.add(name, LineEntry(line, function))
+            }
+        }
+
+        for (importScope in lineImportScopes) {
+            importScopes.add(LineEntry(line, importScope))
+        }
+    }
+
+    /**
+     * The view doesn't change when more lines are added, so that lazy resolve of a line never sees the lines after it
+     */
+    fun getScopeForNextLine(): JetScope {
+        assert(!isEmpty(), "No lines were added")
+        return EarlierLinesScope(scripts.size())
+    }
+
+    private class LineEntry<T>(val line: Int, val value: T)
+
+    private fun <T> MutableMap<Name, MutableList<LineEntry<T>>>.add(name: Name, entry: LineEntry<T>) {
+        getOrPut(name) { ArrayList<LineEntry<T>>() }.add(entry)
+    }
+
+    private inner class EarlierLinesScope(private val lineCount: Int) : JetScopeImpl() {
+        // Later lines first
+        private fun <T> visible(entries: List<LineEntry<T>>?): List<T> {
+            if (entries == null) return listOf()
+            val result = ArrayList<T>()
+            for (i in entries.size() - 1 downTo 0) {
+                val entry = entries[i]
+                if (entry.line < lineCount) result.add(entry.value)
+            }
+            return result
+        }
+
+        private fun <T> visible(entries: Map<Name, List<LineEntry<T>>>, nameFilter: (Name) -> Boolean): List<T> {
+            val result = ArrayList<T>()
+            for ((name, entriesWithName) in entries) {
+                if (nameFilter(name)) result.addAll(visible(entriesWithName))
+            }
+            return result
+        }
+
+        override fun getContainingDeclaration(): DeclarationDescriptor = scripts[lineCount - 1]
+
+        override fun getLocalVariable(name: Name): VariableDescriptor? = visible(variables[name]).firstOrNull()
+
+        override fun getClassifier(name: Name): ClassifierDescriptor? {
+            val classifier = visible(classifiers[name]).firstOrNull()
+            if (classifier != null) return classifier
+
+            for (importScope in visible(importScopes)) {
+                val importedClassifier = importScope.getClassifier(name)
+                if (importedClassifier != null) return importedClassifier
+            }
+            return null
+        }
+
+        override fun getPackage(name: Name): PackageViewDescriptor? {
+            for (importScope in visible(importScopes)) {
+                val importedPackage = importScope.getPackage(name)
+                if (importedPackage != null) return importedPackage
+            }
+            return null
+        }
+
+        override fun getProperties(name: Name): Collection<VariableDescriptor> {
+            val result = LinkedHashSet<VariableDescriptor>(visible(properties[name]))
+            visible(importScopes).flatMapTo(result) { it.getProperties(name) }
+            return result
+        }
+
+        override fun getFunctions(name: Name): Collection<FunctionDescriptor> {
+            val result = LinkedHashSet<FunctionDescriptor>(visible(functions[name]))
+            visible(importScopes).flatMapTo(result) { it.getFunctions(name) }
+            return result
+        }
+
+        override fun getDescriptors(kindFilter: DescriptorKindFilter, nameFilter: (Name) -> Boolean): Collection<DeclarationDescriptor> {
+            val result = LinkedHashSet<DeclarationDescriptor>()
+            result.addAll(visible(variables, nameFilter))
+            result.addAll(visible(properties, nameFilter))
+            result.addAll(visible(functions, nameFilter))
+            result.addAll(visible(classifiers, nameFilter))
+            visible(importScopes).flatMapTo(result) { it.getDescriptors(kindFilter, nameFilter) }
+            return result
+        }
+
+        override fun toString() = "Earlier REPL lines ($lineCount)"
+
+        override fun printScopeStructure(p: Printer) {
+            p.println(javaClass.getSimpleName(), ": ", toString(), " {")
+            p.pushIndent()
+
+            for (importScope in visible(importScopes)) {
+                importScope.printScopeStructure(p)
+            }
+
+            p.popIndent()
+            p.println("}")
+        }
+    }
+}
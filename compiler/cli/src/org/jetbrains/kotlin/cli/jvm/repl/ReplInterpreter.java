@@ -21,15 +21,14 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.vfs.CharsetToolkit;
-import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiFileFactory;
 import com.intellij.psi.impl.PsiFileFactoryImpl;
 import com.intellij.psi.search.ProjectScope;
 import com.intellij.testFramework.LightVirtualFile;
 import com.intellij.util.SmartList;
+import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.backend.common.output.OutputFile;
@@ -44,26 +43,35 @@ import org.jetbrains.kotlin.cli.jvm.compiler.JetCoreEnvironment;
 import org.jetbrains.kotlin.codegen.ClassBuilderFactories;
 import org.jetbrains.kotlin.codegen.CompilationErrorHandler;
 import org.jetbrains.kotlin.codegen.KotlinCodegenFacade;
+import org.jetbrains.kotlin.codegen.context.ScriptContext;
 import org.jetbrains.kotlin.codegen.state.GenerationState;
 import org.jetbrains.kotlin.config.CompilerConfiguration;
 import org.jetbrains.kotlin.context.ContextPackage;
 import org.jetbrains.kotlin.context.GlobalContextImpl;
+import org.jetbrains.kotlin.descriptors.PropertyAccessorDescriptor;
+import org.jetbrains.kotlin.descriptors.PropertyDescriptor;
 import org.jetbrains.kotlin.descriptors.ScriptDescriptor;
+import org.jetbrains.kotlin.descriptors.VariableDescriptor;
 import org.jetbrains.kotlin.descriptors.impl.CompositePackageFragmentProvider;
 import org.jetbrains.kotlin.descriptors.impl.ModuleDescriptorImpl;
 import org.jetbrains.kotlin.di.InjectorForReplWithJava;
 import org.jetbrains.kotlin.idea.JetLanguage;
 import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.parsing.JetParserDefinition;
-import org.jetbrains.kotlin.psi.JetFile;
-import org.jetbrains.kotlin.psi.JetScript;
+import org.jetbrains.kotlin.psi.*;
 import org.jetbrains.kotlin.resolve.*;
+import org.jetbrains.kotlin.resolve.calls.callUtil.CallUtilPackage;
+import org.jetbrains.kotlin.resolve.calls.model.ResolvedCall;
+import org.jetbrains.kotlin.resolve.calls.model.VariableAsFunctionResolvedCall;
 import org.jetbrains.kotlin.resolve.jvm.JvmClassName;
 import org.jetbrains.kotlin.resolve.jvm.TopDownAnalyzerFacadeForJVM;
+import org.jetbrains.kotlin.resolve.lazy.LazyFileScope;
 import org.jetbrains.kotlin.resolve.lazy.ScopeProvider;
 import org.jetbrains.kotlin.resolve.lazy.data.JetClassLikeInfo;
 import org.jetbrains.kotlin.resolve.lazy.declarations.*;
 import org.jetbrains.kotlin.resolve.scopes.JetScope;
+import org.jetbrains.kotlin.resolve.scopes.receivers.ReceiverValue;
+import org.jetbrains.kotlin.resolve.scopes.receivers.ScriptReceiver;
 import org.jetbrains.kotlin.types.JetType;
 import org.jetbrains.kotlin.utils.UtilsPackage;
 import org.jetbrains.org.objectweb.asm.Type;
@@ -75,21 +83,16 @@ import java.lang.reflect.Field;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
 import static org.jetbrains.kotlin.codegen.AsmUtil.asmTypeByFqNameWithoutInnerClasses;
 import static org.jetbrains.kotlin.codegen.binding.CodegenBinding.registerClassNameForScript;
-import static org.jetbrains.kotlin.resolve.DescriptorToSourceUtils.descriptorToDeclaration;
 
 public class ReplInterpreter {
     private int lineNumber = 0;
 
-    @Nullable
-    private JetScope lastLineScope;
-    private final List<EarlierLine> earlierLines = Lists.newArrayList();
+    private final ReplEarlierLinesScopes earlierLinesScopes = new ReplEarlierLinesScopes();
+    private final Map<ScriptDescriptor, EarlierLine> earlierLines = new LinkedHashMap<ScriptDescriptor, EarlierLine>();
     private final List<String> previousIncompleteLines = Lists.newArrayList();
     private final ReplClassLoader classLoader;
 
@@ -125,7 +128,9 @@ public class ReplInterpreter {
             @NotNull
             @Override
             public List<JetScope> scopes(@NotNull JetFile file) {
-                return lastLineScope != null ? new SmartList<JetScope>(lastLineScope) : Collections.<JetScope>emptyList();
+                return earlierLinesScopes.isEmpty()
+                       ? Collections.<JetScope>emptyList()
+                       : new SmartList<JetScope>(earlierLinesScopes.getScopeForNextLine());
             }
         };
 
@@ -278,16 +283,17 @@ public class ReplInterpreter {
             return LineResult.error(errorCollector.getString());
         }
 
-        List<Pair<ScriptDescriptor, Type>> earlierScripts = Lists.newArrayList();
-
-        for (EarlierLine earlierLine : earlierLines) {
-            earlierScripts.add(Pair.create(earlierLine.getScriptDescriptor(), earlierLine.getClassType()));
+        List<EarlierLine> referencedLines = getReferencedEarlierLines(psiFile);
+        GenerationState state;
+        try {
+            state = generate(psiFile, scriptClassType, referencedLines);
+        }
+        catch (RuntimeException e) {
+            if (!isUnregisteredScriptError(e)) throw e;
+            // A use of an earlier line was not found by getReferencedEarlierLines(), so the line is compiled against all of them
+            referencedLines = new ArrayList<EarlierLine>(earlierLines.values());
+            state = generate(psiFile, scriptClassType, referencedLines);
         }
-
-        GenerationState state = new GenerationState(psiFile.getProject(), ClassBuilderFactories.BINARIES,
-                                                    module, trace.getBindingContext(), Collections.singletonList(psiFile));
-
-        compileScript(psiFile.getScript(), scriptClassType, earlierScripts, state, CompilationErrorHandler.THROW_EXCEPTION);
 
         for (OutputFile outputFile : state.getFactory().asList()) {
             classLoader.addClass(JvmClassName.byInternalName(outputFile.getRelativePath().replaceFirst("\\.class$", "")), outputFile.asByteArray());
@@ -296,12 +302,12 @@ public class ReplInterpreter {
         try {
             Class<?> scriptClass = classLoader.loadClass(scriptFqName.asString());
 
-            Class<?>[] constructorParams = new Class<?>[earlierLines.size()];
-            Object[] constructorArgs = new Object[earlierLines.size()];
+            Class<?>[] constructorParams = new Class<?>[referencedLines.size()];
+            Object[] constructorArgs = new Object[referencedLines.size()];
 
-            for (int i = 0; i < earlierLines.size(); ++i) {
-                constructorParams[i] = earlierLines.get(i).getScriptClass();
-                constructorArgs[i] = earlierLines.get(i).getScriptInstance();
+            for (int i = 0; i < referencedLines.size(); ++i) {
+                constructorParams[i] = referencedLines.get(i).getScriptClass();
+                constructorArgs[i] = referencedLines.get(i).getScriptInstance();
             }
 
             Constructor<?> scriptInstanceConstructor = scriptClass.getConstructor(constructorParams);
@@ -316,7 +322,9 @@ public class ReplInterpreter {
             rvField.setAccessible(true);
             Object rv = rvField.get(scriptInstance);
 
-            earlierLines.add(new EarlierLine(line, scriptDescriptor, scriptClass, scriptInstance, scriptClassType));
+            earlierLines.put(scriptDescriptor, new EarlierLine(line, scriptDescriptor, scriptClass, scriptInstance, scriptClassType));
+            // Registered once for all the following lines, which may use declarations of this line
+            registerClassNameForScript(trace, psiFile.getScript(), scriptClassType);
 
             JetType returnType = scriptDescriptor.getScriptCodeDescriptor().getReturnType();
             return LineResult.successful(rv, returnType != null && KotlinBuiltIns.isUnit(returnType));
@@ -330,6 +338,91 @@ public class ReplInterpreter {
         }
     }
 
+    @NotNull
+    private GenerationState generate(@NotNull JetFile psiFile, @NotNull Type scriptClassType, @NotNull List<EarlierLine> earlierLines) {
+        List<ScriptDescriptor> earlierScripts = new ArrayList<ScriptDescriptor>(earlierLines.size());
+        for (EarlierLine earlierLine : earlierLines) {
+            earlierScripts.add(earlierLine.getScriptDescriptor());
+        }
+
+        GenerationState state = new GenerationState(psiFile.getProject(), ClassBuilderFactories.BINARIES,
+                                                    module, trace.getBindingContext(), Collections.singletonList(psiFile));
+
+        //noinspection ConstantConditions
+        compileScript(psiFile.getScript(), scriptClassType, earlierScripts, state, CompilationErrorHandler.THROW_EXCEPTION);
+        return state;
+    }
+
+    private static boolean isUnregisteredScriptError(@NotNull Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ScriptContext.UnregisteredScriptException) return true;
+        }
+        return false;
+    }
+
+    // A script class has a field for each earlier script it uses, so only the lines which are actually used are passed to it.
+    // Otherwise the size of each new class and the number of its constructor parameters would grow with the session
+    @NotNull
+    private List<EarlierLine> getReferencedEarlierLines(@NotNull JetFile psiFile) {
+        final BindingContext bindingContext = trace.getBindingContext();
+        final Set<EarlierLine> result = new LinkedHashSet<EarlierLine>();
+        psiFile.accept(new JetTreeVisitorVoid() {
+            @Override
+            public void visitJetElement(@NotNull JetElement element) {
+                addEarlierLines(CallUtilPackage.getResolvedCall(element, bindingContext));
+                if (element instanceof JetExpression) {
+                    // Conventions, their calls are not recorded for the element
+                    JetExpression expression = (JetExpression) element;
+                    addEarlierLines(bindingContext.get(BindingContext.LOOP_RANGE_ITERATOR_RESOLVED_CALL, expression));
+                    addEarlierLines(bindingContext.get(BindingContext.LOOP_RANGE_HAS_NEXT_RESOLVED_CALL, expression));
+                    addEarlierLines(bindingContext.get(BindingContext.LOOP_RANGE_NEXT_RESOLVED_CALL, expression));
+                    addEarlierLines(bindingContext.get(BindingContext.INDEXED_LVALUE_GET, expression));
+                    addEarlierLines(bindingContext.get(BindingContext.INDEXED_LVALUE_SET, expression));
+                }
+                super.visitJetElement(element);
+            }
+
+            @Override
+            public void visitMultiDeclarationEntry(@NotNull JetMultiDeclarationEntry multiDeclarationEntry) {
+                addEarlierLines(bindingContext.get(BindingContext.COMPONENT_RESOLVED_CALL, multiDeclarationEntry));
+                super.visitMultiDeclarationEntry(multiDeclarationEntry);
+            }
+
+            @Override
+            public void visitProperty(@NotNull JetProperty property) {
+                VariableDescriptor descriptor = bindingContext.get(BindingContext.VARIABLE, property);
+                if (descriptor instanceof PropertyDescriptor) {
+                    PropertyDescriptor propertyDescriptor = (PropertyDescriptor) descriptor;
+                    addEarlierLines(bindingContext.get(BindingContext.DELEGATED_PROPERTY_PD_RESOLVED_CALL, propertyDescriptor));
+                    for (PropertyAccessorDescriptor accessor : propertyDescriptor.getAccessors()) {
+                        addEarlierLines(bindingContext.get(BindingContext.DELEGATED_PROPERTY_RESOLVED_CALL, accessor));
+                    }
+                }
+                super.visitProperty(property);
+            }
+
+            private void addEarlierLines(@Nullable ResolvedCall<?> resolvedCall) {
+                if (resolvedCall == null) return;
+
+                if (resolvedCall instanceof VariableAsFunctionResolvedCall) {
+                    addEarlierLines(((VariableAsFunctionResolvedCall) resolvedCall).getVariableCall());
+                    addEarlierLines(((VariableAsFunctionResolvedCall) resolvedCall).getFunctionCall());
+                    return;
+                }
+
+                addEarlierLine(resolvedCall.getDispatchReceiver());
+                addEarlierLine(resolvedCall.getExtensionReceiver());
+            }
+
+            private void addEarlierLine(@NotNull ReceiverValue receiver) {
+                if (receiver instanceof ScriptReceiver) {
+                    ContainerUtil.addIfNotNull(result, earlierLines.get(((ScriptReceiver) receiver).getDeclarationDescriptor()));
+                }
+            }
+        });
+        return new ArrayList<EarlierLine>(result);
+    }
+
     @NotNull
     private static String renderStackTrace(@NotNull Throwable cause) {
         StackTraceElement[] oldTrace = cause.getStackTrace();
@@ -370,11 +463,15 @@ public class ReplInterpreter {
         }
 
         ScriptDescriptor scriptDescriptor = context.getScripts().get(psiFile.getScript());
-        lastLineScope = trace.get(BindingContext.SCRIPT_SCOPE, scriptDescriptor);
-        if (lastLineScope == null) {
+        JetScope lineScope = trace.get(BindingContext.SCRIPT_SCOPE, scriptDescriptor);
+        if (lineScope == null) {
             throw new IllegalStateException("last line scope is not initialized");
         }
 
+        LazyFileScope fileScope = topDownAnalyzer.getCodeAnalyzer().getScopeProvider().getFileScope(psiFile);
+        //noinspection ConstantConditions
+        earlierLinesScopes.addLine(scriptDescriptor, psiFile.getScript(), lineScope, fileScope.getImportScopes());
+
         return scriptDescriptor;
     }
 
@@ -382,32 +479,17 @@ public class ReplInterpreter {
         classLoader.dumpClasses(out);
     }
 
-    private static void registerEarlierScripts(
-            @NotNull GenerationState state,
-            @NotNull List<Pair<ScriptDescriptor, Type>> earlierScripts
-    ) {
-        List<ScriptDescriptor> earlierScriptDescriptors = new ArrayList<ScriptDescriptor>(earlierScripts.size());
-        for (Pair<ScriptDescriptor, Type> pair : earlierScripts) {
-            ScriptDescriptor earlierDescriptor = pair.first;
-            Type earlierClassType = pair.second;
-
-            PsiElement jetScript = descriptorToDeclaration(earlierDescriptor);
-            if (jetScript != null) {
-                registerClassNameForScript(state.getBindingTrace(), (JetScript) jetScript, earlierClassType);
-                earlierScriptDescriptors.add(earlierDescriptor);
-            }
-        }
-        state.setEarlierScriptsForReplInterpreter(earlierScriptDescriptors);
-    }
-
+    /**
+     * @param earlierScripts scripts which the script uses, their class names must be registered in the binding context
+     */
     public static void compileScript(
             @NotNull JetScript script,
             @NotNull Type classType,
-            @NotNull List<Pair<ScriptDescriptor, Type>> earlierScripts,
+            @NotNull List<ScriptDescriptor> earlierScripts,
             @NotNull GenerationState state,
             @NotNull CompilationErrorHandler errorHandler
     ) {
-        registerEarlierScripts(state, earlierScripts);
+        state.setEarlierScriptsForReplInterpreter(earlierScripts);
         registerClassNameForScript(state.getBindingTrace(), script, classType);
 
         state.beforeCompile();
@@ -421,19 +503,14 @@ public class ReplInterpreter {
 
     private static class ScriptMutableDeclarationProviderFactory implements DeclarationProviderFactory {
         private DeclarationProviderFactory delegateFactory;
-        private AdaptablePackageMemberDeclarationProvider rootPackageProvider;
+        private final ReplPackageMemberDeclarationProvider rootPackageProvider = new ReplPackageMemberDeclarationProvider();
 
         public void setDelegateFactory(DeclarationProviderFactory delegateFactory) {
             this.delegateFactory = delegateFactory;
 
             PackageMemberDeclarationProvider provider = delegateFactory.getPackageMemberDeclarationProvider(FqName.ROOT);
-            if (rootPackageProvider == null) {
-                assert provider != null;
-                rootPackageProvider = new AdaptablePackageMemberDeclarationProvider(provider);
-            }
-            else {
-                rootPackageProvider.addDelegateProvider(provider);
-            }
+            assert provider != null;
+            rootPackageProvider.addProvider(provider);
         }
 
         @NotNull
@@ -451,21 +528,5 @@ public class ReplInterpreter {
 
             return this.delegateFactory.getPackageMemberDeclarationProvider(packageFqName);
         }
-
-        public static class AdaptablePackageMemberDeclarationProvider extends DelegatePackageMemberDeclarationProvider {
-            @NotNull
-            private PackageMemberDeclarationProvider delegateProvider;
-
-            public AdaptablePackageMemberDeclarationProvider(@NotNull PackageMemberDeclarationProvider delegateProvider) {
-                super(delegateProvider);
-                this.delegateProvider = delegateProvider;
-            }
-
-            public void addDelegateProvider(PackageMemberDeclarationProvider provider) {
-                delegateProvider = new CombinedPackageMemberDeclarationProvider(Lists.newArrayList(provider, delegateProvider));
-
-                setDelegate(delegateProvider);
-            }
-        }
     }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.repl
+
+import org.jetbrains.kotlin.name.Name
+import org.jetbrains.kotlin.psi.JetNamedDeclaration
+import org.jetbrains.kotlin.psi.JetScript
+import org.jetbrains.kotlin.resolve.ScriptNameUtil
+import org.jetbrains.kotlin.resolve.lazy.ResolveSessionUtils
+import org.jetbrains.kotlin.resolve.lazy.declarations.PackageMemberDeclarationProvider
+import org.jetbrains.kotlin.resolve.scopes.DescriptorKindFilter
+import org.jetbrains.kotlin.resolve.scopes.JetScope
+import java.util.ArrayList
+import java.util.HashMap
+
+/**
+ * Declarations of the root package made by all REPL lines, one provider per line.
+ *
+ * Lookups by name only ask the providers which declare something with this name, so that their cost doesn't grow
+ * with the number of lines. Later lines come first, as they used to in the chain of combined providers.
+ */
+class ReplPackageMemberDeclarationProvider : PackageMemberDeclarationProvider {
+    private val providers = ArrayList<PackageMemberDeclarationProvider>()
+    private val providersByName = HashMap<Name, MutableList<PackageMemberDeclarationProvider>>()
+
+    fun addProvider(provider: PackageMemberDeclarationProvider) {
+        providers.add(0, provider)
+
+        for (declaration in provider.getDeclarations(DescriptorKindFilter.ALL, JetScope.ALL_NAME_FILTER)) {
+            val name = when (declaration) {
+                is JetScript -> ScriptNameUtil.classNameForScript(declaration).shortName()
+                is JetNamedDeclaration -> ResolveSessionUtils.safeNameForLazyResolve(declaration)
+                else -> null
+            }
+            if (name == null) continue
+
+            val providersWithName = providersByName.getOrPut(name) { ArrayList<PackageMemberDeclarationProvider>() }
+            if (providersWithName.isEmpty() || providersWithName[0] != provider) {
+                providersWithName.add(0, provider)
+            }
+        }
+    }
+
+    private fun getProviders(name: Name): List<PackageMemberDeclarationProvider> =
+            providersByName[ResolveSessionUtils.safeNameForLazyResolve(name)] ?: listOf()
+
+    override fun getAllDeclaredSubPackages() = providers.flatMap { it.getAllDeclaredSubPackages() }
+
+    override fun getPackageFiles() = providers.flatMap { it.getPackageFiles() }
+
+    override fun getDeclarations(kindFilter: DescriptorKindFilter, nameFilter: (Name) -> Boolean)
+            = providers.flatMap { it.getDeclarations(kindFilter, nameFilter) }
+
+    override fun getFunctionDeclarations(name: Name) = getProviders(name).flatMap { it.getFunctionDeclarations(name) }
+
+    override fun getPropertyDeclarations(name: Name) = getProviders(name).flatMap { it.getPropertyDeclarations(name) }
+
+    override fun getClassOrObjectDeclarations(name: Name) = getProviders(name).flatMap { it.getClassOrObjectDeclarations(name) }
+}
@@ -32,6 +32,9 @@ import org.jetbrains.org.objectweb.asm.ClassVisitor;
 import org.jetbrains.org.objectweb.asm.FieldVisitor;
 import org.jetbrains.org.objectweb.asm.MethodVisitor;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 import static org.jetbrains.org.objectweb.asm.ClassReader.*;
@@ -76,11 +79,39 @@ public abstract class FileBasedKotlinClass implements KotlinJvmBinaryClass {
         public OuterAndInnerName get(@NotNull String name) {
             return map == null ? null : map.get(name);
         }
+
+        public void writeTo(@NotNull DataOutput output) throws IOException {
+            if (map == null) {
+                output.writeInt(0);
+                return;
+            }
+            output.writeInt(map.size());
+            for (Map.Entry<String, OuterAndInnerName> entry : map.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeUTF(entry.getValue().outerInternalName);
+                output.writeUTF(entry.getValue().innerSimpleName);
+            }
+        }
+
+        @NotNull
+        public static InnerClassesInfo readFrom(@NotNull DataInput input) throws IOException {
+            InnerClassesInfo result = new InnerClassesInfo();
+            int size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                result.add(input.readUTF(), input.readUTF(), input.readUTF());
+            }
+            return result;
+        }
     }
 
     @NotNull
     protected abstract byte[] getFileContents();
 
+    @NotNull
+    protected InnerClassesInfo getInnerClasses() {
+        return innerClasses;
+    }
+
     // TODO public to be accessible in class object of subclass, workaround for KT-3974
     @Nullable
     public static <T extends FileBasedKotlinClass> T create(
@@ -25,7 +25,21 @@ import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches results of reading Kotlin headers from class files.
+ *
+ * The last result is kept per thread, since the same file is usually requested several times in a row. Behind it there's a shared
+ * map of at most {@link #MAX_SHARED_ENTRIES} recently used files, including the files which turned out not to be Kotlin classes.
+ * Optionally, results for class files in jars are also persisted with {@link KotlinBinaryClassDiskCache}.
+ */
 public final class KotlinBinaryClassCache implements Disposable {
+    private static final int MAX_SHARED_ENTRIES = 8192;
+
     private static class RequestCache {
         VirtualFile virtualFile;
         long modificationStamp;
@@ -40,6 +54,16 @@ public final class KotlinBinaryClassCache implements Disposable {
         }
     }
 
+    private static class SharedEntry {
+        final long modificationStamp;
+        final VirtualFileKotlinClass virtualFileKotlinClass;
+
+        SharedEntry(long modificationStamp, @Nullable VirtualFileKotlinClass virtualFileKotlinClass) {
+            this.modificationStamp = modificationStamp;
+            this.virtualFileKotlinClass = virtualFileKotlinClass;
+        }
+    }
+
     private final ThreadLocal<RequestCache> cache =
             new ThreadLocal<RequestCache>() {
                 @Override
@@ -48,31 +72,120 @@ public final class KotlinBinaryClassCache implements Disposable {
                 }
             };
 
+    // Guarded by itself
+    private final Map<VirtualFile, SharedEntry> sharedCache = new LinkedHashMap<VirtualFile, SharedEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<VirtualFile, SharedEntry> eldest) {
+            return size() > MAX_SHARED_ENTRIES;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Nullable
+    private volatile KotlinBinaryClassDiskCache diskCache = null;
+
+    @NotNull
+    public static KotlinBinaryClassCache getInstance() {
+        return ServiceManager.getService(KotlinBinaryClassCache.class);
+    }
+
     @Nullable
     public static KotlinJvmBinaryClass getKotlinBinaryClass(@NotNull final VirtualFile file) {
         if (file.getFileType() != JavaClassFileType.INSTANCE) return null;
 
-        KotlinBinaryClassCache service = ServiceManager.getService(KotlinBinaryClassCache.class);
+        KotlinBinaryClassCache service = getInstance();
         RequestCache requestCache = service.cache.get();
 
         if (file.getModificationStamp() == requestCache.modificationStamp && file.equals(requestCache.virtualFile)) {
             return requestCache.virtualFileKotlinClass;
         }
         else {
-            VirtualFileKotlinClass aClass = ApplicationManager.getApplication().runReadAction(new Computable<VirtualFileKotlinClass>() {
-                @Override
-                public VirtualFileKotlinClass compute() {
-                    //noinspection deprecation
-                    return VirtualFileKotlinClass.OBJECT$.create(file);
-                }
-            });
+            return requestCache.cache(file, service.getFromSharedCache(file));
+        }
+    }
 
-            return requestCache.cache(file, aClass);
+    @Nullable
+    private VirtualFileKotlinClass getFromSharedCache(@NotNull VirtualFile file) {
+        long modificationStamp = file.getModificationStamp();
+        synchronized (sharedCache) {
+            SharedEntry entry = sharedCache.get(file);
+            if (entry != null && entry.modificationStamp == modificationStamp) {
+                hits.incrementAndGet();
+                return entry.virtualFileKotlinClass;
+            }
+        }
+
+        VirtualFileKotlinClass aClass = read(file);
+
+        synchronized (sharedCache) {
+            sharedCache.put(file, new SharedEntry(modificationStamp, aClass));
+        }
+        return aClass;
+    }
+
+    @Nullable
+    private VirtualFileKotlinClass read(@NotNull final VirtualFile file) {
+        KotlinBinaryClassDiskCache diskCache = this.diskCache;
+        if (diskCache != null) {
+            KotlinBinaryClassDiskCache.CachedValue cached = diskCache.load(file);
+            if (cached != null) {
+                diskHits.incrementAndGet();
+                return cached.value;
+            }
+        }
+
+        misses.incrementAndGet();
+        VirtualFileKotlinClass aClass = ApplicationManager.getApplication().runReadAction(new Computable<VirtualFileKotlinClass>() {
+            @Override
+            public VirtualFileKotlinClass compute() {
+                //noinspection deprecation
+                return VirtualFileKotlinClass.OBJECT$.create(file);
+            }
+        });
+
+        if (diskCache != null) {
+            diskCache.store(file, aClass);
+        }
+        return aClass;
+    }
+
+    /**
+     * Sets the directory where results for class files in jars are persisted, or disables persisting if it's null.
+     * Results collected so far for the previous directory are saved.
+     * It's called for each compilation, so jars which may have changed since the previous one are checked again
+     */
+    public void setDiskCacheDirectory(@Nullable File directory) {
+        KotlinBinaryClassDiskCache oldDiskCache = diskCache;
+        if (oldDiskCache != null && oldDiskCache.getDirectory().equals(directory)) {
+            oldDiskCache.recheckJars();
+            return;
+        }
+
+        diskCache = directory != null ? new KotlinBinaryClassDiskCache(directory) : null;
+        if (oldDiskCache != null) {
+            oldDiskCache.save();
+        }
+    }
+
+    public void saveDiskCache() {
+        KotlinBinaryClassDiskCache diskCache = this.diskCache;
+        if (diskCache != null) {
+            diskCache.save();
         }
     }
 
+    @NotNull
+    public String getStatistics() {
+        return "Binary class cache: " + hits.get() + " hits, " + diskHits.get() + " disk hits, " + misses.get() + " misses";
+    }
+
     @Override
     public void dispose() {
+        saveDiskCache();
+
         // This is only relevant for tests. We create a new instance of Application for each test, and so a new instance of this service is
         // also created for each test. However all tests share the same event dispatch thread, which would collect all instances of this
         // thread-local if they're not removed properly. Each instance would transitively retain VFS resulting in OutOfMemoryError
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.load.kotlin;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.load.java.JvmAnnotationNames.KotlinSyntheticClass;
+import org.jetbrains.kotlin.load.kotlin.header.KotlinClassHeader;
+import org.jetbrains.kotlin.name.ClassId;
+import org.jetbrains.kotlin.name.FqName;
+import org.jetbrains.kotlin.name.FqNameUnsafe;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persists what {@link KotlinBinaryClassCache} has learned about class files in jars, so that unchanged library class files
+ * are not read and visited again by the next compilation.
+ *
+ * There's one file per jar, valid as long as the jar's length and timestamp are the same.
+ * A jar is checked once, when it's used for the first time after the cache is created or {@link #recheckJars()} is called.
+ * For each entry it records either that the class file has no Kotlin header, or its class id, header and inner classes.
+ * Class files outside of jars are usually outputs of the build being run and are never persisted.
+ */
+public class KotlinBinaryClassDiskCache {
+    private static final String JAR_SEPARATOR = "!/";
+    private static final int MAGIC = 0x4b424343;
+    private static final int VERSION = 1;
+
+    private static final Entry NOT_KOTLIN = new Entry(null, null, null);
+
+    private final File directory;
+    private final Map<String, JarTable> tables = new HashMap<String, JarTable>();
+
+    public KotlinBinaryClassDiskCache(@NotNull File directory) {
+        this.directory = directory;
+    }
+
+    @NotNull
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return null if nothing is known about the file, {@link CachedValue#NULL} if it's known to be not a Kotlin class
+     */
+    @Nullable
+    public synchronized CachedValue load(@NotNull VirtualFile file) {
+        String path = file.getPath();
+        int separator = path.indexOf(JAR_SEPARATOR);
+        if (separator < 0) return null;
+
+        JarTable table = getTable(path.substring(0, separator));
+        if (table == null) return null;
+
+        Entry entry = table.entries.get(path.substring(separator + JAR_SEPARATOR.length()));
+        if (entry == null) return null;
+        if (entry == NOT_KOTLIN) return CachedValue.NULL;
+
+        //noinspection ConstantConditions
+        return new CachedValue(VirtualFileKotlinClass.OBJECT$.create(file, entry.classId, entry.header, entry.innerClasses));
+    }
+
+    public synchronized void store(@NotNull VirtualFile file, @Nullable VirtualFileKotlinClass aClass) {
+        String path = file.getPath();
+        int separator = path.indexOf(JAR_SEPARATOR);
+        if (separator < 0) return;
+
+        JarTable table = getTable(path.substring(0, separator));
+        if (table == null) return;
+
+        Entry entry = aClass == null
+                      ? NOT_KOTLIN
+                      : new Entry(aClass.getClassId(), aClass.getClassHeader(), aClass.getInnerClasses());
+        table.entries.put(path.substring(separator + JAR_SEPARATOR.length()), entry);
+        table.dirty = true;
+    }
+
+    /**
+     * Makes the cache check each jar for changes again the next time it's used, e.g. when a daemon starts another compilation
+     */
+    public synchronized void recheckJars() {
+        for (JarTable table : tables.values()) {
+            table.checked = false;
+        }
+    }
+
+    public synchronized void save() {
+        for (JarTable table : tables.values()) {
+            if (!table.dirty) continue;
+            try {
+                table.save();
+                table.dirty = false;
+            }
+            catch (IOException e) {
+                // The class files will be read again next time
+            }
+        }
+    }
+
+    @Nullable
+    private JarTable getTable(@NotNull String jarPath) {
+        JarTable table = tables.get(jarPath);
+        if (table != null && table.checked) return table;
+
+        File jar = new File(jarPath);
+        if (table == null || table.jarLength != jar.length() || table.jarTimestamp != jar.lastModified()) {
+            if (!jar.isFile()) return null;
+
+            File file = new File(directory, jar.getName() + "-" + Integer.toHexString(jarPath.hashCode()) + ".classes");
+            table = new JarTable(jarPath, jar.length(), jar.lastModified(), file);
+            table.load();
+            tables.put(jarPath, table);
+        }
+        table.checked = true;
+        return table;
+    }
+
+    public static class CachedValue {
+        public static final CachedValue NULL = new CachedValue(null);
+
+        public final VirtualFileKotlinClass value;
+
+        private CachedValue(@Nullable VirtualFileKotlinClass value) {
+            this.value = value;
+        }
+    }
+
+    private static class Entry {
+        final ClassId classId;
+        final KotlinClassHeader header;
+        final FileBasedKotlinClass.InnerClassesInfo innerClasses;
+
+        Entry(
+                @Nullable ClassId classId,
+                @Nullable KotlinClassHeader header,
+                @Nullable FileBasedKotlinClass.InnerClassesInfo innerClasses
+        ) {
+            this.classId = classId;
+            this.header = header;
+            this.innerClasses = innerClasses;
+        }
+    }
+
+    private static class JarTable {
+        final String jarPath;
+        final long jarLength;
+        final long jarTimestamp;
+        final File file;
+        final Map<String, Entry> entries = new HashMap<String, Entry>();
+        boolean dirty = false;
+        boolean checked = false;
+
+        JarTable(@NotNull String jarPath, long jarLength, long jarTimestamp, @NotNull File file) {
+            this.jarPath = jarPath;
+            this.jarLength = jarLength;
+            this.jarTimestamp = jarTimestamp;
+            this.file = file;
+        }
+
+        void load() {
+            if (!file.isFile()) return;
+            try {
+                DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    if (input.readInt() != MAGIC || input.readInt() != VERSION) return;
+                    if (!jarPath.equals(input.readUTF()) || input.readLong() != jarLength || input.readLong() != jarTimestamp) return;
+
+                    int count = input.readInt();
+                    for (int i = 0; i < count; i++) {
+                        String entryPath = input.readUTF();
+                        entries.put(entryPath, readEntry(input));
+                    }
+                }
+                finally {
+                    input.close();
+                }
+            }
+            catch (IOException e) {
+                // A stale or broken file is the same as no file
+                entries.clear();
+            }
+            catch (RuntimeException e) {
+                entries.clear();
+            }
+        }
+
+        void save() throws IOException {
+            File tmpFile = new File(file.getPath() + "." + System.nanoTime() + ".tmp");
+            FileUtil.createParentDirs(tmpFile);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeUTF(jarPath);
+                output.writeLong(jarLength);
+                output.writeLong(jarTimestamp);
+                output.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    writeEntry(output, entry.getValue());
+                }
+            }
+            catch (IOException e) {
+                output.close();
+                FileUtil.delete(tmpFile);
+                throw e;
+            }
+            output.close();
+            FileUtil.rename(tmpFile, file);
+        }
+    }
+
+    private static void writeEntry(@NotNull DataOutput output, @NotNull Entry entry) throws IOException {
+        if (entry == NOT_KOTLIN) {
+            output.writeBoolean(false);
+            return;
+        }
+        output.writeBoolean(true);
+
+        //noinspection ConstantConditions
+        output.writeUTF(entry.classId.getPackageFqName().asString());
+        output.writeUTF(entry.classId.getRelativeClassName().asString());
+
+        KotlinClassHeader header = entry.header;
+        output.writeInt(header.getKind().ordinal());
+        output.writeInt(header.getVersion());
+        String[] annotationData = header.getAnnotationData();
+        output.writeInt(annotationData == null ? -1 : annotationData.length);
+        if (annotationData != null) {
+            for (String string : annotationData) {
+                output.writeUTF(string);
+            }
+        }
+        KotlinSyntheticClass.Kind syntheticClassKind = header.getSyntheticClassKind();
+        output.writeInt(syntheticClassKind == null ? -1 : syntheticClassKind.ordinal());
+
+        //noinspection ConstantConditions
+        entry.innerClasses.writeTo(output);
+    }
+
+    @NotNull
+    private static Entry readEntry(@NotNull DataInput input) throws IOException {
+        if (!input.readBoolean()) return NOT_KOTLIN;
+
+        ClassId classId = new ClassId(new FqName(input.readUTF()), new FqNameUnsafe(input.readUTF()));
+
+        KotlinClassHeader.Kind kind = KotlinClassHeader.Kind.values()[input.readInt()];
+        int version = input.readInt();
+        int annotationDataLength = input.readInt();
+        String[] annotationData = null;
+        if (annotationDataLength >= 0) {
+            annotationData = new String[annotationDataLength];
+            for (int i = 0; i < annotationDataLength; i++) {
+                annotationData[i] = input.readUTF();
+            }
+        }
+        int syntheticClassKind = input.readInt();
+        KotlinClassHeader header = new KotlinClassHeader(
+                kind, version, annotationData, syntheticClassKind < 0 ? null : KotlinSyntheticClass.Kind.values()[syntheticClassKind]
+        );
+
+        return new Entry(classId, header, FileBasedKotlinClass.InnerClassesInfo.readFrom(input));
+    }
+}
@@ -67,6 +67,13 @@ public class VirtualFileKotlinClass private(
             }
         }
 
+        fun create(
+                file: VirtualFile,
+                className: ClassId,
+                classHeader: KotlinClassHeader,
+                innerClasses: FileBasedKotlinClass.InnerClassesInfo
+        ): VirtualFileKotlinClass = VirtualFileKotlinClass(file, className, classHeader, innerClasses)
+
         private fun renderFileReadingErrorMessage(file: VirtualFile): String =
                 "Could not read file: ${file.getPath()}; size in bytes: ${file.getLength()}; file type: ${file.getFileType().getName()}"
     }
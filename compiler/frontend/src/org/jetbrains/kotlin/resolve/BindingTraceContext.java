@@ -72,6 +72,15 @@ public class BindingTraceContext implements BindingTrace {
         this.mutableDiagnostics = new MutableDiagnosticsWithSuppression(bindingContext, Diagnostics.EMPTY);
     }
 
+    /**
+     * Creates a trace which keeps the entries of each slice in a separate map obtained from the given supplier.
+     * With {@link MapSupplier#CONCURRENT_HASH_MAP_SUPPLIER} the trace's slices may be recorded and read from several threads
+     */
+    @NotNull
+    public static BindingTraceContext createWithPartitionedSlices(@NotNull MapSupplier mapSupplier) {
+        return new BindingTraceContext(SlicePartitionedSlicedMap.create(mapSupplier));
+    }
+
     @TestOnly
     public static BindingTraceContext createTraceableBindingTrace() {
         return new BindingTraceContext(new TrackingSlicedMap(TRACK_WITH_STACK_TRACES));
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.resolve;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.diagnostics.Diagnostic;
+import org.jetbrains.kotlin.util.slicedMap.ReadOnlySlice;
+import org.jetbrains.kotlin.util.slicedMap.WritableSlice;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * A delegating trace which can be shared between several threads, e.g. by parallel code generation.
+ * Reads and writes (including the ones made through {@link #getBindingContext()}) are serialized on the trace itself
+ */
+public class SynchronizedDelegatingBindingTrace extends DelegatingBindingTrace {
+    public SynchronizedDelegatingBindingTrace(BindingContext parentContext, String debugName) {
+        super(parentContext, debugName);
+    }
+
+    @Override
+    public synchronized <K, V> void record(WritableSlice<K, V> slice, K key, V value) {
+        super.record(slice, key, value);
+    }
+
+    @Override
+    public synchronized <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
+        return super.get(slice, key);
+    }
+
+    @NotNull
+    @Override
+    public synchronized <K, V> Collection<K> getKeys(WritableSlice<K, V> slice) {
+        // the collection returned by the underlying map is a live view, so it is copied to be safely iterated outside of the lock
+        return new ArrayList<K>(super.getKeys(slice));
+    }
+
+    @Override
+    public synchronized void addAllMyDataTo(@NotNull BindingTrace trace, @Nullable TraceEntryFilter filter, boolean commitDiagnostics) {
+        super.addAllMyDataTo(trace, filter, commitDiagnostics);
+    }
+
+    @Override
+    public synchronized void clear() {
+        super.clear();
+    }
+
+    @Override
+    public synchronized void report(@NotNull Diagnostic diagnostic) {
+        super.report(diagnostic);
+    }
+}
@@ -35,6 +35,10 @@ import java.util.ArrayList
 
 class LazyFileScope private(
         private val scopeChain: List<JetScope>,
+        /**
+         * Scopes of the file's own import directives, without default imports and additional scopes
+         */
+        public val importScopes: List<JetScope>,
         private val aliasImportResolver: LazyImportResolver,
         private val allUnderImportResolver: LazyImportResolver,
         containingDeclaration: PackageFragmentDescriptor,
@@ -85,7 +89,8 @@ class LazyFileScope private(
 
             val scopeChain = ArrayList<JetScope>()
 
-            scopeChain.add(LazyImportScope(aliasImportResolver, { true }, "Alias imports in $debugName"))
+            val aliasImportScope = LazyImportScope(aliasImportResolver, { true }, "Alias imports in $debugName")
+            scopeChain.add(aliasImportScope)
 
             scopeChain.add(NoSubpackagesInPackageScope(packageView)) //TODO: problems with visibility too
             scopeChain.add(JetModuleUtil.getSubpackagesOfRootScope(resolveSession.getModuleDescriptor()))
@@ -93,14 +98,19 @@ class LazyFileScope private(
             scopeChain.add(LazyImportScope(defaultAliasImportResolver, { true }, "Default alias imports in $debugName"))
 
             scopeChain.add(LazyImportScope(defaultAllUnderImportResolver, onlyVisibleFilter, "Default all under imports in $debugName (visible classes)"))
-            scopeChain.add(LazyImportScope(allUnderImportResolver, onlyVisibleFilter, "All under imports in $debugName (visible classes)"))
+            val visibleAllUnderImportScope = LazyImportScope(allUnderImportResolver, onlyVisibleFilter, "All under imports in $debugName (visible classes)")
+            scopeChain.add(visibleAllUnderImportScope)
 
             scopeChain.addAll(additionalScopes)
 
             scopeChain.add(LazyImportScope(defaultAllUnderImportResolver, onlyInvisibleFilter, "Default all under imports in $debugName (invisible classes only)"))
-            scopeChain.add(LazyImportScope(allUnderImportResolver, onlyInvisibleFilter, "All under imports in $debugName (invisible classes only)"))
+            val invisibleAllUnderImportScope = LazyImportScope(allUnderImportResolver, onlyInvisibleFilter, "All under imports in $debugName (invisible classes only)")
+            scopeChain.add(invisibleAllUnderImportScope)
 
-            return LazyFileScope(scopeChain, aliasImportResolver, allUnderImportResolver, packageFragment, debugName)
+            val importScopes = if (imports.isEmpty()) listOf<JetScope>()
+                               else listOf(aliasImportScope, visibleAllUnderImportScope, invisibleAllUnderImportScope)
+
+            return LazyFileScope(scopeChain, importScopes, aliasImportResolver, allUnderImportResolver, packageFragment, debugName)
         }
 
         private class VisibilityFilter(
@@ -29,7 +29,8 @@ import java.util.ArrayList
 private val KOTLIN_REFLECT_FQ_NAME = FqName("kotlin.reflect")
 
 public class ReflectionTypes(private val module: ModuleDescriptor) {
-    private val kotlinReflectScope: JetScope? by Delegates.lazy {
+    // Blocking, since parallel codegen looks up reflection classes from several threads
+    private val kotlinReflectScope: JetScope? by Delegates.blockingLazy {
         module.getPackage(KOTLIN_REFLECT_FQ_NAME)?.getMemberScope()
     }
 
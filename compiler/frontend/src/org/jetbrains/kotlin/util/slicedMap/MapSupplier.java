@@ -19,6 +19,7 @@ package org.jetbrains.kotlin.util.slicedMap;
 import com.google.common.collect.Maps;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public interface MapSupplier {
 
@@ -36,5 +37,12 @@ public interface MapSupplier {
         }
     };
 
+    MapSupplier CONCURRENT_HASH_MAP_SUPPLIER = new MapSupplier() {
+        @Override
+        public <K, V> Map<K, V> get() {
+            return new ConcurrentHashMap<K, V>();
+        }
+    };
+
     <K, V> Map<K, V> get();
 }
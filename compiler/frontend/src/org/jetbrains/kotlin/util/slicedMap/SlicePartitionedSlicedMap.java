@@ -0,0 +1,199 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.util.slicedMap;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * A sliced map which keeps the entries of each slice in a separate map obtained from the given {@link MapSupplier}.
+ *
+ * Unlike {@link SlicedMapImpl}, it doesn't allocate a {@link SlicedMapKey} per entry, and {@link #getKeys} and
+ * {@link #getSliceContents} only visit the entries of the requested slice. If the supplier produces concurrent maps
+ * (see {@link MapSupplier#CONCURRENT_HASH_MAP_SUPPLIER}), the map may be written and read from several threads.
+ * Entries are iterated slice by slice, i.e. the global insertion order is not preserved
+ */
+public class SlicePartitionedSlicedMap implements MutableSlicedMap {
+    // Concurrent maps don't allow null keys
+    private static final Object NULL_KEY = new Object() {
+        @Override
+        public String toString() {
+            return "NULL_KEY";
+        }
+    };
+
+    public static SlicePartitionedSlicedMap create() {
+        return new SlicePartitionedSlicedMap(MapSupplier.LINKED_HASH_MAP_SUPPLIER);
+    }
+
+    public static SlicePartitionedSlicedMap create(@NotNull MapSupplier mapSupplier) {
+        return new SlicePartitionedSlicedMap(mapSupplier);
+    }
+
+    private final MapSupplier mapSupplier;
+    private final Map<WritableSlice<?, ?>, Map<Object, Object>> partitions;
+
+    protected SlicePartitionedSlicedMap(@NotNull MapSupplier mapSupplier) {
+        this.mapSupplier = mapSupplier;
+        this.partitions = mapSupplier.get();
+    }
+
+    @Override
+    public <K, V> void put(WritableSlice<K, V> slice, K key, V value) {
+        if (!slice.check(key, value)) {
+            return;
+        }
+
+        SlicedMapKey<K, V> slicedMapKey = slice.makeKey(key);
+        Map<Object, Object> partition = getOrCreatePartition(slicedMapKey.getSlice());
+        Object partitionKey = maskNull(slicedMapKey.getKey());
+
+        RewritePolicy rewritePolicy = slice.getRewritePolicy();
+        if (rewritePolicy.rewriteProcessingNeeded(key)) {
+            // The check and the write must be atomic, otherwise a concurrent rewrite can go unnoticed
+            synchronized (partition) {
+                //noinspection unchecked
+                V oldValue = (V) partition.get(partitionKey);
+                if (oldValue != null && !rewritePolicy.processRewrite(slice, key, oldValue, value)) {
+                    return;
+                }
+                partition.put(partitionKey, value);
+            }
+        }
+        else {
+            partition.put(partitionKey, value);
+        }
+
+        slice.afterPut(this, key, value);
+    }
+
+    @Override
+    public void clear() {
+        partitions.clear();
+    }
+
+    @Override
+    public <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
+        SlicedMapKey<K, V> slicedMapKey = slice.makeKey(key);
+        Map<Object, Object> partition = partitions.get(slicedMapKey.getSlice());
+        //noinspection unchecked
+        V value = partition == null ? null : (V) partition.get(maskNull(slicedMapKey.getKey()));
+        // Null values are never stored (see BasicWritableSlice.check), so a null value means there's no entry
+        return slice.computeValue(this, key, value, value == null);
+    }
+
+    @Override
+    public <K, V> Collection<K> getKeys(WritableSlice<K, V> slice) {
+        assert slice.isCollective() : "Keys are not collected for slice " + slice;
+
+        Map<Object, Object> partition = partitions.get(slice);
+        if (partition == null) return Collections.emptyList();
+
+        List<K> result = new ArrayList<K>(partition.size());
+        for (Object key : partition.keySet()) {
+            //noinspection unchecked
+            result.add((K) unmaskNull(key));
+        }
+        return result;
+    }
+
+    @Override
+    public <K, V> V remove(RemovableSlice<K, V> slice, K key) {
+        SlicedMapKey<K, V> slicedMapKey = slice.makeKey(key);
+        Map<Object, Object> partition = partitions.get(slicedMapKey.getSlice());
+        //noinspection unchecked
+        return partition == null ? null : (V) partition.remove(maskNull(slicedMapKey.getKey()));
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Map.Entry<SlicedMapKey<?, ?>, ?>> iterator() {
+        return Iterators.concat(Iterators.transform(
+                partitions.entrySet().iterator(),
+                new Function<Map.Entry<WritableSlice<?, ?>, Map<Object, Object>>, Iterator<Map.Entry<SlicedMapKey<?, ?>, ?>>>() {
+                    @Override
+                    public Iterator<Map.Entry<SlicedMapKey<?, ?>, ?>> apply(Map.Entry<WritableSlice<?, ?>, Map<Object, Object>> partition) {
+                        return iteratePartition(partition.getKey(), partition.getValue());
+                    }
+                }
+        ));
+    }
+
+    @NotNull
+    private static Iterator<Map.Entry<SlicedMapKey<?, ?>, ?>> iteratePartition(
+            @NotNull final WritableSlice<?, ?> slice,
+            @NotNull Map<Object, Object> partition
+    ) {
+        return Iterators.transform(
+                partition.entrySet().iterator(),
+                new Function<Map.Entry<Object, Object>, Map.Entry<SlicedMapKey<?, ?>, ?>>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Map.Entry<SlicedMapKey<?, ?>, ?> apply(Map.Entry<Object, Object> entry) {
+                        SlicedMapKey<?, ?> key = new SlicedMapKey<Object, Object>((WritableSlice) slice, unmaskNull(entry.getKey()));
+                        return Maps.immutableEntry(key, entry.getValue());
+                    }
+                }
+        );
+    }
+
+    @NotNull
+    @Override
+    public <K, V> ImmutableMap<K, V> getSliceContents(@NotNull ReadOnlySlice<K, V> slice) {
+        ImmutableMap.Builder<K, V> builder = ImmutableMap.builder();
+        //noinspection SuspiciousMethodCalls
+        Map<Object, Object> partition = partitions.get(slice);
+        if (partition != null) {
+            for (Map.Entry<Object, Object> entry : partition.entrySet()) {
+                //noinspection unchecked
+                builder.put((K) unmaskNull(entry.getKey()), (V) entry.getValue());
+            }
+        }
+        return builder.build();
+    }
+
+    @NotNull
+    private Map<Object, Object> getOrCreatePartition(@NotNull WritableSlice<?, ?> slice) {
+        Map<Object, Object> partition = partitions.get(slice);
+        if (partition != null) return partition;
+
+        synchronized (partitions) {
+            partition = partitions.get(slice);
+            if (partition == null) {
+                partition = mapSupplier.get();
+                partitions.put(slice, partition);
+            }
+            return partition;
+        }
+    }
+
+    @NotNull
+    private static Object maskNull(@Nullable Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    @Nullable
+    private static Object unmaskNull(@NotNull Object key) {
+        return key == NULL_KEY ? null : key;
+    }
+}
@@ -321,6 +321,7 @@ public class KotlinJavaFileStubProvider<T extends WithFileStubAndExtraDiagnostic
                     /*generateClassFilter=*/stubGenerationStrategy.getGenerateClassFilter(),
                     /*disableInline=*/false,
                     /*disableOptimization=*/false,
+                    /*parallelCodegen=*/false,
                     null,
                     null,
                     forExtraDiagnostics,
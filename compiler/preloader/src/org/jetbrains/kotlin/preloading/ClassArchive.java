@@ -0,0 +1,205 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.preloading;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * A single file with uncompressed contents of a list of jars, which is memory-mapped instead of inflating the jars at each start.
+ *
+ * The file is: magic, version, jars (path, length, timestamp), entries (name, jar index, offset, size), raw bytes of the entries.
+ * It's only used if all the jars have the same paths, lengths and timestamps as when it was written.
+ * Entries are stored in the order in which they were read from the jars, so the first of several resources with the same name wins
+ * in both cases.
+ */
+@SuppressWarnings("unchecked")
+class ClassArchive {
+    private static final int MAGIC = 0x4b505241;
+    private static final int VERSION = 1;
+
+    private ClassArchive() {
+    }
+
+    static File getArchiveFile(File directory, Collection<File> jarFiles) {
+        StringBuilder paths = new StringBuilder();
+        for (File jarFile : jarFiles) {
+            paths.append(jarFile.getAbsolutePath()).append(File.pathSeparatorChar);
+        }
+        String firstJarName = jarFiles.isEmpty() ? "empty" : jarFiles.iterator().next().getName();
+        return new File(directory, firstJarName + "-" + Integer.toHexString(paths.toString().hashCode()) + ".preloaded");
+    }
+
+    /**
+     * @return the resource map in the format of {@link ClassPreloadingUtils}, or null if the archive doesn't exist or is stale
+     */
+    static Map<String, Object> load(File archiveFile, List<File> jarFiles, int classNumberEstimate) {
+        if (!archiveFile.isFile()) return null;
+
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(archiveFile, "r");
+            MappedByteBuffer buffer;
+            try {
+                FileChannel channel = randomAccessFile.getChannel();
+                // The mapping stays valid after the channel is closed
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            finally {
+                randomAccessFile.close();
+            }
+
+            DataInputStream input = new DataInputStream(new ByteBufferInputStream(buffer));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) return null;
+            if (input.readInt() != jarFiles.size()) return null;
+            for (File jarFile : jarFiles) {
+                if (!jarFile.getAbsolutePath().equals(input.readUTF())) return null;
+                if (input.readLong() != jarFile.length() || input.readLong() != jarFile.lastModified()) return null;
+            }
+
+            int entryCount = input.readInt();
+            String[] names = new String[entryCount];
+            int[] jarIndices = new int[entryCount];
+            int[] offsets = new int[entryCount];
+            int[] sizes = new int[entryCount];
+            for (int i = 0; i < entryCount; i++) {
+                names[i] = input.readUTF();
+                jarIndices[i] = input.readInt();
+                offsets[i] = input.readInt();
+                sizes[i] = input.readInt();
+            }
+
+            int dataStart = buffer.position();
+            Map<String, Object> resources = new HashMap<String, Object>((int) (Math.max(classNumberEstimate, entryCount) / 0.75));
+            for (int i = 0; i < entryCount; i++) {
+                int start = dataStart + offsets[i];
+                if (sizes[i] < 0 || start < dataStart || start + sizes[i] > buffer.capacity()) return null;
+
+                ByteBuffer data = buffer.duplicate();
+                data.position(start);
+                data.limit(start + sizes[i]);
+                ClassPreloadingUtils.addResource(resources, new ResourceData(jarFiles.get(jarIndices[i]), names[i], data.slice()));
+            }
+            return resources;
+        }
+        catch (IOException e) {
+            return null;
+        }
+        catch (BufferUnderflowException e) {
+            return null;
+        }
+        catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the archive to a temporary file first, so that a concurrently starting process never sees a partially written one.
+     * Any failure leaves no archive, the jars will be read again next time.
+     */
+    static void save(File archiveFile, List<File> jarFiles, Map<String, Object> resources) {
+        List<ResourceData> entries = new ArrayList<ResourceData>(resources.size());
+        long totalSize = 0;
+        for (Object value : resources.values()) {
+            if (value instanceof ResourceData) {
+                entries.add((ResourceData) value);
+            }
+            else {
+                entries.addAll((ArrayList<ResourceData>) value);
+            }
+        }
+        for (ResourceData entry : entries) {
+            totalSize += entry.getSize();
+        }
+        if (totalSize > Integer.MAX_VALUE) return;
+
+        Map<File, Integer> jarIndices = new HashMap<File, Integer>();
+        for (int i = 0; i < jarFiles.size(); i++) {
+            jarIndices.put(jarFiles.get(i), i);
+        }
+
+        File tmpFile = new File(archiveFile.getPath() + "." + System.nanoTime() + ".tmp");
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(jarFiles.size());
+                for (File jarFile : jarFiles) {
+                    output.writeUTF(jarFile.getAbsolutePath());
+                    output.writeLong(jarFile.length());
+                    output.writeLong(jarFile.lastModified());
+                }
+
+                output.writeInt(entries.size());
+                int offset = 0;
+                for (ResourceData entry : entries) {
+                    output.writeUTF(entry.resourceName);
+                    output.writeInt(jarIndices.get(entry.jarFile));
+                    output.writeInt(offset);
+                    output.writeInt(entry.getSize());
+                    offset += entry.getSize();
+                }
+
+                for (ResourceData entry : entries) {
+                    output.write(entry.getBytes());
+                }
+            }
+            finally {
+                output.close();
+            }
+
+            if (!tmpFile.renameTo(archiveFile)) {
+                // On some platforms an existing file is not replaced
+                archiveFile.delete();
+                if (!tmpFile.renameTo(archiveFile)) {
+                    tmpFile.delete();
+                }
+            }
+        }
+        catch (IOException e) {
+            tmpFile.delete();
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
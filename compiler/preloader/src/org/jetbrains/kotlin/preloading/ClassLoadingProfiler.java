@@ -0,0 +1,215 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.preloading;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Collects statistics of the preloader's work: time and bytes spent reading each jar, time spent defining each class,
+ * and classes which were read from the jars but never defined.
+ *
+ * The report is a tab-separated file, one record per line, the first column being the record kind:
+ * <pre>
+ * summary  total time (ms)  class count estimation  resources  classes  defined classes  defined bytes
+ * jar      path  load time (ms)  resources  classes  bytes  defined classes  defined bytes
+ * class    name  jar  bytes  define time (us)  self define time (us)
+ * unused   name  jar  bytes
+ * </pre>
+ * Define time includes loading of supertypes which happens during defineClass, self define time excludes it.
+ */
+class ClassLoadingProfiler extends ClassHandler {
+    private final int classCountEstimation;
+
+    private final List<JarStatistics> jars = new ArrayList<JarStatistics>();
+    private final Map<String, ClassStatistics> classes = new LinkedHashMap<String, ClassStatistics>();
+    private final List<ClassStatistics> definedClasses = new ArrayList<ClassStatistics>();
+    private final ThreadLocal<Deque<ClassStatistics>> defining = new ThreadLocal<Deque<ClassStatistics>>() {
+        @Override
+        protected Deque<ClassStatistics> initialValue() {
+            return new ArrayDeque<ClassStatistics>();
+        }
+    };
+
+    private JarStatistics currentJar;
+    private int resourceCount;
+
+    ClassLoadingProfiler(int classCountEstimation) {
+        this.classCountEstimation = classCountEstimation;
+    }
+
+    @Override
+    public synchronized void beforeLoadJar(File jarFile) {
+        currentJar = new JarStatistics(jarFile);
+        jars.add(currentJar);
+        currentJar.startTime = System.nanoTime();
+    }
+
+    @Override
+    public synchronized byte[] instrument(String resourceName, byte[] data) {
+        resourceCount++;
+        currentJar.resources++;
+        currentJar.bytes += data.length;
+
+        if (resourceName.endsWith(".class")) {
+            currentJar.classes++;
+            String className = resourceName.substring(0, resourceName.length() - ".class".length()).replace('/', '.');
+            // The preloader defines the first of several classes with the same name
+            if (!classes.containsKey(className)) {
+                classes.put(className, new ClassStatistics(className, currentJar, data.length));
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public synchronized void afterLoadJar(File jarFile) {
+        currentJar.loadTime = System.nanoTime() - currentJar.startTime;
+        currentJar = null;
+    }
+
+    @Override
+    public synchronized void beforeDefineClass(String name, int sizeInBytes) {
+        ClassStatistics statistics = classes.get(name);
+        if (statistics == null) {
+            // Instrumented or not a resource of the preloaded jars
+            statistics = new ClassStatistics(name, null, sizeInBytes);
+            classes.put(name, statistics);
+        }
+        statistics.defined = true;
+        definedClasses.add(statistics);
+        if (statistics.jar != null) {
+            statistics.jar.definedClasses++;
+            statistics.jar.definedBytes += sizeInBytes;
+        }
+
+        defining.get().push(statistics);
+        statistics.startTime = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void afterDefineClass(String name) {
+        long now = System.nanoTime();
+        Deque<ClassStatistics> stack = defining.get();
+        ClassStatistics statistics = stack.pop();
+        statistics.defineTime = now - statistics.startTime;
+        statistics.selfDefineTime += statistics.defineTime;
+
+        ClassStatistics outer = stack.peek();
+        if (outer != null) {
+            outer.selfDefineTime -= statistics.defineTime;
+        }
+    }
+
+    synchronized void printSummary(PrintStream out) {
+        long definedBytes = 0;
+        for (ClassStatistics statistics : definedClasses) {
+            definedBytes += statistics.size;
+        }
+
+        out.println();
+        out.println("Preloaded resources: " + resourceCount + " (estimation: " + classCountEstimation + ")");
+        out.println("Loaded classes: " + definedClasses.size() + " of " + classes.size());
+        out.println("Loaded classes size: " + definedBytes);
+        out.println();
+        for (JarStatistics jar : jars) {
+            out.format("%s: %.3fs, %d bytes, %d of %d classes used\n",
+                       jar.file.getName(), jar.loadTime / 1e9, jar.bytes, jar.definedClasses, jar.classes);
+        }
+    }
+
+    synchronized void writeReport(File file, long totalTime) throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        try {
+            long definedBytes = 0;
+            for (ClassStatistics statistics : definedClasses) {
+                definedBytes += statistics.size;
+            }
+            record(out, "summary", toMillis(totalTime), classCountEstimation, resourceCount, classes.size(),
+                   definedClasses.size(), definedBytes);
+
+            for (JarStatistics jar : jars) {
+                record(out, "jar", jar.file.getAbsolutePath(), toMillis(jar.loadTime), jar.resources, jar.classes, jar.bytes,
+                       jar.definedClasses, jar.definedBytes);
+            }
+
+            // In the order of definition, which is the order in which the classes were needed
+            for (ClassStatistics statistics : definedClasses) {
+                record(out, "class", statistics.name, jarPath(statistics), statistics.size,
+                       statistics.defineTime / 1000, statistics.selfDefineTime / 1000);
+            }
+
+            for (ClassStatistics statistics : classes.values()) {
+                if (!statistics.defined) {
+                    record(out, "unused", statistics.name, jarPath(statistics), statistics.size);
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static String jarPath(ClassStatistics statistics) {
+        return statistics.jar != null ? statistics.jar.file.getAbsolutePath() : "";
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1000000;
+    }
+
+    private static void record(PrintWriter out, String kind, Object... values) {
+        out.print(kind);
+        for (Object value : values) {
+            out.print('\t');
+            out.print(value);
+        }
+        out.println();
+    }
+
+    private static class JarStatistics {
+        final File file;
+        long startTime;
+        long loadTime;
+        int resources;
+        int classes;
+        long bytes;
+        int definedClasses;
+        long definedBytes;
+
+        JarStatistics(File file) {
+            this.file = file;
+        }
+    }
+
+    private static class ClassStatistics {
+        final String name;
+        final JarStatistics jar;
+        final int size;
+        boolean defined;
+        long startTime;
+        long defineTime;
+        long selfDefineTime;
+
+        ClassStatistics(String name, JarStatistics jar, int size) {
+            this.name = name;
+            this.jar = jar;
+            this.size = size;
+        }
+    }
+}
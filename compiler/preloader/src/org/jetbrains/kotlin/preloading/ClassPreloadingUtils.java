@@ -36,6 +36,9 @@ public class ClassPreloadingUtils {
      * @param parentClassLoader parent class loader
      * @param handler handler to be notified on class definitions done by this class loader, or null
      * @param classesToLoadByParent condition to load some classes via parent class loader
+     * @param archiveDirectory directory for a {@link ClassArchive} of the jars, or null to always read the jars. If the archive is
+     *                         up to date, classes are served from it without reading the jars. Bytes returned by handler's instrument()
+     *                         are stored in the archive, so it should be null when classes are really instrumented
      * @return a class loader that reads classes from memory
      * @throws IOException on from reading the jar
      */
@@ -44,18 +47,41 @@ public class ClassPreloadingUtils {
             int classCountEstimation,
             ClassLoader parentClassLoader,
             ClassCondition classesToLoadByParent,
-            ClassHandler handler
+            ClassHandler handler,
+            File archiveDirectory
     ) throws IOException {
-        Map<String, Object> entries = loadAllClassesFromJars(jarFiles, classCountEstimation, handler);
+        Map<String, Object> entries = null;
+        File archiveFile = null;
+        List<File> jarList = new ArrayList<File>(jarFiles);
+        if (archiveDirectory != null) {
+            archiveFile = ClassArchive.getArchiveFile(archiveDirectory, jarList);
+            entries = ClassArchive.load(archiveFile, jarList, classCountEstimation);
+        }
+        if (entries == null) {
+            entries = loadAllClassesFromJars(jarList, classCountEstimation, handler);
+            if (archiveFile != null) {
+                ClassArchive.save(archiveFile, jarList, entries);
+            }
+        }
 
         Collection<File> classpath = mergeClasspathFromManifests(entries);
         if (!classpath.isEmpty()) {
-            parentClassLoader = preloadClasses(classpath, classCountEstimation, parentClassLoader, null, handler);
+            parentClassLoader = preloadClasses(classpath, classCountEstimation, parentClassLoader, null, handler, archiveDirectory);
         }
 
         return new MemoryBasedClassLoader(classesToLoadByParent, parentClassLoader, entries, handler);
     }
 
+    public static ClassLoader preloadClasses(
+            Collection<File> jarFiles,
+            int classCountEstimation,
+            ClassLoader parentClassLoader,
+            ClassCondition classesToLoadByParent,
+            ClassHandler handler
+    ) throws IOException {
+        return preloadClasses(jarFiles, classCountEstimation, parentClassLoader, classesToLoadByParent, handler, null);
+    }
+
     public static ClassLoader preloadClasses(
             Collection<File> jarFiles, int classCountEstimation, ClassLoader parentClassLoader, ClassCondition classesToLoadByParent
     ) throws IOException {
@@ -81,7 +107,7 @@ public class ClassPreloadingUtils {
     }
 
     private static Collection<File> extractManifestClasspath(ResourceData manifestData) throws IOException {
-        Manifest manifest = new Manifest(new ByteArrayInputStream(manifestData.bytes));
+        Manifest manifest = new Manifest(new ByteArrayInputStream(manifestData.getBytes()));
         String classpathSpaceSeparated = (String) manifest.getMainAttributes().get(Attributes.Name.CLASS_PATH);
         if (classpathSpaceSeparated == null) return Collections.emptyList();
 
@@ -139,23 +165,7 @@ public class ClassPreloadingUtils {
                     if (handler != null) {
                         data = handler.instrument(name, data);
                     }
-                    ResourceData resourceData = new ResourceData(jarFile, name, data);
-
-                    Object previous = resources.get(name);
-                    if (previous == null) {
-                        resources.put(name, resourceData);
-                    }
-                    else if (previous instanceof ResourceData) {
-                        List<ResourceData> list = new ArrayList<ResourceData>();
-                        list.add((ResourceData) previous);
-                        list.add(resourceData);
-                        resources.put(name, list);
-                    }
-                    else {
-                        assert previous instanceof ArrayList :
-                                "Resource map should contain ResourceData or ArrayList<ResourceData>: " + name;
-                        ((ArrayList<ResourceData>) previous).add(resourceData);
-                    }
+                    addResource(resources, new ResourceData(jarFile, name, data));
                 }
             }
             finally {
@@ -180,4 +190,23 @@ public class ClassPreloadingUtils {
 
         return resources;
     }
+
+    static void addResource(Map<String, Object> resources, ResourceData resourceData) {
+        String name = resourceData.resourceName;
+        Object previous = resources.get(name);
+        if (previous == null) {
+            resources.put(name, resourceData);
+        }
+        else if (previous instanceof ResourceData) {
+            List<ResourceData> list = new ArrayList<ResourceData>();
+            list.add((ResourceData) previous);
+            list.add(resourceData);
+            resources.put(name, list);
+        }
+        else {
+            assert previous instanceof ArrayList :
+                    "Resource map should contain ResourceData or ArrayList<ResourceData>: " + name;
+            ((ArrayList<ResourceData>) previous).add(resourceData);
+        }
+    }
 }
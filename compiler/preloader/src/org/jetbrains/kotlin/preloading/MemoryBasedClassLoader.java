@@ -76,18 +76,21 @@ public class MemoryBasedClassLoader extends ClassLoader {
                                     ? ((ResourceData) resources)
                                     : ((List<ResourceData>) resources).get(0);
 
-        int sizeInBytes = resourceData.bytes.length;
+        int sizeInBytes = resourceData.getSize();
         if (handler != null) {
             handler.beforeDefineClass(name, sizeInBytes);
         }
 
-        Class<?> definedClass = defineClass(name, resourceData.bytes, 0, sizeInBytes);
-
-        if (handler != null) {
-            handler.afterDefineClass(name);
+        try {
+            // Classes served from a memory-mapped archive are defined without copying them to the heap
+            return defineClass(name, resourceData.getByteBuffer(), null);
+        }
+        finally {
+            // Also when defineClass fails, e.g. with NoClassDefFoundError for a missing superclass
+            if (handler != null) {
+                handler.afterDefineClass(name);
+            }
         }
-
-        return definedClass;
     }
 
     @Override
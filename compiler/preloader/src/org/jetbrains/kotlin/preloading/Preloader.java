@@ -19,6 +19,7 @@ package org.jetbrains.kotlin.preloading;
 import org.jetbrains.kotlin.preloading.instrumentation.Instrumenter;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -29,6 +30,10 @@ public class Preloader {
 
     public static final int PRELOADER_ARG_COUNT = 4;
     private static final String INSTRUMENT_PREFIX = "instrument=";
+    private static final String PROFILE_PREFIX = "profile=";
+    private static final String DEFAULT_PROFILE_REPORT = "preloader-profile.tsv";
+    // -Dkotlin.preloader.archive keeps the archive next to the first jar, -Dkotlin.preloader.archive=<dir> keeps it in the given directory
+    private static final String ARCHIVE_PROPERTY = "kotlin.preloader.archive";
 
     public static void main(String[] args) throws Exception {
         if (args.length < PRELOADER_ARG_COUNT) {
@@ -59,8 +64,11 @@ public class Preloader {
 
         ClassLoader withInstrumenter = instrumentersClasspath.length > 0 ? new URLClassLoader(instrumentersClasspath, parent) : parent;
 
-        final Handler handler = getHandler(mode, withInstrumenter);
-        ClassLoader preloaded = ClassPreloadingUtils.preloadClasses(files, classNumber, withInstrumenter, null, handler);
+        final Handler handler = mode == Mode.PROFILE
+                                ? getProfilingHandler(classNumber, parseProfileReportFile(modeStr), startTime)
+                                : getHandler(mode, withInstrumenter);
+        File archiveDirectory = getArchiveDirectory(mode, files);
+        ClassLoader preloaded = ClassPreloadingUtils.preloadClasses(files, classNumber, withInstrumenter, null, handler, archiveDirectory);
 
         Class<?> mainClass = preloaded.loadClass(mainClassCanonicalName);
         Method mainMethod = mainClass.getMethod("main", String[].class);
@@ -100,6 +108,21 @@ public class Preloader {
         return instrumentersClasspath;
     }
 
+    private static File getArchiveDirectory(Mode mode, List<File> files) {
+        // Instrumented classes should not be stored, and profiling is about reading the jars
+        if (mode == Mode.INSTRUMENT || mode == Mode.PROFILE) return null;
+
+        String property = System.getProperty(ARCHIVE_PROPERTY);
+        if (property == null) return null;
+
+        File directory = property.isEmpty() ? files.get(0).getAbsoluteFile().getParentFile() : new File(property);
+        return directory.isDirectory() ? directory : null;
+    }
+
+    private static File parseProfileReportFile(String modeStr) {
+        return new File(modeStr.startsWith(PROFILE_PREFIX) ? modeStr.substring(PROFILE_PREFIX.length()) : DEFAULT_PROFILE_REPORT);
+    }
+
     private static String getClassPath(String modeStr) {
         return modeStr.substring(INSTRUMENT_PREFIX.length());
     }
@@ -149,6 +172,50 @@ public class Preloader {
         };
     }
 
+    private static Handler getProfilingHandler(int classNumber, final File reportFile, final long startTime) {
+        final ClassLoadingProfiler profiler = new ClassLoadingProfiler(classNumber);
+        return new Handler() {
+            @Override
+            public byte[] instrument(String resourceName, byte[] data) {
+                return profiler.instrument(resourceName, data);
+            }
+
+            @Override
+            public void beforeLoadJar(File jarFile) {
+                profiler.beforeLoadJar(jarFile);
+            }
+
+            @Override
+            public void afterLoadJar(File jarFile) {
+                profiler.afterLoadJar(jarFile);
+            }
+
+            @Override
+            public void beforeDefineClass(String name, int sizeInBytes) {
+                profiler.beforeDefineClass(name, sizeInBytes);
+            }
+
+            @Override
+            public void afterDefineClass(String name) {
+                profiler.afterDefineClass(name);
+            }
+
+            @Override
+            public void done() {
+                long totalTime = System.nanoTime() - startTime;
+                profiler.printSummary(System.out);
+                try {
+                    profiler.writeReport(reportFile, totalTime);
+                    System.out.println();
+                    System.out.println("Profile written to " + reportFile.getAbsolutePath());
+                }
+                catch (IOException e) {
+                    System.err.println("PRELOADER WARNING: Could not write profile to " + reportFile + ": " + e.getMessage());
+                }
+            }
+        };
+    }
+
     private static Instrumenter loadInstrumenter(ClassLoader withInstrumenter) {
         ServiceLoader<Instrumenter> loader = ServiceLoader.load(Instrumenter.class, withInstrumenter);
         Iterator<Instrumenter> instrumenters = loader.iterator();
@@ -168,13 +235,15 @@ public class Preloader {
     private enum Mode {
         NO_TIME,
         TIME,
-        INSTRUMENT
+        INSTRUMENT,
+        PROFILE
     }
 
     private static Mode parseMode(String arg) {
         if ("time".equals(arg)) return Mode.TIME;
         if ("notime".equals(arg)) return Mode.NO_TIME;
         if (arg.startsWith(INSTRUMENT_PREFIX)) return Mode.INSTRUMENT;
+        if ("profile".equals(arg) || arg.startsWith(PROFILE_PREFIX)) return Mode.PROFILE;
 
         System.out.println("Unrecognized argument: " + arg);
         printUsageAndExit();
@@ -182,7 +251,7 @@ public class Preloader {
     }
 
     private static void printUsageAndExit() {
-        System.out.println("Usage: Preloader <paths to jars> <main class> <class number estimate> <notime|time|instrument=<instrumenters class path>> <parameters to pass to the main class>");
+        System.out.println("Usage: Preloader <paths to jars> <main class> <class number estimate> <notime|time|instrument=<instrumenters class path>|profile[=<report file>]> <parameters to pass to the main class>");
         System.exit(1);
     }
 
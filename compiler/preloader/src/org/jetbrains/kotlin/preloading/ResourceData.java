@@ -24,16 +24,46 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
 
 public final class ResourceData {
     public final File jarFile;
     public final String resourceName;
-    public final byte[] bytes;
+    private final byte[] bytes;
+    private final ByteBuffer buffer;
 
     public ResourceData(File jarFile, String resourceName, byte[] bytes) {
         this.jarFile = jarFile;
         this.resourceName = resourceName;
         this.bytes = bytes;
+        this.buffer = null;
+    }
+
+    /**
+     * @param buffer contents of the resource between its position and limit, e.g. a slice of a memory-mapped {@link ClassArchive}.
+     *               The contents are only copied when requested, and never for class definition
+     */
+    public ResourceData(File jarFile, String resourceName, ByteBuffer buffer) {
+        this.jarFile = jarFile;
+        this.resourceName = resourceName;
+        this.bytes = null;
+        this.buffer = buffer;
+    }
+
+    public int getSize() {
+        return bytes != null ? bytes.length : buffer.remaining();
+    }
+
+    public byte[] getBytes() {
+        if (bytes != null) return bytes;
+
+        byte[] result = new byte[buffer.remaining()];
+        buffer.duplicate().get(result);
+        return result;
+    }
+
+    public ByteBuffer getByteBuffer() {
+        return bytes != null ? ByteBuffer.wrap(bytes) : buffer.duplicate();
     }
 
     public URL getURL() {
@@ -48,7 +78,7 @@ public final class ResourceData {
 
                         @Override
                         public InputStream getInputStream() throws IOException {
-                            return new ByteArrayInputStream(bytes);
+                            return new ByteArrayInputStream(getBytes());
                         }
                     };
                 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.preloading;
+
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+public class ClassArchiveTest extends TestCase {
+    private File directory;
+    private File jar1;
+    private File jar2;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("classArchive", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        jar1 = writeJar("first.jar", "a/A.class", "A", "common.txt", "first");
+        jar2 = writeJar("second.jar", "b/B.class", "BB", "common.txt", "second");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(directory);
+        super.tearDown();
+    }
+
+    public void testRoundTrip() throws Exception {
+        List<File> jars = Arrays.asList(jar1, jar2);
+        File archive = ClassArchive.getArchiveFile(directory, jars);
+        ClassArchive.save(archive, jars, readJars(jars));
+
+        Map<String, Object> resources = ClassArchive.load(archive, jars, 10);
+        assertNotNull(resources);
+        assertEquals(new HashSet<String>(Arrays.asList("a/A.class", "b/B.class", "common.txt")), resources.keySet());
+
+        ResourceData a = (ResourceData) resources.get("a/A.class");
+        assertEquals(jar1, a.jarFile);
+        assertEquals("A", new String(a.getBytes(), "UTF-8"));
+        assertEquals("BB", new String(((ResourceData) resources.get("b/B.class")).getBytes(), "UTF-8"));
+
+        // Resources with the same name keep the order of the jars
+        @SuppressWarnings("unchecked")
+        List<ResourceData> common = (List<ResourceData>) resources.get("common.txt");
+        assertEquals(2, common.size());
+        assertEquals(jar1, common.get(0).jarFile);
+        assertEquals("first", new String(common.get(0).getBytes(), "UTF-8"));
+        assertEquals(jar2, common.get(1).jarFile);
+        assertEquals("second", new String(common.get(1).getBytes(), "UTF-8"));
+    }
+
+    public void testStaleWhenJarTimestampChanges() throws Exception {
+        List<File> jars = Arrays.asList(jar1, jar2);
+        File archive = ClassArchive.getArchiveFile(directory, jars);
+        ClassArchive.save(archive, jars, readJars(jars));
+        assertNotNull(ClassArchive.load(archive, jars, 10));
+
+        assertTrue(jar2.setLastModified(jar2.lastModified() + 10000));
+        assertNull(ClassArchive.load(archive, jars, 10));
+    }
+
+    public void testStaleWhenJarLengthChanges() throws Exception {
+        List<File> jars = Arrays.asList(jar1, jar2);
+        File archive = ClassArchive.getArchiveFile(directory, jars);
+        ClassArchive.save(archive, jars, readJars(jars));
+
+        long timestamp = jar2.lastModified();
+        writeJar("second.jar", "b/B.class", "BBB", "common.txt", "second");
+        assertTrue(jar2.setLastModified(timestamp));
+        assertNull(ClassArchive.load(archive, jars, 10));
+    }
+
+    public void testStaleWhenJarListChanges() throws Exception {
+        List<File> jars = Arrays.asList(jar1, jar2);
+        File archive = ClassArchive.getArchiveFile(directory, jars);
+        ClassArchive.save(archive, jars, readJars(jars));
+
+        assertNull(ClassArchive.load(archive, Arrays.asList(jar2, jar1), 10));
+        assertNull(ClassArchive.load(archive, Collections.singletonList(jar1), 10));
+    }
+
+    public void testCorruptArchive() throws Exception {
+        List<File> jars = Arrays.asList(jar1, jar2);
+        File archive = ClassArchive.getArchiveFile(directory, jars);
+        ClassArchive.save(archive, jars, readJars(jars));
+
+        byte[] bytes = readFile(archive);
+        writeFile(archive, Arrays.copyOf(bytes, bytes.length - 3));
+        assertNull(ClassArchive.load(archive, jars, 10));
+
+        writeFile(archive, Arrays.copyOf(bytes, 20));
+        assertNull(ClassArchive.load(archive, jars, 10));
+
+        writeFile(archive, new byte[0]);
+        assertNull(ClassArchive.load(archive, jars, 10));
+    }
+
+    public void testPreloaderFallsBackToJarsOnCorruptArchive() throws Exception {
+        List<File> jars = Arrays.asList(jar1, jar2);
+        File archive = ClassArchive.getArchiveFile(directory, jars);
+        writeFile(archive, "not an archive".getBytes("UTF-8"));
+
+        ClassLoader loader = ClassPreloadingUtils.preloadClasses(jars, 10, null, null, null, directory);
+        URL resource = loader.getResource("b/B.class");
+        assertNotNull(resource);
+        assertEquals("BB", new String(readStream(resource.openStream()), "UTF-8"));
+
+        // The archive is written again from the jars
+        assertNotNull(ClassArchive.load(archive, jars, 10));
+    }
+
+    private File writeJar(String name, String... namesAndContents) throws IOException {
+        File jar = new File(directory, name);
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                output.putNextEntry(new ZipEntry(namesAndContents[i]));
+                output.write(namesAndContents[i + 1].getBytes("UTF-8"));
+                output.closeEntry();
+            }
+        }
+        finally {
+            output.close();
+        }
+        return jar;
+    }
+
+    private static Map<String, Object> readJars(List<File> jars) throws IOException {
+        Map<String, Object> resources = new HashMap<String, Object>();
+        for (File jar : jars) {
+            ZipInputStream input = new ZipInputStream(new FileInputStream(jar));
+            try {
+                ZipEntry entry;
+                while ((entry = input.getNextEntry()) != null) {
+                    ClassPreloadingUtils.addResource(resources, new ResourceData(jar, entry.getName(), readStream(input)));
+                }
+            }
+            finally {
+                input.close();
+            }
+        }
+        return resources;
+    }
+
+    private static byte[] readStream(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int count;
+        while ((count = input.read(buffer)) > 0) {
+            bytes.write(buffer, 0, count);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            return readStream(input);
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    private static void writeFile(File file, byte[] bytes) throws IOException {
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(bytes);
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
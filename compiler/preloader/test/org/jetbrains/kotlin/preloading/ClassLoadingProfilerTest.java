@@ -0,0 +1,227 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.preloading;
+
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ClassLoadingProfilerTest extends TestCase {
+    public static class Base {
+    }
+
+    public static class Derived extends Base {
+    }
+
+    public static class Unused {
+    }
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("classLoadingProfiler", "");
+        assertTrue(directory.delete() && directory.mkdir());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(directory);
+        super.tearDown();
+    }
+
+    public void testCountsAndTimes() throws Exception {
+        File jar = writeJar("classes.jar", Base.class, Derived.class, Unused.class);
+        ClassLoadingProfiler profiler = new ClassLoadingProfiler(10);
+        ClassLoader loader = ClassPreloadingUtils.preloadClasses(Collections.singletonList(jar), 10, null, null, profiler);
+
+        Class<?> derived = loader.loadClass(Derived.class.getName());
+        assertSame(loader, derived.getClassLoader());
+        assertSame(loader, derived.getSuperclass().getClassLoader());
+
+        int baseSize = classBytes(Base.class).length;
+        int derivedSize = classBytes(Derived.class).length;
+        int unusedSize = classBytes(Unused.class).length;
+        Map<String, List<String[]>> report = writeReport(profiler);
+
+        String[] summary = single(report, "summary");
+        assertEquals("10", summary[2]);
+        assertEquals("4", summary[3]);
+        assertEquals("3", summary[4]);
+        assertEquals("2", summary[5]);
+        assertEquals(String.valueOf(baseSize + derivedSize), summary[6]);
+
+        String[] jarRecord = single(report, "jar");
+        assertEquals(jar.getAbsolutePath(), jarRecord[1]);
+        assertTrue(Long.parseLong(jarRecord[2]) >= 0);
+        assertEquals("4", jarRecord[3]);
+        assertEquals("3", jarRecord[4]);
+        assertEquals(String.valueOf(baseSize + derivedSize + unusedSize + "data".length()), jarRecord[5]);
+        assertEquals("2", jarRecord[6]);
+        assertEquals(String.valueOf(baseSize + derivedSize), jarRecord[7]);
+
+        // The superclass is defined while the subclass is being defined
+        List<String[]> classes = report.get("class");
+        assertEquals(2, classes.size());
+        String[] derivedRecord = classes.get(0);
+        String[] baseRecord = classes.get(1);
+        assertEquals(Derived.class.getName(), derivedRecord[1]);
+        assertEquals(Base.class.getName(), baseRecord[1]);
+        assertEquals(jar.getAbsolutePath(), derivedRecord[2]);
+        assertEquals(String.valueOf(derivedSize), derivedRecord[3]);
+        assertEquals(String.valueOf(baseSize), baseRecord[3]);
+        assertDefineTimes(derivedRecord);
+        assertDefineTimes(baseRecord);
+        assertTrue(Long.parseLong(derivedRecord[4]) >= Long.parseLong(baseRecord[4]));
+        assertTrue(Long.parseLong(derivedRecord[5]) <= Long.parseLong(derivedRecord[4]) - Long.parseLong(baseRecord[4]) + 1);
+
+        String[] unused = single(report, "unused");
+        assertEquals(Unused.class.getName(), unused[1]);
+        assertEquals(String.valueOf(unusedSize), unused[3]);
+    }
+
+    public void testFailedDefinitionIsRecorded() throws Exception {
+        File jar = writeJar("derived.jar", Derived.class, Unused.class);
+        ClassLoadingProfiler profiler = new ClassLoadingProfiler(10);
+        ClassLoader loader = ClassPreloadingUtils.preloadClasses(Collections.singletonList(jar), 10, null, null, profiler);
+
+        try {
+            loader.loadClass(Derived.class.getName());
+            fail("The superclass is not available");
+        }
+        catch (NoClassDefFoundError ignored) {
+        }
+        loader.loadClass(Unused.class.getName());
+
+        List<String[]> classes = writeReport(profiler).get("class");
+        assertEquals(2, classes.size());
+        assertEquals(Derived.class.getName(), classes.get(0)[1]);
+        assertEquals(Unused.class.getName(), classes.get(1)[1]);
+        // Neither definition is nested into the other
+        assertEquals(classes.get(0)[4], classes.get(0)[5]);
+        assertEquals(classes.get(1)[4], classes.get(1)[5]);
+    }
+
+    public void testNothingRecordedWithoutLoading() throws Exception {
+        Map<String, List<String[]>> report = writeReport(new ClassLoadingProfiler(10));
+
+        String[] summary = single(report, "summary");
+        assertEquals(Arrays.asList("summary", "0", "10", "0", "0", "0", "0"), Arrays.asList(summary));
+        assertNull(report.get("jar"));
+        assertNull(report.get("class"));
+        assertNull(report.get("unused"));
+    }
+
+    public void testLoadingWithoutProfiler() throws Exception {
+        File jar = writeJar("classes.jar", Base.class, Derived.class, Unused.class);
+
+        for (ClassHandler handler : Arrays.asList(null, new ClassHandler() {})) {
+            ClassLoader loader = ClassPreloadingUtils.preloadClasses(Collections.singletonList(jar), 10, null, null, handler);
+            Class<?> derived = loader.loadClass(Derived.class.getName());
+            assertSame(loader, derived.getClassLoader());
+            assertSame(loader, derived.getSuperclass().getClassLoader());
+        }
+    }
+
+    private static void assertDefineTimes(String[] classRecord) {
+        long defineTime = Long.parseLong(classRecord[4]);
+        long selfDefineTime = Long.parseLong(classRecord[5]);
+        assertTrue(selfDefineTime >= 0);
+        assertTrue(selfDefineTime <= defineTime);
+    }
+
+    private static String[] single(Map<String, List<String[]>> report, String kind) {
+        List<String[]> records = report.get(kind);
+        assertNotNull(kind, records);
+        assertEquals(kind, 1, records.size());
+        return records.get(0);
+    }
+
+    private Map<String, List<String[]>> writeReport(ClassLoadingProfiler profiler) throws IOException {
+        File file = new File(directory, "profile.tsv");
+        profiler.writeReport(file, 0);
+
+        Map<String, List<String[]>> records = new LinkedHashMap<String, List<String[]>>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split("\t", -1);
+                List<String[]> list = records.get(values[0]);
+                if (list == null) {
+                    list = new ArrayList<String[]>();
+                    records.put(values[0], list);
+                }
+                list.add(values);
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return records;
+    }
+
+    private File writeJar(String name, Class<?>... classes) throws IOException {
+        File jar = new File(directory, name);
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for (Class<?> aClass : classes) {
+                output.putNextEntry(new ZipEntry(aClass.getName().replace('.', '/') + ".class"));
+                output.write(classBytes(aClass));
+                output.closeEntry();
+            }
+            output.putNextEntry(new ZipEntry("data.txt"));
+            output.write("data".getBytes("UTF-8"));
+            output.closeEntry();
+        }
+        finally {
+            output.close();
+        }
+        return jar;
+    }
+
+    private static byte[] classBytes(Class<?> aClass) throws IOException {
+        InputStream input = aClass.getResourceAsStream("/" + aClass.getName().replace('.', '/') + ".class");
+        assertNotNull(aClass.getName(), input);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = input.read(buffer)) > 0) {
+                bytes.write(buffer, 0, count);
+            }
+            return bytes.toByteArray();
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
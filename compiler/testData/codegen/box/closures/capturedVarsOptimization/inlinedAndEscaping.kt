@@ -0,0 +1,38 @@
+inline fun run(block: () -> Unit) = block()
+
+fun call(block: () -> Unit) = block()
+
+var saved: (() -> Int)? = null
+
+fun escapingInsideInlined(): Int {
+    var x = 1
+    run {
+        x++
+        saved = { x * 10 }
+    }
+    x++
+    return saved!!()
+}
+
+fun inlinedAndCalled(): Int {
+    var x = 0
+    val increment = { x++ }
+    run { x += 10 }
+    call(increment)
+    run(increment)
+    return x
+}
+
+fun localFunction(): Int {
+    var x = 1
+    fun get() = x
+    run { x = 5 }
+    return get()
+}
+
+fun box(): String {
+    if (escapingInsideInlined() != 30) return "fail 1: ${escapingInsideInlined()}"
+    if (inlinedAndCalled() != 12) return "fail 2: ${inlinedAndCalled()}"
+    if (localFunction() != 5) return "fail 3: ${localFunction()}"
+    return "OK"
+}
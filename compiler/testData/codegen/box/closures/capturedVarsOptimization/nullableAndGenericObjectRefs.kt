@@ -0,0 +1,42 @@
+inline fun run(block: () -> Unit) = block()
+
+class Box<T>(val value: T)
+
+fun <T> lastNonNull(items: Array<T>): T? {
+    var result: T? = null
+    for (item in items) {
+        run { if (item != null) result = item }
+    }
+    return result
+}
+
+fun <T> replace(initial: T, next: T): Box<T> {
+    var current = initial
+    run { current = next }
+    return Box(current)
+}
+
+fun nullable(): String? {
+    var s: String? = "a"
+    run { s = null }
+    return s
+}
+
+fun nullablePrimitive(): Int? {
+    var i: Int? = null
+    run { i = 42 }
+    run { i = i!! + 1 }
+    return i
+}
+
+fun box(): String {
+    val items = arrayOfNulls<String>(4)
+    items[0] = "a"
+    items[2] = "b"
+    if (lastNonNull(items) != "b") return "fail 1"
+    if (replace(1, 2).value != 2) return "fail 2"
+    if (replace<String?>("a", null).value != null) return "fail 3"
+    if (nullable() != null) return "fail 4"
+    if (nullablePrimitive() != 43) return "fail 5"
+    return "OK"
+}
@@ -0,0 +1,70 @@
+inline fun run(block: () -> Unit) = block()
+
+fun fail() = if (true) throw RuntimeException()
+
+fun catchAndFinally(): Int {
+    var x = 1
+    try {
+        run { x = 2 }
+        fail()
+    }
+    catch (e: RuntimeException) {
+        run { x += 10 }
+    }
+    finally {
+        run { x *= 3 }
+    }
+    return x
+}
+
+fun throwFromLambda(): Int {
+    var x = 0
+    try {
+        try {
+            run {
+                x = 5
+                fail()
+            }
+        }
+        finally {
+            x++
+        }
+    }
+    catch (e: RuntimeException) {
+        return x
+    }
+    return -1
+}
+
+fun returnFromTry(): String {
+    var log = ""
+    try {
+        run { log += "a" }
+        return log
+    }
+    finally {
+        run { log += "b" }
+    }
+}
+
+fun changedInFinallyAfterReturn(): String {
+    var log = ""
+    fun finish(): String {
+        try {
+            run { log += "try" }
+            return log
+        }
+        finally {
+            log += "-finally"
+        }
+    }
+    return finish() + ";" + log
+}
+
+fun box(): String {
+    if (catchAndFinally() != 36) return "fail 1: ${catchAndFinally()}"
+    if (throwFromLambda() != 6) return "fail 2: ${throwFromLambda()}"
+    if (returnFromTry() != "a") return "fail 3: ${returnFromTry()}"
+    if (changedInFinallyAfterReturn() != "try;try-finally") return "fail 4: ${changedInFinallyAfterReturn()}"
+    return "OK"
+}
@@ -0,0 +1,45 @@
+inline fun run(block: () -> Unit) = block()
+
+class Holder(val f: () -> Int)
+
+fun inlined(): Int {
+    var total = 0
+    for (i in 1..3) {
+        var x = 0
+        run { x += i }
+        run { x *= 10 }
+        total += x
+    }
+    return total
+}
+
+fun inlinedWithBreakAndContinue(): Int {
+    var total = 0
+    var i = 0
+    while (true) {
+        i++
+        var x = i
+        run { x *= 2 }
+        if (x == 4) continue
+        if (x > 8) break
+        run { total += x }
+    }
+    return total
+}
+
+fun escaping(): Int {
+    val holders = arrayOfNulls<Holder>(3)
+    for (i in 0..2) {
+        var y = i
+        holders[i] = Holder({ y * 10 })
+        y++
+    }
+    return holders[0]!!.f() + holders[1]!!.f() + holders[2]!!.f()
+}
+
+fun box(): String {
+    if (inlined() != 60) return "fail 1: ${inlined()}"
+    if (inlinedWithBreakAndContinue() != 2 + 6 + 8) return "fail 2: ${inlinedWithBreakAndContinue()}"
+    if (escaping() != 10 + 20 + 30) return "fail 3: ${escaping()}"
+    return "OK"
+}
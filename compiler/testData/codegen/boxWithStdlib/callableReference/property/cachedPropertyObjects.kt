@@ -0,0 +1,21 @@
+import kotlin.reflect.jvm.*
+
+class A(var x: Int, val y: String)
+
+val top = "top"
+var mutableTop = 0
+
+fun box(): String {
+    if (!(A::x identityEquals A::x)) return "Fail mutable member"
+    if (!(A::y identityEquals A::y)) return "Fail member"
+    if (!(::top identityEquals ::top)) return "Fail top level"
+    if (!(::mutableTop identityEquals ::mutableTop)) return "Fail mutable top level"
+    if (!(javaClass<A>().kotlin identityEquals javaClass<A>().kotlin)) return "Fail Class.kotlin"
+
+    val a = A(1, "y")
+    A::x.set(a, 2)
+    if (A::x.get(a) != 2) return "Fail get: ${A::x.get(a)}"
+    if (A::y.get(a) != "y") return "Fail get: ${A::y.get(a)}"
+
+    return "OK"
+}
@@ -0,0 +1,15 @@
+fun call(block: () -> Unit) = block()
+
+inline fun inlineCall(block: () -> Unit) = block()
+
+fun foo(): Int {
+    var escaping = 0
+    call { escaping++ }
+
+    var notEscaping = 0
+    inlineCall { notEscaping++ }
+
+    return escaping + notEscaping
+}
+
+// 1 NEW kotlin/jvm/internal/Ref\$IntRef
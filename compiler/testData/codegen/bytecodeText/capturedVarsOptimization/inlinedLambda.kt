@@ -0,0 +1,21 @@
+inline fun repeat(times: Int, block: (Int) -> Unit) {
+    for (i in 0..times - 1) {
+        block(i)
+    }
+}
+
+fun sum(n: Int): Long {
+    var sum = 0L
+    var count = 0
+    var last: String? = null
+    repeat(n) {
+        sum += it
+        count++
+        last = it.toString()
+    }
+    return sum + count + (last?.length() ?: 0)
+}
+
+// 0 NEW kotlin/jvm/internal/Ref
+// 0 GETFIELD kotlin/jvm/internal/Ref
+// 0 PUTFIELD kotlin/jvm/internal/Ref
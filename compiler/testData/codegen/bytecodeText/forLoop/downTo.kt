@@ -0,0 +1,20 @@
+fun sum(n: Int, m: Long): Long {
+    var result = 0L
+    for (i in n downTo 0) {
+        result += i
+    }
+    for (j in m downTo n) {
+        result += j
+    }
+    for (c in 'z' downTo 'a') {
+        result += c.toLong()
+    }
+    return result
+}
+
+// 0 NEW
+// 0 iterator
+// 0 getStart
+// 0 getEnd
+// 0 getIncrement
+// 0 getProgressionFinalElement
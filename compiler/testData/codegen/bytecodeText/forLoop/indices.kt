@@ -0,0 +1,23 @@
+fun sum(array: IntArray, strings: Array<String>, list: List<Int>, n: Int): Int {
+    var result = 0
+    for (i in array.indices) {
+        result += array[i]
+    }
+    for (i in strings.indices) {
+        result += strings[i].length()
+    }
+    for (i in list.indices) {
+        result += list[i]
+    }
+    for (i in n.indices) {
+        result += i
+    }
+    return result
+}
+
+// 0 NEW
+// 0 iterator
+// 0 getStart
+// 0 getEnd
+// 2 ARRAYLENGTH
+// 1 INVOKEINTERFACE java/util/Collection.size
@@ -0,0 +1,24 @@
+fun sum(array: IntArray, n: Int): Int {
+    var result = 0
+    for (i in array.indices.reversed()) {
+        result += array[i]
+    }
+    for (i in (0..n).reversed()) {
+        result += i
+    }
+    for (i in 0..n step 2) {
+        result += i
+    }
+    for (i in (n downTo 0 step 3).reversed()) {
+        result += i
+    }
+    return result
+}
+
+// 0 iterator
+// 0 getStart
+// 0 getEnd
+// 0 getIncrement
+// 2 getProgressionFinalElement
+// 2 NEW java/lang/IllegalArgumentException
+// 0 NEW kotlin
@@ -0,0 +1,14 @@
+package a
+
+inline fun <T> withLogging(name: String, f: () -> T): T {
+    log.add("enter $name")
+    val result = f()
+    log.add("exit $name")
+    return result
+}
+
+val log = arrayListOf<String>()
+
+class Counter(var value: Int = 0) {
+    fun increment() = ++value
+}
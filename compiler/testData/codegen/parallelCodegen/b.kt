@@ -0,0 +1,13 @@
+package b
+
+import a.*
+
+fun countTo(n: Int): Int = withLogging("countTo") {
+    val counter = Counter()
+    for (i in 1..n) counter.increment()
+    counter.value
+}
+
+object Registry {
+    val names = listOf("b1", "b2").map { it.toUpperCase() }
+}
@@ -0,0 +1,23 @@
+package c
+
+import b.*
+
+trait Shape {
+    fun area(): Double
+}
+
+class Square(val side: Double) : Shape {
+    override fun area() = side * side
+}
+
+fun total(shapes: List<Shape>): Double = shapes.fold(countTo(0).toDouble()) { acc, shape -> acc + shape.area() }
+
+enum class Color {
+    RED
+    GREEN
+}
+
+fun describe(color: Color) = when (color) {
+    Color.RED -> "red"
+    Color.GREEN -> "green"
+}
@@ -0,0 +1,5 @@
+package c
+
+fun squares(sides: List<Double>): List<Shape> = sides.map { Square(it) }
+
+val runnable = Runnable { println(describe(Color.RED)) }
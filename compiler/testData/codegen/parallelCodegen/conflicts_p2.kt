@@ -0,0 +1,9 @@
+package p2
+
+fun strings(l: List<String>) = l.size()
+fun strings(l: List<Int>) = l.size()
+
+class C {
+    fun ints(l: Set<String>) = l.size()
+    fun ints(l: Set<Int>) = l.size()
+}
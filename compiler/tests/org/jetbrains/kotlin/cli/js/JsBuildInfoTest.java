@@ -0,0 +1,118 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.js;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.test.TestCaseWithTmpdir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class JsBuildInfoTest extends TestCaseWithTmpdir {
+    private File buildInfoDirectory;
+    private File source;
+    private File library;
+    private File output;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        buildInfoDirectory = new File(tmpdir, "buildInfo");
+        source = new File(tmpdir, "src/a.kt");
+        library = new File(tmpdir, "lib/lib.kt");
+        output = new File(tmpdir, "out/a.js");
+        FileUtil.writeToFile(source, "fun foo() {}");
+        FileUtil.writeToFile(library, "fun bar() {}");
+    }
+
+    public void testNotUpToDateWithoutPreviousCompilation() throws Exception {
+        assertNull(createBuildInfo("-main").getUpToDateOutputs());
+    }
+
+    public void testUpToDate() throws Exception {
+        compile();
+
+        assertEquals(Collections.singletonList(output), createBuildInfo("-main").getUpToDateOutputs());
+    }
+
+    public void testSourceChanged() throws Exception {
+        compile();
+        FileUtil.writeToFile(source, "fun foo() { bar() }");
+
+        assertNull(createBuildInfo("-main").getUpToDateOutputs());
+    }
+
+    public void testLibraryChanged() throws Exception {
+        compile();
+        FileUtil.writeToFile(library, "fun bar() { foo() }");
+
+        assertNull(createBuildInfo("-main").getUpToDateOutputs());
+    }
+
+    public void testLibraryChangedKeepingLengthAndTimestamp() throws Exception {
+        compile();
+        long timestamp = library.lastModified();
+        FileUtil.writeToFile(library, "fun baz() {}");
+        assertTrue(library.setLastModified(timestamp));
+
+        assertNull(createBuildInfo("-main").getUpToDateOutputs());
+    }
+
+    public void testOptionsChanged() throws Exception {
+        compile();
+
+        assertNull(createBuildInfo("-no-main").getUpToDateOutputs());
+    }
+
+    public void testOutputChanged() throws Exception {
+        compile();
+        FileUtil.writeToFile(output, "var a = 22;");
+
+        assertNull(createBuildInfo("-main").getUpToDateOutputs());
+    }
+
+    public void testOutputChangedKeepingLengthAndTimestamp() throws Exception {
+        compile();
+        long timestamp = output.lastModified();
+        FileUtil.writeToFile(output, "var a = 2;");
+        assertTrue(output.setLastModified(timestamp));
+
+        assertNull(createBuildInfo("-main").getUpToDateOutputs());
+    }
+
+    public void testOutputDeleted() throws Exception {
+        compile();
+        FileUtil.delete(output);
+
+        assertNull(createBuildInfo("-main").getUpToDateOutputs());
+    }
+
+    private void compile() throws IOException {
+        FileUtil.writeToFile(output, "var a = 1;");
+        createBuildInfo("-main").save(Collections.singletonList(output));
+    }
+
+    @NotNull
+    private JsBuildInfo createBuildInfo(@NotNull String option) throws IOException {
+        List<File> libraries = Collections.singletonList(library.getParentFile());
+        return JsBuildInfo.create(buildInfoDirectory, output, Arrays.asList(option), Collections.singletonList(source), libraries);
+    }
+}
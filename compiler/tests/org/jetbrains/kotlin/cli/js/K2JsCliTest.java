@@ -16,6 +16,7 @@
 
 package org.jetbrains.kotlin.cli.js;
 
+import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.kotlin.cli.CliBaseTest;
 import org.junit.Assert;
 import org.junit.Test;
@@ -30,6 +31,35 @@ public class K2JsCliTest extends CliBaseTest {
         Assert.assertTrue(new File(tmpdir.getTmpDir(), "out.js").isFile());
     }
 
+    @Test
+    public void streamingOutput() throws Exception {
+        executeCompilerCompareOutputJS();
+
+        String code = FileUtil.loadFile(new File(tmpdir.getTmpDir(), "out.js"));
+        Assert.assertTrue(code, code.contains("//@ sourceMappingURL=out.js.map"));
+        String sourceMap = FileUtil.loadFile(new File(tmpdir.getTmpDir(), "out.js.map"));
+        Assert.assertTrue(sourceMap, sourceMap.startsWith("{\"version\":3,\"file\":\"out.js\",\"mappings\":\""));
+        Assert.assertTrue(sourceMap, sourceMap.contains("simple2js.kt"));
+    }
+
+    @Test
+    public void treeShaking() throws Exception {
+        executeCompilerCompareOutputJS();
+
+        String code = FileUtil.loadFile(new File(tmpdir.getTmpDir(), "out.js"));
+        Assert.assertTrue(code.contains("Kotlin.defineModule"));
+        Assert.assertTrue(code.contains("pairAdd_bunuun$"));
+        Assert.assertFalse(code.contains("pairMul_bunuun$"));
+        Assert.assertFalse(code.contains("IntHolder"));
+    }
+
+    @Test
+    public void treeShakingWithoutMainCall() throws Exception {
+        executeCompilerCompareOutputJS();
+
+        Assert.assertFalse(new File(tmpdir.getTmpDir(), "out.js").exists());
+    }
+
     @Test
     public void outputIsDirectory() throws Exception {
         executeCompilerCompareOutputJS();
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.cli.jvm.daemon;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.io.ZipUtil;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.cli.common.ExitCode;
+import org.jetbrains.kotlin.codegen.forTestCompile.ForTestCompileRuntime;
+import org.jetbrains.kotlin.load.kotlin.PackageClassUtils;
+import org.jetbrains.kotlin.name.FqName;
+import org.jetbrains.kotlin.test.JetTestUtils;
+import org.jetbrains.kotlin.utils.UtilsPackage;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipOutputStream;
+
+public class CompileDaemonTest extends TestCase {
+    private static final int IDLE_TIMEOUT_SECONDS = 5;
+
+    private File tmpDir;
+    private Thread daemonThread = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        tmpDir = JetTestUtils.tmpDirForTest(this);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (daemonThread != null) {
+            daemonThread.join();
+        }
+        super.tearDown();
+    }
+
+    public void testProtocolRoundTrip() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() <= 0xFFFF) {
+            builder.append("/\u043f\u0443\u0442\u044c/\u0444\u0430\u0439\u043b.jar").append(File.pathSeparatorChar);
+        }
+        String longString = builder.toString();
+        byte[] bytes = new byte[] {0, 1, -1, 127, -128};
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(buffer);
+        CompileDaemonProtocol.writeString(output, longString);
+        CompileDaemonProtocol.writeString(output, "");
+        CompileDaemonProtocol.writeBytes(output, bytes);
+        output.flush();
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+        assertEquals(longString, CompileDaemonProtocol.readString(input));
+        assertEquals("", CompileDaemonProtocol.readString(input));
+        assertTrue(Arrays.equals(bytes, CompileDaemonProtocol.readBytes(input)));
+        assertEquals(-1, input.read());
+
+        File runFile = new File(tmpDir, "compiler.run");
+        CompileDaemonProtocol.writeAddress(runFile, new CompileDaemonProtocol.Address(12345, Long.MIN_VALUE));
+        CompileDaemonProtocol.Address address = CompileDaemonProtocol.readAddress(runFile);
+        assertNotNull(address);
+        assertEquals(12345, address.port);
+        assertEquals(Long.MIN_VALUE, address.token);
+
+        FileUtil.writeToFile(runFile, "garbage");
+        assertNull(CompileDaemonProtocol.readAddress(runFile));
+    }
+
+    public void testCompile() throws Exception {
+        CompileDaemonProtocol.Address address = startDaemon();
+
+        File source = writeSource("main.kt", "fun main(args: Array<String>) {}");
+        File output = new File(tmpDir, "out");
+        compileAndAssertOk(address, source, output);
+
+        assertTrue(new File(output, PackageClassUtils.getPackageClassName(FqName.ROOT) + ".class").isFile());
+    }
+
+    public void testWrongToken() throws Exception {
+        CompileDaemonProtocol.Address address = startDaemon();
+
+        File source = writeSource("main.kt", "fun main(args: Array<String>) {}");
+        try {
+            CompileDaemonClient.compile(new CompileDaemonProtocol.Address(address.port, address.token + 1),
+                                        compilerArguments(source, new File(tmpDir, "out")), new PrintStream(new ByteArrayOutputStream()));
+            fail("The daemon must not serve a request with a wrong token");
+        }
+        catch (IOException expected) {
+        }
+    }
+
+    public void testRecompileAfterJarChange() throws Exception {
+        CompileDaemonProtocol.Address address = startDaemon();
+        File libraryJar = new File(tmpDir, "lib.jar");
+
+        buildLibrary(address, libraryJar, "fun greeting(): String = \"Hello\"", "1");
+        compileAndAssertOk(address, writeSource("app1.kt", "fun app() = lib.greeting()"), new File(tmpDir, "app1"), libraryJar);
+
+        long lastModified = libraryJar.lastModified();
+        buildLibrary(address, libraryJar, "fun greeting2(): String = \"Hello again\"", "2");
+        // File systems with a coarse timestamp granularity would not notice the change otherwise
+        assertTrue(libraryJar.setLastModified(lastModified + 2000));
+        compileAndAssertOk(address, writeSource("app2.kt", "fun app() = lib.greeting2()"), new File(tmpDir, "app2"), libraryJar);
+    }
+
+    @NotNull
+    private CompileDaemonProtocol.Address startDaemon() throws InterruptedException {
+        final File runFile = new File(tmpDir, "compiler.run");
+        daemonThread = new Thread("Compile daemon") {
+            @Override
+            public void run() {
+                try {
+                    new CompileDaemon(runFile, IDLE_TIMEOUT_SECONDS, 100).run();
+                }
+                catch (IOException e) {
+                    throw UtilsPackage.rethrow(e);
+                }
+            }
+        };
+        daemonThread.start();
+
+        while (true) {
+            CompileDaemonProtocol.Address address = CompileDaemonProtocol.readAddress(runFile);
+            if (address != null) return address;
+            Thread.sleep(10);
+        }
+    }
+
+    private void buildLibrary(
+            @NotNull CompileDaemonProtocol.Address address,
+            @NotNull File jar,
+            @NotNull String declarations,
+            @NotNull String version
+    ) throws IOException {
+        File classes = new File(tmpDir, "lib" + version);
+        compileAndAssertOk(address, writeSource("lib" + version + ".kt", "package lib\n\n" + declarations), classes);
+
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            ZipUtil.addDirToZipRecursively(zip, jar, classes, "", null, null);
+        }
+        finally {
+            zip.close();
+        }
+    }
+
+    private static void compileAndAssertOk(
+            @NotNull CompileDaemonProtocol.Address address,
+            @NotNull File source,
+            @NotNull File output,
+            @NotNull File... classpath
+    ) throws IOException {
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        ExitCode exitCode = CompileDaemonClient.compile(address, compilerArguments(source, output, classpath), new PrintStream(messages));
+        assertEquals(messages.toString("UTF-8"), ExitCode.OK, exitCode);
+    }
+
+    @NotNull
+    private static List<String> compilerArguments(@NotNull File source, @NotNull File output, @NotNull File... classpath) {
+        StringBuilder path = new StringBuilder(ForTestCompileRuntime.runtimeJarForTests().getAbsolutePath());
+        for (File file : classpath) {
+            path.append(File.pathSeparatorChar).append(file.getAbsolutePath());
+        }
+        return Arrays.asList(source.getAbsolutePath(), "-d", output.getAbsolutePath(), "-no-stdlib", "-classpath", path.toString());
+    }
+
+    @NotNull
+    private File writeSource(@NotNull String name, @NotNull String text) throws IOException {
+        File file = new File(tmpDir, name);
+        FileUtil.writeToFile(file, text);
+        return file;
+    }
+}
@@ -68,6 +68,7 @@ public class CodegenTestUtil {
                 GenerationState.GenerateClassFilter.GENERATE_ALL,
                 configuration.get(JVMConfigurationKeys.DISABLE_INLINE, false),
                 configuration.get(JVMConfigurationKeys.DISABLE_OPTIMIZATION, false),
+                configuration.get(JVMConfigurationKeys.PARALLEL_CODEGEN, false),
                 null,
                 null,
                 forExtraDiagnostics,
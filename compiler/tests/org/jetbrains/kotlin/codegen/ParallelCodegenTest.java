@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen;
+
+import com.google.common.base.Predicates;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.UsefulTestCase;
+import com.intellij.util.ArrayUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.analyzer.AnalysisResult;
+import org.jetbrains.kotlin.backend.common.output.OutputFile;
+import org.jetbrains.kotlin.cli.jvm.JVMConfigurationKeys;
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles;
+import org.jetbrains.kotlin.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.kotlin.codegen.state.GenerationState;
+import org.jetbrains.kotlin.codegen.state.Progress;
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+import org.jetbrains.kotlin.diagnostics.Diagnostic;
+import org.jetbrains.kotlin.diagnostics.DiagnosticSink;
+import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.jetbrains.kotlin.test.ConfigurationKind;
+import org.jetbrains.kotlin.test.JetTestUtils;
+import org.jetbrains.kotlin.test.TestJdkKind;
+import org.jetbrains.org.objectweb.asm.Opcodes;
+import org.jetbrains.org.objectweb.asm.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ParallelCodegenTest extends UsefulTestCase {
+    private static final String[] FILES = {
+            "parallelCodegen/a.kt", "parallelCodegen/b.kt", "parallelCodegen/c.kt", "parallelCodegen/c2.kt"
+    };
+
+    private static final String[] FILES_WITH_CONFLICTS = {
+            "parallelCodegen/conflicts_p1.kt", "parallelCodegen/conflicts_p2.kt",
+            "parallelCodegen/conflicts_p3.kt", "parallelCodegen/conflicts_p4.kt"
+    };
+
+    public void testOutputIsTheSameAsSequential() {
+        String sequential = generateToText(false);
+        String parallel = generateToText(true);
+        assertEquals(sequential, parallel);
+    }
+
+    public void testOutputIsStable() {
+        String first = generateToText(true);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(first, generateToText(true));
+        }
+    }
+
+    public void testDiagnosticsAreTheSameAsSequential() {
+        List<String> sequential = generateAndCollectDiagnostics(false);
+        assertFalse(sequential.isEmpty());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(sequential, generateAndCollectDiagnostics(true));
+        }
+    }
+
+    @NotNull
+    private String generateToText(boolean parallelCodegen) {
+        JetCoreEnvironment environment = createEnvironment(parallelCodegen);
+        CodegenTestFiles files = CodegenTestFiles.create(environment.getProject(), FILES);
+        return CodegenTestUtil.generateFiles(environment, files).createText();
+    }
+
+    @NotNull
+    private List<String> generateAndCollectDiagnostics(boolean parallelCodegen) {
+        JetCoreEnvironment environment = createEnvironment(parallelCodegen);
+        CodegenTestFiles files = CodegenTestFiles.create(environment.getProject(), FILES_WITH_CONFLICTS);
+        AnalysisResult analysisResult = JvmResolveUtil.analyzeFilesWithJavaIntegrationAndCheckForErrors(
+                environment.getProject(), files.getPsiFiles(), Predicates.<PsiFile>alwaysTrue());
+
+        // Not synchronized: the diagnostics must be reported from one thread
+        final List<String> diagnostics = new ArrayList<String>();
+        DiagnosticSink sink = new DiagnosticSink() {
+            @Override
+            public void report(@NotNull Diagnostic diagnostic) {
+                diagnostics.add(diagnostic.getFactory().getName() + " at " + diagnostic.getPsiFile().getName() +
+                                diagnostic.getTextRanges());
+            }
+        };
+
+        GenerationState state = createGenerationState(environment, files, analysisResult, parallelCodegen, sink);
+        KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION);
+        return diagnostics;
+    }
+
+    public void testSamePathKeepsPositionOfFirstGroupAndContentsOfLast() {
+        JetCoreEnvironment environment = createEnvironment(true);
+        CodegenTestFiles files = CodegenTestFiles.create(environment.getProject(), FILES);
+        AnalysisResult analysisResult = JvmResolveUtil.analyzeFilesWithJavaIntegrationAndCheckForErrors(
+                environment.getProject(), files.getPsiFiles(), Predicates.<PsiFile>alwaysTrue());
+        ClassFileFactory factory = createGenerationState(environment, files, analysisResult, true, DiagnosticSink.DO_NOTHING).getFactory();
+        PsiFile sourceFile = files.getPsiFiles().get(0);
+
+        // Group 1 gets there first, as it may happen when packages are generated on different threads
+        factory.enterOutputGroup(1);
+        defineClass(factory, sourceFile, "B", "java/lang/Object");
+        defineClass(factory, sourceFile, "A", "java/lang/Number");
+        factory.exitOutputGroup();
+        factory.enterOutputGroup(0);
+        defineClass(factory, sourceFile, "A", "java/lang/Object");
+        factory.exitOutputGroup();
+
+        List<OutputFile> outputs = factory.asList();
+        assertEquals(2, outputs.size());
+        assertEquals("A.class", outputs.get(0).getRelativePath());
+        assertEquals("B.class", outputs.get(1).getRelativePath());
+        String text = outputs.get(0).asText();
+        assertTrue(text, text.contains("extends java/lang/Number"));
+    }
+
+    private static void defineClass(@NotNull ClassFileFactory factory, @NotNull PsiFile sourceFile, @NotNull String name, @NotNull String superName) {
+        ClassBuilder builder = factory.newVisitor(JvmDeclarationOrigin.NO_ORIGIN, Type.getObjectType(name), sourceFile);
+        builder.defineClass(null, Opcodes.V1_6, Opcodes.ACC_PUBLIC, name, null, superName, ArrayUtil.EMPTY_STRING_ARRAY);
+        builder.done();
+    }
+
+    @NotNull
+    private static GenerationState createGenerationState(
+            @NotNull JetCoreEnvironment environment,
+            @NotNull CodegenTestFiles files,
+            @NotNull AnalysisResult analysisResult,
+            boolean parallelCodegen,
+            @NotNull DiagnosticSink sink
+    ) {
+        return new GenerationState(
+                environment.getProject(), ClassBuilderFactories.TEST, Progress.DEAF,
+                analysisResult.getModuleDescriptor(), analysisResult.getBindingContext(), files.getPsiFiles(),
+                false, false, GenerationState.GenerateClassFilter.GENERATE_ALL, false, false, parallelCodegen,
+                null, null, sink, null
+        );
+    }
+
+    @NotNull
+    private JetCoreEnvironment createEnvironment(boolean parallelCodegen) {
+        CompilerConfiguration configuration = JetTestUtils.compilerConfigurationForTests(
+                ConfigurationKind.ALL, TestJdkKind.MOCK_JDK, JetTestUtils.getAnnotationsJar());
+        configuration.put(JVMConfigurationKeys.PARALLEL_CODEGEN, parallelCodegen);
+
+        return JetCoreEnvironment.createForTests(getTestRootDisposable(), configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES);
+    }
+}
@@ -1475,7 +1475,7 @@ public class BlackBoxCodegenTestGenerated extends AbstractBlackBoxCodegenTest {
 
     @TestMetadata("compiler/testData/codegen/box/closures")
     @TestDataPath("$PROJECT_ROOT")
-    @InnerTestClasses({Closures.CaptureOuterProperty.class, Closures.ClosureInsideClosure.class})
+    @InnerTestClasses({Closures.CaptureOuterProperty.class, Closures.CapturedVarsOptimization.class, Closures.ClosureInsideClosure.class})
     @RunWith(JUnit3RunnerWithInners.class)
     public static class Closures extends AbstractBlackBoxCodegenTest {
         public void testAllFilesPresentInClosures() throws Exception {
@@ -1689,6 +1689,39 @@ public class BlackBoxCodegenTestGenerated extends AbstractBlackBoxCodegenTest {
             }
         }
 
+        @TestMetadata("compiler/testData/codegen/box/closures/capturedVarsOptimization")
+        @TestDataPath("$PROJECT_ROOT")
+        @RunWith(JUnit3RunnerWithInners.class)
+        public static class CapturedVarsOptimization extends AbstractBlackBoxCodegenTest {
+            public void testAllFilesPresentInCapturedVarsOptimization() throws Exception {
+                JetTestUtils.assertAllTestsPresentByMetadata(this.getClass(), new File("compiler/testData/codegen/box/closures/capturedVarsOptimization"), Pattern.compile("^(.+)\\.kt$"), true);
+            }
+
+            @TestMetadata("inlinedAndEscaping.kt")
+            public void testInlinedAndEscaping() throws Exception {
+                String fileName = JetTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/capturedVarsOptimization/inlinedAndEscaping.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("nullableAndGenericObjectRefs.kt")
+            public void testNullableAndGenericObjectRefs() throws Exception {
+                String fileName = JetTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/capturedVarsOptimization/nullableAndGenericObjectRefs.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("tryCatchFinally.kt")
+            public void testTryCatchFinally() throws Exception {
+                String fileName = JetTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/capturedVarsOptimization/tryCatchFinally.kt");
+                doTest(fileName);
+            }
+
+            @TestMetadata("varsDeclaredInLoop.kt")
+            public void testVarsDeclaredInLoop() throws Exception {
+                String fileName = JetTestUtils.navigationMetadata("compiler/testData/codegen/box/closures/capturedVarsOptimization/varsDeclaredInLoop.kt");
+                doTest(fileName);
+            }
+        }
+
         @TestMetadata("compiler/testData/codegen/box/closures/closureInsideClosure")
         @TestDataPath("$PROJECT_ROOT")
         @RunWith(JUnit3RunnerWithInners.class)
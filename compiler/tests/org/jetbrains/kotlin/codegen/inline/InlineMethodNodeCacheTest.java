@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.codegen.inline;
+
+import junit.framework.TestCase;
+import org.jetbrains.org.objectweb.asm.Label;
+import org.jetbrains.org.objectweb.asm.Opcodes;
+import org.jetbrains.org.objectweb.asm.tree.*;
+
+public class InlineMethodNodeCacheTest extends TestCase {
+    public void testCopiesAreIndependent() {
+        InlineMethodNodeCache cache = new InlineMethodNodeCache();
+        assertNull(cache.get("A.class", "foo", "()V"));
+
+        MethodNode first = cache.put("A.class", "foo", "()V", createNode());
+        MethodNode second = cache.get("A.class", "foo", "()V");
+        assertNotNull(second);
+        assertNotSame(first, second);
+
+        first.instructions.clear();
+        first.tryCatchBlocks.clear();
+        assertEquals(createNode().instructions.size(), second.instructions.size());
+
+        MethodNode third = cache.get("A.class", "foo", "()V");
+        assertNotNull(third);
+        checkLabels(second);
+        checkLabels(third);
+        assertNotSame(second.instructions.getFirst(), third.instructions.getFirst());
+
+        assertEquals("Inline function cache: 2 hits, 1 misses, 1 functions", cache.getStatistics());
+    }
+
+    public void testKeyIncludesDescriptor() {
+        InlineMethodNodeCache cache = new InlineMethodNodeCache();
+        cache.put("A.class", "foo", "()V", createNode());
+        assertNull(cache.get("A.class", "foo", "(I)V"));
+        assertNull(cache.get("B.class", "foo", "()V"));
+    }
+
+    // Jumps and try-catch blocks of a copy should point to labels of the copy
+    private static void checkLabels(MethodNode node) {
+        JumpInsnNode jump = null;
+        for (AbstractInsnNode insn = node.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn instanceof JumpInsnNode) jump = (JumpInsnNode) insn;
+        }
+        assertNotNull(jump);
+        assertTrue(node.instructions.contains(jump.label));
+
+        TryCatchBlockNode block = node.tryCatchBlocks.get(0);
+        assertTrue(node.instructions.contains(block.start));
+        assertTrue(node.instructions.contains(block.end));
+        assertTrue(node.instructions.contains(block.handler));
+    }
+
+    private static MethodNode createNode() {
+        MethodNode node = new MethodNode(InlineCodegenUtil.API, Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "foo", "()V", null, null);
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        node.visitCode();
+        node.visitTryCatchBlock(start, end, handler, "java/lang/Exception");
+        node.visitLabel(start);
+        node.visitInsn(Opcodes.NOP);
+        node.visitJumpInsn(Opcodes.GOTO, end);
+        node.visitLabel(handler);
+        node.visitInsn(Opcodes.POP);
+        node.visitLabel(end);
+        node.visitInsn(Opcodes.RETURN);
+        node.visitMaxs(1, 0);
+        node.visitEnd();
+        return node;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.jvm.compiler;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.cli.jvm.compiler.ClassPathIndex;
+import org.jetbrains.kotlin.test.TestCaseWithTmpdir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ClassPathIndexTest extends TestCaseWithTmpdir {
+    private File jar;
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // No directory entries, as in many jars built by hand
+        jar = createJar("lib.jar", "a/b/C.class", "a/b/C$D.class", "META-INF/MANIFEST.MF");
+        directory = new File(tmpdir, "classes");
+        createFile(directory, "a/b/C.class");
+        createFile(directory, "a/E.class");
+        createFile(directory, "F.class");
+    }
+
+    public void testIndex() {
+        checkIndex(ClassPathIndex.build(Arrays.asList(jar, directory), null));
+    }
+
+    public void testCachedIndex() {
+        File cacheDirectory = new File(tmpdir, "cache");
+        checkIndex(ClassPathIndex.build(Arrays.asList(jar, directory), cacheDirectory));
+
+        File[] cacheFiles = cacheDirectory.listFiles();
+        assertNotNull(cacheFiles);
+        // Directories are never cached
+        assertEquals(1, cacheFiles.length);
+
+        checkIndex(ClassPathIndex.build(Arrays.asList(jar, directory), cacheDirectory));
+    }
+
+    public void testChangedJarIsReindexed() throws IOException {
+        File cacheDirectory = new File(tmpdir, "cache");
+        ClassPathIndex.build(Arrays.asList(jar), cacheDirectory);
+
+        jar = createJar("lib.jar", "x/Y.class");
+        assertTrue(jar.setLastModified(jar.lastModified() + 2000));
+
+        ClassPathIndex index = ClassPathIndex.build(Arrays.asList(jar), cacheDirectory);
+        assertRoots(index.getRootsWithClassFile("x/Y.class"), 0);
+        assertNoRoots(index.getRootsWithClassFile("a/b/C.class"));
+    }
+
+    private static void checkIndex(@NotNull ClassPathIndex index) {
+        assertRoots(index.getRootsWithClassFile("a/b/C.class"), 0, 1);
+        assertRoots(index.getRootsWithClassFile("a/b/C$D.class"), 0);
+        assertRoots(index.getRootsWithClassFile("a/E.class"), 1);
+        assertRoots(index.getRootsWithClassFile("F.class"), 1);
+        assertNoRoots(index.getRootsWithClassFile("META-INF/MANIFEST.MF"));
+
+        assertRoots(index.getRootsWithDirectory(""), 0, 1);
+        assertRoots(index.getRootsWithDirectory("a/b"), 0, 1);
+        assertRoots(index.getRootsWithDirectory("META-INF"), 0);
+        assertTrue(index.hasDirectory(1, "a"));
+        assertFalse(index.hasDirectory(1, "META-INF"));
+    }
+
+    private static void assertRoots(@NotNull int[] actual, int... expected) {
+        assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+    }
+
+    private static void assertNoRoots(@NotNull int[] actual) {
+        assertEquals(0, actual.length);
+    }
+
+    @NotNull
+    private File createJar(@NotNull String name, @NotNull String... entries) throws IOException {
+        File result = new File(tmpdir, name);
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(result));
+        try {
+            for (String entry : entries) {
+                output.putNextEntry(new ZipEntry(entry));
+                output.write(0);
+                output.closeEntry();
+            }
+        }
+        finally {
+            output.close();
+        }
+        return result;
+    }
+
+    private static void createFile(@NotNull File root, @NotNull String relativePath) throws IOException {
+        FileUtil.writeToFile(new File(root, relativePath), "");
+    }
+}
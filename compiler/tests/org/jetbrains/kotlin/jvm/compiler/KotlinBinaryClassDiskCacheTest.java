@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.jvm.compiler;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.cli.jvm.JVMConfigurationKeys;
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles;
+import org.jetbrains.kotlin.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+import org.jetbrains.kotlin.load.kotlin.KotlinBinaryClassCache;
+import org.jetbrains.kotlin.load.kotlin.KotlinBinaryClassDiskCache;
+import org.jetbrains.kotlin.load.kotlin.KotlinJvmBinaryClass;
+import org.jetbrains.kotlin.load.kotlin.VirtualFileFinder;
+import org.jetbrains.kotlin.load.kotlin.header.KotlinClassHeader;
+import org.jetbrains.kotlin.name.FqName;
+import org.jetbrains.kotlin.test.ConfigurationKind;
+import org.jetbrains.kotlin.test.JetTestUtils;
+import org.jetbrains.kotlin.test.TestCaseWithTmpdir;
+import org.jetbrains.kotlin.test.TestJdkKind;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class KotlinBinaryClassDiskCacheTest extends TestCaseWithTmpdir {
+    public void testHeadersAreRestored() {
+        File cacheDirectory = new File(tmpdir, "cache");
+        JetCoreEnvironment environment = createEnvironment(cacheDirectory);
+
+        VirtualFileFinder finder = VirtualFileFinder.SERVICE.getInstance(environment.getProject());
+        VirtualFile packageFacade = finder.findVirtualFileWithHeader(new FqName("kotlin.KotlinPackage"));
+        VirtualFile javaClass = finder.findVirtualFile("java/lang/Object");
+        assertNotNull(packageFacade);
+        assertNotNull(javaClass);
+
+        KotlinJvmBinaryClass original = KotlinBinaryClassCache.getKotlinBinaryClass(packageFacade);
+        assertNotNull(original);
+        assertNull(KotlinBinaryClassCache.getKotlinBinaryClass(javaClass));
+        KotlinBinaryClassCache.getInstance().saveDiskCache();
+
+        KotlinBinaryClassDiskCache diskCache = new KotlinBinaryClassDiskCache(cacheDirectory);
+
+        KotlinBinaryClassDiskCache.CachedValue restored = diskCache.load(packageFacade);
+        assertNotNull(restored);
+        assertNotNull(restored.value);
+        assertEquals(original.getClassId(), restored.value.getClassId());
+        assertHeadersEqual(original.getClassHeader(), restored.value.getClassHeader());
+
+        assertSame(KotlinBinaryClassDiskCache.CachedValue.NULL, diskCache.load(javaClass));
+    }
+
+    public void testJarIsCheckedOnlyUntilRecheck() throws IOException {
+        File jar = new File(tmpdir, "lib.jar");
+        FileUtil.writeToFile(jar, "1");
+        VirtualFile classFile = createClassFileInJar(jar, "A.class");
+
+        KotlinBinaryClassDiskCache diskCache = new KotlinBinaryClassDiskCache(new File(tmpdir, "cache"));
+        diskCache.store(classFile, null);
+        assertSame(KotlinBinaryClassDiskCache.CachedValue.NULL, diskCache.load(classFile));
+
+        FileUtil.writeToFile(jar, "12");
+        assertSame(KotlinBinaryClassDiskCache.CachedValue.NULL, diskCache.load(classFile));
+
+        diskCache.recheckJars();
+        assertNull(diskCache.load(classFile));
+    }
+
+    @NotNull
+    private static VirtualFile createClassFileInJar(@NotNull final File jar, @NotNull final String relativePath) {
+        return new LightVirtualFile(relativePath) {
+            @NotNull
+            @Override
+            public String getPath() {
+                return jar.getPath() + "!/" + relativePath;
+            }
+        };
+    }
+
+    @NotNull
+    private JetCoreEnvironment createEnvironment(@NotNull File cacheDirectory) {
+        CompilerConfiguration configuration = JetTestUtils.compilerConfigurationForTests(
+                ConfigurationKind.ALL, TestJdkKind.MOCK_JDK, JetTestUtils.getAnnotationsJar());
+        configuration.put(JVMConfigurationKeys.CLASSPATH_CACHE_DIRECTORY, cacheDirectory);
+        return JetCoreEnvironment.createForTests(getTestRootDisposable(), configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES);
+    }
+
+    private static void assertHeadersEqual(@NotNull KotlinClassHeader expected, @NotNull KotlinClassHeader actual) {
+        assertEquals(expected.getKind(), actual.getKind());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(Arrays.toString(expected.getAnnotationData()), Arrays.toString(actual.getAnnotationData()));
+        assertEquals(expected.getSyntheticClassKind(), actual.getSyntheticClassKind());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.jvm.compiler;
+
+import com.intellij.testFramework.UsefulTestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.cli.jvm.JVMConfigurationKeys;
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles;
+import org.jetbrains.kotlin.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.kotlin.config.CommonConfigurationKeys;
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+import org.jetbrains.kotlin.psi.JetFile;
+import org.jetbrains.kotlin.test.ConfigurationKind;
+import org.jetbrains.kotlin.test.JetTestUtils;
+import org.jetbrains.kotlin.test.TestJdkKind;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ParallelParsingTest extends UsefulTestCase {
+    private static final String SOURCE_ROOT = JetTestUtils.getTestDataPathBase() + "/codegen/parallelCodegen";
+
+    public void testSameFilesAsSequential() {
+        List<JetFile> sequential = createEnvironment(false).getSourceFiles();
+        List<JetFile> parallel = createEnvironment(true).getSourceFiles();
+
+        assertEquals(4, parallel.size());
+        assertEquals(describe(sequential), describe(parallel));
+    }
+
+    @NotNull
+    private JetCoreEnvironment createEnvironment(boolean parallelParsing) {
+        CompilerConfiguration configuration = JetTestUtils.compilerConfigurationForTests(
+                ConfigurationKind.JDK_ONLY, TestJdkKind.MOCK_JDK, JetTestUtils.getAnnotationsJar());
+        configuration.add(CommonConfigurationKeys.SOURCE_ROOTS_KEY, SOURCE_ROOT);
+        configuration.put(JVMConfigurationKeys.PARALLEL_PARSING, parallelParsing);
+        return JetCoreEnvironment.createForTests(getTestRootDisposable(), configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES);
+    }
+
+    @NotNull
+    private static List<String> describe(@NotNull List<JetFile> files) {
+        List<String> result = new ArrayList<String>(files.size());
+        for (JetFile file : files) {
+            result.add(file.getName() + ": " + file.getText().hashCode() + ", " + file.getDeclarations().size());
+        }
+        return result;
+    }
+}
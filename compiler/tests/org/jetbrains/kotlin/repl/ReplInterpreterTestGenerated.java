@@ -49,6 +49,12 @@ public class ReplInterpreterTestGenerated extends AbstractReplInterpreterTest {
         doTest(fileName);
     }
 
+    @TestMetadata("earlierLinesReferences.repl")
+    public void testEarlierLinesReferences() throws Exception {
+        String fileName = JetTestUtils.navigationMetadata("compiler/testData/repl/earlierLinesReferences.repl");
+        doTest(fileName);
+    }
+
     @TestMetadata("empty.repl")
     public void testEmpty() throws Exception {
         String fileName = JetTestUtils.navigationMetadata("compiler/testData/repl/empty.repl");
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.storage;
+
+import junit.framework.TestCase;
+import kotlin.Function0;
+import kotlin.Function1;
+import kotlin.Unit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.util.ReenteringLazyValueComputationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LockFreeStorageManagerTest extends TestCase {
+    private static final int THREADS = 8;
+
+    private LockFreeStorageManager m;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        m = new LockFreeStorageManager();
+    }
+
+    public void testLazyValueComputedOnce() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        NotNullLazyValue<String> value = m.createLazyValue(new Function0<String>() {
+            @Override
+            public String invoke() {
+                return "ok" + counter.incrementAndGet();
+            }
+        });
+
+        assertFalse(value.isComputed());
+        assertEquals("ok1", value.invoke());
+        assertEquals("ok1", value.invoke());
+        assertTrue(value.isComputed());
+        assertEquals(1, counter.get());
+    }
+
+    public void testNullableLazyValuePreservesException() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        NullableLazyValue<String> value = m.createNullableLazyValue(new Function0<String>() {
+            @Override
+            public String invoke() {
+                counter.incrementAndGet();
+                throw new UnsupportedOperationException();
+            }
+        });
+
+        Throwable first = invokeAndCatch(value);
+        Throwable second = invokeAndCatch(value);
+        assertTrue(first instanceof UnsupportedOperationException);
+        assertSame(first, second);
+        assertTrue(value.isComputed());
+        assertEquals(1, counter.get());
+    }
+
+    public void testFunctionComputedOnceWithNulls() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        MemoizedFunctionToNullable<String, String> f = m.createMemoizedFunctionWithNullableValues(new Function1<String, String>() {
+            @Override
+            public String invoke(String s) {
+                counter.incrementAndGet();
+                return s.isEmpty() ? null : s + "!";
+            }
+        });
+
+        assertNull(f.invoke(""));
+        assertNull(f.invoke(""));
+        assertEquals("a!", f.invoke("a"));
+        assertEquals("a!", f.invoke("a"));
+        assertEquals(2, counter.get());
+    }
+
+    public void testFunctionRecursionDetection() throws Exception {
+        class C {
+            MemoizedFunctionToNotNull<String, String> rec = m.createMemoizedFunction(new Function1<String, String>() {
+                @Override
+                public String invoke(String s) {
+                    return rec.invoke("!!!");
+                }
+            });
+        }
+
+        try {
+            new C().rec.invoke("");
+            fail();
+        }
+        catch (AssertionError e) {
+            assertTrue(e.getMessage().startsWith("Recursion detected on input: !!!"));
+        }
+    }
+
+    public void testRecursionIntolerance() throws Exception {
+        class C {
+            NotNullLazyValue<String> rec = m.createLazyValue(new Function0<String>() {
+                @Override
+                public String invoke() {
+                    return rec.invoke();
+                }
+            });
+        }
+
+        try {
+            new C().rec.invoke();
+            fail();
+        }
+        catch (IllegalStateException e) {
+            // OK
+        }
+    }
+
+    public void testRecursionTolerance() throws Exception {
+        class C {
+            NotNullLazyValue<String> rec = m.createRecursionTolerantLazyValue(new Function0<String>() {
+                @Override
+                public String invoke() {
+                    assertEquals("rec", rec.invoke());
+                    return "tolerant!";
+                }
+            }, "rec");
+        }
+
+        assertEquals("tolerant!", new C().rec.invoke());
+    }
+
+    public void testRecursionPreventionWithDefaultOnSecondRun() throws Exception {
+        class C {
+            NotNullLazyValue<String> rec = m.createLazyValueWithPostCompute(
+                    new Function0<String>() {
+                        @Override
+                        public String invoke() {
+                            return rec.invoke();
+                        }
+                    },
+                    new Function1<Boolean, String>() {
+                        @Override
+                        public String invoke(Boolean firstTime) {
+                            if (firstTime) {
+                                throw new ReenteringLazyValueComputationException();
+                            }
+                            return "second";
+                        }
+                    },
+                    new Function1<String, Unit>() {
+                        @Override
+                        public Unit invoke(String s) {
+                            fail("Recursion-tolerating value should not be post computed");
+                            return Unit.INSTANCE$;
+                        }
+                    }
+            );
+        }
+
+        C c = new C();
+        try {
+            c.rec.invoke();
+            fail();
+        }
+        catch (ReenteringLazyValueComputationException e) {
+            // OK
+        }
+
+        assertEquals("second", c.rec.invoke());
+    }
+
+    public void testPostComputeSeesOwnValue() throws Exception {
+        class C {
+            NotNullLazyValue<List<String>> value = m.createLazyValueWithPostCompute(
+                    new Function0<List<String>>() {
+                        @Override
+                        public List<String> invoke() {
+                            return new ArrayList<String>();
+                        }
+                    },
+                    null,
+                    new Function1<List<String>, Unit>() {
+                        @Override
+                        public Unit invoke(List<String> strings) {
+                            assertSame(strings, value.invoke());
+                            strings.add("postComputed");
+                            return Unit.INSTANCE$;
+                        }
+                    }
+            );
+        }
+
+        assertEquals(1, new C().value.invoke().size());
+    }
+
+    public void testExceptionHandlingStrategy() throws Exception {
+        class RethrownException extends RuntimeException {}
+
+        LockFreeStorageManager m = LockFreeStorageManager.createWithExceptionHandling(new LockBasedStorageManager.ExceptionHandlingStrategy() {
+            @NotNull
+            @Override
+            public RuntimeException handleException(@NotNull Throwable throwable) {
+                throw new RethrownException();
+            }
+        });
+        try {
+            m.createMemoizedFunction(new Function1<Object, Object>() {
+                @Override
+                public Object invoke(Object o) {
+                    throw new RuntimeException();
+                }
+            }).invoke("");
+            fail("Exception should have occurred");
+        }
+        catch (RethrownException ignored) {
+        }
+    }
+
+    public void testConcurrentRequestsComputeOnce() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        final MemoizedFunctionToNotNull<Integer, Integer> f = m.createMemoizedFunction(new Function1<Integer, Integer>() {
+            @Override
+            public Integer invoke(Integer i) {
+                counter.incrementAndGet();
+                sleep(1);
+                return i * 2;
+            }
+        });
+
+        runConcurrently(new Callable<Void>() {
+            @Override
+            public Void call() {
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(i * 2, f.invoke(i).intValue());
+                }
+                return null;
+            }
+        });
+
+        assertEquals(100, counter.get());
+    }
+
+    public void testCrossDependentValuesDoNotDeadlock() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        class C {
+            NotNullLazyValue<String> a = m.createRecursionTolerantLazyValue(new Function0<String>() {
+                @Override
+                public String invoke() {
+                    awaitLatch(bothStarted);
+                    return "a" + b.invoke();
+                }
+            }, "x");
+            NotNullLazyValue<String> b = m.createRecursionTolerantLazyValue(new Function0<String>() {
+                @Override
+                public String invoke() {
+                    awaitLatch(bothStarted);
+                    return "b" + a.invoke();
+                }
+            }, "y");
+        }
+        final C c = new C();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> a = executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return c.a.invoke();
+                }
+            });
+            Future<String> b = executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return c.b.invoke();
+                }
+            });
+
+            // Each thread waits for the other one, so at least one of them has to compute the other's value itself
+            String resultA = a.get(10, TimeUnit.SECONDS);
+            String resultB = b.get(10, TimeUnit.SECONDS);
+            assertEquals(resultA, c.a.invoke());
+            assertEquals(resultB, c.b.invoke());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testToString() throws Exception {
+        assertTrue("Should mention the setUp() method of this class: " + m.toString(),
+                   m.toString().contains(getClass().getSimpleName() + ".setUp("));
+    }
+
+    private static Throwable invokeAndCatch(@NotNull Function0<?> value) {
+        try {
+            value.invoke();
+        }
+        catch (Throwable e) {
+            return e;
+        }
+        fail("Exception expected");
+        return null;
+    }
+
+    private static void runConcurrently(@NotNull Callable<Void> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<Void> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void awaitLatch(@NotNull CountDownLatch latch) {
+        latch.countDown();
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.storage;
+
+import junit.framework.TestCase;
+import kotlin.Function1;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Several threads request memoized values of one storage manager concurrently, as in parallel analysis:
+ * every thread walks all keys in its own order, computing some of them and reading the ones computed by others.
+ *
+ * The tests check that every value is computed once and all threads see the same values.
+ * main() compares the time {@link LockBasedStorageManager} and {@link LockFreeStorageManager} take on a larger workload,
+ * optionally for the number of threads passed as the argument.
+ */
+public class StorageManagerContentionTest extends TestCase {
+    private static final int THREADS = 4;
+
+    public void testLockBased() throws Exception {
+        doTest(new LockBasedStorageManager());
+    }
+
+    public void testLockFree() throws Exception {
+        doTest(new LockFreeStorageManager());
+    }
+
+    private static void doTest(@NotNull StorageManager storageManager) throws Exception {
+        int keys = 2000;
+        AtomicIntegerArray computations = new AtomicIntegerArray(keys);
+        run(storageManager, THREADS, keys, 200, computations);
+
+        for (int key = 0; key < keys; key++) {
+            assertEquals("Computations of " + key, 1, computations.get(key));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int keys = 20000;
+        System.out.println("Threads: " + threads + ", keys: " + keys);
+
+        for (int round = 0; round < 5; round++) {
+            long lockBased = run(new LockBasedStorageManager(), threads, keys, 2000, new AtomicIntegerArray(keys));
+            long lockFree = run(new LockFreeStorageManager(), threads, keys, 2000, new AtomicIntegerArray(keys));
+            System.out.println("Round " + round + ": lock-based " + lockBased + " ms, lock-free " + lockFree + " ms");
+        }
+    }
+
+    // Returns the time in milliseconds
+    private static long run(
+            @NotNull StorageManager storageManager,
+            int threads,
+            final int keys,
+            final int workPerKey,
+            @NotNull final AtomicIntegerArray computations
+    ) throws Exception {
+        final MemoizedFunctionToNotNull<Integer, Long> function = storageManager.createMemoizedFunction(new Function1<Integer, Long>() {
+            @Override
+            public Long invoke(Integer key) {
+                computations.incrementAndGet(key);
+                return work(key, workPerKey);
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            final CountDownLatch startLatch = new CountDownLatch(1);
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+            for (int t = 0; t < threads; t++) {
+                final int offset = t * (keys / threads);
+                futures.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        startLatch.await();
+                        long sum = 0;
+                        for (int i = 0; i < keys; i++) {
+                            int key = (offset + i) % keys;
+                            long value = function.invoke(key);
+                            assertEquals(work(key, workPerKey), value);
+                            sum += value;
+                        }
+                        return sum;
+                    }
+                }));
+            }
+            startLatch.countDown();
+
+            Long expected = null;
+            for (Future<Long> future : futures) {
+                Long sum = future.get(1, TimeUnit.MINUTES);
+                if (expected != null) assertEquals(expected, sum);
+                expected = sum;
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static long work(int key, int workPerKey) {
+        long result = key;
+        for (int i = 0; i < workPerKey; i++) {
+            result = result * 31 + (result >>> 7) + i;
+        }
+        return result;
+    }
+}
@@ -33,10 +33,22 @@ public class StorageManagerTest extends TestCase {
 
     private StorageManager m;
 
+    // The same tests are run against LockFreeStorageManager by a subclass
+    protected boolean isLockFree() {
+        return false;
+    }
+
     @Override
     public void setUp() throws Exception {
         super.setUp();
-        m = new LockBasedStorageManager();
+        m = isLockFree() ? new LockFreeStorageManager() : new LockBasedStorageManager();
+    }
+
+    @NotNull
+    private StorageManager createWithExceptionHandling(@NotNull LockBasedStorageManager.ExceptionHandlingStrategy strategy) {
+        return isLockFree()
+               ? LockFreeStorageManager.createWithExceptionHandling(strategy)
+               : LockBasedStorageManager.createWithExceptionHandling(strategy);
     }
 
     public static <T> void doTestComputesOnce(Function0<T> v, T expected, Counter counter) throws Exception {
@@ -449,7 +461,7 @@ public class StorageManagerTest extends TestCase {
     public void testExceptionHandlingStrategyForLazyValues() throws Exception {
         class RethrownException extends RuntimeException {}
 
-        LockBasedStorageManager m = LockBasedStorageManager.createWithExceptionHandling(new LockBasedStorageManager.ExceptionHandlingStrategy() {
+        StorageManager m = createWithExceptionHandling(new LockBasedStorageManager.ExceptionHandlingStrategy() {
             @NotNull
             @Override
             public RuntimeException handleException(@NotNull Throwable throwable) {
@@ -475,7 +487,7 @@ public class StorageManagerTest extends TestCase {
     public void testExceptionHandlingStrategyForMemoizedFunctions() throws Exception {
         class RethrownException extends RuntimeException {}
 
-        LockBasedStorageManager m = LockBasedStorageManager.createWithExceptionHandling(new LockBasedStorageManager.ExceptionHandlingStrategy() {
+        StorageManager m = createWithExceptionHandling(new LockBasedStorageManager.ExceptionHandlingStrategy() {
             @NotNull
             @Override
             public RuntimeException handleException(@NotNull Throwable throwable) {
@@ -502,7 +514,7 @@ public class StorageManagerTest extends TestCase {
 
     public void testToString() throws Exception {
         assertTrue("Should mention the setUp() method of this class: " + m.toString(),
-                   m.toString().contains(getClass().getSimpleName() + ".setUp("));
+                   m.toString().contains(StorageManagerTest.class.getSimpleName() + ".setUp("));
     }
 
     // Utilities
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.util.slicedMap;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import junit.framework.TestCase;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+public class SlicePartitionedSlicedMapTest extends TestCase {
+    private static final WritableSlice<String, Integer> NAME_COLOR =
+            Slices.<String, Integer>sliceBuilder().setDebugName("NAME_COLOR").build();
+    private static final WritableSlice<Integer, String> COLOR_NAME =
+            Slices.<Integer, String>sliceBuilder().setDebugName("COLOR_NAME").build();
+    private static final WritableSlice<String, Integer> NAME_SIZE =
+            Slices.<String, Integer>sliceBuilder().setDebugName("NAME_SIZE").build();
+    private static final WritableSlice<String, Boolean> USED_NAMES = Slices.createCollectiveSetSlice();
+
+    public void testSlicesAreIndependent() {
+        MutableSlicedMap map = SlicePartitionedSlicedMap.create();
+
+        map.put(NAME_COLOR, "RED", 0xff0000);
+        map.put(NAME_SIZE, "RED", 3);
+
+        assertEquals(0xff0000, (int) map.get(NAME_COLOR, "RED"));
+        assertEquals(3, (int) map.get(NAME_SIZE, "RED"));
+        assertNull(map.get(NAME_COLOR, "GREEN"));
+        assertNull(map.get(COLOR_NAME, 0xff0000));
+    }
+
+    public void testCollectiveSliceKeys() {
+        MutableSlicedMap map = SlicePartitionedSlicedMap.create();
+
+        map.put(USED_NAMES, "a", true);
+        map.put(USED_NAMES, "b", true);
+        map.put(NAME_SIZE, "c", 1);
+
+        assertEquals(Sets.newHashSet("a", "b"), new HashSet<String>(map.getKeys(USED_NAMES)));
+        assertEquals(Boolean.TRUE, map.get(USED_NAMES, "a"));
+        assertEquals(Boolean.FALSE, map.get(USED_NAMES, "c"));
+    }
+
+    public void testSliceContentsAndIteration() {
+        MutableSlicedMap map = SlicePartitionedSlicedMap.create();
+
+        map.put(NAME_COLOR, "RED", 0xff0000);
+        map.put(NAME_COLOR, "GREEN", 0x00ff00);
+        map.put(COLOR_NAME, 0xff0000, "RED");
+
+        assertEquals(ImmutableMap.of("RED", 0xff0000, "GREEN", 0x00ff00), map.getSliceContents(NAME_COLOR));
+
+        Map<SlicedMapKey<?, ?>, Object> entries = new HashMap<SlicedMapKey<?, ?>, Object>();
+        for (Map.Entry<SlicedMapKey<?, ?>, ?> entry : map) {
+            entries.put(entry.getKey(), entry.getValue());
+        }
+        assertEquals(3, entries.size());
+        assertEquals("RED", entries.get(COLOR_NAME.makeKey(0xff0000)));
+        assertEquals(0x00ff00, entries.get(NAME_COLOR.makeKey("GREEN")));
+    }
+
+    public void testNullKey() {
+        MutableSlicedMap map = SlicePartitionedSlicedMap.create(MapSupplier.CONCURRENT_HASH_MAP_SUPPLIER);
+
+        map.put(NAME_SIZE, null, 0);
+
+        assertEquals(0, (int) map.get(NAME_SIZE, null));
+        assertNull(map.iterator().next().getKey().getKey());
+    }
+
+    public void testRemoveAndClear() {
+        MutableSlicedMap map = SlicePartitionedSlicedMap.create();
+        RemovableSlice<String, Integer> removable = Slices.<String, Integer>sliceBuilder().setDebugName("REMOVABLE").build();
+
+        map.put(removable, "a", 1);
+        map.put(NAME_SIZE, "b", 2);
+
+        assertEquals(1, (int) map.remove(removable, "a"));
+        assertNull(map.get(removable, "a"));
+
+        map.clear();
+        assertNull(map.get(NAME_SIZE, "b"));
+        assertFalse(map.iterator().hasNext());
+    }
+
+    public void testConcurrentWrites() throws Exception {
+        final MutableSlicedMap map = SlicePartitionedSlicedMap.create(MapSupplier.CONCURRENT_HASH_MAP_SUPPLIER);
+        final int threadCount = 8;
+        final int keysPerThread = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < threadCount; i++) {
+            final int offset = i * keysPerThread;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    for (int key = offset; key < offset + keysPerThread; key++) {
+                        map.put(USED_NAMES, String.valueOf(key), true);
+                        map.put(COLOR_NAME, key, String.valueOf(key));
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(threadCount * keysPerThread, map.getKeys(USED_NAMES).size());
+        for (int key = 0; key < threadCount * keysPerThread; key++) {
+            assertEquals(String.valueOf(key), map.get(COLOR_NAME, key));
+        }
+    }
+}
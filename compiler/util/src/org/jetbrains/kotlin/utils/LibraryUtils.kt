@@ -22,7 +22,9 @@ import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.util.Processor
 
 import java.io.*
+import java.util.LinkedHashMap
 import java.util.Properties
+import java.util.TreeMap
 import java.util.jar.Attributes
 import java.util.jar.JarFile
 import java.util.jar.Manifest
@@ -107,6 +109,53 @@ public object LibraryUtils {
         }
     }
 
+    /**
+     * @return the contents of JS files of the given libraries by their paths, in the order of libraries
+     */
+    platformStatic
+    throws(javaClass<IOException>())
+    public fun loadJsFilesFromLibraries(libraries: List<String>): Map<String, String> {
+        val result = LinkedHashMap<String, String>()
+        for (library in libraries) {
+            val file = File(library)
+            assert(file.exists()) { "Library " + library + " not found" }
+
+            if (file.isDirectory()) {
+                // processFilesRecursively() order is not specified, so files are loaded in the order of their relative paths
+                val jsFiles = TreeMap<String, File>()
+                FileUtil.processFilesRecursively(file, object : Processor<File> {
+                    override fun process(jsFile: File): Boolean {
+                        val relativePath = FileUtil.getRelativePath(file, jsFile)
+                        if (jsFile.isFile() && relativePath != null && relativePath.endsWith(JS_EXT) && getSuggestedPath(relativePath) != null) {
+                            jsFiles[FileUtil.toSystemIndependentName(relativePath)] = jsFile
+                        }
+                        return true
+                    }
+                })
+                for (jsFile in jsFiles.values()) {
+                    result[jsFile.getPath()] = FileUtil.loadFile(jsFile, "UTF-8")
+                }
+            }
+            else {
+                val zipFile = ZipFile(file.getPath())
+                try {
+                    val zipEntries = zipFile.entries()
+                    while (zipEntries.hasMoreElements()) {
+                        val entry = zipEntries.nextElement()
+                        val entryName = entry.getName()
+                        if (!entry.isDirectory() && entryName.endsWith(JS_EXT) && getSuggestedPath(entryName) != null) {
+                            result[file.getPath() + "!/" + entryName] = FileUtil.loadTextAndClose(zipFile.getInputStream(entry))
+                        }
+                    }
+                }
+                finally {
+                    zipFile.close()
+                }
+            }
+        }
+        return result
+    }
+
     private fun copyJsFilesFromDirectory(dir: File, outputLibraryJsPath: String) {
         FileUtil.processFilesRecursively(dir, object : Processor<File> {
             override fun process(file: File): Boolean {
@@ -19,6 +19,7 @@ package kotlin.reflect.jvm.internal
 import kotlin.reflect.*
 import kotlin.jvm.internal.KotlinClass
 import kotlin.jvm.internal.KotlinSyntheticClass
+import kotlin.reflect.jvm.internal.pcollections.HashPMap
 
 enum class KClassOrigin {
     BUILT_IN
@@ -43,21 +44,41 @@ class KClassImpl<T>(val jClass: Class<T>, isKnownToBeKotlin: Boolean) : KClass<T
                 // TODO: built-in classes
             }
 
-    fun memberProperty(name: String): KMemberProperty<T, *> =
-            if (origin identityEquals KClassOrigin.KOTLIN) {
-                KMemberPropertyImpl<T, Any>(name, this)
-            }
-            else {
-                KForeignMemberProperty<T, Any>(name, this)
-            }
+    // Each evaluation of a property reference asks for a property here, so property objects are cached to look up
+    // their fields and accessors only once. Same as FOREIGN_K_CLASSES, these variables are not volatile intentionally:
+    // a lost update only means that the property will be created again
+    private var memberProperties = HashPMap.empty<String, KMemberProperty<T, *>>()
+    private var mutableMemberProperties = HashPMap.empty<String, KMutableMemberProperty<T, *>>()
 
-    fun mutableMemberProperty(name: String): KMutableMemberProperty<T, *> =
-            if (origin identityEquals KClassOrigin.KOTLIN) {
-                KMutableMemberPropertyImpl<T, Any>(name, this)
-            }
-            else {
-                KMutableForeignMemberProperty<T, Any>(name, this)
-            }
+    fun memberProperty(name: String): KMemberProperty<T, *> {
+        val cached = memberProperties[name]
+        if (cached != null) return cached
+
+        val property: KMemberProperty<T, *> =
+                if (origin identityEquals KClassOrigin.KOTLIN) {
+                    KMemberPropertyImpl<T, Any>(name, this)
+                }
+                else {
+                    KForeignMemberProperty<T, Any>(name, this)
+                }
+        memberProperties = memberProperties.plus(name, property)
+        return property
+    }
+
+    fun mutableMemberProperty(name: String): KMutableMemberProperty<T, *> {
+        val cached = mutableMemberProperties[name]
+        if (cached != null) return cached
+
+        val property: KMutableMemberProperty<T, *> =
+                if (origin identityEquals KClassOrigin.KOTLIN) {
+                    KMutableMemberPropertyImpl<T, Any>(name, this)
+                }
+                else {
+                    KMutableForeignMemberProperty<T, Any>(name, this)
+                }
+        mutableMemberProperties = mutableMemberProperties.plus(name, property)
+        return property
+    }
 
     override fun equals(other: Any?): Boolean =
             other is KClassImpl<*> && jClass == other.jClass
@@ -18,10 +18,33 @@ package kotlin.reflect.jvm.internal
 
 import kotlin.reflect.KPackage
 import kotlin.jvm.internal.KotlinPackage
+import kotlin.reflect.jvm.internal.pcollections.HashPMap
 
 private val KOTLIN_PACKAGE_ANNOTATION_CLASS = javaClassOf<KotlinPackage>()
 
 class KPackageImpl(val jClass: Class<*>) : KPackage {
+    // See KClassImpl.memberProperties
+    private var topLevelVariables = HashPMap.empty<String, KTopLevelVariableImpl<Any?>>()
+    private var mutableTopLevelVariables = HashPMap.empty<String, KMutableTopLevelVariableImpl<Any?>>()
+
+    fun topLevelVariable(name: String): KTopLevelVariableImpl<Any?> {
+        val cached = topLevelVariables[name]
+        if (cached != null) return cached
+
+        val variable = KTopLevelVariableImpl<Any?>(name, this)
+        topLevelVariables = topLevelVariables.plus(name, variable)
+        return variable
+    }
+
+    fun mutableTopLevelVariable(name: String): KMutableTopLevelVariableImpl<Any?> {
+        val cached = mutableTopLevelVariables[name]
+        if (cached != null) return cached
+
+        val variable = KMutableTopLevelVariableImpl<Any?>(name, this)
+        mutableTopLevelVariables = mutableTopLevelVariables.plus(name, variable)
+        return variable
+    }
+
     override fun equals(other: Any?): Boolean =
             other is KPackageImpl && jClass == other.jClass
 
@@ -18,8 +18,10 @@ package kotlin.reflect.jvm.internal
 
 import kotlin.reflect.*
 
+// Instances are shared with the ones used for property references to Java classes, so that the annotations
+// of a class are not checked on each call
 fun <T> kClass(jClass: Class<T>): KClassImpl<T> =
-        KClassImpl<T>(jClass, false)
+        foreignKotlinClass(jClass)
 
 fun <T> kClassFromKotlin(jClass: Class<T>): KClassImpl<T> =
         KClassImpl<T>(jClass, true)
@@ -28,10 +30,10 @@ fun kPackage(jClass: Class<*>): KPackageImpl =
         KPackageImpl(jClass)
 
 fun topLevelVariable(name: String, owner: KPackageImpl): KTopLevelVariableImpl<Any?> =
-        KTopLevelVariableImpl<Any?>(name, owner)
+        owner.topLevelVariable(name)
 
 fun mutableTopLevelVariable(name: String, owner: KPackageImpl): KMutableTopLevelVariableImpl<Any?> =
-        KMutableTopLevelVariableImpl<Any?>(name, owner)
+        owner.mutableTopLevelVariable(name)
 
 fun <T> topLevelExtensionProperty(name: String, owner: KPackageImpl, receiver: Class<T>): KTopLevelExtensionPropertyImpl<T, Any?> =
         KTopLevelExtensionPropertyImpl<T, Any?>(name, owner, receiver)
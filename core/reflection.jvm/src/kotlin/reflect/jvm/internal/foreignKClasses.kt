@@ -26,7 +26,8 @@ import kotlin.reflect.jvm.internal.pcollections.HashPMap
 // We do care however about general performance on read access to it, thus no synchronization is done here whatsoever
 private var FOREIGN_K_CLASSES = HashPMap.empty<String, Any>()
 
-// This function is invoked on each reflection access to Java classes, properties, etc. Performance is critical here.
+// This function is invoked on each reflection access to Java classes, properties, etc. and by Class<T>.kotlin.
+// Performance is critical here.
 fun <T> foreignKotlinClass(jClass: Class<T>): KClassImpl<T> {
     val name = jClass.getName()
     val cached = FOREIGN_K_CLASSES[name]
@@ -53,13 +54,13 @@ fun <T> foreignKotlinClass(jClass: Class<T>): KClassImpl<T> {
         val newArray = arrayOfNulls<WeakReference<KClassImpl<*>>>(size + 1)
         // Don't use Arrays.copyOf because it works reflectively
         System.arraycopy(cached, 0, newArray, 0, size)
-        val newKClass = kClass<T>(jClass)
+        val newKClass = KClassImpl<T>(jClass, false)
         newArray[size] = WeakReference(newKClass)
         FOREIGN_K_CLASSES = FOREIGN_K_CLASSES.plus(name, newArray)
         return newKClass
     }
 
-    val newKClass = kClass<T>(jClass)
+    val newKClass = KClassImpl<T>(jClass, false)
     FOREIGN_K_CLASSES = FOREIGN_K_CLASSES.plus(name, WeakReference(newKClass))
     return newKClass
 }
@@ -0,0 +1,499 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.storage;
+
+import kotlin.Function0;
+import kotlin.Function1;
+import kotlin.Unit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.storage.LockBasedStorageManager.ExceptionHandlingStrategy;
+import org.jetbrains.kotlin.utils.WrappedValues;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A storage manager without a global lock: values computed by different threads don't block each other.
+ *
+ * A lazy value or a memoized function entry is claimed by installing a {@link Computation} owned by the current thread,
+ * and the result replaces it with a compare-and-set. Other threads requesting the same value wait for the owner,
+ * unless waiting would close a cycle of threads waiting for each other: then the waiting thread computes the value itself
+ * and the first result published wins.
+ *
+ * Recursion (a computation requesting its own value) and exception handling behave the same as in {@link LockBasedStorageManager}.
+ * Note that {@link #compute} is not exclusive either, so code relying on it for mutual exclusion must use {@link LockBasedStorageManager}.
+ */
+public class LockFreeStorageManager implements StorageManager {
+    private static final long WAIT_MILLIS = 10;
+
+    @NotNull
+    public static LockFreeStorageManager createWithExceptionHandling(@NotNull ExceptionHandlingStrategy exceptionHandlingStrategy) {
+        return new LockFreeStorageManager(getPointOfConstruction(), exceptionHandlingStrategy);
+    }
+
+    private final ExceptionHandlingStrategy exceptionHandlingStrategy;
+    private final String debugText;
+
+    // Which computation each thread is waiting for, used to detect deadlocks
+    private final ConcurrentMap<Thread, Computation> waiting = new ConcurrentHashMap<Thread, Computation>();
+
+    public LockFreeStorageManager() {
+        this(getPointOfConstruction(), ExceptionHandlingStrategy.THROW);
+    }
+
+    private LockFreeStorageManager(@NotNull String debugText, @NotNull ExceptionHandlingStrategy exceptionHandlingStrategy) {
+        this.exceptionHandlingStrategy = exceptionHandlingStrategy;
+        this.debugText = debugText;
+    }
+
+    private static String getPointOfConstruction() {
+        StackTraceElement[] trace = Thread.currentThread().getStackTrace();
+        // we need to skip frames for getStackTrace(), this method and the constructor or factory that's calling it
+        if (trace.length <= 3) return "<unknown creating class>";
+        return trace[3].toString();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + " (" + debugText + ")";
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNotNull<K, V> createMemoizedFunction(@NotNull Function1<? super K, ? extends V> compute) {
+        return createMemoizedFunction(compute, LockFreeStorageManager.<K>createConcurrentHashMap());
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNotNull<K, V> createMemoizedFunction(
+            @NotNull Function1<? super K, ? extends V> compute,
+            @NotNull ConcurrentMap<K, Object> map
+    ) {
+        return new MapBasedMemoizedFunctionToNotNull<K, V>(this, map, compute);
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNullable<K, V> createMemoizedFunctionWithNullableValues(@NotNull Function1<? super K, ? extends V> compute) {
+        return createMemoizedFunctionWithNullableValues(compute, LockFreeStorageManager.<K>createConcurrentHashMap());
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNullable<K, V> createMemoizedFunctionWithNullableValues(
+            @NotNull Function1<? super K, ? extends V> compute,
+            @NotNull ConcurrentMap<K, Object> map
+    ) {
+        return new MapBasedMemoizedFunction<K, V>(this, map, compute);
+    }
+
+    @NotNull
+    @Override
+    public <T> NotNullLazyValue<T> createLazyValue(@NotNull Function0<? extends T> computable) {
+        return new CasNotNullLazyValue<T>(this, computable);
+    }
+
+    @NotNull
+    @Override
+    public <T> NotNullLazyValue<T> createRecursionTolerantLazyValue(
+            @NotNull Function0<? extends T> computable, @NotNull final T onRecursiveCall
+    ) {
+        return new CasNotNullLazyValue<T>(this, computable) {
+            @Override
+            protected T recursionDetected(boolean firstTime) {
+                return onRecursiveCall;
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NotNullLazyValue<T> createLazyValueWithPostCompute(
+            @NotNull Function0<? extends T> computable,
+            final Function1<? super Boolean, ? extends T> onRecursiveCall,
+            @NotNull final Function1<? super T, ? extends Unit> postCompute
+    ) {
+        return new CasNotNullLazyValue<T>(this, computable) {
+            @Override
+            protected T recursionDetected(boolean firstTime) {
+                if (onRecursiveCall == null) {
+                    return super.recursionDetected(firstTime);
+                }
+                return onRecursiveCall.invoke(firstTime);
+            }
+
+            @Override
+            protected void postCompute(@NotNull T value) {
+                postCompute.invoke(value);
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NullableLazyValue<T> createNullableLazyValue(@NotNull Function0<? extends T> computable) {
+        return new CasLazyValue<T>(this, computable);
+    }
+
+    @NotNull
+    @Override
+    public <T> NullableLazyValue<T> createRecursionTolerantNullableLazyValue(@NotNull Function0<? extends T> computable, final T onRecursiveCall) {
+        return new CasLazyValue<T>(this, computable) {
+            @Override
+            protected T recursionDetected(boolean firstTime) {
+                return onRecursiveCall;
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NullableLazyValue<T> createNullableLazyValueWithPostCompute(
+            @NotNull Function0<? extends T> computable, @NotNull final Function1<? super T, ? extends Unit> postCompute
+    ) {
+        return new CasLazyValue<T>(this, computable) {
+            @Override
+            protected void postCompute(@Nullable T value) {
+                postCompute.invoke(value);
+            }
+        };
+    }
+
+    @Override
+    public <T> T compute(@NotNull Function0<? extends T> computable) {
+        try {
+            return computable.invoke();
+        }
+        catch (Throwable throwable) {
+            throw exceptionHandlingStrategy.handleException(throwable);
+        }
+    }
+
+    @NotNull
+    private static <K> ConcurrentMap<K, Object> createConcurrentHashMap() {
+        // memory optimization: fewer segments and entries stored
+        return new ConcurrentHashMap<K, Object>(3, 1, 2);
+    }
+
+    /**
+     * @return true if the computation has been finished by its owner or by somebody else,
+     *         false if the current thread should compute the value itself because waiting would lead to a deadlock
+     */
+    private boolean await(@NotNull Computation computation) {
+        Thread current = Thread.currentThread();
+        waiting.put(current, computation);
+        try {
+            synchronized (computation) {
+                while (!computation.finished) {
+                    if (isWaitingForItself(computation, current)) return false;
+                    try {
+                        // Waiting with a timeout because the chain of waiting threads may change while this one is asleep
+                        computation.wait(WAIT_MILLIS);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        finally {
+            waiting.remove(current);
+        }
+    }
+
+    private boolean isWaitingForItself(@NotNull Computation computation, @NotNull Thread current) {
+        Computation next = computation;
+        // The bound is only a safeguard: the chain can't be longer than the number of threads unless it changes concurrently
+        for (int i = 0; next != null && i < 1000; i++) {
+            if (next.owner == current) return true;
+            next = waiting.get(next.owner);
+        }
+        return false;
+    }
+
+    private enum NotValue {
+        NOT_COMPUTED,
+        RECURSION_WAS_DETECTED
+    }
+
+    /**
+     * A value being computed. Threads other than the owner may compute it too, but only if they would deadlock otherwise
+     */
+    private static final class Computation {
+        private static final ThreadLocal<Set<Computation>> computedByOtherThreads = new ThreadLocal<Set<Computation>>() {
+            @Override
+            protected Set<Computation> initialValue() {
+                return Collections.newSetFromMap(new IdentityHashMap<Computation, Boolean>());
+            }
+        };
+
+        final Thread owner;
+
+        // Guarded by this
+        boolean finished = false;
+
+        volatile boolean recursionDetected = false;
+
+        // The value visible to the owner thread between the computation and the publication, i.e. in postCompute()
+        volatile Object preliminaryValue = NotValue.NOT_COMPUTED;
+
+        Computation() {
+            this.owner = Thread.currentThread();
+        }
+
+        boolean isComputedByCurrentThread() {
+            return owner == Thread.currentThread() || computedByOtherThreads.get().contains(this);
+        }
+
+        void joinAsNonOwner() {
+            computedByOtherThreads.get().add(this);
+        }
+
+        void leaveAsNonOwner() {
+            computedByOtherThreads.get().remove(this);
+        }
+
+        synchronized void finish() {
+            finished = true;
+            notifyAll();
+        }
+    }
+
+    private static class CasLazyValue<T> implements NullableLazyValue<T> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<CasLazyValue, Object> VALUE =
+                AtomicReferenceFieldUpdater.newUpdater(CasLazyValue.class, Object.class, "value");
+
+        private final LockFreeStorageManager storageManager;
+        private final Function0<? extends T> computable;
+
+        @Nullable
+        private volatile Object value = NotValue.NOT_COMPUTED;
+
+        public CasLazyValue(@NotNull LockFreeStorageManager storageManager, @NotNull Function0<? extends T> computable) {
+            this.storageManager = storageManager;
+            this.computable = computable;
+        }
+
+        @Override
+        public boolean isComputed() {
+            Object _value = value;
+            return _value != NotValue.NOT_COMPUTED && !(_value instanceof Computation);
+        }
+
+        @Override
+        public T invoke() {
+            Object _value = value;
+            if (!(_value instanceof NotValue) && !(_value instanceof Computation)) return WrappedValues.unescapeThrowable(_value);
+
+            while (true) {
+                _value = value;
+                if (_value == NotValue.RECURSION_WAS_DETECTED) {
+                    return recursionDetected(/*firstTime = */ false);
+                }
+
+                if (_value == NotValue.NOT_COMPUTED) {
+                    Computation computation = new Computation();
+                    if (VALUE.compareAndSet(this, NotValue.NOT_COMPUTED, computation)) {
+                        return computeAndPublish(computation, /* isOwner = */ true);
+                    }
+                    continue;
+                }
+
+                if (!(_value instanceof Computation)) return WrappedValues.unescapeThrowable(_value);
+
+                Computation computation = (Computation) _value;
+                if (computation.isComputedByCurrentThread()) {
+                    Object preliminaryValue = computation.preliminaryValue;
+                    if (computation.owner == Thread.currentThread() && preliminaryValue != NotValue.NOT_COMPUTED) {
+                        //noinspection unchecked
+                        return (T) preliminaryValue;
+                    }
+
+                    boolean firstTime = !computation.recursionDetected;
+                    computation.recursionDetected = true;
+                    return recursionDetected(firstTime);
+                }
+
+                if (!storageManager.await(computation)) {
+                    computation.joinAsNonOwner();
+                    try {
+                        return computeAndPublish(computation, /* isOwner = */ false);
+                    }
+                    finally {
+                        computation.leaveAsNonOwner();
+                    }
+                }
+            }
+        }
+
+        private T computeAndPublish(@NotNull Computation computation, boolean isOwner) {
+            try {
+                T typedValue = computable.invoke();
+                if (isOwner) {
+                    computation.preliminaryValue = typedValue;
+                }
+                postCompute(typedValue);
+
+                if (publish(computation, typedValue)) return typedValue;
+
+                // Another thread has published its result first
+                Object published = value;
+                return published instanceof NotValue || published instanceof Computation
+                       ? typedValue
+                       : WrappedValues.<T>unescapeThrowable(published);
+            }
+            catch (Throwable throwable) {
+                // Store only if it's a genuine result, not something thrown through recursionDetected()
+                publish(computation, computation.recursionDetected
+                                     ? NotValue.RECURSION_WAS_DETECTED
+                                     : WrappedValues.escapeThrowable(throwable));
+                throw storageManager.exceptionHandlingStrategy.handleException(throwable);
+            }
+        }
+
+        private boolean publish(@NotNull Computation computation, @Nullable Object result) {
+            boolean published = VALUE.compareAndSet(this, computation, result);
+            computation.finish();
+            return published;
+        }
+
+        /**
+         * @param firstTime {@code true} when recursion has been just detected, {@code false} otherwise
+         * @return a value to be returned on a recursive call or subsequent calls
+         */
+        protected T recursionDetected(boolean firstTime) {
+            throw new IllegalStateException("Recursive call in a lazy value under " + storageManager);
+        }
+
+        protected void postCompute(T value) {
+            // Doing something in post-compute helps prevent infinite recursion
+        }
+    }
+
+    private static class CasNotNullLazyValue<T> extends CasLazyValue<T> implements NotNullLazyValue<T> {
+        public CasNotNullLazyValue(@NotNull LockFreeStorageManager storageManager, @NotNull Function0<? extends T> computable) {
+            super(storageManager, computable);
+        }
+
+        @Override
+        @NotNull
+        public T invoke() {
+            T result = super.invoke();
+            assert result != null : "compute() returned null";
+            return result;
+        }
+    }
+
+    private static class MapBasedMemoizedFunction<K, V> implements MemoizedFunctionToNullable<K, V> {
+        protected final LockFreeStorageManager storageManager;
+        private final ConcurrentMap<K, Object> cache;
+        private final Function1<? super K, ? extends V> compute;
+
+        public MapBasedMemoizedFunction(
+                @NotNull LockFreeStorageManager storageManager,
+                @NotNull ConcurrentMap<K, Object> map,
+                @NotNull Function1<? super K, ? extends V> compute
+        ) {
+            this.storageManager = storageManager;
+            this.cache = map;
+            this.compute = compute;
+        }
+
+        @Override
+        @Nullable
+        public V invoke(K input) {
+            Object value = cache.get(input);
+            if (value != null && !(value instanceof Computation)) return WrappedValues.unescapeExceptionOrNull(value);
+
+            while (true) {
+                value = cache.get(input);
+                if (value == null) {
+                    Computation computation = new Computation();
+                    if (cache.putIfAbsent(input, computation) == null) {
+                        return computeAndPublish(input, computation);
+                    }
+                    continue;
+                }
+
+                if (!(value instanceof Computation)) return WrappedValues.unescapeExceptionOrNull(value);
+
+                Computation computation = (Computation) value;
+                if (computation.isComputedByCurrentThread()) {
+                    throw new AssertionError("Recursion detected on input: " + input + " under " + storageManager);
+                }
+
+                if (!storageManager.await(computation)) {
+                    computation.joinAsNonOwner();
+                    try {
+                        return computeAndPublish(input, computation);
+                    }
+                    finally {
+                        computation.leaveAsNonOwner();
+                    }
+                }
+            }
+        }
+
+        @Nullable
+        private V computeAndPublish(K input, @NotNull Computation computation) {
+            try {
+                V typedValue = compute.invoke(input);
+                boolean published = cache.replace(input, computation, WrappedValues.escapeNull(typedValue));
+                computation.finish();
+                if (published) return typedValue;
+
+                // Another thread has published its result first
+                Object value = cache.get(input);
+                return value == null || value instanceof Computation ? typedValue : WrappedValues.<V>unescapeExceptionOrNull(value);
+            }
+            catch (Throwable throwable) {
+                cache.replace(input, computation, WrappedValues.escapeThrowable(throwable));
+                computation.finish();
+                throw storageManager.exceptionHandlingStrategy.handleException(throwable);
+            }
+        }
+    }
+
+    private static class MapBasedMemoizedFunctionToNotNull<K, V> extends MapBasedMemoizedFunction<K, V>
+            implements MemoizedFunctionToNotNull<K, V> {
+
+        public MapBasedMemoizedFunctionToNotNull(
+                @NotNull LockFreeStorageManager storageManager,
+                @NotNull ConcurrentMap<K, Object> map,
+                @NotNull Function1<? super K, ? extends V> compute
+        ) {
+            super(storageManager, map, compute);
+        }
+
+        @NotNull
+        @Override
+        public V invoke(K input) {
+            V result = super.invoke(input);
+            assert result != null : "compute() returned null under " + storageManager;
+            return result;
+        }
+    }
+}
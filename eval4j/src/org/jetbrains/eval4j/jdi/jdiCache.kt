@@ -0,0 +1,53 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.eval4j.jdi
+
+import com.sun.jdi
+import java.util.HashMap
+
+/**
+ * Classes, fields and methods found by [JDIEval], so that evaluating the same code again neither loads classes in the debuggee
+ * nor looks up members through JDWP.
+ *
+ * An instance may be shared by evaluations in the same virtual machine, e.g. for a whole debug session.
+ * It's not thread-safe, evaluations are expected to run on the debugger thread.
+ * Cached methods become obsolete when their classes are redefined, so the owner must [clear] it after a HotSwap.
+ */
+public class JDICache {
+    private val classes = HashMap<ClassKey, jdi.ClassObjectReference>()
+    private val fields = HashMap<MemberKey, jdi.Field>()
+    private val methods = HashMap<MemberKey, jdi.Method>()
+
+    fun getClass(classLoader: jdi.ClassLoaderReference, descriptor: String, load: () -> jdi.ClassObjectReference): jdi.ClassObjectReference =
+            classes.getOrPut(ClassKey(classLoader, descriptor), load)
+
+    fun getField(owner: jdi.ReferenceType, name: String, find: () -> jdi.Field): jdi.Field =
+            fields.getOrPut(MemberKey(owner, name, ""), find)
+
+    fun getMethod(owner: jdi.ReferenceType, name: String, desc: String, find: () -> jdi.Method): jdi.Method =
+            methods.getOrPut(MemberKey(owner, name, desc), find)
+
+    public fun clear() {
+        classes.clear()
+        fields.clear()
+        methods.clear()
+    }
+
+    private data class ClassKey(val classLoader: jdi.ClassLoaderReference, val descriptor: String)
+
+    private data class MemberKey(val owner: jdi.ReferenceType, val name: String, val desc: String)
+}
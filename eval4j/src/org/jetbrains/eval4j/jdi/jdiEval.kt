@@ -31,7 +31,8 @@ public class JDIEval(
         private val vm: jdi.VirtualMachine,
         private val classLoader: jdi.ClassLoaderReference,
         private val thread: jdi.ThreadReference,
-        private val invokePolicy: Int
+        private val invokePolicy: Int,
+        private val cache: JDICache = JDICache()
 ) : Eval {
 
     private val primitiveTypes = mapOf(
@@ -46,6 +47,10 @@ public class JDIEval(
     )
 
     override fun loadClass(classType: Type): Value {
+        return cache.getClass(classLoader, classType.getDescriptor()) { doLoadClass(classType).jdiClass!! }.asValue()
+    }
+
+    private fun doLoadClass(classType: Type): Value {
         val loadedClasses = vm.classesByName(classType.getInternalName())
         if (!loadedClasses.isEmpty()) {
             val loadedClass = loadedClasses[0]
@@ -146,11 +151,13 @@ public class JDIEval(
 
     private fun findField(fieldDesc: FieldDescription): jdi.Field {
         val _class = fieldDesc.ownerType.asReferenceType()
-        val field = _class.fieldByName(fieldDesc.name)
-        if (field == null) {
-            throwBrokenCodeException(NoSuchFieldError("Field not found: $fieldDesc"))
+        return cache.getField(_class, fieldDesc.name) {
+            val field = _class.fieldByName(fieldDesc.name)
+            if (field == null) {
+                throwBrokenCodeException(NoSuchFieldError("Field not found: $fieldDesc"))
+            }
+            field
         }
-        return field
     }
 
     private fun findStaticField(fieldDesc: FieldDescription): jdi.Field {
@@ -183,17 +190,19 @@ public class JDIEval(
     }
 
     private fun findMethod(methodDesc: MethodDescription, _class: jdi.ReferenceType = methodDesc.ownerType.asReferenceType()): jdi.Method {
-        val method = when (_class) {
-            is jdi.ClassType -> {
-                val m = _class.concreteMethodByName(methodDesc.name, methodDesc.desc)
-                if (m == null) listOf() else listOf(m)
+        return cache.getMethod(_class, methodDesc.name, methodDesc.desc) {
+            val method = when (_class) {
+                is jdi.ClassType -> {
+                    val m = _class.concreteMethodByName(methodDesc.name, methodDesc.desc)
+                    if (m == null) listOf() else listOf(m)
+                }
+                else -> _class.methodsByName(methodDesc.name, methodDesc.desc)
             }
-            else -> _class.methodsByName(methodDesc.name, methodDesc.desc)
-        }
-        if (method.isEmpty()) {
-            throwBrokenCodeException(NoSuchMethodError("Method not found: $methodDesc"))
+            if (method.isEmpty()) {
+                throwBrokenCodeException(NoSuchMethodError("Method not found: $methodDesc"))
+            }
+            method[0]
         }
-        return method[0]
     }
 
     override fun invokeStaticMethod(methodDesc: MethodDescription, arguments: List<Value>): Value {
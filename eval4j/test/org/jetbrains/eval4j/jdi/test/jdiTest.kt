@@ -94,6 +94,8 @@ fun suite(): TestSuite {
     latch.await()
 
     var remainingTests = AtomicInteger(0)
+    // Shared by all tests, as in a debug session
+    val cache = JDICache()
 
     val suite = buildTestSuite {
         methodNode, ownerClass, expected ->
@@ -101,7 +103,7 @@ fun suite(): TestSuite {
         object : TestCase(getTestName(methodNode.name)) {
 
             override fun runTest() {
-                val eval = JDIEval(vm, classLoader!!, thread!!, 0)
+                val eval = JDIEval(vm, classLoader!!, thread!!, 0, cache)
 
                 val args = if ((methodNode.access and Opcodes.ACC_STATIC) == 0) {
                     // Instance method
@@ -78,10 +78,20 @@ import com.intellij.openapi.diagnostic.Attachment
 import org.jetbrains.kotlin.idea.util.attachment.mergeAttachments
 import com.sun.jdi.ClassType
 import com.sun.jdi.InvocationException
+import com.intellij.openapi.util.Key
+import org.jetbrains.eval4j.jdi.JDICache
+import com.intellij.debugger.ui.HotSwapUI
+import com.intellij.debugger.ui.HotSwapVetoableListener
+import com.intellij.debugger.engine.DebugProcess
+import com.intellij.debugger.engine.DebugProcessAdapter
+import com.intellij.openapi.compiler.CompileContext
+import java.util.concurrent.atomic.AtomicBoolean
 
 private val RECEIVER_NAME = "\$receiver"
 private val THIS_NAME = "this"
 
+private val JDI_CACHE_KEY = Key.create<JdiCacheHolder>("KOTLIN_JDI_CACHE")
+
 object KotlinEvaluationBuilder: EvaluatorBuilder {
     override fun build(codeFragment: PsiElement, position: SourcePosition?): ExpressionEvaluator {
         if (codeFragment !is JetCodeFragment || position == null) {
@@ -129,6 +139,8 @@ class KotlinEvaluator(val codeFragment: JetCodeFragment,
 
             // If bytecode was taken from cache and exception was thrown - recompile bytecode and run eval4j again
             if (isCompiledDataFromCache && result is ExceptionThrown && result.kind == ExceptionThrown.ExceptionKind.BROKEN_CODE) {
+                // Classes may have been redefined since the cached members were found
+                context.getJdiCache().clear()
                 return runEval4j(context, extractAndCompile(codeFragment, sourcePosition)).toJdiValue(virtualMachine)
             }
 
@@ -194,7 +206,8 @@ class KotlinEvaluator(val codeFragment: JetCodeFragment,
                                         JDIEval(virtualMachine,
                                                 context.getClassLoader()!!,
                                                 context.getSuspendContext().getThread()?.getThreadReference()!!,
-                                                context.getSuspendContext().getInvokePolicy())
+                                                context.getSuspendContext().getInvokePolicy(),
+                                                context.getJdiCache())
                                 )
 
                                 breakpoints?.forEach { it.enable() }
@@ -351,6 +364,47 @@ private fun PsiElement.createJetFile(fileName: String, fileText: String): JetFil
     return jetFile
 }
 
+// Lookups made by eval4j are shared by all evaluations in a debug session, e.g. of a conditional breakpoint in a loop
+private fun EvaluationContextImpl.getJdiCache(): JDICache {
+    val debugProcess = getDebugProcess()
+    val holder = debugProcess.getUserData(JDI_CACHE_KEY)
+    if (holder != null) return holder.getCache()
+
+    val newHolder = JdiCacheHolder()
+    newHolder.install(debugProcess)
+    debugProcess.putUserData(JDI_CACHE_KEY, newHolder)
+    return newHolder.getCache()
+}
+
+// Methods and fields found before a HotSwap may belong to the old versions of the redefined classes.
+// HotSwap is reported on another thread, so the cache is only marked here and cleared by the next evaluation on the debugger thread
+private class JdiCacheHolder : HotSwapVetoableListener {
+    private val cache = JDICache()
+    private val classesRedefined = AtomicBoolean(false)
+
+    fun getCache(): JDICache {
+        if (classesRedefined.getAndSet(false)) {
+            cache.clear()
+        }
+        return cache
+    }
+
+    fun install(debugProcess: DebugProcess) {
+        val hotSwapUI = HotSwapUI.getInstance(debugProcess.getProject())
+        hotSwapUI.addListener(this)
+        debugProcess.addDebugProcessListener(object : DebugProcessAdapter() {
+            override fun processDetached(process: DebugProcess, closedByUser: Boolean) {
+                hotSwapUI.removeListener(this@JdiCacheHolder)
+            }
+        })
+    }
+
+    override fun shouldHotSwap(finishedCompilationContext: CompileContext): Boolean {
+        classesRedefined.set(true)
+        return true
+    }
+}
+
 private fun SuspendContext.getInvokePolicy(): Int {
     return if (getSuspendPolicy() == EventRequest.SUSPEND_EVENT_THREAD) ObjectReference.INVOKE_SINGLE_THREADED else 0
 }
@@ -412,7 +466,8 @@ fun EvaluationContextImpl.findLocalVariable(name: String, asmType: Type?, checkT
                 val eval4j = JDIEval(frame.virtualMachine()!!,
                                      getClassLoader()!!,
                                      getSuspendContext().getThread()?.getThreadReference()!!,
-                                     getSuspendContext().getInvokePolicy())
+                                     getSuspendContext().getInvokePolicy(),
+                                     getJdiCache())
 
                 fun JDIEval.getField(owner: Value, name: String, asmType: Type?, checkType: Boolean): Value? {
                     val fieldDescription = FieldDescription(owner.asmType.getInternalName(), name, asmType?.getDescriptor() ?: "", isStatic = false)
@@ -115,7 +115,7 @@ public class KotlinBytecodeToolWindow extends JPanel implements Disposable {
                                             result.getModuleDescriptor(), result.getBindingContext(),
                                             Collections.singletonList(jetFile), !enableAssertions.isSelected(), !enableAssertions.isSelected(),
                                             GenerationState.GenerateClassFilter.GENERATE_ALL,
-                                            !enableInline.isSelected(), !enableOptimization.isSelected(), null, null,
+                                            !enableInline.isSelected(), !enableOptimization.isSelected(), false, null, null,
                                             DiagnosticSink.DO_NOTHING, null);
                 KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION);
             }
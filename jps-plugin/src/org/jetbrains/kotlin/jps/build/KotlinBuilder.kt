@@ -279,6 +279,11 @@ public class KotlinBuilder : ModuleLevelBuilder(BuilderCategory.SOURCE_PROCESSOR
             val newDecision = incrementalCaches[target]!!.saveFileToCache(outputItem.getSourceFiles(), outputItem.getOutputFile())
             recompilationDecision = recompilationDecision.merge(newDecision)
         }
+
+        // The outputs are already on disk, the caches must not lag behind them if the build process is killed
+        for (cache in incrementalCaches.values()) {
+            cache.flush(false)
+        }
         return recompilationDecision
     }
 
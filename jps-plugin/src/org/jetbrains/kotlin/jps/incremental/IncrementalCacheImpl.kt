@@ -20,12 +20,15 @@ import org.jetbrains.kotlin.jps.incremental.IncrementalCacheImpl.RecompilationDe
 import java.io.File
 import com.intellij.util.io.PersistentHashMap
 import java.io.DataOutput
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
 import com.intellij.util.io.IOUtil
 import java.io.DataInput
 import org.jetbrains.kotlin.name.FqName
 import com.intellij.util.io.DataExternalizer
 import org.jetbrains.kotlin.serialization.jvm.BitEncoding
-import java.util.Arrays
 import org.jetbrains.org.objectweb.asm.*
 import com.intellij.util.io.EnumeratorStringDescriptor
 import org.jetbrains.kotlin.load.java.JvmAnnotationNames
@@ -38,7 +41,6 @@ import com.intellij.openapi.util.io.FileUtil
 import java.security.MessageDigest
 import org.jetbrains.jps.incremental.storage.StorageOwner
 import org.jetbrains.jps.builders.storage.StorageProvider
-import java.io.IOException
 import org.jetbrains.kotlin.load.java.JvmAbi
 import org.jetbrains.kotlin.load.kotlin.header.isCompatiblePackageFacadeKind
 import org.jetbrains.kotlin.load.kotlin.header.isCompatibleClassKind
@@ -54,7 +56,7 @@ private val CACHE_DIRECTORY_NAME = "kotlin"
 class CacheFormatVersion(targetDataRoot: File) {
     class object {
         // Change this when incremental cache format changes
-        private val INCREMENTAL_CACHE_OWN_VERSION = 1
+        private val INCREMENTAL_CACHE_OWN_VERSION = 2
         private val CACHE_FORMAT_VERSION: Int = INCREMENTAL_CACHE_OWN_VERSION * 1000000 + JvmAbi.VERSION
         val FORMAT_VERSION_FILE_PATH: String = "$CACHE_DIRECTORY_NAME/format-version.txt"
     }
@@ -80,20 +82,25 @@ class CacheFormatVersion(targetDataRoot: File) {
 
 public class IncrementalCacheImpl(targetDataRoot: File): StorageOwner, IncrementalCache {
     class object {
-        val PROTO_MAP = "proto.tab"
-        val CONSTANTS_MAP = "constants.tab"
-        val INLINE_FUNCTIONS = "inline-functions.tab"
-        val PACKAGE_PARTS = "package-parts.tab"
+        val STORAGE_FILE = "incremental-data.bin"
+
+        // Each map used to be a separate PersistentHashMap
+        private val LEGACY_MAPS = listOf("proto.tab", "constants.tab", "inline-functions.tab", "package-parts.tab")
+
+        private val PROTO_MAP = 0
+        private val CONSTANTS_MAP = 1
+        private val INLINE_FUNCTIONS = 2
+        private val PACKAGE_PARTS = 3
+        private val MAP_COUNT = 4
     }
 
     private val baseDir = File(targetDataRoot, CACHE_DIRECTORY_NAME)
+    private val storage = IncrementalStorage(File(baseDir, STORAGE_FILE), MAP_COUNT)
     private val protoMap =  ProtoMap()
     private val constantsMap =  ConstantsMap()
     private val inlineFunctionsMap =  InlineFunctionsMap()
     private val packagePartMap =  PackagePartMap()
 
-    private val maps = listOf(protoMap, constantsMap, inlineFunctionsMap, packagePartMap)
-
     private val cacheFormatVersion = CacheFormatVersion(targetDataRoot)
 
     public fun saveFileToCache(sourceFiles: Collection<File>, classFile: File): RecompilationDecision {
@@ -169,104 +176,68 @@ public class IncrementalCacheImpl(targetDataRoot: File): StorageOwner, Increment
     }
 
     override fun flush(memoryCachesOnly: Boolean) {
-        maps.forEach { it.flush(memoryCachesOnly) }
+        storage.flush(memoryCachesOnly)
     }
 
     public override fun clean() {
-        maps.forEach { it.clean() }
+        storage.clean()
+        LEGACY_MAPS.forEach { PersistentHashMap.deleteFilesStartingWith(File(baseDir, it)) }
         cacheFormatVersion.clean()
     }
 
     public override fun close() {
-        maps.forEach { it.close () }
+        storage.close()
     }
 
-    private abstract class BasicMap<V> {
-        protected var storage: PersistentHashMap<String, V> = createMap()
-
-        protected abstract fun createMap(): PersistentHashMap<String, V>
-
-        public fun clean() {
-            try {
-                storage.close()
-            }
-            catch (ignored: IOException) {
-            }
+    private abstract inner class BasicMap<V>(private val mapId: Int, private val externalizer: DataExternalizer<V>) {
+        protected fun getValue(key: String): V? {
+            val bytes = storage.get(mapId, key)
+            if (bytes == null) return null
 
-            PersistentHashMap.deleteFilesStartingWith(storage.getBaseFile()!!)
-            try {
-                storage = createMap()
-            }
-            catch (ignored: IOException) {
-            }
+            return externalizer.read(DataInputStream(ByteArrayInputStream(bytes)))
         }
 
-        public fun flush(memoryCachesOnly: Boolean) {
-            if (memoryCachesOnly) {
-                if (storage.isDirty()) {
-                    storage.dropMemoryCaches()
-                }
-            }
-            else {
-                storage.force()
-            }
+        // Returns false if the stored value is the same
+        protected fun putValue(key: String, value: V): Boolean {
+            val bytes = ByteArrayOutputStream()
+            val output = DataOutputStream(bytes)
+            externalizer.save(output, value)
+            output.close()
+            return storage.put(mapId, key, bytes.toByteArray())
         }
 
-        public fun close() {
-            storage.close()
+        protected fun removeValue(key: String) {
+            storage.remove(mapId, key)
         }
+
+        protected fun getKeys(): Collection<String> = storage.getKeys(mapId)
     }
 
-    private abstract class ClassFileBasedMap<V>: BasicMap<V>() {
+    private abstract inner class ClassFileBasedMap<V>(mapId: Int, externalizer: DataExternalizer<V>): BasicMap<V>(mapId, externalizer) {
 
         // TODO may be too expensive, because it traverses all files in out directory
         public fun clearOutdated(outDirectory: File) {
-            val keysToRemove = HashSet<String>()
-
-            storage.processKeysWithExistingMapping { key ->
-                val className = JvmClassName.byInternalName(key!!)
+            for (key in getKeys()) {
+                val className = JvmClassName.byInternalName(key)
                 val classFile = File(outDirectory, FileUtil.toSystemDependentName(className.getInternalName()) + ".class")
                 if (!classFile.exists()) {
-                    keysToRemove.add(key)
+                    removeValue(key)
                 }
-
-                true
-            }
-
-            for (key in keysToRemove) {
-                storage.remove(key)
             }
         }
     }
 
-    private inner class ProtoMap: ClassFileBasedMap<ByteArray>() {
-        override fun createMap(): PersistentHashMap<String, ByteArray> = PersistentHashMap(
-                File(baseDir, PROTO_MAP),
-                EnumeratorStringDescriptor(),
-                ByteArrayExternalizer
-        )
-
+    private inner class ProtoMap: ClassFileBasedMap<ByteArray>(PROTO_MAP, ByteArrayExternalizer) {
         public fun put(className: JvmClassName, data: ByteArray): Boolean {
-            val key = className.getInternalName()
-            val oldData = storage[key]
-            if (Arrays.equals(data, oldData)) {
-                return false
-            }
-            storage.put(key, data)
-            return true
+            return putValue(className.getInternalName(), data)
         }
 
         public fun get(className: JvmClassName): ByteArray? {
-            return storage[className.getInternalName()]
+            return getValue(className.getInternalName())
         }
     }
 
-    private inner class ConstantsMap: ClassFileBasedMap<Map<String, Any>>() {
-        override fun createMap(): PersistentHashMap<String, Map<String, Any>> = PersistentHashMap(
-                File(baseDir, CONSTANTS_MAP),
-                EnumeratorStringDescriptor(),
-                ConstantsMapExternalizer
-        )
+    private inner class ConstantsMap: ClassFileBasedMap<Map<String, Any>>(CONSTANTS_MAP, ConstantsMapExternalizer) {
 
         private fun getConstantsMap(bytes: ByteArray): Map<String, Any>? {
             val result = HashMap<String, Any>()
@@ -291,15 +262,15 @@ public class IncrementalCacheImpl(targetDataRoot: File): StorageOwner, Increment
         private fun put(className: JvmClassName, constantsMap: Map<String, Any>?): Boolean {
             val key = className.getInternalName()
 
-            val oldMap = storage[key]
+            val oldMap = getValue(key)
             if (oldMap == constantsMap) {
                 return false
             }
             if (constantsMap != null) {
-                storage.put(key, constantsMap)
+                putValue(key, constantsMap)
             }
             else {
-                storage.remove(key)
+                removeValue(key)
             }
             return true
         }
@@ -363,12 +334,7 @@ public class IncrementalCacheImpl(targetDataRoot: File): StorageOwner, Increment
         }
     }
 
-    private inner class InlineFunctionsMap: ClassFileBasedMap<Map<String, Long>>() {
-        override fun createMap(): PersistentHashMap<String, Map<String, Long>> = PersistentHashMap(
-                File(baseDir, INLINE_FUNCTIONS),
-                EnumeratorStringDescriptor(),
-                InlineFunctionsMapExternalizer
-        )
+    private inner class InlineFunctionsMap: ClassFileBasedMap<Map<String, Long>>(INLINE_FUNCTIONS, InlineFunctionsMapExternalizer) {
 
         private fun getInlineFunctionsMap(bytes: ByteArray): Map<String, Long>? {
             val result = HashMap<String, Long>()
@@ -409,15 +375,15 @@ public class IncrementalCacheImpl(targetDataRoot: File): StorageOwner, Increment
         private fun put(className: JvmClassName, inlineFunctionsMap: Map<String, Long>?): Boolean {
             val key = className.getInternalName()
 
-            val oldMap = storage[key]
+            val oldMap = getValue(key)
             if (oldMap == inlineFunctionsMap) {
                 return false
             }
             if (inlineFunctionsMap != null) {
-                storage.put(key, inlineFunctionsMap)
+                putValue(key, inlineFunctionsMap)
             }
             else {
-                storage.remove(key)
+                removeValue(key)
             }
             return true
         }
@@ -426,7 +392,7 @@ public class IncrementalCacheImpl(targetDataRoot: File): StorageOwner, Increment
     private object InlineFunctionsMapExternalizer: DataExternalizer<Map<String, Long>> {
         override fun save(out: DataOutput, map: Map<String, Long>?) {
             out.writeInt(map!!.size)
-            for (name in map.keySet()) {
+            for (name in map.keySet().toSortedList()) {
                 IOUtil.writeString(name, out)
                 out.writeLong(map[name]!!)
             }
@@ -449,29 +415,24 @@ public class IncrementalCacheImpl(targetDataRoot: File): StorageOwner, Increment
     }
 
 
-    private inner class PackagePartMap: BasicMap<String>() {
+    private inner class PackagePartMap: BasicMap<String>(PACKAGE_PARTS, EnumeratorStringDescriptor()) {
         // Format of serialization to string: <source file path>  -->  <package part JVM internal name>
-        override fun createMap(): PersistentHashMap<String, String> = PersistentHashMap(
-                File(baseDir, PACKAGE_PARTS),
-                EnumeratorStringDescriptor(),
-                EnumeratorStringDescriptor()
-        )
 
         public fun putPackagePartSourceData(sourceFile: File, className: JvmClassName) {
-            storage.put(sourceFile.getAbsolutePath(), className.getInternalName())
+            putValue(sourceFile.getAbsolutePath(), className.getInternalName())
         }
 
         public fun remove(sourceFile: File) {
-            storage.remove(sourceFile.getAbsolutePath())
+            removeValue(sourceFile.getAbsolutePath())
         }
 
         public fun getRemovedPackageParts(compiledSourceFilesToFqName: Map<File, String?>): Collection<String> {
             val result = HashSet<String>()
 
-            storage.processKeysWithExistingMapping { key ->
-                val sourceFile = File(key!!)
+            for (key in getKeys()) {
+                val sourceFile = File(key)
 
-                val packagePartClassName = storage[key]!!
+                val packagePartClassName = getValue(key)!!
                 if (!sourceFile.exists()) {
                     result.add(packagePartClassName)
                 }
@@ -483,8 +444,6 @@ public class IncrementalCacheImpl(targetDataRoot: File): StorageOwner, Increment
                         }
                     }
                 }
-
-                true
             }
 
             return result
@@ -493,14 +452,12 @@ public class IncrementalCacheImpl(targetDataRoot: File): StorageOwner, Increment
         public fun getPackages(): Set<FqName> {
             val result = HashSet<FqName>()
 
-            storage.processKeysWithExistingMapping { key ->
-                val packagePartClassName = storage[key!!]!!
+            for (key in getKeys()) {
+                val packagePartClassName = getValue(key)!!
 
                 val packageFqName = JvmClassName.byInternalName(packagePartClassName).getPackageFqName()
 
                 result.add(packageFqName)
-
-                true
             }
 
             return result
@@ -0,0 +1,524 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.jps.incremental;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A single append-only file holding several maps from strings to byte arrays, which is read through a memory-mapped buffer.
+ *
+ * Changes are kept in memory and written as one batch by {@link #flush}: put and remove records followed by a commit record with
+ * a checksum of the batch. A batch which was not completely written (e.g. the build process was killed) is dropped on the next open.
+ * Every value is stored with its hash, so that putting a value equal to the stored one costs nothing and is reported as no change.
+ * Values which are overwritten stay in the file until it is compacted on close.
+ */
+public class IncrementalStorage {
+    private static final int MAGIC = 0x4b494331;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte COMMIT = 3;
+
+    private static final byte[] REMOVED = new byte[0];
+
+    // Flushes which only drop memory caches still write the batch if it gets this large
+    private static final int MAX_PENDING_BYTES = 16 * 1024 * 1024;
+    private static final long MIN_SIZE_TO_COMPACT = 1024 * 1024;
+
+    private final File file;
+    private final int namespaceCount;
+
+    private List<Map<String, Entry>> index;
+    private List<Map<String, byte[]>> pending;
+    private long pendingBytes;
+    private MappedByteBuffer buffer;
+    private long fileLength;
+    private long liveBytes;
+
+    public IncrementalStorage(@NotNull File file, int namespaceCount) {
+        this.file = file;
+        this.namespaceCount = namespaceCount;
+        reset();
+        open();
+    }
+
+    @Nullable
+    public synchronized byte[] get(int namespace, @NotNull String key) {
+        byte[] pendingValue = pending.get(namespace).get(key);
+        if (pendingValue != null) {
+            return pendingValue == REMOVED ? null : pendingValue;
+        }
+
+        Entry entry = index.get(namespace).get(key);
+        return entry != null ? read(entry) : null;
+    }
+
+    /**
+     * @param value new value, or null to remove the key
+     * @return false if the map already has the same value for the key
+     */
+    public synchronized boolean put(int namespace, @NotNull String key, @Nullable byte[] value) {
+        Map<String, byte[]> pendingValues = pending.get(namespace);
+        byte[] pendingValue = pendingValues.get(key);
+        Entry entry = index.get(namespace).get(key);
+
+        boolean changed;
+        if (pendingValue != null) {
+            changed = value == null ? pendingValue != REMOVED : !Arrays.equals(value, pendingValue);
+        }
+        else if (value == null) {
+            changed = entry != null;
+        }
+        else {
+            changed = entry == null || entry.length != value.length || entry.hash != hash(value) || !Arrays.equals(read(entry), value);
+        }
+
+        if (changed) {
+            byte[] previous = pendingValues.put(key, value != null ? value : REMOVED);
+            if (previous != null) {
+                pendingBytes -= previous.length;
+            }
+            pendingBytes += value != null ? value.length : 0;
+        }
+        return changed;
+    }
+
+    public boolean remove(int namespace, @NotNull String key) {
+        return put(namespace, key, null);
+    }
+
+    @NotNull
+    public synchronized Collection<String> getKeys(int namespace) {
+        Set<String> keys = new HashSet<String>(index.get(namespace).keySet());
+        for (Map.Entry<String, byte[]> entry : pending.get(namespace).entrySet()) {
+            if (entry.getValue() == REMOVED) {
+                keys.remove(entry.getKey());
+            }
+            else {
+                keys.add(entry.getKey());
+            }
+        }
+        return keys;
+    }
+
+    public synchronized boolean isDirty() {
+        for (Map<String, byte[]> values : pending) {
+            if (!values.isEmpty()) return true;
+        }
+        return false;
+    }
+
+    public synchronized void flush(boolean memoryCachesOnly) throws IOException {
+        if (!isDirty()) return;
+        if (memoryCachesOnly && pendingBytes < MAX_PENDING_BYTES) return;
+
+        writeBatch();
+    }
+
+    public synchronized void close() throws IOException {
+        flush(false);
+        if (fileLength > MIN_SIZE_TO_COMPACT && fileLength - HEADER_SIZE > 2 * liveBytes) {
+            compact();
+        }
+    }
+
+    public synchronized void clean() {
+        unmap();
+        FileUtil.delete(file);
+        reset();
+    }
+
+    private void reset() {
+        index = new ArrayList<Map<String, Entry>>(namespaceCount);
+        pending = new ArrayList<Map<String, byte[]>>(namespaceCount);
+        for (int i = 0; i < namespaceCount; i++) {
+            index.add(new HashMap<String, Entry>());
+            pending.add(new HashMap<String, byte[]>());
+        }
+        pendingBytes = 0;
+        buffer = null;
+        fileLength = 0;
+        liveBytes = 0;
+    }
+
+    private void open() {
+        if (!file.isFile()) return;
+
+        try {
+            map();
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                clean();
+                return;
+            }
+
+            int committed = readCommittedBatches();
+            if (committed < fileLength) {
+                // Drop the batch which was not completely written
+                truncate(committed);
+            }
+        }
+        catch (IOException e) {
+            clean();
+        }
+        catch (BufferUnderflowException e) {
+            clean();
+        }
+    }
+
+    /**
+     * @return the end of the last batch which was completely written
+     */
+    private int readCommittedBatches() {
+        int committed = HEADER_SIZE;
+        List<Record> batch = new ArrayList<Record>();
+        try {
+            while (buffer.hasRemaining()) {
+                int recordStart = buffer.position();
+                byte type = buffer.get();
+                if (type == COMMIT) {
+                    if (buffer.getLong() != checksum(committed, recordStart)) break;
+
+                    for (Record record : batch) {
+                        apply(record);
+                    }
+                    batch.clear();
+                    committed = buffer.position();
+                }
+                else {
+                    Record record = readRecord(type);
+                    if (record == null) break;
+                    batch.add(record);
+                }
+            }
+        }
+        catch (BufferUnderflowException e) {
+            // The last batch is cut short
+        }
+        catch (IOException e) {
+            // The last batch is corrupted
+        }
+        return committed;
+    }
+
+    private long checksum(int start, int end) {
+        CRC32 crc = new CRC32();
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(start);
+        byte[] chunk = new byte[Math.min(end - start, 64 * 1024)];
+        for (int position = start; position < end; position += chunk.length) {
+            int length = Math.min(chunk.length, end - position);
+            duplicate.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        return crc.getValue();
+    }
+
+    @Nullable
+    private Record readRecord(byte type) throws IOException {
+        if (type != PUT && type != REMOVE) return null;
+
+        int namespace = buffer.get();
+        if (namespace < 0 || namespace >= namespaceCount) return null;
+        String key = readString();
+
+        if (type == REMOVE) return new Record(namespace, key, null);
+
+        long hash = buffer.getLong();
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) return null;
+        Entry entry = new Entry(buffer.position(), length, hash);
+        buffer.position(buffer.position() + length);
+        return new Record(namespace, key, entry);
+    }
+
+    private void apply(@NotNull Record record) {
+        Map<String, Entry> entries = index.get(record.namespace);
+        Entry previous = record.entry != null ? entries.put(record.key, record.entry) : entries.remove(record.key);
+        if (previous != null) {
+            liveBytes -= previous.length;
+        }
+        if (record.entry != null) {
+            liveBytes += record.entry.length;
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        boolean newFile = fileLength == 0;
+        if (newFile) {
+            FileUtil.createParentDirs(file);
+        }
+        else if (file.length() != fileLength) {
+            // Offsets of the batch are computed from fileLength, but appended bytes go to the real end of the file
+            truncate(fileLength);
+        }
+
+        CRC32 crc = new CRC32();
+        CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file, !newFile)));
+        DataOutputStream output = new DataOutputStream(counter);
+        long start = newFile ? HEADER_SIZE : fileLength;
+        List<Record> batch = new ArrayList<Record>();
+        boolean written = false;
+        try {
+            if (newFile) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                counter.count = 0;
+            }
+
+            DataOutputStream checkedOutput = new DataOutputStream(new CheckedOutputStream(counter, crc));
+            for (int namespace = 0; namespace < namespaceCount; namespace++) {
+                for (Map.Entry<String, byte[]> pendingEntry : pending.get(namespace).entrySet()) {
+                    byte[] value = pendingEntry.getValue();
+                    checkedOutput.writeByte(value == REMOVED ? REMOVE : PUT);
+                    checkedOutput.writeByte(namespace);
+                    writeString(checkedOutput, pendingEntry.getKey());
+                    if (value == REMOVED) {
+                        batch.add(new Record(namespace, pendingEntry.getKey(), null));
+                        continue;
+                    }
+
+                    long hash = hash(value);
+                    checkedOutput.writeLong(hash);
+                    checkedOutput.writeInt(value.length);
+                    batch.add(new Record(namespace, pendingEntry.getKey(), new Entry(start + counter.count, value.length, hash)));
+                    checkedOutput.write(value);
+                }
+            }
+            output.writeByte(COMMIT);
+            output.writeLong(crc.getValue());
+            output.close();
+            written = true;
+        }
+        finally {
+            if (!written) {
+                discardPartialBatch(output, newFile);
+            }
+        }
+
+        if (start + counter.count > Integer.MAX_VALUE) {
+            // Positions in a mapped buffer are ints, start over next time
+            clean();
+            return;
+        }
+
+        for (Record record : batch) {
+            apply(record);
+        }
+        for (Map<String, byte[]> values : pending) {
+            values.clear();
+        }
+        pendingBytes = 0;
+        map();
+    }
+
+    /**
+     * Drops the part of a batch which was written before a failure, so that the next batch starts where the offsets say.
+     * The pending values are kept to be written again.
+     */
+    private void discardPartialBatch(@NotNull OutputStream output, boolean newFile) {
+        try {
+            output.close();
+        }
+        catch (IOException ignored) {
+        }
+
+        if (newFile) {
+            FileUtil.delete(file);
+            return;
+        }
+        try {
+            truncate(fileLength);
+        }
+        catch (IOException e) {
+            // The next batch would be written after the broken one, start over instead
+            clean();
+        }
+    }
+
+    private void compact() throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        List<Map<String, byte[]>> values = new ArrayList<Map<String, byte[]>>(namespaceCount);
+        for (int namespace = 0; namespace < namespaceCount; namespace++) {
+            Map<String, byte[]> namespaceValues = new HashMap<String, byte[]>();
+            for (Map.Entry<String, Entry> entry : index.get(namespace).entrySet()) {
+                namespaceValues.put(entry.getKey(), read(entry.getValue()));
+            }
+            values.add(namespaceValues);
+        }
+
+        IncrementalStorage compacted = new IncrementalStorage(tmpFile, namespaceCount);
+        compacted.clean();
+        compacted.pending = values;
+        compacted.writeBatch();
+        compacted.unmap();
+
+        // A mapped file can't be replaced on Windows
+        unmap();
+        try {
+            FileUtil.rename(tmpFile, file);
+        }
+        catch (IOException e) {
+            // The file will be compacted another time
+            FileUtil.delete(tmpFile);
+        }
+        finally {
+            reset();
+            open();
+        }
+    }
+
+    private void map() throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            fileLength = channel.size();
+            if (fileLength > Integer.MAX_VALUE) throw new IOException("Incremental storage is too large: " + file);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileLength);
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private void truncate(long length) throws IOException {
+        unmap();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(length);
+        }
+        finally {
+            randomAccessFile.close();
+        }
+        map();
+    }
+
+    /**
+     * Releases the mapping right away instead of when the buffer is garbage collected, so that the file can be truncated,
+     * replaced or deleted on Windows. The buffer and its duplicates must not be used afterwards.
+     */
+    private void unmap() {
+        MappedByteBuffer mapped = buffer;
+        buffer = null;
+        if (mapped == null) return;
+
+        try {
+            Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(mapped);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        }
+        catch (Exception e) {
+            // Not a HotSpot-like JVM, the mapping is released by the garbage collector
+        }
+    }
+
+    @NotNull
+    private byte[] read(@NotNull Entry entry) {
+        byte[] result = new byte[entry.length];
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(entry.position);
+        duplicate.get(result);
+        return result;
+    }
+
+    @NotNull
+    private String readString() throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new IOException("Corrupted incremental storage: " + file);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar();
+        }
+        return new String(chars);
+    }
+
+    private static void writeString(@NotNull DataOutputStream output, @NotNull String string) throws IOException {
+        output.writeInt(string.length());
+        output.writeChars(string);
+    }
+
+    // 64-bit FNV-1a, only used to tell different values apart quickly
+    private static long hash(@NotNull byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static class Entry {
+        final int position;
+        final int length;
+        final long hash;
+
+        Entry(long position, int length, long hash) {
+            this.position = (int) position;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    private static class Record {
+        final int namespace;
+        final String key;
+        final Entry entry;
+
+        Record(int namespace, @NotNull String key, @Nullable Entry entry) {
+            this.namespace = namespace;
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(@NotNull OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@NotNull byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.jps.incremental;
+
+import org.jetbrains.kotlin.test.TestCaseWithTmpdir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+
+public class IncrementalStorageTest extends TestCaseWithTmpdir {
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = new File(tmpdir, "storage.bin");
+    }
+
+    public void testPutAndGet() throws IOException {
+        IncrementalStorage storage = new IncrementalStorage(file, 2);
+        assertTrue(storage.put(0, "a", bytes(1, 2, 3)));
+        assertTrue(storage.put(1, "a", bytes(4)));
+        assertFalse(storage.put(0, "a", bytes(1, 2, 3)));
+        storage.close();
+
+        storage = new IncrementalStorage(file, 2);
+        assertBytes(storage.get(0, "a"), 1, 2, 3);
+        assertBytes(storage.get(1, "a"), 4);
+        assertNull(storage.get(0, "b"));
+        assertEquals(new HashSet<String>(Arrays.asList("a")), storage.getKeys(0));
+
+        assertFalse(storage.put(0, "a", bytes(1, 2, 3)));
+        assertFalse(storage.isDirty());
+        assertTrue(storage.put(0, "a", bytes(1, 2, 4)));
+        assertTrue(storage.remove(1, "a"));
+        assertFalse(storage.remove(1, "a"));
+        storage.close();
+
+        storage = new IncrementalStorage(file, 2);
+        assertBytes(storage.get(0, "a"), 1, 2, 4);
+        assertNull(storage.get(1, "a"));
+        assertTrue(storage.getKeys(1).isEmpty());
+        storage.close();
+    }
+
+    public void testMemoryCachesOnlyFlushKeepsBatch() throws IOException {
+        IncrementalStorage storage = new IncrementalStorage(file, 1);
+        storage.put(0, "a", bytes(1));
+        storage.flush(true);
+        assertFalse(file.exists());
+        assertBytes(storage.get(0, "a"), 1);
+
+        storage.flush(false);
+        assertTrue(file.exists());
+        assertFalse(storage.isDirty());
+        storage.close();
+    }
+
+    public void testOverwrittenPendingValueIsCountedOnce() throws IOException {
+        IncrementalStorage storage = new IncrementalStorage(file, 1);
+        byte[] value = new byte[10 * 1024 * 1024];
+        storage.put(0, "a", value);
+        value = value.clone();
+        value[0] = 1;
+        storage.put(0, "a", value);
+
+        // Only 10M of 16M allowed are pending
+        storage.flush(true);
+        assertFalse(file.exists());
+        storage.close();
+    }
+
+    public void testIncompleteBatchIsDropped() throws IOException {
+        IncrementalStorage storage = new IncrementalStorage(file, 1);
+        storage.put(0, "a", bytes(1));
+        storage.flush(false);
+        long committedLength = file.length();
+        storage.put(0, "a", bytes(2));
+        storage.put(0, "b", bytes(3));
+        storage.close();
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(file.length() - 3);
+        }
+        finally {
+            randomAccessFile.close();
+        }
+
+        storage = new IncrementalStorage(file, 1);
+        assertBytes(storage.get(0, "a"), 1);
+        assertNull(storage.get(0, "b"));
+        assertEquals(committedLength, file.length());
+
+        storage.put(0, "b", bytes(4));
+        storage.close();
+        storage = new IncrementalStorage(file, 1);
+        assertBytes(storage.get(0, "b"), 4);
+        storage.close();
+    }
+
+    public void testBytesOfFailedAppendAreDiscarded() throws IOException {
+        IncrementalStorage storage = new IncrementalStorage(file, 1);
+        storage.put(0, "a", bytes(1));
+        storage.flush(false);
+        long committedLength = file.length();
+
+        // What a batch which failed half way leaves behind
+        FileOutputStream output = new FileOutputStream(file, true);
+        try {
+            output.write(bytes(9, 9, 9, 9, 9));
+        }
+        finally {
+            output.close();
+        }
+
+        storage.put(0, "b", bytes(2, 3));
+        storage.flush(false);
+        assertBytes(storage.get(0, "a"), 1);
+        assertBytes(storage.get(0, "b"), 2, 3);
+        storage.close();
+
+        storage = new IncrementalStorage(file, 1);
+        assertBytes(storage.get(0, "a"), 1);
+        assertBytes(storage.get(0, "b"), 2, 3);
+        assertTrue(file.length() > committedLength);
+        storage.close();
+    }
+
+    public void testCompaction() throws IOException {
+        byte[] value = new byte[256 * 1024];
+        for (int i = 0; i < 10; i++) {
+            IncrementalStorage storage = new IncrementalStorage(file, 1);
+            value[0] = (byte) i;
+            storage.put(0, "a", value);
+            storage.close();
+        }
+        assertTrue(file.length() < 2 * value.length);
+
+        IncrementalStorage storage = new IncrementalStorage(file, 1);
+        assertEquals(9, storage.get(0, "a")[0]);
+        storage.close();
+    }
+
+    public void testClean() throws IOException {
+        IncrementalStorage storage = new IncrementalStorage(file, 1);
+        storage.put(0, "a", bytes(1));
+        storage.close();
+
+        storage.clean();
+        assertFalse(file.exists());
+        assertNull(storage.get(0, "a"));
+        storage.put(0, "b", bytes(2));
+        storage.close();
+
+        storage = new IncrementalStorage(file, 1);
+        assertNull(storage.get(0, "a"));
+        assertBytes(storage.get(0, "b"), 2);
+        storage.close();
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    private static void assertBytes(byte[] actual, int... expected) {
+        assertTrue(Arrays.toString(actual), Arrays.equals(bytes(expected), actual));
+    }
+}
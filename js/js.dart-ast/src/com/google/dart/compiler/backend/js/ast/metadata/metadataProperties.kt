@@ -26,5 +26,7 @@ public var JsInvocation.inlineStrategy: InlineStrategy? by MetadataProperty(defa
 
 public var JsFunction.isLocal: Boolean by MetadataProperty(default = false)
 
+public var JsFunction.isPrivate: Boolean by MetadataProperty(default = false)
+
 public var JsParameter.hasDefaultValue: Boolean by MetadataProperty(default = false)
 
@@ -4,15 +4,20 @@
 
 package com.google.dart.compiler.util;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Arrays;
 
 public class TextOutputImpl implements TextOutput {
+    private static final int FLUSH_THRESHOLD = 1 << 16;
+
     private final boolean compact;
     private int identLevel = 0;
     private final static int indentGranularity = 2;
     private char[][] indents = new char[][] {new char[0]};
     private boolean justNewlined;
     private final StringBuilder out;
+    private final Writer writer;
     private int position = 0;
     private int line = 0;
     private int column = 0;
@@ -30,6 +35,17 @@ public class TextOutputImpl implements TextOutput {
     public TextOutputImpl(boolean compact) {
         this.compact = compact;
         out = new StringBuilder();
+        writer = null;
+    }
+
+    /**
+     * The text is passed to the writer in chunks at line ends, so it's never kept in memory as a whole.
+     * {@link #flush()} must be called after the text is printed, and {@link #toString()} returns only the part not yet written.
+     */
+    public TextOutputImpl(Writer writer) {
+        compact = false;
+        out = new StringBuilder(FLUSH_THRESHOLD + 1024);
+        this.writer = writer;
     }
 
     @Override
@@ -37,6 +53,13 @@ public class TextOutputImpl implements TextOutput {
         return out.toString();
     }
 
+    public void flush() throws IOException {
+        if (writer == null) return;
+
+        writer.append(out);
+        out.setLength(0);
+    }
+
     @Override
     public int getPosition() {
         return position;
@@ -81,6 +104,14 @@ public class TextOutputImpl implements TextOutput {
         if (outListener != null) {
             outListener.newLined();
         }
+        if (writer != null && out.length() >= FLUSH_THRESHOLD) {
+            try {
+                flush();
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 
     @Override
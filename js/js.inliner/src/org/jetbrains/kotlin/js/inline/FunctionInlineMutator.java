@@ -20,7 +20,6 @@ import com.google.dart.compiler.backend.js.ast.*;
 import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.jetbrains.kotlin.js.inline.context.FunctionContext;
 import org.jetbrains.kotlin.js.inline.context.InliningContext;
 import org.jetbrains.kotlin.js.inline.context.NamingContext;
 import org.jetbrains.kotlin.js.inline.context.StatementContext;
@@ -34,6 +33,7 @@ class FunctionInlineMutator {
 
     private final JsInvocation call;
     private final InliningContext inliningContext;
+    private final InlineFunctionCache.Template template;
     private final JsFunction invokedFunction;
     private final boolean isResultNeeded;
     private final NamingContext namingContext;
@@ -43,9 +43,10 @@ class FunctionInlineMutator {
 
     public static InlineableResult getInlineableCallReplacement(
             @NotNull JsInvocation call,
+            @NotNull InlineFunctionCache.Template template,
             @NotNull InliningContext inliningContext
     ) {
-        FunctionInlineMutator mutator = new FunctionInlineMutator(call, inliningContext);
+        FunctionInlineMutator mutator = new FunctionInlineMutator(call, template, inliningContext);
         mutator.process();
 
         JsStatement inlineableBody = mutator.body;
@@ -62,13 +63,17 @@ class FunctionInlineMutator {
         return new InlineableResult(inlineableBody, resultExpression);
     }
 
-    private FunctionInlineMutator(@NotNull JsInvocation call, @NotNull InliningContext inliningContext) {
+    private FunctionInlineMutator(
+            @NotNull JsInvocation call,
+            @NotNull InlineFunctionCache.Template template,
+            @NotNull InliningContext inliningContext
+    ) {
         this.inliningContext = inliningContext;
         this.call = call;
+        this.template = template;
 
-        FunctionContext functionContext = inliningContext.getFunctionContext();
-        invokedFunction = functionContext.getFunctionDefinition(call);
-        body = invokedFunction.getBody().deepCopy();
+        invokedFunction = template.getFunction();
+        body = template.copyBody();
         isResultNeeded = isResultNeeded(call);
         namingContext = inliningContext.newNamingContext();
     }
@@ -80,8 +85,7 @@ class FunctionInlineMutator {
         replaceThis();
         removeDefaultInitializers(arguments, parameters, body);
         aliasArgumentsIfNeeded(namingContext, arguments, parameters);
-        renameLocalNames(namingContext, invokedFunction);
-        removeStatementsAfterTopReturn();
+        renameLocalNames(namingContext, template.getLocalNames());
 
         if (isResultNeeded && canBeExpression(body)) {
             resultExpr = asExpression(body);
@@ -96,7 +100,7 @@ class FunctionInlineMutator {
     }
 
     private void replaceThis() {
-        if (!hasThisReference(body)) return;
+        if (!template.hasThisReference()) return;
 
         JsExpression thisReplacement = getThisReplacement(call);
         if (thisReplacement == null) return;
@@ -110,20 +114,6 @@ class FunctionInlineMutator {
         replaceThisReference(body, thisReplacement);
     }
 
-    private void removeStatementsAfterTopReturn() {
-        List<JsStatement> statements = body.getStatements();
-
-        int statementsSize = statements.size();
-        for (int i = 0; i < statementsSize; i++) {
-            JsStatement statement = statements.get(i);
-
-            if (statement instanceof JsReturn) {
-                statements.subList(i + 1, statementsSize).clear();
-                break;
-            }
-        }
-    }
-
     private void processReturns() {
         int returnCount = collectInstances(JsReturn.class, body).size();
         if (returnCount == 0) {
@@ -220,11 +210,6 @@ class FunctionInlineMutator {
         return null;
     }
 
-    private static boolean hasThisReference(JsBlock body) {
-        List<JsLiteral.JsThisRef> thisRefs = collectInstances(JsLiteral.JsThisRef.class, body);
-        return !thisRefs.isEmpty();
-    }
-
     private static boolean canBeExpression(JsBlock body) {
         List<JsStatement> statements = body.getStatements();
         return statements.size() == 1 && statements.get(0) instanceof JsReturn;
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.kotlin.js.inline;
+
+import com.google.dart.compiler.backend.js.ast.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.jetbrains.kotlin.js.inline.util.UtilPackage.collectInstances;
+import static org.jetbrains.kotlin.js.inline.util.UtilPackage.collectLocalNames;
+
+/**
+ * Keeps the part of inlining which doesn't depend on a call site, so that it's computed once per inline function:
+ * its local names and whether it references 'this'. The body itself is copied from the function at each call site.
+ *
+ * {@link JsInliner} may process a function again after it has been inlined, so it reports such functions by
+ * {@link #functionChanged} and their data is computed again when it's needed next time.
+ * Also counts inlined calls and time spent on them for each function.
+ */
+class InlineFunctionCache {
+    private final Map<JsFunction, Template> templates = new IdentityHashMap<JsFunction, Template>();
+
+    @NotNull
+    public Template getTemplate(@NotNull JsFunction function, @Nullable String name) {
+        Template template = templates.get(function);
+        if (template == null) {
+            template = new Template(function, name != null ? name : "<anonymous>");
+            templates.put(function, template);
+        }
+        return template;
+    }
+
+    public void functionChanged(@NotNull JsFunction function) {
+        Template template = templates.get(function);
+        if (template != null) {
+            template.localNames = null;
+            template.hasThisReference = null;
+        }
+    }
+
+    @NotNull
+    public String getStatistics() {
+        List<Template> sorted = new ArrayList<Template>(templates.values());
+        Collections.sort(sorted, new Comparator<Template>() {
+            @Override
+            public int compare(@NotNull Template o1, @NotNull Template o2) {
+                return o1.inlineNanos < o2.inlineNanos ? 1 : o1.inlineNanos > o2.inlineNanos ? -1 : 0;
+            }
+        });
+
+        int calls = 0;
+        long nanos = 0;
+        StringBuilder functions = new StringBuilder();
+        for (Template template : sorted) {
+            calls += template.inlineCount;
+            nanos += template.inlineNanos;
+            functions.append("\n    ").append(template.name).append(": ").append(template.inlineCount).append(" calls, ")
+                    .append(TimeUnit.NANOSECONDS.toMillis(template.inlineNanos)).append(" ms");
+        }
+
+        return "JS inliner: " + calls + " calls of " + templates.size() + " functions inlined in " +
+               TimeUnit.NANOSECONDS.toMillis(nanos) + " ms" + functions;
+    }
+
+    static class Template {
+        private final JsFunction function;
+        private final String name;
+        private List<JsName> localNames = null;
+        private Boolean hasThisReference = null;
+
+        private int inlineCount = 0;
+        private long inlineNanos = 0;
+
+        private Template(@NotNull JsFunction function, @NotNull String name) {
+            this.function = function;
+            this.name = name;
+        }
+
+        @NotNull
+        public JsFunction getFunction() {
+            return function;
+        }
+
+        /**
+         * @return a fresh copy of the function body, without statements after a top level return
+         */
+        @NotNull
+        public JsBlock copyBody() {
+            JsBlock body = function.getBody().deepCopy();
+            removeStatementsAfterTopReturn(body);
+            return body;
+        }
+
+        @NotNull
+        public List<JsName> getLocalNames() {
+            if (localNames == null) {
+                localNames = collectLocalNames(function);
+            }
+            return localNames;
+        }
+
+        public boolean hasThisReference() {
+            if (hasThisReference == null) {
+                // Computed for the whole body, as it was before templates, so that the output stays the same
+                hasThisReference = !collectInstances(JsLiteral.JsThisRef.class, function.getBody()).isEmpty();
+            }
+            return hasThisReference;
+        }
+
+        public void recordInline(long nanos) {
+            inlineCount++;
+            inlineNanos += nanos;
+        }
+
+        private static void removeStatementsAfterTopReturn(@NotNull JsBlock body) {
+            List<JsStatement> statements = body.getStatements();
+
+            int statementsSize = statements.size();
+            for (int i = 0; i < statementsSize; i++) {
+                JsStatement statement = statements.get(i);
+
+                if (statement instanceof JsReturn) {
+                    statements.subList(i + 1, statementsSize).clear();
+                    break;
+                }
+            }
+        }
+    }
+}
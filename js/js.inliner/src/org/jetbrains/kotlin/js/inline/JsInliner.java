@@ -18,6 +18,7 @@ package org.jetbrains.kotlin.js.inline;
 
 import com.google.dart.compiler.backend.js.ast.*;
 import com.google.dart.compiler.backend.js.ast.metadata.MetadataPackage;
+import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.builtins.InlineStrategy;
@@ -35,11 +36,13 @@ import static org.jetbrains.kotlin.js.inline.util.UtilPackage.*;
 import static org.jetbrains.kotlin.js.translate.utils.JsAstUtils.flattenStatement;
 
 public class JsInliner extends JsVisitorWithContextImpl {
+    private static final Logger LOG = Logger.getInstance(JsInliner.class);
 
     private final IdentityHashMap<JsName, JsFunction> functions;
     private final Stack<JsInliningContext> inliningContexts = new Stack<JsInliningContext>();
     private final Set<JsFunction> processedFunctions = IdentitySet();
     private final Set<JsFunction> inProcessFunctions = IdentitySet();
+    private final InlineFunctionCache inlineFunctionCache = new InlineFunctionCache();
 
     /**
      * A statement can contain more, than one inlineable sub-expressions.
@@ -76,6 +79,11 @@ public class JsInliner extends JsVisitorWithContextImpl {
         JsInliner inliner = new JsInliner(functions);
         inliner.accept(program);
         removeUnusedFunctionDefinitions(program, functions);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(inliner.inlineFunctionCache.getStatistics());
+        }
+
         return program;
     }
 
@@ -97,6 +105,7 @@ public class JsInliner extends JsVisitorWithContextImpl {
     public void endVisit(JsFunction function, JsContext context) {
         super.endVisit(function, context);
         refreshLabelNames(getInliningContext().newNamingContext(), function);
+        inlineFunctionCache.functionChanged(function);
 
         removeUnusedLocalFunctionDeclarations(function);
         processedFunctions.add(function);
@@ -119,17 +128,19 @@ public class JsInliner extends JsVisitorWithContextImpl {
                 accept(definition);
             }
 
-            inline(call, context);
+            inline(call, definition, context);
         }
 
         return !lastStatementWasShifted;
     }
 
-    private void inline(@NotNull JsInvocation call, @NotNull JsContext context) {
+    private void inline(@NotNull JsInvocation call, @NotNull JsFunction definition, @NotNull JsContext context) {
+        long start = System.nanoTime();
         JsInliningContext inliningContext = getInliningContext();
         FunctionContext functionContext = getFunctionContext();
         functionContext.declareFunctionConstructorCalls(call.getArguments());
-        InlineableResult inlineableResult = getInlineableCallReplacement(call, inliningContext);
+        InlineFunctionCache.Template template = inlineFunctionCache.getTemplate(definition, getSimpleIdent(call));
+        InlineableResult inlineableResult = getInlineableCallReplacement(call, template, inliningContext);
 
         JsStatement inlineableBody = inlineableResult.getInlineableBody();
         JsExpression resultExpression = inlineableResult.getResultExpression();
@@ -149,6 +160,8 @@ public class JsInliner extends JsVisitorWithContextImpl {
         statementContext.shiftCurrentStatementForward();
         InsertionPoint<JsStatement> insertionPoint = statementContext.getInsertionPoint();
         insertionPoint.insertAllAfter(flattenStatement(inlineableBody));
+
+        template.recordInline(System.nanoTime() - start);
     }
 
     /**
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.inline.clean
+
+import com.google.dart.compiler.backend.js.ast.*
+import org.jetbrains.kotlin.js.inline.util.IdentitySet
+
+import java.util.ArrayList
+import java.util.HashMap
+import java.util.HashSet
+
+/**
+ * Removes declarations, which can't be reached from the rest of the program:
+ *  f: function() { return 10 },
+ *  A: Kotlin.createClass(null, function() {}, { ... }),
+ *  p: Kotlin.definePackage(null, { ... })
+ *
+ * Declarations are accessed as properties, so a declaration is reachable, if its name is referenced
+ * (as an identifier or a string literal) by code outside of declarations or by another reachable declaration.
+ * A reference keeps all declarations with the same name, since the receiver is not known.
+ *
+ * Only valid for a whole program (including the runtime and libraries), which is not used by any code outside of it.
+ */
+public fun removeUnreachableDeclarations(root: JsNode) {
+    val unreachable = with(ReachableDeclarationsCollector()) {
+        accept(root)
+        processReachableDeclarations()
+        unreachableDeclarations
+    }
+
+    NodeRemover(javaClass<JsPropertyInitializer>()) {
+        it in unreachable
+    }.accept(root)
+}
+
+// Called implicitly by JS engine or DOM, or read from property descriptors by Object.defineProperty
+private val IMPLICITLY_USED_NAMES = setOf("toString", "valueOf", "toJSON", "constructor", "handleEvent", "get", "set")
+
+// Runtime functions, which define a class or a package lazily, so removing their call doesn't remove any side effect
+private val LAZY_DECLARATION_FUNCTIONS = setOf("createClass", "createTrait", "createEnumClass", "definePackage")
+
+private class ReachableDeclarationsCollector : RecursiveJsVisitor() {
+    private val reachableNames = HashSet<String>(IMPLICITLY_USED_NAMES)
+    private val pendingDeclarations = HashMap<String, MutableList<JsPropertyInitializer>>()
+    private val reachableDeclarations = ArrayList<JsPropertyInitializer>()
+
+    public val unreachableDeclarations: Set<JsPropertyInitializer>
+        get() {
+            val result = IdentitySet<JsPropertyInitializer>()
+            pendingDeclarations.values().forEach { result.addAll(it) }
+            return result
+        }
+
+    public fun processReachableDeclarations() {
+        while (reachableDeclarations.isNotEmpty()) {
+            val declaration = reachableDeclarations.remove(reachableDeclarations.lastIndex)
+            accept(declaration.getValueExpr())
+        }
+    }
+
+    override fun visitPropertyInitializer(x: JsPropertyInitializer?) {
+        if (x == null) return
+
+        val name = getDeclarationName(x)
+        if (name == null) {
+            // A label is not a reference to a declaration with the same name
+            accept(x.getValueExpr())
+            return
+        }
+
+        if (name in reachableNames) {
+            reachableDeclarations.add(x)
+        }
+        else {
+            pendingDeclarations.getOrPut(name) { arrayListOf() }.add(x)
+        }
+    }
+
+    override fun visitNameRef(nameRef: JsNameRef?) {
+        super.visitNameRef(nameRef)
+
+        val ident = nameRef?.getIdent()
+        if (ident != null) {
+            markReachable(ident)
+        }
+    }
+
+    override fun visitString(x: JsStringLiteral?) {
+        val value = x?.getValue()
+        if (value != null) {
+            markReachable(value)
+        }
+    }
+
+    private fun markReachable(name: String) {
+        if (!reachableNames.add(name)) return
+
+        val declarations = pendingDeclarations.remove(name)
+        if (declarations != null) {
+            reachableDeclarations.addAll(declarations)
+        }
+    }
+
+    private fun getDeclarationName(property: JsPropertyInitializer): String? {
+        val value = property.getValueExpr()
+        if (!(value is JsFunction || isLazyDeclaration(value))) return null
+
+        val label = property.getLabelExpr()
+        return when (label) {
+            is JsNameRef -> label.getIdent()
+            is JsStringLiteral -> label.getValue()
+            else -> null
+        }
+    }
+
+    private fun isLazyDeclaration(expression: JsExpression?): Boolean {
+        if (expression !is JsInvocation) return false
+
+        val qualifier = expression.getQualifier()
+        return qualifier is JsNameRef && qualifier.getIdent() in LAZY_DECLARATION_FUNCTIONS
+    }
+}
@@ -19,16 +19,23 @@ package org.jetbrains.kotlin.js.inline.clean
 import com.google.dart.compiler.backend.js.ast.*
 import com.google.dart.compiler.backend.js.ast.metadata.staticRef
 import com.google.dart.compiler.backend.js.ast.metadata.isLocal
+import com.google.dart.compiler.backend.js.ast.metadata.isPrivate
 
 import org.jetbrains.kotlin.js.inline.util.IdentitySet
 import org.jetbrains.kotlin.js.inline.util.collectFunctionReferencesInside
+import org.jetbrains.kotlin.js.inline.util.collectInstances
+
+import java.util.HashMap
 
 /**
  * Removes unused function definitions:
  *  f: function() { return 10 }
  *
- * At now, it only removes unused local functions and function literals,
- * because named functions can be referenced from another module.
+ * At now, it only removes unused local functions, function literals and private top-level functions,
+ * because other named functions can be referenced from another module.
+ *
+ * Private functions are referenced by name, not by static ref, and code from `js()` calls
+ * refers to them by identifier only, so any reference with the same identifier keeps them.
  */
 public fun removeUnusedFunctionDefinitions(root: JsNode, functions: Map<JsName, JsFunction>) {
     val removable = with(UnusedLocalFunctionsCollector(functions)) {
@@ -47,16 +54,20 @@ private class UnusedLocalFunctionsCollector(functions: Map<JsName, JsFunction>)
     private val tracker = ReferenceTracker<JsName, JsFunction>()
     private val functions = functions
     private val processed = IdentitySet<JsFunction>()
+    private val privateFunctionNames = HashMap<String, MutableList<JsName>>()
 
     public val removableFunctions: List<JsFunction>
         get() = tracker.removable
 
     public fun process() {
-        functions.filter { it.value.isLocal }
+        functions.filter { it.value.isLocal || it.value.isPrivate }
                  .forEach { tracker.addCandidateForRemoval(it.key, it.value) }
 
+        functions.filter { it.value.isPrivate }
+                 .forEach { privateFunctionNames.getOrPut(it.key.getIdent()) { arrayListOf() }.add(it.key) }
+
         for ((name, function) in functions) {
-            if (function.isLocal) {
+            if (function.isLocal || function.isPrivate) {
                 processLocalFunction(name, function)
             } else {
                 processNonLocalFunction(function)
@@ -90,20 +101,34 @@ private class UnusedLocalFunctionsCollector(functions: Map<JsName, JsFunction>)
         if (isFunctionReference(x) && name != null) {
             tracker.markReachable(name)
         }
+
+        if (x != null) {
+            referencedPrivateFunctions(x).forEach { tracker.markReachable(it) }
+        }
     }
 
     private fun processLocalFunction(name: JsName, function: JsFunction) {
-        for (referenced in collectFunctionReferencesInside(function)) {
+        for (referenced in collectReferencedFunctions(function)) {
             tracker.addRemovableReference(name, referenced)
         }
     }
 
     private fun processNonLocalFunction(function: JsFunction) {
-        for (referenced in collectFunctionReferencesInside(function)) {
+        for (referenced in collectReferencedFunctions(function)) {
             tracker.markReachable(referenced)
         }
     }
 
+    private fun collectReferencedFunctions(function: JsFunction): List<JsName> {
+        val references = collectFunctionReferencesInside(function)
+        if (privateFunctionNames.isEmpty()) return references
+
+        return references + collectInstances(javaClass<JsNameRef>(), function).flatMap { referencedPrivateFunctions(it) }
+    }
+
+    private fun referencedPrivateFunctions(nameRef: JsNameRef): List<JsName> =
+            privateFunctionNames[nameRef.getIdent()] ?: listOf()
+
     private fun isFunctionReference(nameRef: HasName?): Boolean {
         return nameRef?.getName()?.staticRef is JsFunction
     }
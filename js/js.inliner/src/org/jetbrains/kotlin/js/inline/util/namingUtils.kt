@@ -58,9 +58,9 @@ public fun aliasArgumentsIfNeeded(
  */
 public fun renameLocalNames(
         context: NamingContext,
-        function: JsFunction
+        localNames: List<JsName>
 ) {
-    for (name in collectLocalNames(function)) {
+    for (name in localNames) {
         val freshName = context.getFreshName(name)
         context.replaceName(name, freshName.makeRef())
     }
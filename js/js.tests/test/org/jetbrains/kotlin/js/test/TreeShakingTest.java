@@ -0,0 +1,71 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.test;
+
+import com.intellij.util.ArrayUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.cli.common.ExitCode;
+import org.jetbrains.kotlin.cli.js.K2JSCompiler;
+import org.jetbrains.kotlin.js.test.rhino.RhinoResultChecker;
+import org.jetbrains.kotlin.test.TestCaseWithTmpdir;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.jetbrains.kotlin.js.test.BasicTest.TEST_DATA_DIR_PATH;
+import static org.jetbrains.kotlin.js.test.rhino.RhinoUtils.runRhinoTestInCleanScope;
+
+/**
+ * Compiles programs with -Xtree-shaking and runs the resulting bundles, which contain the runtime and the libraries they use.
+ */
+public class TreeShakingTest extends TestCaseWithTmpdir {
+    private static final String CASES = TEST_DATA_DIR_PATH + "treeShaking/cases/";
+    private static final String EXAMPLE_LIBRARY = "compiler/testData/integration/ant/js/simpleWithStdlibAndAnotherLib/jslib-example.jar";
+
+    public void testStdlib() throws Exception {
+        doTest("stdlib.kt", Collections.<String>emptyList(), "rect(6),point(0)\n6\n4,6\n531\nfail\n");
+    }
+
+    public void testLibrary() throws Exception {
+        doTest("library.kt", Collections.singletonList(EXAMPLE_LIBRARY), "x=30\n");
+    }
+
+    private void doTest(@NotNull String fileName, @NotNull List<String> libraries, @NotNull final String expectedOutput) throws Exception {
+        File outputFile = new File(tmpdir, "out.js");
+
+        List<String> args = new ArrayList<String>(Arrays.asList(CASES + fileName, "-main", "call", "-Xtree-shaking",
+                                                                "-output", outputFile.getPath()));
+        for (String library : libraries) {
+            args.add("-library-files");
+            args.add(library);
+        }
+        ExitCode exitCode = new K2JSCompiler().exec(System.out, ArrayUtil.toStringArray(args));
+        assertEquals("Compilation failed", ExitCode.OK, exitCode);
+
+        runRhinoTestInCleanScope(Collections.singletonList(outputFile.getPath()), new RhinoResultChecker() {
+            @Override
+            public void runChecks(Context context, Scriptable scope) throws Exception {
+                assertEquals(expectedOutput, context.evaluateString(scope, "console.output", "test", 0, null));
+            }
+        });
+    }
+}
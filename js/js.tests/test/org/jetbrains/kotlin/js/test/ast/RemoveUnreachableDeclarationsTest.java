@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.test.ast;
+
+import com.google.dart.compiler.backend.js.ast.*;
+import com.google.dart.compiler.common.SourceInfoImpl;
+import com.google.gwt.dev.js.JsParser;
+import com.google.gwt.dev.js.rhino.ErrorReporter;
+import com.google.gwt.dev.js.rhino.EvaluatorException;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.jetbrains.kotlin.js.inline.clean.CleanPackage.removeUnreachableDeclarations;
+
+public final class RemoveUnreachableDeclarationsTest extends TestCase {
+    private static final String RUNTIME =
+            "var Kotlin = {};\n" +
+            "Kotlin.createClass = function (basesFun, constructor, properties) { return properties; };\n" +
+            "Kotlin.definePackage = function (initializer, members) { return members; };\n" +
+            "Kotlin.equals = function (a, b) { return a.equals_za3rmp$(b); };\n";
+
+    public void testUnreachableFunctionsAreRemoved() throws Exception {
+        assertLabelsAfterRemoval(
+                RUNTIME +
+                "var _ = {\n" +
+                "    foo: Kotlin.definePackage(null, {\n" +
+                "        main: function () { _.foo.used(); },\n" +
+                "        used: function () { return _.foo.calledFromUsed(); },\n" +
+                "        calledFromUsed: function () { return 1; },\n" +
+                "        unused: function () { return _.foo.calledFromUnused(); },\n" +
+                "        calledFromUnused: function () { return 2; }\n" +
+                "    })\n" +
+                "};\n" +
+                "_.foo.main();\n",
+                "foo", "main", "used", "calledFromUsed");
+    }
+
+    public void testUnreachableClassesAndPackagesAreRemoved() throws Exception {
+        assertLabelsAfterRemoval(
+                RUNTIME +
+                "var _ = {\n" +
+                "    foo: Kotlin.definePackage(null, {\n" +
+                "        main: function () { Kotlin.equals(new _.foo.A(), null); },\n" +
+                "        A: Kotlin.createClass(null, function () {}, {\n" +
+                "            equals_za3rmp$: function (other) { return true; },\n" +
+                "            toString: function () { return 'A'; },\n" +
+                "            unusedMethod: function () {}\n" +
+                "        }),\n" +
+                "        B: Kotlin.createClass(null, function () {}, {})\n" +
+                "    }),\n" +
+                "    unusedPackage: Kotlin.definePackage(null, { bar: function () {} })\n" +
+                "};\n" +
+                "_.foo.main();\n",
+                "foo", "main", "A", "equals_za3rmp$", "toString");
+    }
+
+    public void testReferenceByStringKeepsDeclaration() throws Exception {
+        assertLabelsAfterRemoval(
+                RUNTIME +
+                "var _ = {\n" +
+                "    main: function () { return _['byString'](); },\n" +
+                "    byString: function () { return 1; },\n" +
+                "    notReferenced: function () { return 2; }\n" +
+                "};\n" +
+                "_.main();\n",
+                "main", "byString");
+    }
+
+    public void testObjectsAndPropertiesAreKept() throws Exception {
+        // Creating an object may have side effects, and property descriptors are not declarations
+        assertLabelsAfterRemoval(
+                RUNTIME +
+                "var _ = {\n" +
+                "    obj: Kotlin.createObject(null, function () {}),\n" +
+                "    property: {value: 1, writable: true}\n" +
+                "};\n",
+                "obj", "property", "value", "writable");
+    }
+
+    private static void assertLabelsAfterRemoval(@NotNull String code, @NotNull String... expectedLabels) throws Exception {
+        JsProgram program = new JsProgram("test");
+        SourceInfoImpl info = new SourceInfoImpl(null, 0, 0, 0, 0);
+        program.getGlobalBlock().getStatements().addAll(
+                JsParser.parse(info, program.getScope(), new StringReader(code), new FailingErrorReporter(), /* insideFunction= */ false));
+
+        removeUnreachableDeclarations(program);
+
+        final Set<String> labels = new HashSet<String>();
+        program.accept(new RecursiveJsVisitor() {
+            @Override
+            public void visitPropertyInitializer(JsPropertyInitializer x) {
+                JsExpression label = x.getLabelExpr();
+                if (label instanceof JsNameRef) {
+                    labels.add(((JsNameRef) label).getIdent());
+                }
+                else if (label instanceof JsStringLiteral) {
+                    labels.add(((JsStringLiteral) label).getValue());
+                }
+                super.visitPropertyInitializer(x);
+            }
+        });
+        assertEquals(new HashSet<String>(Arrays.asList(expectedLabels)), labels);
+    }
+
+    private static class FailingErrorReporter implements ErrorReporter {
+        @Override
+        public void warning(String message, String sourceName, int line, String lineSource, int lineOffset) {
+        }
+
+        @Override
+        public void error(String message, String sourceName, int line, String lineSource, int lineOffset) {
+            fail(line + ":" + lineOffset + ": " + message);
+        }
+
+        @Override
+        public EvaluatorException runtimeError(String message, String sourceName, int line, String lineSource, int lineOffset) {
+            throw new RuntimeException(message);
+        }
+    }
+}
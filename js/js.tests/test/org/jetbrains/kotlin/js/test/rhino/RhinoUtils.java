@@ -157,6 +157,29 @@ public final class RhinoUtils {
         }
     }
 
+    /**
+     * Runs files which contain the runtime and the libraries themselves, e.g. output of -Xtree-shaking,
+     * in a scope without the preloaded ones. Kotlin.out writes to console.log there, which appends to console.output.
+     */
+    public static void runRhinoTestInCleanScope(@NotNull List<String> fileNames, @NotNull RhinoResultChecker checker) throws Exception {
+        Context context = createContext(EcmaVersion.defaultVersion());
+        context.setOptimizationLevel(OPTIMIZATION_OFF);
+
+        try {
+            ScriptableObject scope = context.initStandardObjects();
+            context.evaluateString(scope, "var console = { output: '', log: function (s) { this.output += s + '\\n'; } };",
+                                   "setup console", 0, null);
+
+            for (String filename : fileNames) {
+                runFileWithRhino(filename, context, scope);
+            }
+            checker.runChecks(context, scope);
+        }
+        finally {
+            Context.exit();
+        }
+    }
+
     @NotNull
     private static ScriptableObject getScope(@NotNull EcmaVersion version, @NotNull Context context, @NotNull List<String> jsLibraries) {
         ScriptableObject scope = context.initStandardObjects(null, false);
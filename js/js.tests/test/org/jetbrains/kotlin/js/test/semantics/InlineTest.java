@@ -84,6 +84,10 @@ public final class InlineTest extends SingleFileTranslationWithDirectivesTest {
         checkFooBoxIsOkWithDirectives();
     }
 
+    public void testInlineRepeatedly() throws Exception {
+        checkFooBoxIsOkWithDirectives();
+    }
+
     public void testLambdaReassignment() throws Exception {
         checkFooBoxIsOkWithDirectives();
     }
@@ -237,4 +241,8 @@ public final class InlineTest extends SingleFileTranslationWithDirectivesTest {
     public void testSimpleReturnFunctionWithResultUnused() throws Exception {
         checkFooBoxIsOkWithDirectives();
     }
+
+    public void testUnusedPrivateFunctionRemoved() throws Exception {
+        checkFooBoxIsOkWithDirectives();
+    }
 }
@@ -20,6 +20,7 @@ import com.google.dart.compiler.backend.js.ast.JsFunction;
 import com.google.dart.compiler.backend.js.ast.JsName;
 import com.google.dart.compiler.backend.js.ast.JsNode;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Map;
 
@@ -28,6 +29,14 @@ import static org.jetbrains.kotlin.js.inline.util.UtilPackage.collectNamedFuncti
 public class AstSearchUtil {
     @NotNull
     public static JsFunction getFunction(@NotNull JsNode searchRoot, String name) {
+        JsFunction function = findFunction(searchRoot, name);
+        if (function == null) throw new AssertionError("Function `" + name + "` was not found");
+
+        return function;
+    }
+
+    @Nullable
+    public static JsFunction findFunction(@NotNull JsNode searchRoot, String name) {
         Map<JsName, JsFunction> functions = collectNamedFunctions(searchRoot);
 
         for (Map.Entry<JsName, JsFunction> entry : functions.entrySet()) {
@@ -36,6 +45,6 @@ public class AstSearchUtil {
             }
         }
 
-        throw new AssertionError("Function `" + name + "` was not found");
+        return null;
     }
 }
@@ -49,6 +49,22 @@ public class DirectiveTestUtils {
         }
     };
 
+    private static final DirectiveHandler FUNCTION_EXISTS = new DirectiveHandler("CHECK_FUNCTION_EXISTS") {
+        @Override
+        void processEntry(@NotNull JsNode ast, @NotNull ArgumentsHelper arguments) throws Exception {
+            String functionName = arguments.getFirst();
+            assertNotNull("function `" + functionName + "` is removed", AstSearchUtil.findFunction(ast, functionName));
+        }
+    };
+
+    private static final DirectiveHandler FUNCTION_REMOVED = new DirectiveHandler("CHECK_FUNCTION_REMOVED") {
+        @Override
+        void processEntry(@NotNull JsNode ast, @NotNull ArgumentsHelper arguments) throws Exception {
+            String functionName = arguments.getFirst();
+            assertNull("function `" + functionName + "` is not removed", AstSearchUtil.findFunction(ast, functionName));
+        }
+    };
+
     private static final DirectiveHandler FUNCTION_CALLED_IN_SCOPE = new DirectiveHandler("CHECK_CALLED_IN_SCOPE") {
         @Override
         void processEntry(@NotNull JsNode ast, @NotNull ArgumentsHelper arguments) throws Exception {
@@ -120,6 +136,8 @@ public class DirectiveTestUtils {
     public static void processDirectives(@NotNull JsNode ast, @NotNull String sourceCode) throws Exception {
         FUNCTION_CONTAINS_NO_CALLS.process(ast, sourceCode);
         FUNCTION_NOT_CALLED.process(ast, sourceCode);
+        FUNCTION_EXISTS.process(ast, sourceCode);
+        FUNCTION_REMOVED.process(ast, sourceCode);
         FUNCTION_CALLED_IN_SCOPE.process(ast, sourceCode);
         FUNCTION_NOT_CALLED_IN_SCOPE.process(ast, sourceCode);
         FUNCTIONS_HAVE_SAME_LINES.process(ast, sourceCode);
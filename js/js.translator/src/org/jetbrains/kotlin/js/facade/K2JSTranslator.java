@@ -19,8 +19,16 @@ package org.jetbrains.kotlin.js.facade;
 import com.google.common.base.Predicates;
 import com.google.dart.compiler.backend.js.ast.JsNode;
 import com.google.dart.compiler.backend.js.ast.JsProgram;
+import com.google.dart.compiler.backend.js.ast.JsStatement;
+import com.google.dart.compiler.common.SourceInfoImpl;
 import com.google.dart.compiler.util.TextOutputImpl;
+import com.google.gwt.dev.js.AbortParsingException;
+import com.google.gwt.dev.js.JsParser;
+import com.google.gwt.dev.js.JsParserException;
+import com.google.gwt.dev.js.rhino.ErrorReporter;
+import com.google.gwt.dev.js.rhino.EvaluatorException;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -49,13 +57,15 @@ import org.jetbrains.kotlin.resolve.BindingContext;
 import org.jetbrains.kotlin.resolve.diagnostics.Diagnostics;
 import org.jetbrains.kotlin.utils.fileUtils.FileUtilsPackage;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.jetbrains.kotlin.diagnostics.DiagnosticUtils.hasError;
 import static org.jetbrains.kotlin.js.facade.FacadeUtils.parseString;
+import static org.jetbrains.kotlin.js.inline.clean.CleanPackage.removeUnreachableDeclarations;
 import static org.jetbrains.kotlin.psi.PsiPackage.JetPsiFactory;
 
 /**
@@ -108,6 +118,143 @@ public final class K2JSTranslator {
         return Status.success(outputFileCollection);
     }
 
+    /**
+     * Same as {@link #translateWithMainCallParameters}, but the program and its source map are written to the output files
+     * while they are generated, so that they are never kept in memory as a whole.
+     *
+     * @return written files
+     */
+    public static Status<List<File>> translateWithMainCallParametersToFiles(
+            @NotNull MainCallParameters mainCall,
+            @NotNull List<JetFile> files,
+            @NotNull File outputFile,
+            @Nullable File outputPrefixFile,
+            @Nullable File outputPostfixFile,
+            @NotNull Config config
+    ) throws TranslationException, IOException {
+        K2JSTranslator translator = new K2JSTranslator(config);
+        JsProgram program = translator.generateInlinedProgram(files, mainCall);
+        if (program == null) return Status.fail();
+
+        return Status.success(writeProgram(program, outputFile, outputPrefixFile, outputPostfixFile, config));
+    }
+
+    /**
+     * Same as {@link #translateWithMainCallParametersToFiles}, but the JS code of the libraries is put into the output file
+     * before the program, and the declarations which can't be reached from the program are removed from the libraries and the program.
+     * No code outside of the output file may use its declarations.
+     *
+     * @param librariesJsCode the JS code of the runtime and the libraries by their paths, in the order of loading
+     * @return written files
+     */
+    public static Status<List<File>> translateBundleToFiles(
+            @NotNull MainCallParameters mainCall,
+            @NotNull List<JetFile> files,
+            @NotNull File outputFile,
+            @Nullable File outputPrefixFile,
+            @Nullable File outputPostfixFile,
+            @NotNull Config config,
+            @NotNull Map<String, String> librariesJsCode
+    ) throws TranslationException, IOException {
+        K2JSTranslator translator = new K2JSTranslator(config);
+        JsProgram program = translator.generateInlinedProgram(files, mainCall);
+        if (program == null) return Status.fail();
+
+        List<JsStatement> librariesStatements = new ArrayList<JsStatement>();
+        for (Map.Entry<String, String> entry : librariesJsCode.entrySet()) {
+            librariesStatements.addAll(parseLibraryJsCode(program, entry.getKey(), entry.getValue()));
+        }
+        program.getGlobalBlock().getStatements().addAll(0, librariesStatements);
+        removeUnreachableDeclarations(program);
+
+        return Status.success(writeProgram(program, outputFile, outputPrefixFile, outputPostfixFile, config));
+    }
+
+    @NotNull
+    private static List<JsStatement> parseLibraryJsCode(@NotNull JsProgram program, @NotNull String path, @NotNull String code)
+            throws TranslationException, IOException {
+        final StringBuilder errors = new StringBuilder();
+        ErrorReporter errorReporter = new ErrorReporter() {
+            @Override
+            public void warning(String message, String sourceName, int line, String lineSource, int lineOffset) {
+            }
+
+            @Override
+            public void error(String message, String sourceName, int line, String lineSource, int lineOffset) {
+                errors.append(line).append(":").append(lineOffset).append(": ").append(message);
+                throw new AbortParsingException();
+            }
+
+            @Override
+            public EvaluatorException runtimeError(String message, String sourceName, int line, String lineSource, int lineOffset) {
+                throw new RuntimeException(message);
+            }
+        };
+
+        try {
+            SourceInfoImpl info = new SourceInfoImpl(null, 0, 0, 0, 0);
+            return JsParser.parse(info, program.getScope(), new StringReader(code), errorReporter, /* insideFunction= */ false);
+        }
+        catch (AbortParsingException e) {
+            throw new TranslationException("Could not parse JavaScript code of library " + path + " at " + errors);
+        }
+        catch (JsParserException e) {
+            throw new TranslationException("Could not parse JavaScript code of library " + path, e);
+        }
+    }
+
+    @NotNull
+    private static List<File> writeProgram(
+            @NotNull JsProgram program,
+            @NotNull File outputFile,
+            @Nullable File outputPrefixFile,
+            @Nullable File outputPostfixFile,
+            @NotNull Config config
+    ) throws IOException {
+        String prefix = FileUtilsPackage.readTextOrEmpty(outputPrefixFile);
+        String postfix = FileUtilsPackage.readTextOrEmpty(outputPostfixFile);
+
+        List<File> writtenFiles = new SmartList<File>(outputFile);
+        Writer writer = createWriter(outputFile);
+        try {
+            writer.write(prefix);
+            TextOutputImpl output = new TextOutputImpl(writer);
+
+            if (config.isSourcemap()) {
+                File sourceMapFile = SourceMap3Builder.getOutFile(outputFile);
+                Writer sourceMapWriter = createWriter(sourceMapFile);
+                try {
+                    SourceMap3Builder sourceMapBuilder =
+                            new SourceMap3Builder(outputFile, output, new SourceMapBuilderConsumer(), sourceMapWriter);
+                    sourceMapBuilder.skipLinesAtBeginning(StringUtil.getLineBreakCount(prefix));
+                    program.accept(new JsSourceGenerationVisitor(output, sourceMapBuilder));
+                    sourceMapBuilder.finish();
+                }
+                finally {
+                    sourceMapWriter.close();
+                }
+                writtenFiles.add(sourceMapFile);
+            }
+            else {
+                program.accept(new JsSourceGenerationVisitor(output, null));
+            }
+
+            output.flush();
+            writer.write(postfix);
+        }
+        finally {
+            writer.close();
+        }
+
+        return writtenFiles;
+    }
+
+    @NotNull
+    private static Writer createWriter(@NotNull File file) throws IOException {
+        FileUtil.createParentDirs(file);
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    }
+
     @NotNull
     private final Config config;
 
@@ -148,18 +295,26 @@ public final class K2JSTranslator {
             @Nullable SourceMapBuilder sourceMapBuilder,
             @NotNull Consumer<JsNode> astConsumer
     ) throws TranslationException {
-        JsProgram program = generateProgram(files, mainCallParameters);
-        Diagnostics diagnostics = config.getTrace().getBindingContext().getDiagnostics();
+        JsProgram program = generateInlinedProgram(files, mainCallParameters);
+        if (program == null) return Status.fail();
 
-        if (hasError(diagnostics)) return Status.fail();
-
-        program = JsInliner.process(program);
         program.accept(new JsSourceGenerationVisitor(output, sourceMapBuilder));
         astConsumer.consume(program);
 
         return Status.success(output.toString());
     }
 
+    @Nullable
+    private JsProgram generateInlinedProgram(@NotNull List<JetFile> files, @NotNull MainCallParameters mainCallParameters)
+            throws TranslationException {
+        JsProgram program = generateProgram(files, mainCallParameters);
+        Diagnostics diagnostics = config.getTrace().getBindingContext().getDiagnostics();
+
+        if (hasError(diagnostics)) return null;
+
+        return JsInliner.process(program);
+    }
+
     @NotNull
     public JsProgram generateProgram(@NotNull List<JetFile> filesToTranslate,
             @NotNull MainCallParameters mainCallParameters)
@@ -23,14 +23,20 @@ import com.intellij.util.PairConsumer;
 import gnu.trove.TObjectIntHashMap;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
 public class SourceMap3Builder implements SourceMapBuilder {
+    private static final int FLUSH_THRESHOLD = 1 << 16;
+
     private final StringBuilder out = new StringBuilder(8192);
     private final File generatedFile;
     private final TextOutput textOutput;
     private final PairConsumer<SourceMapBuilder, Object> sourceInfoConsumer;
+    private final Writer writer;
+    private boolean headerWritten;
 
     private String lastSource;
     private int lastSourceIndex;
@@ -51,18 +57,38 @@ public class SourceMap3Builder implements SourceMapBuilder {
     private int previousSourceColumn;
 
     public SourceMap3Builder(File generatedFile, TextOutput textOutput, PairConsumer<SourceMapBuilder, Object> sourceInfoConsumer) {
+        this(generatedFile, textOutput, sourceInfoConsumer, null);
+    }
+
+    /**
+     * Mappings are passed to the writer while they are added, so they are never kept in memory as a whole.
+     * {@link #finish()} must be called instead of {@link #build()}. Sources are known only in the end, so they follow the mappings.
+     */
+    public SourceMap3Builder(
+            File generatedFile,
+            TextOutput textOutput,
+            PairConsumer<SourceMapBuilder, Object> sourceInfoConsumer,
+            Writer writer
+    ) {
         this.generatedFile = generatedFile;
         this.textOutput = textOutput;
         this.sourceInfoConsumer = sourceInfoConsumer;
+        this.writer = writer;
     }
 
     @Override
     public File getOutFile() {
+        return getOutFile(generatedFile);
+    }
+
+    public static File getOutFile(File generatedFile) {
         return new File(generatedFile.getParentFile(), generatedFile.getName() + ".map");
     }
 
     @Override
     public String build() {
+        if (writer != null) throw new IllegalStateException("Source map is written to a writer, finish() should be called");
+
         StringBuilder sb = new StringBuilder(out.length() + (128 * orderedSources.size()));
         sb.append("{\"version\":3,\"file\":\"").append(generatedFile.getName()).append('"').append(',');
         appendSources(sb);
@@ -73,6 +99,24 @@ public class SourceMap3Builder implements SourceMapBuilder {
         return sb.toString();
     }
 
+    public void finish() throws IOException {
+        flushMappings();
+        StringBuilder sb = new StringBuilder(128 * orderedSources.size());
+        sb.append("\",");
+        appendSources(sb);
+        sb.append(",\"names\":[]}");
+        writer.append(sb);
+    }
+
+    private void flushMappings() throws IOException {
+        if (!headerWritten) {
+            writer.append("{\"version\":3,\"file\":\"").append(generatedFile.getName()).append("\",\"mappings\":\"");
+            headerWritten = true;
+        }
+        writer.append(out);
+        out.setLength(0);
+    }
+
     private void appendSources(StringBuilder sb) {
         boolean isNotFirst = false;
         sb.append('"').append("sources").append("\":[");
@@ -92,10 +136,19 @@ public class SourceMap3Builder implements SourceMapBuilder {
     public void newLine() {
         out.append(';');
         previousGeneratedColumn = -1;
+        if (writer != null && out.length() >= FLUSH_THRESHOLD) {
+            try {
+                flushMappings();
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 
     @Override
     public void skipLinesAtBeginning(int count) {
+        if (headerWritten) throw new IllegalStateException("Lines can only be skipped before mappings are written");
         out.insert(0, StringUtil.repeatSymbol(';', count));
     }
 
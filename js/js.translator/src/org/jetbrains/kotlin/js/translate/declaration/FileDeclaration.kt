@@ -30,6 +30,9 @@ import org.jetbrains.kotlin.js.translate.utils.BindingUtils.*
 import org.jetbrains.kotlin.js.translate.initializer.InitializerUtils.*
 import org.jetbrains.kotlin.descriptors.PropertyDescriptor
 import com.intellij.util.SmartList
+import com.google.dart.compiler.backend.js.ast.metadata.isPrivate
+import org.jetbrains.kotlin.descriptors.Visibilities
+import org.jetbrains.kotlin.psi.JetNamedFunction
 
 class FileDeclarationVisitor(
         val context: TranslationContext,
@@ -57,6 +60,17 @@ class FileDeclarationVisitor(
         return null
     }
 
+    public override fun visitNamedFunction(expression: JetNamedFunction, context: TranslationContext?): Void? {
+        super.visitNamedFunction(expression, context)
+
+        // Other modules can't call private functions, so they are removed if nothing in this module calls them
+        val descriptor = getFunctionDescriptor(context!!.bindingContext(), expression)
+        if (descriptor.getVisibility() == Visibilities.PRIVATE) {
+            (result.last().getValueExpr() as JsFunction).isPrivate = true
+        }
+        return null
+    }
+
     public override fun visitObjectDeclaration(declaration: JetObjectDeclaration, context: TranslationContext?): Void? {
         InitializerUtils.generateObjectInitializer(declaration, initializerStatements, context!!)
         return null
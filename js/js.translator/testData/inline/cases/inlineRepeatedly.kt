@@ -0,0 +1,49 @@
+package foo
+
+// CHECK_NOT_CALLED: sumUpTo
+// CHECK_NOT_CALLED: sumTwice
+
+class Counter(var value: Int) {
+    inline fun add(delta: Int): Int {
+        val old = value
+        this.value = old + delta
+        return old
+    }
+}
+
+fun box(): String {
+    assertEquals(6, sumUpTo(3))
+    assertEquals(10, sumUpTo(4))
+    assertEquals(16, sumTwice(3))
+    assertEquals(16, sumTwice(3))
+
+    var total = 0
+    for (i in 1..3) {
+        total += sumUpTo(i)
+    }
+    assertEquals(10, total)
+
+    val counter = Counter(1)
+    assertEquals(1, counter.add(2))
+    assertEquals(3, Counter(counter.add(4)).add(5))
+    assertEquals(7, counter.value)
+
+    assertEquals(13, afterDefinition())
+
+    return "OK"
+}
+
+// Declared after box(), so it's inlined there before the inliner visits it here
+inline fun sumUpTo(limit: Int): Int {
+    var sum = 0
+    @loop for (i in 1..100) {
+        if (i > limit) break@loop
+        sum += i
+    }
+    return sum
+    sum = -1
+}
+
+inline fun sumTwice(limit: Int): Int = sumUpTo(limit) + sumUpTo(limit + 1)
+
+fun afterDefinition(): Int = sumUpTo(2) + sumUpTo(3) + sumUpTo(1) + sumUpTo(2)
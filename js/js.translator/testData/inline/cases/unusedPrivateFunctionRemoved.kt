@@ -0,0 +1,27 @@
+package foo
+
+// CHECK_FUNCTION_REMOVED: inc
+// CHECK_FUNCTION_REMOVED: unused
+// CHECK_FUNCTION_REMOVED: calledFromUnused
+// CHECK_FUNCTION_EXISTS: used
+// CHECK_FUNCTION_EXISTS: calledFromUsed
+// CHECK_FUNCTION_EXISTS: unusedPublic
+
+private inline fun inc(a: Int): Int = a + 1
+
+private fun unused(): Int = calledFromUnused()
+
+private fun calledFromUnused(): Int = 1
+
+private fun used(): Int = calledFromUsed()
+
+private fun calledFromUsed(): Int = 2
+
+fun unusedPublic(): Int = 3
+
+fun box(): String {
+    assertEquals(2, inc(1))
+    assertEquals(2, used())
+
+    return "OK"
+}
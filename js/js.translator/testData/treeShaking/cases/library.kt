@@ -0,0 +1,7 @@
+package foo
+
+import library.sample.*
+
+fun main(args: Array<String>) {
+    println("x=${pairAdd(Pair(10, 20))}")
+}
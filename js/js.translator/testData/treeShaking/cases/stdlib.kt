@@ -0,0 +1,45 @@
+package foo
+
+import java.util.ArrayList
+import java.util.HashMap
+
+open class Shape(val name: String) {
+    open fun area(): Int = 0
+
+    override fun toString(): String = "$name(${area()})"
+}
+
+class Rect(val width: Int, val height: Int) : Shape("rect") {
+    override fun area(): Int = width * height
+}
+
+object Registry {
+    val shapes = ArrayList<Shape>()
+}
+
+fun main(args: Array<String>) {
+    Registry.shapes.add(Rect(2, 3))
+    Registry.shapes.add(Shape("point"))
+    println(Registry.shapes.joinToString(","))
+
+    val areas = HashMap<String, Int>()
+    for (shape in Registry.shapes) {
+        areas[shape.name] = shape.area()
+    }
+    println(areas["rect"])
+
+    println(listOf(1, 2, 3).map { it * 2 }.filter { it > 2 }.joinToString(","))
+
+    val sb = StringBuilder()
+    for (i in 5 downTo 1 step 2) {
+        sb.append(i)
+    }
+    println(sb.toString())
+
+    try {
+        throw IllegalStateException("fail")
+    }
+    catch (e: IllegalStateException) {
+        println(e.getMessage())
+    }
+}
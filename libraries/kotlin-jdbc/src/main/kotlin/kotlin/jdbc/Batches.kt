@@ -0,0 +1,84 @@
+package kotlin.jdbc
+
+import java.sql.*
+import javax.sql.DataSource
+
+/**
+ * Adds rows to a [[PreparedStatement]] batch and executes the batch every time it reaches the given size.
+ * Call [[flush]] after the last row to execute the rest of the batch
+ */
+public class BatchWriter(public val statement: PreparedStatement, public val batchSize: Int = 1000) {
+    {
+        if (batchSize <= 0) {
+            throw IllegalArgumentException("Batch size should be positive: $batchSize")
+        }
+    }
+
+    private var pending = 0
+    private var updates = 0
+
+    /**
+     * The number of rows the executed batches reported as updated
+     */
+    public val updateCount: Int
+        get() = updates
+
+    /**
+     * Binds the values to the parameters of the statement and adds them to the batch
+     */
+    public fun add(vararg values: Any?) {
+        for (i in values.indices) {
+            statement.setObject(i + 1, values[i])
+        }
+        addBatch()
+    }
+
+    /**
+     * Adds the parameters bound directly to the [[statement]] to the batch
+     */
+    public fun addBatch() {
+        statement.addBatch()
+        if (++pending >= batchSize) {
+            flush()
+        }
+    }
+
+    /**
+     * Executes the rows added since the last flush
+     */
+    public fun flush() {
+        if (pending == 0) return
+        pending = 0
+        for (count in statement.executeBatch()) {
+            // Drivers may return Statement.SUCCESS_NO_INFO instead of the count
+            if (count > 0) {
+                updates += count
+            }
+        }
+    }
+}
+
+/**
+ * Creates a [[PreparedStatement]] for the SQL, passes a [[BatchWriter]] for it to the block,
+ * executes the remaining rows and closes the statement.
+ * @return the number of rows the batches reported as updated
+ */
+public fun Connection.batch(sql: String, batchSize: Int = 1000, block: (BatchWriter) -> Unit): Int {
+    val preparedStatement = prepareStatement(sql)
+    if (preparedStatement == null) {
+        throw IllegalStateException("No PreparedStatement returned from $this")
+    }
+    return preparedStatement.useSql {
+        val writer = BatchWriter(it, batchSize)
+        block(writer)
+        writer.flush()
+        writer.updateCount
+    }
+}
+
+/**
+ * Performs a batch update on a connection from the pool
+ */
+public fun DataSource.batch(sql: String, batchSize: Int = 1000, block: (BatchWriter) -> Unit): Int {
+    return useDataSource { it.batch(sql, batchSize, block) }
+}
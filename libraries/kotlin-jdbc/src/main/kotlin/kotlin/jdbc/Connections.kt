@@ -89,7 +89,11 @@ fun Connection.prepare(template : StringTemplate) : PreparedStatement {
     return builder.statement
 }
 
-class PreparedStatementBuilder(val template : StringTemplate, val connection : Connection) {
+/**
+ * Binds the values of a [[StringTemplate]] to a [[PreparedStatement]] created for its constant text.
+ * If a [[PreparedStatementCache]] is given, the statement is acquired from it and should be released to it after use
+ */
+class PreparedStatementBuilder(val template : StringTemplate, val connection : Connection, val cache : PreparedStatementCache? = null) {
     private var parameterIndex = 0
 
     public val sql : String = createSql()
@@ -201,6 +205,9 @@ class PreparedStatementBuilder(val template : StringTemplate, val connection : C
      * Looks up the [[PreparedStatement]] in a cache or creates a new one
      */
     protected fun lookupOrCreateStatement(): PreparedStatement {
+        if (cache != null) {
+            return cache.acquire(sql)
+        }
         val answer = connection.prepareStatement(sql)
         if (answer == null) {
             throw IllegalStateException("No PreparedStatement returned from $connection")
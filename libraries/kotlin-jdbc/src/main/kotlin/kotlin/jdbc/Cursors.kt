@@ -0,0 +1,126 @@
+package kotlin.jdbc
+
+import java.sql.*
+import java.math.BigDecimal
+import java.util.HashMap
+import javax.sql.DataSource
+import kotlin.template.StringTemplate
+
+/**
+ * Forward-only view of a [[ResultSet]] for processing large results row by row.
+ *
+ * Column names and their indices are resolved once per query rather than for each row,
+ * and the typed accessors read primitive values without boxing them.
+ */
+public class RowCursor(public val resultSet: ResultSet) {
+    /**
+     * Names of the columns, read from the metadata once
+     */
+    public val columnNames: Array<String> = resultSet.getColumnNames()
+
+    private val columnIndices = HashMap<String, Int>()
+
+    /**
+     * Moves to the next row, returns false if there are no rows left
+     */
+    public fun next(): Boolean = resultSet.next()
+
+    /**
+     * Returns the index (starting at 1) of the column with the given name
+     */
+    public fun columnIndex(columnName: String): Int = columnIndices.getOrPut(columnName) { resultSet.findColumn(columnName) }
+
+    public fun get(columnId: Int): Any? = resultSet.getObject(columnId)
+    public fun get(columnName: String): Any? = resultSet.getObject(columnIndex(columnName))
+
+    public fun getInt(columnId: Int): Int = resultSet.getInt(columnId)
+    public fun getInt(columnName: String): Int = resultSet.getInt(columnIndex(columnName))
+
+    public fun getLong(columnId: Int): Long = resultSet.getLong(columnId)
+    public fun getLong(columnName: String): Long = resultSet.getLong(columnIndex(columnName))
+
+    public fun getDouble(columnId: Int): Double = resultSet.getDouble(columnId)
+    public fun getDouble(columnName: String): Double = resultSet.getDouble(columnIndex(columnName))
+
+    public fun getBoolean(columnId: Int): Boolean = resultSet.getBoolean(columnId)
+    public fun getBoolean(columnName: String): Boolean = resultSet.getBoolean(columnIndex(columnName))
+
+    public fun getString(columnId: Int): String? = resultSet.getString(columnId)
+    public fun getString(columnName: String): String? = resultSet.getString(columnIndex(columnName))
+
+    public fun getBigDecimal(columnId: Int): BigDecimal? = resultSet.getBigDecimal(columnId)
+    public fun getBigDecimal(columnName: String): BigDecimal? = resultSet.getBigDecimal(columnIndex(columnName))
+
+    public fun getTimestamp(columnId: Int): Timestamp? = resultSet.getTimestamp(columnId)
+    public fun getTimestamp(columnName: String): Timestamp? = resultSet.getTimestamp(columnIndex(columnName))
+
+    /**
+     * Returns true if the last value read by a typed accessor was SQL NULL
+     */
+    public fun wasNull(): Boolean = resultSet.wasNull()
+
+    /**
+     * Fills the given array with values from the current row, in the column order, and returns it.
+     * The same array can be reused for every row
+     */
+    public fun getValues(values: Array<Any?> = arrayOfNulls<Any>(columnNames.size)): Array<Any?> {
+        for (i in values.indices) {
+            values[i] = resultSet.getObject(i + 1)
+        }
+        return values
+    }
+
+    /**
+     * Calls the block for each remaining row
+     */
+    public fun forEachRow(block: (RowCursor) -> Unit) {
+        while (next()) {
+            block(this)
+        }
+    }
+}
+
+/**
+ * Creates a [[RowCursor]] over the rows of this result set
+ */
+public fun ResultSet.cursor(): RowCursor = RowCursor(this)
+
+/**
+ * Performs a query on the connection and processes the rows with a [[RowCursor]].
+ * @param fetchSize the number of rows the driver should fetch at once, or 0 to use the driver's default
+ */
+public fun <T> Connection.stream(sql: String, fetchSize: Int = 0, block: (RowCursor) -> T): T {
+    return statement { statement ->
+        if (fetchSize > 0) {
+            statement.setFetchSize(fetchSize)
+        }
+        statement.executeQuery(sql).use { block(RowCursor(it)) }
+    }
+}
+
+/**
+ * Performs a query on the connection using the [[StringTemplate]] to generate the SQL text
+ * and processes the rows with a [[RowCursor]]
+ */
+public fun <T> Connection.stream(template: StringTemplate, fetchSize: Int = 0, block: (RowCursor) -> T): T {
+    val preparedStatement = prepare(template)
+    if (fetchSize > 0) {
+        preparedStatement.setFetchSize(fetchSize)
+    }
+    return preparedStatement.query { it.use { block(RowCursor(it)) } }
+}
+
+/**
+ * Performs a query on a connection from the pool and processes the rows with a [[RowCursor]]
+ */
+public fun <T> DataSource.stream(sql: String, fetchSize: Int = 0, block: (RowCursor) -> T): T {
+    return useDataSource { it.stream(sql, fetchSize, block) }
+}
+
+/**
+ * Performs a query on a connection from the pool using the SQL from the [[StringTemplate]]
+ * and processes the rows with a [[RowCursor]]
+ */
+public fun <T> DataSource.stream(template: StringTemplate, fetchSize: Int = 0, block: (RowCursor) -> T): T {
+    return useDataSource { it.stream(template, fetchSize, block) }
+}
@@ -0,0 +1,172 @@
+package kotlin.jdbc
+
+import java.sql.*
+import java.util.IdentityHashMap
+import java.util.LinkedHashMap
+import kotlin.template.StringTemplate
+
+/**
+ * Keeps up to [[maxSize]] [[PreparedStatement]]s of a connection open, keyed by the SQL text built from the constant parts
+ * of a [[StringTemplate]], so that executing the same template again only binds the new values.
+ * The least recently used statement is closed when the cache is full.
+ *
+ * A statement is in use from [[acquire]] until [[release]], e.g. while the result set of [[query]] is processed.
+ * A statement in use is never handed out again nor closed by eviction: a nested query with the same SQL gets
+ * a fresh statement, and an evicted one is closed when it's released.
+ *
+ * Like the connection itself, the cache should be used by one thread at a time.
+ * Statements are closed by [[close]], not after each query or update
+ */
+public class PreparedStatementCache(public val connection: Connection, public val maxSize: Int = 100) {
+    {
+        if (maxSize <= 0) {
+            throw IllegalArgumentException("Cache size should be positive: $maxSize")
+        }
+    }
+
+    private class CachedStatement(val statement: PreparedStatement) {
+        var inUse = false
+        // Not in the cache any more, closed when released
+        var evicted = false
+    }
+
+    private val statements = object : LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, CachedStatement>): Boolean {
+            if (size() <= maxSize) return false
+            evictions++
+            val cached = eldest.getValue()
+            if (cached.inUse) {
+                cached.evicted = true
+            } else {
+                cached.statement.close()
+            }
+            return true
+        }
+    }
+
+    private val inUse = IdentityHashMap<PreparedStatement, CachedStatement>()
+
+    public var hits: Long = 0
+        private set
+    public var misses: Long = 0
+        private set
+    public var evictions: Long = 0
+        private set
+
+    /**
+     * The share of lookups which found an open statement, or 0 if there were no lookups
+     */
+    public val hitRate: Double
+        get() = if (hits + misses == 0L) 0.0 else hits.toDouble() / (hits + misses)
+
+    /**
+     * The number of cached statements
+     */
+    public val size: Int
+        get() = statements.size()
+
+    /**
+     * Returns the cached statement for the SQL with its parameters cleared, or prepares a new one if there's no such statement,
+     * it has been closed or it's in use. The statement should be passed to [[release]] and must not be closed by the caller
+     */
+    public fun acquire(sql: String): PreparedStatement {
+        val cached = statements[sql]
+        if (cached != null && !cached.inUse && !cached.statement.isClosed()) {
+            hits++
+            cached.statement.clearParameters()
+            return use(cached)
+        }
+
+        misses++
+        val statement = connection.prepareStatement(sql)
+        if (statement == null) {
+            throw IllegalStateException("No PreparedStatement returned from $connection")
+        }
+        val prepared = CachedStatement(statement)
+        if (cached != null && cached.inUse) {
+            prepared.evicted = true
+        } else {
+            // Replaces a statement closed by someone else
+            statements[sql] = prepared
+        }
+        return use(prepared)
+    }
+
+    /**
+     * Makes the statement returned by [[acquire]] available again
+     */
+    public fun release(statement: PreparedStatement) {
+        val cached = inUse.remove(statement)
+        if (cached == null) {
+            throw IllegalArgumentException("Statement is not in use: $statement")
+        }
+        cached.inUse = false
+        if (cached.evicted) {
+            statement.close()
+        }
+    }
+
+    private fun use(cached: CachedStatement): PreparedStatement {
+        cached.inUse = true
+        inUse[cached.statement] = cached
+        return cached.statement
+    }
+
+    /**
+     * Binds the values of the [[StringTemplate]] to a cached [[PreparedStatement]] and processes it with a function.
+     * The statement must not be closed nor used after the function returns
+     */
+    public fun <T> prepare(template: StringTemplate, block: (PreparedStatement) -> T): T {
+        val builder = PreparedStatementBuilder(template, connection, this)
+        val statement = builder.statement
+        try {
+            builder.bind()
+            return block(statement)
+        } finally {
+            release(statement)
+        }
+    }
+
+    /**
+     * Performs the SQL update using the [[StringTemplate]]
+     */
+    public fun update(template: StringTemplate): Int = prepare(template) { it.executeUpdate() }
+
+    /**
+     * Performs a query using the [[StringTemplate]] and processes the result set with a function
+     */
+    public fun <T> query(template: StringTemplate, resultBlock: (ResultSet) -> T): T {
+        return prepare(template) { it.executeQuery().use(resultBlock) }
+    }
+
+    /**
+     * Closes all the statements, the connection stays open
+     */
+    public fun close() {
+        try {
+            for (cached in statements.values()) {
+                cached.statement.close()
+            }
+            for (statement in inUse.keySet()) {
+                statement.close()
+            }
+        } finally {
+            statements.clear()
+            inUse.clear()
+        }
+    }
+
+    override fun toString(): String = "PreparedStatementCache(size = $size, hits = $hits, misses = $misses, evictions = $evictions)"
+}
+
+/**
+ * Executes the block with a [[PreparedStatementCache]] for this connection and closes the cached statements after this
+ */
+public fun <T> Connection.useStatementCache(maxSize: Int = 100, block: (PreparedStatementCache) -> T): T {
+    val cache = PreparedStatementCache(this, maxSize)
+    try {
+        return block(cache)
+    } finally {
+        cache.close()
+    }
+}
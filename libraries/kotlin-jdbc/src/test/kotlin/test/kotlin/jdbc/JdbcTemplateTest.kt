@@ -34,4 +34,56 @@ class JdbcTemplateTest {
         val actual = names.first()
         assertEquals(name, actual)
     }
+
+    test fun cachedTemplateQuery() {
+        dataSource.useDataSource {
+            it.useStatementCache(maxSize = 1) { cache ->
+                for (id in 1..2) {
+                    val name = cache.query(StringTemplate(array("select name from foo where id = ", id))) {
+                        it.map { it["name"] }.first()
+                    }
+                    assertEquals(if (id == 1) "James" else "Andrey", name)
+                }
+                assertEquals(1L, cache.hits)
+                assertEquals(1L, cache.misses)
+                assertEquals(0.5, cache.hitRate)
+
+                cache.query(StringTemplate(array("select count(*) from foo where id > ", 0))) { it.singleInt() }
+                assertEquals(1L, cache.evictions)
+                assertEquals(1, cache.size)
+            }
+        }
+    }
+
+    test fun nestedCachedQueries() {
+        // With one statement the outer one is evicted while in use, with two the nested query finds it in use
+        for (maxSize in 1..2) {
+            dataSource.useDataSource {
+                it.useStatementCache(maxSize) { cache ->
+                    val rows = cache.query(StringTemplate(array("select id from foo where id < ", 3, " order by id"))) {
+                        it.map { row ->
+                            val id = row.getInt(1)
+                            val count = cache.query(StringTemplate(array("select count(*) from foo where id <= ", id))) { it.singleInt() }
+                            val sameSql = cache.query(StringTemplate(array("select id from foo where id < ", id, " order by id"))) {
+                                it.map { it.getInt(1) }.toList()
+                            }
+                            "$id:$count:${sameSql.size()}"
+                        }.toList()
+                    }
+                    assertEquals(listOf("1:1:0", "2:2:1"), rows)
+                }
+            }
+        }
+    }
+
+    test fun closedStatementIsPreparedAgain() {
+        dataSource.useDataSource {
+            it.useStatementCache { cache ->
+                val template = { (id: Int) -> StringTemplate(array("select name from foo where id = ", id)) }
+                cache.prepare(template(1)) { it.close() }
+                assertEquals("James", cache.query(template(1)) { it.map { it["name"] }.first() })
+                assertEquals(2L, cache.misses)
+            }
+        }
+    }
 }
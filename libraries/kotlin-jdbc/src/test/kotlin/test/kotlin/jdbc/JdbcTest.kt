@@ -92,4 +92,40 @@ class JdbcTest {
             }
         }
     }
+
+    test fun streamWithCursor() {
+        val names = arrayListOf<String?>()
+        dataSource.stream("select * from foo where id < 3 order by id", fetchSize = 100) {
+            it.forEachRow {
+                assertEquals(names.size + 1, it.getInt("id"))
+                names.add(it.getString("name"))
+            }
+        }
+        assertEquals(listOf("James", "Andrey"), names)
+    }
+
+    test fun cursorReusesValuesArray() {
+        dataSource.stream("select id, name from foo where id = 1") {
+            val values = arrayOfNulls<Any>(it.columnNames.size)
+            assertTrue(it.next())
+            assertTrue(values identityEquals it.getValues(values))
+            assertEquals("James", values[1])
+        }
+    }
+
+    test fun batchInsert() {
+        dataSource.update("create table if not exists batch_test (id int primary key, name varchar(100))")
+        dataSource.update("delete from batch_test")
+
+        val updated = dataSource.batch("insert into batch_test (id, name) values (?, ?)", batchSize = 7) {
+            for (i in 1..50) {
+                it.add(i, "name$i")
+            }
+        }
+        assertEquals(50, updated)
+
+        dataSource.query("select count(*) from batch_test") {
+            assertEquals(50, it.singleInt())
+        }
+    }
 }
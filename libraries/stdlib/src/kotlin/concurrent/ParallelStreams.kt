@@ -0,0 +1,195 @@
+package kotlin.concurrent
+
+import java.util.ArrayList
+import java.util.LinkedHashMap
+import java.util.RandomAccess
+import java.util.concurrent.*
+
+/**
+ * A [[Stream]] split into chunks of contiguous elements which are processed on the threads of an [[ExecutorService]].
+ *
+ * Intermediate operations are lazy and are applied to each chunk by the existing sequential streams.
+ * Terminal operations submit one task per chunk and combine the results of the chunks on the caller's thread:
+ * in the order of the source if the stream is [[ordered]], or as the chunks complete otherwise.
+ * Functions passed to the operations may be called concurrently and should not share mutable state.
+ * Terminal operations block the caller, so calling them from tasks of the same executor may use up all of its threads.
+ */
+public class ParallelStream<T>(private val chunks: List<Stream<T>>,
+                               public val executor: ExecutorService,
+                               public val ordered: Boolean = true) {
+
+    public fun <R> map(transform: (T) -> R): ParallelStream<R> = withChunks(chunks.map { TransformingStream(it, transform) })
+
+    public fun filter(predicate: (T) -> Boolean): ParallelStream<T> = withChunks(chunks.map { FilteringStream(it, true, predicate) })
+
+    public fun filterNot(predicate: (T) -> Boolean): ParallelStream<T> = withChunks(chunks.map { FilteringStream(it, false, predicate) })
+
+    public fun <R> flatMap(transform: (T) -> Stream<R>): ParallelStream<R> = withChunks(chunks.map { FlatteningStream(it, transform) })
+
+    /**
+     * Returns a stream whose terminal operations combine the results of the chunks as they complete
+     */
+    public fun unordered(): ParallelStream<T> = ParallelStream(chunks, executor, false)
+
+    /**
+     * Returns a sequential stream of the elements, in the order of the source
+     */
+    public fun sequential(): Stream<T> = chunks.stream().flatMap { it }
+
+    public fun toList(): List<T> {
+        val result = ArrayList<T>()
+        evaluate({ it.toArrayList() }, { result.addAll(it) })
+        return result
+    }
+
+    public fun forEach(operation: (T) -> Unit) {
+        evaluate({ it.forEach(operation) }, { })
+    }
+
+    public fun count(): Int {
+        var result = 0
+        evaluate({ it.count() }, { result += it })
+        return result
+    }
+
+    /**
+     * Folds each chunk starting with [[initial]], which should be the identity of [[combine]], and combines the results
+     */
+    public fun <R> fold(initial: R, operation: (R, T) -> R, combine: (R, R) -> R): R {
+        var result = initial
+        evaluate({ it.fold(initial, operation) }, { result = combine(result, it) })
+        return result
+    }
+
+    public fun reduce(operation: (T, T) -> T): T {
+        var result: T? = null
+        var empty = true
+        evaluate({ reduceChunk(it, operation) }, {
+            if (it.first) {
+                result = if (empty) it.second else operation(result as T, it.second as T)
+                empty = false
+            }
+        })
+        if (empty) throw UnsupportedOperationException("Empty iterable can't be reduced")
+        return result as T
+    }
+
+    public fun <K> groupBy(toKey: (T) -> K): Map<K, List<T>> {
+        val result = LinkedHashMap<K, MutableList<T>>()
+        evaluate({ it.groupByTo(LinkedHashMap<K, MutableList<T>>(), toKey) }, {
+            for ((key, list) in it) {
+                result.getOrPut(key) { ArrayList<T>() }.addAll(list)
+            }
+        })
+        return result
+    }
+
+    // The first component is false if the chunk is empty
+    private fun reduceChunk(chunk: Stream<T>, operation: (T, T) -> T): Pair<Boolean, T?> {
+        val iterator = chunk.iterator()
+        if (!iterator.hasNext()) return Pair(false, null)
+
+        var accumulator = iterator.next()
+        while (iterator.hasNext()) {
+            accumulator = operation(accumulator, iterator.next())
+        }
+        return Pair(true, accumulator)
+    }
+
+    private fun <R> withChunks(chunks: List<Stream<R>>): ParallelStream<R> = ParallelStream(chunks, executor, ordered)
+
+    private fun <R> evaluate(chunkOperation: (Stream<T>) -> R, combine: (R) -> Unit) {
+        val completionService = ExecutorCompletionService<R>(executor)
+        val futures = ArrayList<Future<R>>(chunks.size)
+        try {
+            for (chunk in chunks) {
+                futures.add(completionService.submit(object : Callable<R> {
+                    override fun call(): R = chunkOperation(chunk)
+                }))
+            }
+            if (ordered) {
+                for (future in futures) {
+                    combine(getResult(future))
+                }
+            } else {
+                for (i in futures.indices) {
+                    combine(getResult(completionService.take()))
+                }
+            }
+        } finally {
+            // Stops the rest of the chunks if one of them has failed
+            for (future in futures) {
+                future.cancel(true)
+            }
+        }
+    }
+
+    private fun <R> getResult(future: Future<R>): R {
+        try {
+            return future.get()
+        } catch (e: ExecutionException) {
+            throw e.getCause() ?: e
+        }
+    }
+}
+
+/**
+ * Returns a parallel stream of the list's elements split into [[chunkCount]] chunks
+ */
+public fun <T> List<T>.parallelStream(executor: ExecutorService = defaultParallelStreamExecutor(),
+                                      chunkCount: Int = defaultChunkCount()): ParallelStream<T> {
+    val list = if (this is RandomAccess) this else ArrayList(this)
+    return ParallelStream(splitIntoChunks(list.size(), chunkCount) { list[it] }, executor)
+}
+
+/**
+ * Returns a parallel stream of the array's elements split into [[chunkCount]] chunks
+ */
+public fun <T> Array<out T>.parallelStream(executor: ExecutorService = defaultParallelStreamExecutor(),
+                                           chunkCount: Int = defaultChunkCount()): ParallelStream<T> {
+    return ParallelStream(splitIntoChunks(size, chunkCount) { this[it] }, executor)
+}
+
+/**
+ * Returns a parallel stream of the progression's elements split into [[chunkCount]] chunks
+ */
+public fun Progression<Int>.parallelStream(executor: ExecutorService = defaultParallelStreamExecutor(),
+                                           chunkCount: Int = defaultChunkCount()): ParallelStream<Int> {
+    val first = start
+    val step = increment.toInt()
+    val size = if (if (step > 0) first > end else first < end) 0L else (end.toLong() - first) / step + 1
+    if (size > Integer.MAX_VALUE) throw IllegalArgumentException("Progression is too long: $this")
+    return ParallelStream(splitIntoChunks(size.toInt(), chunkCount) { first + it * step }, executor)
+}
+
+private fun <T> splitIntoChunks(size: Int, chunkCount: Int, get: (Int) -> T): List<Stream<T>> {
+    if (chunkCount <= 0) throw IllegalArgumentException("Chunk count should be positive: $chunkCount")
+    val count = Math.min(size, chunkCount)
+    val chunks = ArrayList<Stream<T>>(count)
+    for (i in 0..count - 1) {
+        val from = (size.toLong() * i / count).toInt()
+        val to = (size.toLong() * (i + 1) / count).toInt()
+        chunks.add(TransformingStream(streamOf(from..to - 1), get))
+    }
+    return chunks
+}
+
+private fun defaultChunkCount(): Int = 4 * Runtime.getRuntime().availableProcessors()
+
+/**
+ * Returns the executor used by parallel streams by default, a fixed pool of daemon threads, one per processor.
+ * The pool is shared by all parallel streams of the process; pass an executor to the `parallelStream` functions to isolate them.
+ */
+public fun defaultParallelStreamExecutor(): ExecutorService = DefaultParallelStreamExecutor.executor
+
+private object DefaultParallelStreamExecutor {
+    val executor: ExecutorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), object : ThreadFactory {
+        private val threadCount = java.util.concurrent.atomic.AtomicInteger()
+
+        override fun newThread(runnable: Runnable): Thread {
+            val thread = Thread(runnable, "kotlin-parallel-stream-${threadCount.incrementAndGet()}")
+            thread.setDaemon(true)
+            return thread
+        }
+    })
+}
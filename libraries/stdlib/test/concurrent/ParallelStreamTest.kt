@@ -0,0 +1,68 @@
+package test.concurrent
+
+import kotlin.concurrent.*
+import kotlin.test.*
+
+import org.junit.After as after
+import org.junit.Test as test
+
+import java.util.concurrent.*
+
+class ParallelStreamTest {
+    val pool = Executors.newFixedThreadPool(3)
+
+    after fun shutdownPool() {
+        pool.shutdownNow()
+    }
+
+    test fun mapFilterToList() {
+        val expected = (1..1000).stream().map { it * 2 }.filter { it % 3 == 0 }.toList()
+        assertEquals(expected, (1..1000).parallelStream(pool, 7).map { it * 2 }.filter { it % 3 == 0 }.toList())
+    }
+
+    test fun unorderedToList() {
+        val result = listOf("a", "b", "c", "d", "e").parallelStream(pool, 2).unordered().map { it.toUpperCase() }.toList()
+        assertEquals(setOf("A", "B", "C", "D", "E"), result.toSet())
+    }
+
+    test fun foldAndReduce() {
+        val range = 1..100000
+        assertEquals(5000050000L, range.parallelStream(pool).fold(0L, { sum, x -> sum + x }, { a, b -> a + b }))
+        assertEquals(100000, range.parallelStream(pool).reduce { a, b -> Math.max(a, b) })
+        assertEquals("abc", array("a", "b", "c").parallelStream(pool, 3).reduce { a, b -> a + b })
+    }
+
+    test fun reduceEmpty() {
+        fails {
+            (1..0).parallelStream(pool).reduce { a, b -> a + b }
+        }
+    }
+
+    test fun progression() {
+        assertEquals((10 downTo 1 step 3).toList(), (10 downTo 1 step 3).parallelStream(pool, 2).toList())
+        assertEquals(0, (1..0).parallelStream(pool).count())
+    }
+
+    test fun steppedProgression() {
+        assertEquals(listOf(1, 5, 9, 13, 17), (1..20 step 4).parallelStream(pool, 3).toList())
+        assertEquals(listOf(0, 7, 14), (0..14 step 7).parallelStream(pool, 5).toList())
+    }
+
+    test fun descendingProgression() {
+        assertEquals((20 downTo 1).toList(), (20 downTo 1).parallelStream(pool, 6).toList())
+        assertEquals(listOf(9, 6, 3, 0), (9 downTo -1 step 3).parallelStream(pool, 2).toList())
+        assertEquals(0, (1 downTo 2).parallelStream(pool).count())
+    }
+
+    test fun groupBy() {
+        val words = listOf("one", "two", "three", "four", "five", "six")
+        assertEquals(words.groupBy { it.length }, words.parallelStream(pool, 4).groupBy { it.length })
+    }
+
+    test fun failure() {
+        val e = failsWith(javaClass<IllegalStateException>()) {
+            (1..100).parallelStream(pool).map { if (it == 42) throw IllegalStateException("$it") else it }.toList()
+        }
+        assertEquals("42", e.getMessage())
+    }
+}